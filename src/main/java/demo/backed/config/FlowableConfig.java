@@ -1,39 +1,183 @@
 package demo.backed.config;
 
+import demo.backed.service.ApproverResolver;
+import demo.backed.service.LegacyApproverELResolver;
+import lombok.extern.slf4j.Slf4j;
+import org.flowable.common.spring.async.SpringAsyncTaskExecutor;
+import org.flowable.engine.ProcessEngine;
 import org.flowable.engine.ProcessEngineConfiguration;
+import org.flowable.engine.ProcessEngineLifecycleListener;
 import org.flowable.spring.SpringProcessEngineConfiguration;
 import org.flowable.spring.boot.EngineConfigurationConfigurer;
+import org.flowable.spring.boot.process.Process;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
 import javax.sql.DataSource;
+import java.time.Duration;
 
+@Slf4j
 @Configuration
 public class FlowableConfig {
-    
+
+    /**
+     * 已办任务按（审批人, 结束时间倒序, 任务ID倒序）读取历史任务表，与迁移 V20261017_003 中的语句一致
+     */
+    private static final String HISTORIC_TASK_ASSIGNEE_INDEX =
+        "CREATE INDEX IF NOT EXISTS idx_act_hi_task_assignee_end ON act_hi_taskinst(assignee_, end_time_ DESC, id_ DESC)";
+
     @Autowired
     private DataSource dataSource;
-    
+
+    @Autowired
+    private ObjectProvider<ApproverResolver> approverResolver;
+
+    /**
+     * 是否启用异步作业执行器（异步服务任务、定时器等）
+     */
+    @Value("${flowable.async-executor-activate:false}")
+    private boolean asyncExecutorActivate;
+
+    /**
+     * 是否启用异步历史：历史数据在业务事务中只写一条历史作业，由异步历史执行器落地到 ACT_HI_* 表
+     */
+    @Value("${flowable.process.async-history.enable:false}")
+    private boolean asyncHistoryEnabled;
+
+    /**
+     * 历史清理随工作流归档一起开启：ACT_HI_* 在归档保留期+宽限期后由引擎删除，
+     * 宽限期保证归档任务先把历史任务快照搬入归档表
+     */
+    @Value("${app.workflow.archive.enabled:true}")
+    private boolean historyCleaningEnabled;
+
+    @Value("${app.workflow.archive.after-days:365}")
+    private int archiveAfterDays;
+
+    @Value("${app.workflow.archive.history-cleaning-grace-days:30}")
+    private int historyCleaningGraceDays;
+
+    @Value("${app.workflow.archive.history-cleaning-cycle:0 0 3 * * ?}")
+    private String historyCleaningCycle;
+
+    @Value("${app.workflow.archive.history-cleaning-batch-size:100}")
+    private int historyCleaningBatchSize;
+
+    @Value("${app.flowable.async-executor.core-pool-size:4}")
+    private int asyncExecutorCorePoolSize;
+
+    @Value("${app.flowable.async-executor.max-pool-size:8}")
+    private int asyncExecutorMaxPoolSize;
+
+    @Value("${app.flowable.async-executor.queue-capacity:100}")
+    private int asyncExecutorQueueCapacity;
+
+    @Value("${app.flowable.async-history-executor.core-pool-size:2}")
+    private int asyncHistoryExecutorCorePoolSize;
+
+    @Value("${app.flowable.async-history-executor.max-pool-size:4}")
+    private int asyncHistoryExecutorMaxPoolSize;
+
+    @Value("${app.flowable.async-history-executor.queue-capacity:500}")
+    private int asyncHistoryExecutorQueueCapacity;
+
     /**
      * 自定义Flowable流程引擎配置
+     * 作业获取批量、锁定时间等由 flowable.process.async.executor.* 和
+     * flowable.process.async-history.executor.* 配置，这里只处理线程池和开关
      */
     @Bean
     public EngineConfigurationConfigurer<SpringProcessEngineConfiguration> processEngineConfigurer() {
         return processEngineConfiguration -> {
             // 设置数据源
             processEngineConfiguration.setDataSource(dataSource);
-            
+
             // 设置数据库schema更新策略
             processEngineConfiguration.setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_TRUE);
-            
+
             // 设置异步执行器
-            processEngineConfiguration.setAsyncExecutorActivate(false);
-            
+            processEngineConfiguration.setAsyncExecutorActivate(asyncExecutorActivate);
+
+            // 设置异步历史：同一事务的历史数据合并为一个作业
+            processEngineConfiguration.setAsyncHistoryEnabled(asyncHistoryEnabled);
+            processEngineConfiguration.setAsyncHistoryExecutorActivate(asyncHistoryEnabled);
+            processEngineConfiguration.setAsyncHistoryJsonGroupingEnabled(true);
+            // 自动配置把异步作业线程池同时用于历史作业，这里换成独立线程池，历史积压不占用异步作业线程
+            processEngineConfiguration.setAsyncHistoryTaskExecutor(new SpringAsyncTaskExecutor(processHistoryTaskExecutor()));
+
+            // 设置历史清理：删除结束时间早于 保留期+宽限期 的历史流程及其任务、活动、变量、意见
+            processEngineConfiguration.setEnableHistoryCleaning(historyCleaningEnabled);
+            processEngineConfiguration.setHistoryCleaningTimeCycleConfig(historyCleaningCycle);
+            processEngineConfiguration.setCleanInstancesEndedAfter(
+                Duration.ofDays((long) archiveAfterDays + historyCleaningGraceDays));
+            processEngineConfiguration.setCleanInstancesBatchSize(historyCleaningBatchSize);
+
+            // 改写前部署的流程定义仍以 ${managerId} 等变量分配审批人，变量不存在时按需解析
+            processEngineConfiguration.addPostDefaultELResolver(
+                new LegacyApproverELResolver(approverResolver::getObject));
+
             // 设置流程定义缓存限制
             processEngineConfiguration.setProcessDefinitionCacheLimit(100);
-            
+
             // 设置历史级别
             processEngineConfiguration.setHistory("full");
+
+            // 引擎建表后补建历史任务索引（全新库上Flyway迁移先于引擎建表执行）
+            processEngineConfiguration.addEngineLifecycleListener(new ProcessEngineLifecycleListener() {
+                @Override
+                public void onProcessEngineBuilt(ProcessEngine processEngine) {
+                    createHistoricTaskIndex();
+                }
+
+                @Override
+                public void onProcessEngineClosed(ProcessEngine processEngine) {
+                }
+            });
         };
     }
-} 
\ No newline at end of file
+
+    private void createHistoricTaskIndex() {
+        try {
+            new JdbcTemplate(dataSource).execute(HISTORIC_TASK_ASSIGNEE_INDEX);
+        } catch (Exception e) {
+            log.warn("⚠️ 创建历史任务审批人索引失败，已办任务查询将走全表扫描", e);
+        }
+    }
+
+    /**
+     * 异步作业执行线程池
+     * 未声明时Flowable会使用Spring Boot的 applicationTaskExecutor（无界队列），这里单独限定大小
+     */
+    @Bean
+    @Process
+    public ThreadPoolTaskExecutor processTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(asyncExecutorCorePoolSize);
+        executor.setMaxPoolSize(asyncExecutorMaxPoolSize);
+        executor.setQueueCapacity(asyncExecutorQueueCapacity);
+        executor.setThreadNamePrefix("flowable-async-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 异步历史作业执行线程池，与异步作业线程池分开限定大小
+     */
+    @Bean
+    public ThreadPoolTaskExecutor processHistoryTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(asyncHistoryExecutorCorePoolSize);
+        executor.setMaxPoolSize(asyncHistoryExecutorMaxPoolSize);
+        executor.setQueueCapacity(asyncHistoryExecutorQueueCapacity);
+        executor.setThreadNamePrefix("flowable-async-history-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -25,6 +25,11 @@ import java.util.List;
 @Profile("!keycloak")  // 只在非 keycloak profile 时加载
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
+    /**
+     * 审批事件推送接口（SSE）
+     */
+    public static final String SSE_STREAM_PATH = "/api/approval/stream";
+    
     @Autowired
     private JwtUtil jwtUtil;
     
@@ -95,6 +100,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
             return bearerToken.substring(7);
         }
+        // EventSource 无法设置请求头，推送接口允许通过查询参数传递令牌
+        if (SSE_STREAM_PATH.equals(request.getRequestURI())) {
+            String queryToken = request.getParameter("access_token");
+            if (StringUtils.hasText(queryToken)) {
+                return queryToken;
+            }
+        }
         return null;
     }
     
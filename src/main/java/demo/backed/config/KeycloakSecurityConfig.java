@@ -13,6 +13,8 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtDecoders;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenResolver;
+import org.springframework.security.oauth2.server.resource.web.DefaultBearerTokenResolver;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -114,6 +116,7 @@ public class KeycloakSecurityConfig {
             
             // 配置OAuth2资源服务器
             .oauth2ResourceServer()
+                .bearerTokenResolver(bearerTokenResolver())
                 .jwt()
                 .jwtAuthenticationConverter(jwtAuthenticationConverter())
                 .decoder(jwtDecoder());
@@ -121,6 +124,24 @@ public class KeycloakSecurityConfig {
         return http.build();
     }
     
+    /**
+     * Bearer Token解析器
+     * 默认只从Authorization请求头读取；审批推送接口（SSE）的 EventSource 无法设置请求头，
+     * 额外允许通过 access_token 查询参数传递令牌
+     */
+    @Bean
+    public BearerTokenResolver bearerTokenResolver() {
+        DefaultBearerTokenResolver headerResolver = new DefaultBearerTokenResolver();
+        return request -> {
+            String token = headerResolver.resolve(request);
+            if (token == null && JwtAuthenticationFilter.SSE_STREAM_PATH.equals(request.getRequestURI())) {
+                String queryToken = request.getParameter("access_token");
+                return queryToken != null && !queryToken.isEmpty() ? queryToken : null;
+            }
+            return token;
+        };
+    }
+    
     /**
      * JWT解码器
      */
@@ -0,0 +1,13 @@
+package demo.backed.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 定时任务配置类
+ * 启用审批统计对账等后台定时任务
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
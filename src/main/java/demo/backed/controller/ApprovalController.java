@@ -1,6 +1,10 @@
 package demo.backed.controller;
 
 import demo.backed.dto.*;
+import demo.backed.service.ApprovalEventStreamService;
+import demo.backed.service.BatchApprovalService;
+import demo.backed.service.OverdueTaskMonitor;
+import demo.backed.service.TaskInboxService;
 import demo.backed.service.WorkflowIntegrationService;
 import demo.backed.config.KeycloakJwtAuthenticationService;
 import demo.backed.entity.User;
@@ -13,9 +17,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.Authentication;
 
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Optional;
@@ -41,6 +47,18 @@ public class ApprovalController {
     @Autowired(required = false)
     private KeycloakJwtAuthenticationService keycloakJwtAuthenticationService;
     
+    @Autowired
+    private ApprovalEventStreamService approvalEventStreamService;
+    
+    @Autowired
+    private BatchApprovalService batchApprovalService;
+    
+    @Autowired
+    private TaskInboxService taskInboxService;
+    
+    @Autowired
+    private OverdueTaskMonitor overdueTaskMonitor;
+    
 
     
     /**
@@ -159,6 +177,28 @@ public class ApprovalController {
         }
     }
     
+    /**
+     * 游标分页获取当前用户待办任务
+     * 适用于深翻页，cursor 为上一页返回的 nextCursor，第一页不传
+     */
+    @GetMapping("/pending/cursor")
+    @ApiOperation("游标分页获取待办任务列表")
+    public ApiResponse<CursorPage<PendingTaskDTO>> getPendingTasksByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            HttpServletRequest request) {
+        try {
+            Long currentUserId = getCurrentUserId(request);
+            CursorPage<PendingTaskDTO> page = workflowIntegrationService.getPendingTasksByCursor(currentUserId, cursor, size);
+            log.info("✅ 游标分页获取待办任务成功，用户ID: {}, 本页数量: {}, 是否还有: {}", 
+                    currentUserId, page.getContent().size(), page.isHasMore());
+            return ApiResponse.success(page);
+        } catch (Exception e) {
+            log.error("❌ 游标分页获取待办任务失败", e);
+            return ApiResponse.error("获取待办任务失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 审批通过
      * 替换前端模拟的审批操作
@@ -308,6 +348,28 @@ public class ApprovalController {
         }
     }
     
+    /**
+     * 游标分页获取已办任务列表
+     * 按完成时间倒序，cursor 为上一页返回的 nextCursor，第一页不传
+     */
+    @GetMapping("/handled/cursor")
+    @ApiOperation("游标分页获取已办任务列表")
+    public ApiResponse<CursorPage<PendingTaskDTO>> getHandledTasksByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            HttpServletRequest request) {
+        try {
+            Long currentUserId = getCurrentUserId(request);
+            CursorPage<PendingTaskDTO> page = workflowIntegrationService.getHandledTasksByCursor(currentUserId, cursor, size);
+            log.info("✅ 游标分页获取已办任务成功，用户ID: {}, 本页数量: {}, 是否还有: {}", 
+                    currentUserId, page.getContent().size(), page.isHasMore());
+            return ApiResponse.success(page);
+        } catch (Exception e) {
+            log.error("❌ 游标分页获取已办任务失败", e);
+            return ApiResponse.error("获取已办任务失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 批量审批
      * 支持批量审批和拒绝操作
@@ -338,7 +400,7 @@ public class ApprovalController {
                 })
                 .collect(Collectors.toList());
             
-            BatchResult result = workflowIntegrationService.batchApprove(approvalRequests);
+            BatchResult result = workflowIntegrationService.batchApprove(approvalRequests, currentUserId);
             
             log.info("✅ 批量审批完成，操作人: {}, 成功: {}, 失败: {}", 
                     currentUserId, result.getSuccessCount(), result.getFailureCount());
@@ -349,6 +411,80 @@ public class ApprovalController {
         }
     }
     
+    /**
+     * 提交异步批量审批任务
+     * 立即返回任务ID，通过 /batch/jobs/{jobId} 查询进度和结果，适合大批量审批
+     */
+    @PostMapping("/batch/jobs")
+    @ApiOperation("提交异步批量审批任务")
+    public ApiResponse<BatchApprovalJob> submitBatchApprovalJob(
+            @RequestBody BatchApprovalRequest request,
+            HttpServletRequest httpRequest) {
+        try {
+            Long currentUserId = getCurrentUserId(httpRequest);
+            
+            if (request == null || request.getItems() == null || request.getItems().isEmpty()) {
+                return ApiResponse.error("批量审批项目不能为空");
+            }
+            
+            List<ApprovalRequest> approvalRequests = request.getItems().stream()
+                .map(item -> {
+                    ApprovalRequest approvalRequest = new ApprovalRequest();
+                    approvalRequest.setTaskId(item.getTaskId());
+                    approvalRequest.setAction(item.getAction());
+                    approvalRequest.setComment(item.getComment());
+                    return approvalRequest;
+                })
+                .collect(Collectors.toList());
+            
+            BatchApprovalJob job = batchApprovalService.submit(approvalRequests, currentUserId);
+            return ApiResponse.success("批量审批任务已提交", job);
+        } catch (Exception e) {
+            log.error("❌ 提交批量审批任务失败", e);
+            return ApiResponse.error("提交批量审批任务失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 按条件批量审批
+     * 服务端筛选当前用户名下匹配的待办并作为异步任务处理，进度通过 batch-progress 事件推送，也可按 jobId 查询
+     */
+    @PostMapping("/batch/by-filter")
+    @ApiOperation("按条件批量审批")
+    public ApiResponse<BatchApprovalJob> batchApproveByFilter(
+            @RequestBody BatchApprovalFilterRequest request,
+            HttpServletRequest httpRequest) {
+        try {
+            Long currentUserId = getCurrentUserId(httpRequest);
+            log.info("🎯 API调用：按条件批量审批，用户ID: {}, 条件: {}", currentUserId, request);
+
+            BatchApprovalJob job = batchApprovalService.submitByFilter(request, currentUserId);
+            return ApiResponse.success("批量审批任务已提交", job);
+        } catch (Exception e) {
+            log.error("❌ 按条件批量审批失败", e);
+            return ApiResponse.error("按条件批量审批失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询异步批量审批任务进度，任务完成后返回批量结果
+     */
+    @GetMapping("/batch/jobs/{jobId}")
+    @ApiOperation("查询批量审批任务进度")
+    public ApiResponse<BatchApprovalJob> getBatchApprovalJob(
+            @PathVariable String jobId,
+            HttpServletRequest httpRequest) {
+        try {
+            Long currentUserId = getCurrentUserId(httpRequest);
+            return batchApprovalService.getJob(jobId, currentUserId)
+                .map(ApiResponse::success)
+                .orElseGet(() -> ApiResponse.error("批量审批任务不存在或已过期"));
+        } catch (Exception e) {
+            log.error("❌ 查询批量审批任务失败", e);
+            return ApiResponse.error("查询批量审批任务失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 获取审批统计信息
      * 替换前端硬编码的统计数据
@@ -371,34 +507,8 @@ public class ApprovalController {
             Long currentUserId = getCurrentUserId(request);
             log.info("🎯 API调用：获取审批统计，用户ID: {}", currentUserId);
             
-            // 获取待办任务数量
-            Page<PendingTaskDTO> pendingTasks = workflowIntegrationService.getPendingTasks(currentUserId, 
-                    Pageable.unpaged());
-            
-            // 获取已办任务数量（今日）
-            Page<PendingTaskDTO> handledTasks = workflowIntegrationService.getHandledTasks(currentUserId, 
-                    Pageable.unpaged());
-            
-            // 构建统计信息
-            ApprovalStatisticsDTO statistics = new ApprovalStatisticsDTO();
-            statistics.setMyPendingCount((int) pendingTasks.getTotalElements());
-            
-            // 统计今日已审批数量（简化实现，实际可根据时间过滤）
-            long todayApproved = handledTasks.getContent().stream()
-                .filter(task -> task.getApprovedTime() != null)
-                .count();
-            statistics.setMyApprovedToday((int) todayApproved);
-            
-            // 统计紧急任务数量
-            long urgentTasks = pendingTasks.getContent().stream()
-                .filter(task -> "high".equals(task.getPriority()))
-                .count();
-            statistics.setUrgentTaskCount((int) urgentTasks);
-            
-            // 其他统计（简化实现）
-            statistics.setParallelApprovalCount(0);
-            statistics.setDelegatedApprovalCount(0);
-            statistics.setOverdueTaskCount(0);
+            // 统计数据由任务事件增量维护，直接读取用户统计行
+            ApprovalStatisticsDTO statistics = workflowIntegrationService.getApprovalStatistics(currentUserId);
             
             log.info("✅ 获取审批统计成功，用户ID: {}, 待办: {}, 今日已办: {}", 
                     currentUserId, statistics.getMyPendingCount(), statistics.getMyApprovedToday());
@@ -409,6 +519,56 @@ public class ApprovalController {
         }
     }
     
+    /**
+     * 获取当前用户已逾期的待办
+     * 逾期由任务的办理期限（按节点SLA计算）到达时标记，按办理期限先后排序
+     */
+    @GetMapping("/overdue")
+    @ApiOperation("获取逾期待办列表")
+    public ApiResponse<Page<PendingTaskDTO>> getOverdueTasks(
+            @PageableDefault(size = 10) Pageable pageable,
+            HttpServletRequest request) {
+        try {
+            Long currentUserId = getCurrentUserId(request);
+            Page<PendingTaskDTO> page = taskInboxService.getOverdueTasks(currentUserId, pageable);
+            return ApiResponse.success(page);
+        } catch (Exception e) {
+            log.error("❌ 获取逾期待办失败", e);
+            return ApiResponse.error("获取逾期待办失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 逾期监控状态：时间轮中登记的待办数、刻度和槽位数
+     */
+    @GetMapping("/overdue/monitor")
+    @ApiOperation("获取逾期监控状态")
+    public ApiResponse<Map<String, Object>> getOverdueMonitorStatus() {
+        try {
+            return ApiResponse.success(overdueTaskMonitor.getStatus());
+        } catch (Exception e) {
+            log.error("❌ 获取逾期监控状态失败", e);
+            return ApiResponse.error("获取逾期监控状态失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 订阅审批事件推送（SSE）
+     * 推送 task-created / task-completed / task-removed / count-changed 事件，替代轮询待办和统计接口。
+     * 浏览器 EventSource 无法设置请求头，可通过 access_token 查询参数传递令牌；
+     * 断线重连时浏览器会自动携带 Last-Event-ID 补发期间的事件
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation("订阅审批事件推送")
+    public SseEmitter streamApprovalEvents(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam,
+            HttpServletRequest request) {
+        Long currentUserId = getCurrentUserId(request);
+        return approvalEventStreamService.subscribe(currentUserId, 
+                lastEventId != null ? lastEventId : lastEventIdParam);
+    }
+    
     /**
      * 获取可打回的节点列表
      */
@@ -429,7 +589,7 @@ public class ApprovalController {
             
             // 获取可打回节点
             List<java.util.Map<String, String>> returnableNodes = workflowIntegrationService
-                .getReturnableNodes(task.getInstanceId());
+                .getReturnableNodesByTaskId(task.getTaskId());
             
             // 转换为DTO
             List<ReturnableNodeDTO> nodes = returnableNodes.stream()
@@ -489,15 +649,11 @@ public class ApprovalController {
     /**
      * 根据费用申请ID查找待办任务
      * 🔧 修正：taskId现在是费用申请ID，需要通过这个ID找到对应的工作流任务
+     * 直接按（用户, 费用申请ID/业务ID）索引定位，只能查到当前用户自己的待办
      */
     private PendingTaskDTO findTaskByTaskId(Long userId, String expenseApplicationId) {
         try {
-            Page<PendingTaskDTO> tasks = workflowIntegrationService.getPendingTasks(userId, Pageable.unpaged());
-            return tasks.getContent().stream()
-                .filter(task -> expenseApplicationId.equals(task.getTaskId()) || 
-                               expenseApplicationId.equals(task.getBusinessId()))
-                .findFirst()
-                .orElse(null);
+            return workflowIntegrationService.findPendingTask(userId, expenseApplicationId);
         } catch (Exception e) {
             log.error("❌ 查找任务失败，用户ID: {}, 费用申请ID: {}", userId, expenseApplicationId, e);
             return null;
@@ -77,6 +77,26 @@ public class ExpenseController {
         }
     }
     
+    /**
+     * 批量提交费用申请审批
+     * 逐项返回结果，单个申请提交失败不影响其他申请
+     */
+    @PostMapping("/applications/batch-submit")
+    @ApiOperation("批量提交费用申请审批")
+    public ApiResponse<BatchResult> batchSubmitApplications(@RequestBody BatchSubmitRequest request) {
+        try {
+            if (request == null || request.getApplicationIds() == null || request.getApplicationIds().isEmpty()) {
+                return ApiResponse.error("申请ID列表不能为空");
+            }
+            log.info("批量提交费用申请审批，数量: {}", request.getApplicationIds().size());
+            BatchResult result = applicationService.submitForApprovalBatch(request.getApplicationIds());
+            return ApiResponse.success("批量提交完成", result);
+        } catch (Exception e) {
+            log.error("批量提交费用申请失败", e);
+            return ApiResponse.error("批量提交申请失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 获取费用申请列表
      */
@@ -320,10 +340,12 @@ public class ExpenseController {
     @ApiOperation("获取申请人历史申请")
     public ApiResponse<Page<ExpenseApplicationDTO>> getApplicantHistory(
             @PathVariable Long applicantId,
+            @RequestParam(defaultValue = "true") boolean includeItems,
             @PageableDefault(size = 10) Pageable pageable) {
         try {
             ExpenseQueryDTO queryDto = new ExpenseQueryDTO();
             queryDto.setApplicantId(applicantId);
+            queryDto.setIncludeItems(includeItems);
             
             Page<ExpenseApplicationDTO> result = applicationService.findApplications(queryDto, pageable);
             
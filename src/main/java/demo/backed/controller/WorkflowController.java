@@ -5,6 +5,9 @@ import demo.backed.entity.WorkflowInstance;
 import demo.backed.entity.WorkflowNode;
 import demo.backed.repository.WorkflowInstanceRepository;
 import demo.backed.repository.WorkflowNodeRepository;
+import demo.backed.service.BatchApprovalService;
+import demo.backed.service.TaskInboxService;
+import demo.backed.service.WorkflowETagService;
 import demo.backed.service.WorkflowService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -14,6 +17,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,7 +28,6 @@ import org.springframework.web.bind.annotation.*;
 import javax.validation.Valid;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/workflow")
@@ -33,6 +38,9 @@ public class WorkflowController {
     @Autowired
     private WorkflowService workflowService;
     
+    @Autowired
+    private WorkflowETagService workflowETagService;
+    
     @Autowired
     private WorkflowInstanceRepository workflowInstanceRepository;
     
@@ -42,13 +50,25 @@ public class WorkflowController {
     @Autowired
     private RuntimeService runtimeService;
     
+    @Autowired
+    private TaskInboxService taskInboxService;
+    
+    @Autowired
+    private BatchApprovalService batchApprovalService;
+    
     /**
      * 启动工作流
      */
     @PostMapping("/instances")
     @ApiOperation("启动工作流")
-    public ApiResponse<WorkflowInstanceDTO> startWorkflow(@Valid @RequestBody StartProcessRequest request) {
+    public ApiResponse<WorkflowInstanceDTO> startWorkflow(@Valid @RequestBody StartProcessRequest request,
+                                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
+            // 请求头中的幂等键优先于请求体
+            if (idempotencyKey != null && !idempotencyKey.trim().isEmpty()) {
+                request.setIdempotencyKey(idempotencyKey.trim());
+            }
+            
             // 设置申请人信息
             if (request.getApplicantId() == null) {
                 Authentication auth = SecurityContextHolder.getContext().getAuthentication();
@@ -71,13 +91,19 @@ public class WorkflowController {
      */
     @GetMapping("/instances/{id}")
     @ApiOperation("获取流程实例详情")
-    public ApiResponse<WorkflowInstanceDTO> getWorkflowInstance(@PathVariable Long id) {
+    public ResponseEntity<ApiResponse<WorkflowInstanceDTO>> getWorkflowInstance(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
+            String eTag = workflowETagService.forInstance(id);
+            if (WorkflowETagService.matches(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
             WorkflowInstanceDTO instance = workflowService.getWorkflowInstance(id);
-            return ApiResponse.success(instance);
+            return withETag(eTag, ApiResponse.success(instance));
         } catch (Exception e) {
             log.error("获取流程实例失败", e);
-            return ApiResponse.error("获取流程实例失败: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("获取流程实例失败: " + e.getMessage()));
         }
     }
     
@@ -87,11 +113,10 @@ public class WorkflowController {
     @GetMapping("/instances")
     @ApiOperation("获取流程实例列表")
     public ApiResponse<Page<WorkflowInstanceDTO>> getWorkflowInstances(
-            @RequestParam(required = false) String status,
-            @RequestParam(required = false) Long applicantId,
+            WorkflowInstanceQueryDTO query,
             @PageableDefault(size = 10) Pageable pageable) {
         try {
-            Page<WorkflowInstanceDTO> instances = workflowService.getWorkflowInstances(status, applicantId, pageable);
+            Page<WorkflowInstanceDTO> instances = workflowService.getWorkflowInstances(query, pageable);
             return ApiResponse.success(instances);
         } catch (Exception e) {
             log.error("获取流程实例列表失败", e);
@@ -203,16 +228,22 @@ public class WorkflowController {
      */
     @GetMapping("/instances/{id}/history")
     @ApiOperation("获取审批历史")
-    public ApiResponse<List<Map<String, Object>>> getHistory(@PathVariable Long id) {
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> getHistory(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
+            String eTag = workflowETagService.forInstance(id);
+            if (WorkflowETagService.matches(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
             WorkflowInstance instance = workflowInstanceRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("流程实例不存在"));
             
             List<Map<String, Object>> history = workflowService.getDetailedHistory(instance.getProcessInstanceId());
-            return ApiResponse.success(history);
+            return withETag(eTag, ApiResponse.success(history));
         } catch (Exception e) {
             log.error("获取审批历史失败", e);
-            return ApiResponse.error("获取审批历史失败: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("获取审批历史失败: " + e.getMessage()));
         }
     }
     
@@ -238,7 +269,13 @@ public class WorkflowController {
     @ApiOperation("批量审批")
     public ApiResponse<BatchResult> batchApprove(@Valid @RequestBody List<ApprovalRequest> requests) {
         try {
-            BatchResult result = workflowService.batchApprove(requests);
+            // 只处理分配给当前用户的任务
+            Long currentUserId = null;
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            if (auth != null && auth.getPrincipal() instanceof UserDTO) {
+                currentUserId = ((UserDTO) auth.getPrincipal()).getId();
+            }
+            BatchResult result = batchApprovalService.execute(requests, currentUserId);
             return ApiResponse.success("批量审批完成", result);
         } catch (Exception e) {
             log.error("批量审批失败", e);
@@ -246,6 +283,21 @@ public class WorkflowController {
         }
     }
     
+    /**
+     * 从Flowable运行时任务重建待办收件箱投影
+     */
+    @PostMapping("/inbox/rebuild")
+    @ApiOperation("重建待办收件箱投影")
+    public ApiResponse<Integer> rebuildTaskInbox() {
+        try {
+            int count = taskInboxService.rebuild();
+            return ApiResponse.success("待办投影重建完成", count);
+        } catch (Exception e) {
+            log.error("重建待办投影失败", e);
+            return ApiResponse.error("重建待办投影失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 清理测试数据
      */
@@ -256,13 +308,16 @@ public class WorkflowController {
         try {
             log.info("清理业务ID为 {} 的测试数据", businessId);
             
-            // 查找并删除相关的工作流实例
-            Optional<WorkflowInstance> instance = workflowInstanceRepository
-                .findByBusinessTypeAndBusinessId("EXPENSE", businessId);
+            // 查找并删除相关的工作流实例（同一业务键可能有多次发起和遗留的占位记录）
+            List<WorkflowInstance> instances = workflowInstanceRepository
+                .findByBusinessTypeAndBusinessIdOrderByStartTimeDesc("EXPENSE", businessId);
             
-            if (instance.isPresent()) {
-                WorkflowInstance workflowInstance = instance.get();
-                
+            if (instances.isEmpty()) {
+                log.info("未找到业务ID {} 的工作流实例", businessId);
+                return ApiResponse.success("未找到相关数据");
+            }
+            
+            for (WorkflowInstance workflowInstance : instances) {
                 // 如果流程还在运行，先终止流程
                 if ("RUNNING".equals(workflowInstance.getStatus()) && 
                     workflowInstance.getProcessInstanceId() != null) {
@@ -276,22 +331,32 @@ public class WorkflowController {
                     }
                 }
                 
+                workflowService.evictHistory(workflowInstance.getProcessInstanceId());
+                
                 // 删除工作流节点
                 workflowNodeRepository.deleteByInstanceId(workflowInstance.getId());
                 
                 // 删除工作流实例
                 workflowInstanceRepository.delete(workflowInstance);
-                workflowInstanceRepository.flush();
-                
-                log.info("成功清理业务ID {} 的测试数据", businessId);
-                return ApiResponse.success("清理成功");
-            } else {
-                log.info("未找到业务ID {} 的工作流实例", businessId);
-                return ApiResponse.success("未找到相关数据");
             }
+            workflowInstanceRepository.flush();
+            
+            log.info("成功清理业务ID {} 的测试数据，实例数: {}", businessId, instances.size());
+            return ApiResponse.success("清理成功");
         } catch (Exception e) {
             log.error("清理测试数据失败", e);
             return ApiResponse.error("清理失败: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 成功的响应带上ETag（为null时不带），失败的响应不带，避免客户端把错误结果当作未变化
+     */
+    private <T> ResponseEntity<ApiResponse<T>> withETag(String eTag, ApiResponse<T> body) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        return builder.body(body);
+    }
+}
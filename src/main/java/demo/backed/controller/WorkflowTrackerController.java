@@ -3,10 +3,14 @@ package demo.backed.controller;
 import demo.backed.dto.*;
 import demo.backed.service.WorkflowIntegrationService;
 import demo.backed.service.ExpenseApplicationService;
+import demo.backed.service.WorkflowETagService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 
@@ -29,6 +33,9 @@ public class WorkflowTrackerController {
     @Autowired
     private ExpenseApplicationService expenseApplicationService;
     
+    @Autowired
+    private WorkflowETagService workflowETagService;
+    
     /**
      * 根据费用申请ID获取工作流追踪信息
      * 支持动态工作流模板的状态追踪
@@ -46,7 +53,7 @@ public class WorkflowTrackerController {
             
             // 2. 获取工作流追踪信息（支持动态工作流模板）
             WorkflowInstanceDetailDTO detail = workflowIntegrationService
-                .getWorkflowInstanceDetail("EXPENSE", applicationId.toString());
+                .getWorkflowInstanceDetail("EXPENSE", application.getApplicationNumber());
             
             // 3. 构建前端所需的工作流追踪数据
             WorkflowTrackerDTO tracker = new WorkflowTrackerDTO();
@@ -66,7 +73,7 @@ public class WorkflowTrackerController {
             // 5. 计算进度
             tracker.setProgress(detail.getProgress());
             tracker.setBusinessType("EXPENSE");
-            tracker.setBusinessId(applicationId.toString());
+            tracker.setBusinessId(application.getApplicationNumber());
             
             log.info("获取动态工作流追踪成功，费用申请ID: {}, 工作流模板: {}", 
                     applicationId, detail.getWorkflowTemplateName());
@@ -83,10 +90,17 @@ public class WorkflowTrackerController {
      */
     @GetMapping("/{businessType}/{businessId}")
     @ApiOperation("获取通用工作流追踪")
-    public ApiResponse<WorkflowTrackerDTO> getWorkflowTracker(
+    public ResponseEntity<ApiResponse<WorkflowTrackerDTO>> getWorkflowTracker(
             @PathVariable String businessType,
-            @PathVariable String businessId) {
+            @PathVariable String businessId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
+            // 轮询请求先比对ETag，未变化时不做流程查询
+            String eTag = workflowETagService.forBusinessKey(businessType.toUpperCase(), businessId);
+            if (WorkflowETagService.matches(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+            
             log.info("获取工作流追踪，业务类型: {}, 业务ID: {}", businessType, businessId);
             
             // 获取工作流实例详情
@@ -94,17 +108,17 @@ public class WorkflowTrackerController {
                 .getWorkflowInstanceDetail(businessType.toUpperCase(), businessId);
             
             if (detail == null) {
-                return ApiResponse.error("未找到对应的工作流实例");
+                return ResponseEntity.ok(ApiResponse.error("未找到对应的工作流实例"));
             }
             
             // 构建追踪数据
             WorkflowTrackerDTO tracker = buildWorkflowTracker(detail, businessType, businessId);
             
             log.info("获取工作流追踪成功，业务类型: {}, 实例ID: {}", businessType, detail.getInstanceId());
-            return ApiResponse.success(tracker);
+            return withETag(eTag, ApiResponse.success(tracker));
         } catch (Exception e) {
             log.error("获取工作流追踪失败，业务类型: {}, 业务ID: {}", businessType, businessId, e);
-            return ApiResponse.error("获取工作流追踪失败: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("获取工作流追踪失败: " + e.getMessage()));
         }
     }
     
@@ -113,19 +127,25 @@ public class WorkflowTrackerController {
      */
     @GetMapping("/{businessType}/{businessId}/history")
     @ApiOperation("获取工作流历史记录")
-    public ApiResponse<List<WorkflowHistoryDTO>> getWorkflowHistory(
+    public ResponseEntity<ApiResponse<List<WorkflowHistoryDTO>>> getWorkflowHistory(
             @PathVariable String businessType,
-            @PathVariable String businessId) {
+            @PathVariable String businessId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
+            String eTag = workflowETagService.forBusinessKey(businessType.toUpperCase(), businessId);
+            if (WorkflowETagService.matches(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+            
             List<WorkflowHistoryDTO> history = workflowIntegrationService
                 .getWorkflowHistory(businessType.toUpperCase(), businessId);
             
             log.info("获取工作流历史成功，业务类型: {}, 业务ID: {}, 记录数: {}", 
                     businessType, businessId, history.size());
-            return ApiResponse.success(history);
+            return withETag(eTag, ApiResponse.success(history));
         } catch (Exception e) {
             log.error("获取工作流历史失败，业务类型: {}, 业务ID: {}", businessType, businessId, e);
-            return ApiResponse.error("获取工作流历史失败: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("获取工作流历史失败: " + e.getMessage()));
         }
     }
     
@@ -156,6 +176,17 @@ public class WorkflowTrackerController {
         return tracker;
     }
     
+    /**
+     * 成功的响应带上ETag（为null时不带），失败的响应不带
+     */
+    private <T> ResponseEntity<ApiResponse<T>> withETag(String eTag, ApiResponse<T> body) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        return builder.body(body);
+    }
+    
     /**
      * 映射工作流状态
      */
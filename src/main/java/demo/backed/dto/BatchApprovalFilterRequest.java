@@ -0,0 +1,52 @@
+package demo.backed.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 按条件批量审批请求DTO
+ * 服务端按条件筛选当前用户名下的待办并逐项审批，条件之间为"且"关系，至少指定一个条件
+ */
+@Data
+public class BatchApprovalFilterRequest {
+    /**
+     * 节点Key，如 financeApproval
+     */
+    private String nodeKey;
+
+    /**
+     * 金额上限（含）
+     */
+    private BigDecimal maxAmount;
+
+    /**
+     * 申请部门
+     */
+    private String department;
+
+    /**
+     * 提交时间早于（不含）
+     */
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime submittedBefore;
+
+    /**
+     * 操作类型：approve(通过) 或 reject(拒绝)
+     */
+    private String action;
+
+    /**
+     * 审批意见
+     */
+    private String comment;
+
+    public boolean hasCondition() {
+        return (nodeKey != null && !nodeKey.trim().isEmpty())
+            || maxAmount != null
+            || (department != null && !department.trim().isEmpty())
+            || submittedBefore != null;
+    }
+}
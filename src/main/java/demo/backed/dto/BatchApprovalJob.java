@@ -0,0 +1,95 @@
+package demo.backed.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步批量审批任务
+ * 提交后立即返回 jobId，前端按 jobId 轮询进度，完成后 result 中为完整的批量结果
+ */
+@Getter
+public class BatchApprovalJob {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    /**
+     * 任务ID
+     */
+    private final String jobId;
+
+    /**
+     * 提交人
+     */
+    @JsonIgnore
+    private final Long operatorId;
+
+    /**
+     * 审批项总数
+     */
+    private final int totalCount;
+
+    /**
+     * 提交时间
+     */
+    private final LocalDateTime submittedTime = LocalDateTime.now();
+
+    /**
+     * 状态：RUNNING / COMPLETED / FAILED
+     */
+    private volatile String status = STATUS_RUNNING;
+
+    /**
+     * 完成时间
+     */
+    private volatile LocalDateTime finishedTime;
+
+    /**
+     * 失败原因（整个任务异常终止时）
+     */
+    private volatile String message;
+
+    /**
+     * 批量结果，任务结束后才返回
+     */
+    private volatile BatchResult result;
+
+    @JsonIgnore
+    private final AtomicInteger processed = new AtomicInteger();
+
+    public BatchApprovalJob(String jobId, Long operatorId, int totalCount) {
+        this.jobId = jobId;
+        this.operatorId = operatorId;
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * 已处理条数
+     */
+    public int getProcessedCount() {
+        return processed.get();
+    }
+
+    /**
+     * @return 标记后的已处理条数
+     */
+    public int markProcessed() {
+        return processed.incrementAndGet();
+    }
+
+    public void complete(BatchResult result) {
+        this.result = result;
+        this.finishedTime = LocalDateTime.now();
+        this.status = STATUS_COMPLETED;
+    }
+
+    public void fail(String message) {
+        this.message = message;
+        this.finishedTime = LocalDateTime.now();
+        this.status = STATUS_FAILED;
+    }
+}
@@ -0,0 +1,15 @@
+package demo.backed.dto;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * 批量提交审批请求DTO
+ */
+@Data
+public class BatchSubmitRequest {
+    /**
+     * 费用申请ID列表
+     */
+    private List<Long> applicationIds;
+}
@@ -0,0 +1,41 @@
+package demo.backed.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 游标分页结果DTO
+ * nextCursor 为不透明字符串，原样回传即可获取下一页；hasMore 为 false 时表示已到末页
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    /**
+     * 当前页数据
+     */
+    private List<T> content = new ArrayList<>();
+    
+    /**
+     * 每页条数
+     */
+    private int size;
+    
+    /**
+     * 下一页游标，末页为null
+     */
+    private String nextCursor;
+    
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+    
+    public static <T> CursorPage<T> empty(int size) {
+        return new CursorPage<>(new ArrayList<>(), size, null, false);
+    }
+}
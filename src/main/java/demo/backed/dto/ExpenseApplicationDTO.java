@@ -106,10 +106,10 @@ public class ExpenseApplicationDTO {
     }
     
     /**
-     * 获取明细数量
+     * 获取明细数量，未加载明细（列表汇总模式）时为null
      */
     public Integer getItemCount() {
-        return items != null ? items.size() : 0;
+        return items != null ? items.size() : null;
     }
     
     /**
@@ -134,10 +134,13 @@ public class ExpenseApplicationDTO {
     }
     
     /**
-     * 获取需要发票的明细数量
+     * 获取需要发票的明细数量，未加载明细（列表汇总模式）时为null
      */
     public Long getReceiptRequiredCount() {
-        if (items == null || items.isEmpty()) {
+        if (items == null) {
+            return null;
+        }
+        if (items.isEmpty()) {
             return 0L;
         }
         return items.stream()
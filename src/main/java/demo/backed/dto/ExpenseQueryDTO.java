@@ -49,4 +49,7 @@ public class ExpenseQueryDTO {
     
     @ApiModelProperty(value = "最大金额")
     private Double maxAmount;
+    
+    @ApiModelProperty(value = "是否返回费用明细，列表页传false只返回汇总字段", example = "true")
+    private Boolean includeItems = true;
 } 
\ No newline at end of file
@@ -36,6 +36,8 @@ public class PendingTaskDTO {
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime dueDate;
     
+    private Boolean overdue;            // 是否已超过办理期限
+    
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private Date approvedTime;
     
@@ -22,4 +22,9 @@ public class StartProcessRequest {
     private BigDecimal amount;
     
     private Map<String, Object> variables;
+    
+    /**
+     * 发起幂等键，可选；未指定时按业务类型+业务ID去重
+     */
+    private String idempotencyKey;
 } 
\ No newline at end of file
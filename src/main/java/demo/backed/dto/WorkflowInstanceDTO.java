@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Map;
 
@@ -22,6 +23,11 @@ public class WorkflowInstanceDTO {
     private String statusText;
     private Long applicantId;
     private String applicantName;
+    private BigDecimal amount;
+    private String currency;
+    private Long applicationId;
+    private String applicationNumber;
+    private String department;
     
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime startTime;
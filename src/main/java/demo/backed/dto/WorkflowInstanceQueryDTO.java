@@ -0,0 +1,37 @@
+package demo.backed.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * 流程实例查询条件DTO
+ * 金额、部门等条件直接作用于实例表的业务字段列
+ */
+@Data
+@ApiModel(description = "流程实例查询条件")
+public class WorkflowInstanceQueryDTO {
+
+    @ApiModelProperty(value = "状态")
+    private String status;
+
+    @ApiModelProperty(value = "申请人ID")
+    private Long applicantId;
+
+    @ApiModelProperty(value = "最小金额")
+    private BigDecimal minAmount;
+
+    @ApiModelProperty(value = "最大金额")
+    private BigDecimal maxAmount;
+
+    @ApiModelProperty(value = "币种")
+    private String currency;
+
+    @ApiModelProperty(value = "部门")
+    private String department;
+
+    @ApiModelProperty(value = "申请编号")
+    private String applicationNumber;
+}
@@ -0,0 +1,50 @@
+package demo.backed.entity;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 用户审批统计
+ * 待办/紧急/委托数由任务事件增量维护，今日已办按 statDate 做跨天归零，
+ * 逾期数随时间变化，由定时对账任务按Flowable刷新
+ */
+@Entity
+@Table(name = "t_poc_approval_statistics", indexes = {
+    @Index(name = "idx_approval_stats_user", columnList = "user_id", unique = true)
+})
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class ApprovalStatistics extends BaseEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "pending_count", nullable = false)
+    private Integer pendingCount = 0;
+    
+    @Column(name = "urgent_count", nullable = false)
+    private Integer urgentCount = 0;
+    
+    @Column(name = "delegated_count", nullable = false)
+    private Integer delegatedCount = 0;
+    
+    @Column(name = "overdue_count", nullable = false)
+    private Integer overdueCount = 0;
+    
+    @Column(name = "approved_today", nullable = false)
+    private Integer approvedToday = 0;
+    
+    @Column(name = "stat_date")
+    private LocalDate statDate;
+    
+    @Column(name = "reconciled_time")
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime reconciledTime;
+}
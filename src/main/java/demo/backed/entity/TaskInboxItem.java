@@ -0,0 +1,102 @@
+package demo.backed.entity;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 待办收件箱投影
+ * 每个未完成的Flowable任务对应一行，由流程事件监听器维护，
+ * 待办列表直接按审批人/代理人分页查询本表，无需再关联运行时任务、实例、节点和用户表
+ */
+@Entity
+@Table(name = "t_poc_task_inbox", indexes = {
+    @Index(name = "idx_inbox_task", columnList = "task_id", unique = true),
+    @Index(name = "idx_inbox_assignee_time", columnList = "assignee_id,task_create_time"),
+    @Index(name = "idx_inbox_proxy_time", columnList = "proxy_id,task_create_time"),
+    @Index(name = "idx_inbox_process", columnList = "process_instance_id"),
+    @Index(name = "idx_inbox_create_time", columnList = "task_create_time"),
+    @Index(name = "idx_inbox_application", columnList = "application_id"),
+    @Index(name = "idx_inbox_business", columnList = "business_id")
+})
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class TaskInboxItem extends BaseEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "task_id", length = 64, nullable = false)
+    private String taskId;
+    
+    @Column(name = "process_instance_id", length = 64)
+    private String processInstanceId;
+    
+    @Column(name = "instance_id")
+    private Long instanceId;
+    
+    @Column(name = "node_key", length = 50)
+    private String nodeKey;
+    
+    @Column(name = "node_name", length = 100)
+    private String nodeName;
+    
+    @Column(name = "title", length = 200)
+    private String title;
+    
+    @Column(name = "business_type", length = 50)
+    private String businessType;
+    
+    @Column(name = "business_id", length = 50)
+    private String businessId;
+    
+    @Column(name = "application_id", length = 50)
+    private String applicationId;
+    
+    @Column(name = "application_number", length = 50)
+    private String applicationNumber;
+    
+    @Column(name = "applicant_id")
+    private Long applicantId;
+    
+    @Column(name = "applicant_name", length = 50)
+    private String applicantName;
+    
+    @Column(name = "department", length = 100)
+    private String department;
+    
+    @Column(name = "amount", precision = 15, scale = 2)
+    private BigDecimal amount;
+    
+    @Column(name = "assignee_id")
+    private Long assigneeId;
+    
+    @Column(name = "assignee_name", length = 50)
+    private String assigneeName;
+    
+    @Column(name = "proxy_id")
+    private Long proxyId;
+    
+    @Column(name = "proxy_name", length = 50)
+    private String proxyName;
+    
+    @Column(name = "priority")
+    private Integer priority;
+    
+    @Column(name = "due_date")
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime dueDate;
+    
+    /**
+     * 是否已超过办理期限，由逾期监控置位
+     */
+    @Column(name = "overdue", nullable = false)
+    private Boolean overdue = false;
+    
+    @Column(name = "task_create_time", nullable = false)
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime taskCreateTime;
+}
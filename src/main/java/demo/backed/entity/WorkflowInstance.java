@@ -1,10 +1,12 @@
 package demo.backed.entity;
 
 import javax.persistence.*;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.ColumnTransformer;
 
 @Entity
 @Table(name = "t_poc_workflow_instances")
@@ -44,7 +46,26 @@ public class WorkflowInstance extends BaseEntity {
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime endTime;
     
-    @Column(name = "variables", columnDefinition = "TEXT")
+    @Column(name = "amount", precision = 15, scale = 2)
+    private BigDecimal amount;
+    
+    @Column(name = "currency", length = 10)
+    private String currency;
+    
+    @Column(name = "application_id")
+    private Long applicationId;
+    
+    @Column(name = "application_number", length = 50)
+    private String applicationNumber;
+    
+    @Column(name = "department", length = 100)
+    private String department;
+    
+    /**
+     * 其余流程变量（jsonb），列表和筛选使用上面的业务字段，不解析这里
+     */
+    @Column(name = "variables", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "?::jsonb")
     private String variables;
     
     @Column(name = "current_node_name", length = 100)
@@ -52,4 +73,7 @@ public class WorkflowInstance extends BaseEntity {
     
     @Column(name = "current_assignee", length = 100)
     private String currentAssignee;
+    
+    @Column(name = "idempotency_key", length = 100)
+    private String idempotencyKey;
 } 
\ No newline at end of file
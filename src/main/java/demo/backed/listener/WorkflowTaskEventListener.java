@@ -0,0 +1,170 @@
+package demo.backed.listener;
+
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.service.ApprovalStatisticsService;
+import demo.backed.service.OverdueTaskMonitor;
+import demo.backed.service.TaskInboxService;
+import demo.backed.service.WorkflowProjectionService;
+import demo.backed.util.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.flowable.common.engine.api.delegate.event.FlowableEngineEvent;
+import org.flowable.common.engine.api.delegate.event.FlowableEngineEventType;
+import org.flowable.common.engine.api.delegate.event.FlowableEntityEvent;
+import org.flowable.common.engine.api.delegate.event.FlowableEvent;
+import org.flowable.common.engine.api.delegate.event.FlowableEventListener;
+import org.flowable.engine.RuntimeService;
+import org.flowable.engine.delegate.event.FlowableCancelledEvent;
+import org.flowable.task.api.Task;
+import org.flowable.variable.api.delegate.VariableScope;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 工作流任务事件监听器
+ * 在引擎事务内同步维护流程节点记录（t_poc_workflow_nodes）、流程实例状态、
+ * 待办收件箱投影（t_poc_task_inbox）和用户审批统计，并在事务提交后向在线用户推送待办变化
+ */
+@Component
+@Slf4j
+public class WorkflowTaskEventListener implements FlowableEventListener {
+
+    @Autowired
+    private RuntimeService runtimeService;
+
+    @Autowired
+    private TaskInboxService taskInboxService;
+
+    @Autowired
+    private ApprovalStatisticsService approvalStatisticsService;
+
+    @Autowired
+    private WorkflowProjectionService workflowProjectionService;
+
+    @Autowired
+    private OverdueTaskMonitor overdueTaskMonitor;
+
+    @PostConstruct
+    public void register() {
+        runtimeService.addEventListener(this,
+            FlowableEngineEventType.TASK_CREATED,
+            FlowableEngineEventType.TASK_ASSIGNED,
+            FlowableEngineEventType.TASK_COMPLETED,
+            FlowableEngineEventType.ENTITY_DELETED,
+            FlowableEngineEventType.PROCESS_COMPLETED,
+            FlowableEngineEventType.PROCESS_COMPLETED_WITH_TERMINATE_END_EVENT,
+            FlowableEngineEventType.PROCESS_COMPLETED_WITH_ERROR_END_EVENT,
+            FlowableEngineEventType.PROCESS_CANCELLED);
+        log.info("✅ 工作流任务事件监听器已注册");
+    }
+
+    @Override
+    public void onEvent(FlowableEvent event) {
+        if (!(event.getType() instanceof FlowableEngineEventType)) {
+            return;
+        }
+
+        switch ((FlowableEngineEventType) event.getType()) {
+            case TASK_CREATED: {
+                Task task = getTask(event);
+                if (task != null) {
+                    Map<String, Object> variables = getVariables(task);
+                    WorkflowInstance instance = workflowProjectionService.onTaskCreated(task, variables);
+                    taskInboxService.onTaskCreated(task, variables, instance);
+                }
+                break;
+            }
+            case TASK_ASSIGNED: {
+                Task task = getTask(event);
+                if (task != null) {
+                    taskInboxService.onTaskAssigned(task);
+                }
+                break;
+            }
+            case TASK_COMPLETED: {
+                Task task = getTask(event);
+                if (task != null) {
+                    approvalStatisticsService.onTaskCompleted(parseUserId(task.getAssignee()));
+                    taskInboxService.onTaskRemoved(task.getId(), true);
+                    cancelOverdueTimer(task.getId());
+                }
+                break;
+            }
+            case ENTITY_DELETED: {
+                // ENTITY_DELETED 对所有实体触发，只处理任务（打回、流程删除时任务不经过完成事件）
+                Task task = getTask(event);
+                if (task != null) {
+                    taskInboxService.onTaskRemoved(task.getId(), false);
+                    cancelOverdueTimer(task.getId());
+                }
+                break;
+            }
+            case PROCESS_COMPLETED:
+            case PROCESS_COMPLETED_WITH_TERMINATE_END_EVENT:
+            case PROCESS_COMPLETED_WITH_ERROR_END_EVENT: {
+                String processInstanceId = ((FlowableEngineEvent) event).getProcessInstanceId();
+                workflowProjectionService.onProcessCompleted(processInstanceId);
+                taskInboxService.onProcessEnded(processInstanceId);
+                break;
+            }
+            case PROCESS_CANCELLED:
+                taskInboxService.onProcessEnded(((FlowableCancelledEvent) event).getProcessInstanceId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void cancelOverdueTimer(String taskId) {
+        TransactionCallbacks.afterCommit(() -> overdueTaskMonitor.cancel(taskId));
+    }
+
+    private Task getTask(FlowableEvent event) {
+        if (event instanceof FlowableEntityEvent) {
+            Object entity = ((FlowableEntityEvent) event).getEntity();
+            if (entity instanceof Task) {
+                return (Task) entity;
+            }
+        }
+        return null;
+    }
+
+    private Long parseUserId(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(userId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Map<String, Object> getVariables(Task task) {
+        if (task instanceof VariableScope) {
+            return ((VariableScope) task).getVariables();
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 投影与引擎在同一事务内写入，维护失败时随审批操作一起回滚，避免投影与引擎不一致
+     */
+    @Override
+    public boolean isFailOnException() {
+        return true;
+    }
+
+    @Override
+    public boolean isFireOnTransactionLifecycleEvent() {
+        return false;
+    }
+
+    @Override
+    public String getOnTransaction() {
+        return null;
+    }
+}
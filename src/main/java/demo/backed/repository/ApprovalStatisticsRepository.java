@@ -0,0 +1,66 @@
+package demo.backed.repository;
+
+import demo.backed.entity.ApprovalStatistics;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface ApprovalStatisticsRepository extends JpaRepository<ApprovalStatistics, Long> {
+    
+    Optional<ApprovalStatistics> findByUserId(Long userId);
+    
+    /**
+     * 用户统计行不存在时插入一行全零记录，并发插入由唯一索引兜底
+     */
+    @Modifying
+    @Query(value = "INSERT INTO t_poc_approval_statistics (user_id, pending_count, urgent_count, delegated_count, " +
+                   "overdue_count, approved_today, stat_date, created_time, updated_time, is_deleted, version) " +
+                   "VALUES (:userId, 0, 0, 0, 0, 0, CURRENT_DATE, now(), now(), false, 0) " +
+                   "ON CONFLICT (user_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId);
+    
+    /**
+     * 原子调整审批人的待办数和紧急数，不会减到负数
+     */
+    @Modifying
+    @Query(value = "UPDATE t_poc_approval_statistics SET " +
+                   "pending_count = GREATEST(pending_count + :pendingDelta, 0), " +
+                   "urgent_count = GREATEST(urgent_count + :urgentDelta, 0), " +
+                   "updated_time = now() WHERE user_id = :userId", nativeQuery = true)
+    int adjustPending(@Param("userId") Long userId,
+                      @Param("pendingDelta") int pendingDelta,
+                      @Param("urgentDelta") int urgentDelta);
+    
+    /**
+     * 原子调整代理人的委托待办数，不会减到负数
+     */
+    @Modifying
+    @Query(value = "UPDATE t_poc_approval_statistics SET " +
+                   "delegated_count = GREATEST(delegated_count + :delta, 0), " +
+                   "updated_time = now() WHERE user_id = :userId", nativeQuery = true)
+    int adjustDelegated(@Param("userId") Long userId, @Param("delta") int delta);
+    
+    /**
+     * 原子调整逾期数，不会减到负数
+     */
+    @Modifying
+    @Query(value = "UPDATE t_poc_approval_statistics SET " +
+                   "overdue_count = GREATEST(overdue_count + :delta, 0), " +
+                   "updated_time = now() WHERE user_id = :userId", nativeQuery = true)
+    int adjustOverdue(@Param("userId") Long userId, @Param("delta") int delta);
+    
+    /**
+     * 今日已办加一，统计日期不是今天时先归零
+     */
+    @Modifying
+    @Query(value = "UPDATE t_poc_approval_statistics SET " +
+                   "approved_today = CASE WHEN stat_date = :today THEN approved_today + 1 ELSE 1 END, " +
+                   "stat_date = :today, updated_time = now() WHERE user_id = :userId", nativeQuery = true)
+    int incrementApprovedToday(@Param("userId") Long userId, @Param("today") LocalDate today);
+}
@@ -12,13 +12,21 @@ import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * 费用申请Repository
  */
 @Repository
-public interface ExpenseApplicationRepository extends JpaRepository<ExpenseApplication, Long>, JpaSpecificationExecutor<ExpenseApplication> {
+public interface ExpenseApplicationRepository extends JpaRepository<ExpenseApplication, Long>, JpaSpecificationExecutor<ExpenseApplication>,
+        ExpenseApplicationRepositoryCustom {
+    
+    /**
+     * 按ID批量查询并一次带出费用明细，用于批量提交前的校验
+     */
+    @Query("SELECT DISTINCT e FROM ExpenseApplication e LEFT JOIN FETCH e.items WHERE e.id IN :ids")
+    List<ExpenseApplication> findWithItemsByIdIn(@Param("ids") Collection<Long> ids);
     
     /**
      * 根据申请人查询
@@ -61,16 +69,6 @@ public interface ExpenseApplicationRepository extends JpaRepository<ExpenseAppli
         Pageable pageable
     );
     
-    /**
-     * 根据工作流实例ID查询
-     */
-    Optional<ExpenseApplication> findByWorkflowInstanceId(String workflowInstanceId);
-    
-    /**
-     * 根据申请编号查询
-     */
-    Optional<ExpenseApplication> findByApplicationNumber(String applicationNumber);
-    
     /**
      * 检查申请编号是否存在
      */
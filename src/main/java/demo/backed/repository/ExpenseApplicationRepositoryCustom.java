@@ -0,0 +1,21 @@
+package demo.backed.repository;
+
+import demo.backed.entity.ExpenseApplication;
+
+import java.util.Optional;
+
+/**
+ * 费用申请业务键查询，经 NaturalKeyCache 转为主键加载
+ */
+public interface ExpenseApplicationRepositoryCustom {
+
+    /**
+     * 根据工作流实例ID查询
+     */
+    Optional<ExpenseApplication> findByWorkflowInstanceId(String workflowInstanceId);
+
+    /**
+     * 根据申请编号查询
+     */
+    Optional<ExpenseApplication> findByApplicationNumber(String applicationNumber);
+}
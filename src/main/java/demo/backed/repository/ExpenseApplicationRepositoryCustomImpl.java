@@ -0,0 +1,24 @@
+package demo.backed.repository;
+
+import demo.backed.entity.ExpenseApplication;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Optional;
+
+public class ExpenseApplicationRepositoryCustomImpl implements ExpenseApplicationRepositoryCustom {
+
+    @Autowired
+    private NaturalKeyCache naturalKeyCache;
+
+    @Override
+    public Optional<ExpenseApplication> findByWorkflowInstanceId(String workflowInstanceId) {
+        return naturalKeyCache.find(ExpenseApplication.class, "workflowInstanceId", workflowInstanceId,
+            ExpenseApplication::getWorkflowInstanceId);
+    }
+
+    @Override
+    public Optional<ExpenseApplication> findByApplicationNumber(String applicationNumber) {
+        return naturalKeyCache.find(ExpenseApplication.class, "applicationNumber", applicationNumber,
+            ExpenseApplication::getApplicationNumber);
+    }
+}
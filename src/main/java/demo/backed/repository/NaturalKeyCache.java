@@ -0,0 +1,76 @@
+package demo.backed.repository;
+
+import demo.backed.entity.BaseEntity;
+import demo.backed.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 业务键 → 主键缓存
+ * 流程实例ID、任务ID、申请单号、工号等业务键查询走二级索引，绕过了Hibernate一级缓存，同一请求内会重复查库。
+ * 这里缓存业务键对应的主键，再按主键加载：同一持久化上下文内直接命中一级缓存，跨请求只剩一次主键查询。
+ * 命中后会校验实体当前的业务键，实体被删除或业务键被修改时丢弃缓存重新查询，不需要在更新时显式失效。
+ */
+@Component
+public class NaturalKeyCache {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 每种业务键缓存的条目数
+     */
+    @Value("${app.jpa.natural-key-cache-size:2000}")
+    private int cacheSize = 2000;
+
+    private final ConcurrentHashMap<String, LruCache<Object, Long>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * 按业务键查询实体，业务键不唯一时与派生查询一致抛出 IncorrectResultSizeDataAccessException
+     *
+     * @param type      实体类型
+     * @param attribute 业务键属性名
+     * @param key       业务键，为null时返回空
+     * @param keyGetter 读取实体当前业务键，用于校验缓存
+     */
+    public <T extends BaseEntity> Optional<T> find(Class<T> type, String attribute, Object key,
+                                                   Function<T, Object> keyGetter) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        LruCache<Object, Long> cache = caches.computeIfAbsent(type.getSimpleName() + "." + attribute,
+            name -> new LruCache<>(cacheSize));
+
+        Long id = cache.get(key);
+        if (id != null) {
+            T entity = entityManager.find(type, id);
+            if (entity != null && key.equals(keyGetter.apply(entity))) {
+                return Optional.of(entity);
+            }
+            cache.remove(key);
+        }
+
+        List<T> rows = entityManager
+            .createQuery("SELECT e FROM " + type.getSimpleName() + " e WHERE e." + attribute + " = :key", type)
+            .setParameter("key", key)
+            .setMaxResults(2)
+            .getResultList();
+        if (rows.size() > 1) {
+            throw new IncorrectResultSizeDataAccessException(1, rows.size());
+        }
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        T entity = rows.get(0);
+        cache.put(key, entity.getId());
+        return Optional.of(entity);
+    }
+}
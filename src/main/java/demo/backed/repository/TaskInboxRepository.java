@@ -0,0 +1,74 @@
+package demo.backed.repository;
+
+import demo.backed.entity.TaskInboxItem;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TaskInboxRepository extends JpaRepository<TaskInboxItem, Long>, JpaSpecificationExecutor<TaskInboxItem> {
+    
+    Optional<TaskInboxItem> findByTaskId(String taskId);
+    
+    List<TaskInboxItem> findByProcessInstanceId(String processInstanceId);
+    
+    /**
+     * 查询用户的待办（本人审批或作为代理人），按任务创建时间倒序
+     */
+    @Query(value = "SELECT i FROM TaskInboxItem i WHERE i.assigneeId = :userId OR i.proxyId = :userId " +
+                   "ORDER BY i.taskCreateTime DESC, i.id DESC",
+           countQuery = "SELECT COUNT(i) FROM TaskInboxItem i WHERE i.assigneeId = :userId OR i.proxyId = :userId")
+    Page<TaskInboxItem> findInbox(@Param("userId") Long userId, Pageable pageable);
+    
+    /**
+     * 游标分页第一页，按（创建时间, 任务ID）倒序
+     */
+    @Query("SELECT i FROM TaskInboxItem i WHERE i.assigneeId = :userId OR i.proxyId = :userId " +
+           "ORDER BY i.taskCreateTime DESC, i.taskId DESC")
+    List<TaskInboxItem> findInboxFirst(@Param("userId") Long userId, Pageable pageable);
+    
+    /**
+     * 游标分页后续页，以上一页最后一条的（创建时间, 任务ID）定位
+     */
+    @Query("SELECT i FROM TaskInboxItem i WHERE (i.assigneeId = :userId OR i.proxyId = :userId) " +
+           "AND (i.taskCreateTime < :createTime OR (i.taskCreateTime = :createTime AND i.taskId < :taskId)) " +
+           "ORDER BY i.taskCreateTime DESC, i.taskId DESC")
+    List<TaskInboxItem> findInboxAfter(@Param("userId") Long userId,
+                                       @Param("createTime") LocalDateTime createTime,
+                                       @Param("taskId") String taskId,
+                                       Pageable pageable);
+    
+    /**
+     * 按业务键（费用申请ID或业务ID）定位用户自己的待办，审批人或代理人之外的用户查不到
+     */
+    @Query("SELECT i FROM TaskInboxItem i WHERE (i.assigneeId = :userId OR i.proxyId = :userId) " +
+           "AND (i.applicationId = :businessKey OR i.businessId = :businessKey) " +
+           "ORDER BY i.taskCreateTime DESC")
+    List<TaskInboxItem> findUserTaskByBusinessKey(@Param("userId") Long userId,
+                                                  @Param("businessKey") String businessKey,
+                                                  Pageable pageable);
+    
+    /**
+     * 用户已逾期的待办（本人审批或作为代理人），按办理期限先后
+     */
+    @Query(value = "SELECT i FROM TaskInboxItem i WHERE (i.assigneeId = :userId OR i.proxyId = :userId) " +
+                   "AND i.overdue = true ORDER BY i.dueDate ASC, i.id ASC",
+           countQuery = "SELECT COUNT(i) FROM TaskInboxItem i WHERE (i.assigneeId = :userId OR i.proxyId = :userId) " +
+                        "AND i.overdue = true")
+    Page<TaskInboxItem> findOverdue(@Param("userId") Long userId, Pageable pageable);
+    
+    /**
+     * 有办理期限且尚未逾期的待办，启动时装入逾期时间轮
+     */
+    @Query("SELECT i.taskId, i.dueDate FROM TaskInboxItem i WHERE i.dueDate IS NOT NULL AND i.overdue = false")
+    List<Object[]> findOpenDueDates();
+
+}
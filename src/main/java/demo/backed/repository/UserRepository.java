@@ -13,17 +13,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
-    
-    /**
-     * 根据工号查找用户
-     */
-    Optional<User> findByEmployeeId(String employeeId);
-    
-    /**
-     * 根据邮箱查找用户 - 核心方法：邮箱作为唯一键
-     */
-    Optional<User> findByEmail(String email);
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
     
     /**
      * 根据Keycloak ID查找用户
@@ -0,0 +1,21 @@
+package demo.backed.repository;
+
+import demo.backed.entity.User;
+
+import java.util.Optional;
+
+/**
+ * 用户业务键查询，经 NaturalKeyCache 转为主键加载
+ */
+public interface UserRepositoryCustom {
+
+    /**
+     * 根据工号查找用户
+     */
+    Optional<User> findByEmployeeId(String employeeId);
+
+    /**
+     * 根据邮箱查找用户 - 核心方法：邮箱作为唯一键
+     */
+    Optional<User> findByEmail(String email);
+}
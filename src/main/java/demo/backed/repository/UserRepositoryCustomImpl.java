@@ -0,0 +1,22 @@
+package demo.backed.repository;
+
+import demo.backed.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Optional;
+
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    @Autowired
+    private NaturalKeyCache naturalKeyCache;
+
+    @Override
+    public Optional<User> findByEmployeeId(String employeeId) {
+        return naturalKeyCache.find(User.class, "employeeId", employeeId, User::getEmployeeId);
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        return naturalKeyCache.find(User.class, "email", email, User::getEmail);
+    }
+}
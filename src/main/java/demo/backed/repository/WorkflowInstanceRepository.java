@@ -4,22 +4,92 @@ import demo.backed.entity.WorkflowInstance;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface WorkflowInstanceRepository extends JpaRepository<WorkflowInstance, Long> {
+public interface WorkflowInstanceRepository extends JpaRepository<WorkflowInstance, Long>, JpaSpecificationExecutor<WorkflowInstance>,
+        WorkflowInstanceRepositoryCustom {
     
-    Optional<WorkflowInstance> findByProcessInstanceId(String processInstanceId);
+    /**
+     * 根据流程实例ID列表批量查询工作流实例
+     */
+    List<WorkflowInstance> findByProcessInstanceIdIn(Collection<String> processInstanceIds);
     
-    Optional<WorkflowInstance> findByBusinessTypeAndBusinessId(String businessType, String businessId);
+    /**
+     * 同一业务键的全部实例记录（含已结束和已软删除的），最新发起的在前
+     * 已结束的实例允许重新发起，遗留的占位记录会被软删除，同一业务键可能有多条
+     */
+    List<WorkflowInstance> findByBusinessTypeAndBusinessIdOrderByStartTimeDesc(String businessType, String businessId);
+    
+    /**
+     * 进行中（CREATED/RUNNING）的实例，同一业务键最多一条
+     */
+    @Query("SELECT w FROM WorkflowInstance w WHERE w.businessType = :businessType AND w.businessId = :businessId " +
+           "AND w.status IN ('CREATED', 'RUNNING') AND w.isDeleted = false")
+    Optional<WorkflowInstance> findActiveByBusinessKey(@Param("businessType") String businessType,
+                                                       @Param("businessId") String businessId);
+    
+    Optional<WorkflowInstance> findByIdempotencyKey(String idempotencyKey);
+    
+    /**
+     * 实例变更标记：[实例ID, 实例版本号, 节点记录数, 节点版本号之和, 最近变更时间]
+     * 实例或任一节点记录的每次写入都会改变版本号之和或记录数
+     */
+    @Query(value = "SELECT i.id, i.version, COUNT(n.id), COALESCE(SUM(n.version), 0), " +
+           "GREATEST(i.updated_time, MAX(n.updated_time)) " +
+           "FROM t_poc_workflow_instances i LEFT JOIN t_poc_workflow_nodes n ON n.instance_id = i.id " +
+           "WHERE i.id = :id GROUP BY i.id, i.version, i.updated_time", nativeQuery = true)
+    List<Object[]> findChangeMarker(@Param("id") Long id);
+    
+    /**
+     * 按业务键查询实例变更标记，取未删除实例中最新发起的一条（与流程追踪选取的实例一致）
+     */
+    @Query(value = "SELECT i.id, i.version, COUNT(n.id), COALESCE(SUM(n.version), 0), " +
+           "GREATEST(i.updated_time, MAX(n.updated_time)) " +
+           "FROM t_poc_workflow_instances i LEFT JOIN t_poc_workflow_nodes n ON n.instance_id = i.id " +
+           "WHERE i.id = (SELECT l.id FROM t_poc_workflow_instances l " +
+           "WHERE l.business_type = :businessType AND l.business_id = :businessId AND l.is_deleted = FALSE " +
+           "ORDER BY l.start_time DESC, l.id DESC LIMIT 1) " +
+           "GROUP BY i.id, i.version, i.updated_time", nativeQuery = true)
+    List<Object[]> findChangeMarkerByBusinessKey(@Param("businessType") String businessType,
+                                                 @Param("businessId") String businessId);
+    
+    /**
+     * 写入发起中的实例记录，与进行中的同业务键实例或同幂等键实例冲突时不写入
+     * 可为空的字符串参数显式CAST，避免空值按bytea绑定
+     *
+     * @return 新记录ID，冲突时返回null
+     */
+    @Query(value = "INSERT INTO t_poc_workflow_instances " +
+           "(business_type, business_id, title, applicant_id, applicant_name, idempotency_key, status, " +
+           "start_time, created_time, updated_time, is_deleted, version) " +
+           "VALUES (:businessType, :businessId, CAST(:title AS VARCHAR), :applicantId, CAST(:applicantName AS VARCHAR), " +
+           "CAST(:idempotencyKey AS VARCHAR), 'CREATED', " +
+           ":now, :now, :now, false, 0) " +
+           "ON CONFLICT DO NOTHING RETURNING id", nativeQuery = true)
+    Long insertIfAbsent(@Param("businessType") String businessType,
+                        @Param("businessId") String businessId,
+                        @Param("title") String title,
+                        @Param("applicantId") Long applicantId,
+                        @Param("applicantName") String applicantName,
+                        @Param("idempotencyKey") String idempotencyKey,
+                        @Param("now") LocalDateTime now);
     
     List<WorkflowInstance> findByApplicantIdOrderByStartTimeDesc(Long applicantId);
     
+    /**
+     * 按费用申请ID查询实例（application_id 列有索引）
+     */
+    List<WorkflowInstance> findByApplicationIdAndStatus(Long applicationId, String status);
+    
     List<WorkflowInstance> findByStatus(String status);
     
     @Query("SELECT w FROM WorkflowInstance w WHERE w.currentAssignee = :assignee AND w.status = 'RUNNING'")
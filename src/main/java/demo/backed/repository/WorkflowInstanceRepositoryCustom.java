@@ -0,0 +1,13 @@
+package demo.backed.repository;
+
+import demo.backed.entity.WorkflowInstance;
+
+import java.util.Optional;
+
+/**
+ * 流程实例业务键查询，经 NaturalKeyCache 转为主键加载
+ */
+public interface WorkflowInstanceRepositoryCustom {
+
+    Optional<WorkflowInstance> findByProcessInstanceId(String processInstanceId);
+}
@@ -0,0 +1,18 @@
+package demo.backed.repository;
+
+import demo.backed.entity.WorkflowInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Optional;
+
+public class WorkflowInstanceRepositoryCustomImpl implements WorkflowInstanceRepositoryCustom {
+
+    @Autowired
+    private NaturalKeyCache naturalKeyCache;
+
+    @Override
+    public Optional<WorkflowInstance> findByProcessInstanceId(String processInstanceId) {
+        return naturalKeyCache.find(WorkflowInstance.class, "processInstanceId", processInstanceId,
+            WorkflowInstance::getProcessInstanceId);
+    }
+}
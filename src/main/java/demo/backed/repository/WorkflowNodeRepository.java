@@ -6,15 +6,18 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
-public interface WorkflowNodeRepository extends JpaRepository<WorkflowNode, Long> {
+public interface WorkflowNodeRepository extends JpaRepository<WorkflowNode, Long>, WorkflowNodeRepositoryCustom {
     
     List<WorkflowNode> findByInstanceIdOrderByCreatedTimeAsc(Long instanceId);
     
-    Optional<WorkflowNode> findByTaskId(String taskId);
+    /**
+     * 根据Flowable任务ID列表批量查询工作流节点
+     */
+    List<WorkflowNode> findByTaskIdIn(Collection<String> taskIds);
     
     List<WorkflowNode> findByAssigneeIdAndStatus(Long assigneeId, String status);
     
@@ -0,0 +1,13 @@
+package demo.backed.repository;
+
+import demo.backed.entity.WorkflowNode;
+
+import java.util.Optional;
+
+/**
+ * 节点记录业务键查询，经 NaturalKeyCache 转为主键加载
+ */
+public interface WorkflowNodeRepositoryCustom {
+
+    Optional<WorkflowNode> findByTaskId(String taskId);
+}
@@ -0,0 +1,17 @@
+package demo.backed.repository;
+
+import demo.backed.entity.WorkflowNode;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Optional;
+
+public class WorkflowNodeRepositoryCustomImpl implements WorkflowNodeRepositoryCustom {
+
+    @Autowired
+    private NaturalKeyCache naturalKeyCache;
+
+    @Override
+    public Optional<WorkflowNode> findByTaskId(String taskId) {
+        return naturalKeyCache.find(WorkflowNode.class, "taskId", taskId, WorkflowNode::getTaskId);
+    }
+}
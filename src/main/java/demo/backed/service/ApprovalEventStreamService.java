@@ -0,0 +1,318 @@
+package demo.backed.service;
+
+import demo.backed.dto.ApprovalStatisticsDTO;
+import demo.backed.util.TransactionCallbacks;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 审批事件推送服务（Server-Sent Events）
+ * 向在线用户推送待办新增、待办完成和统计变化，替代前端定时轮询待办和统计接口。
+ * <p>
+ * 最近的事件保存在全局有界环形缓冲区中，断线重连时按 Last-Event-ID 补发；
+ * 缓冲区已覆盖掉断线期间的事件时推送 resync，由前端整体刷新。
+ * 每个连接有独立的有界发送队列，队列满说明客户端消费过慢，直接断开让其重连补发。
+ */
+@Service
+@Slf4j
+public class ApprovalEventStreamService {
+
+    public static final String EVENT_TASK_CREATED = "task-created";
+    public static final String EVENT_TASK_COMPLETED = "task-completed";
+    public static final String EVENT_TASK_REMOVED = "task-removed";
+    public static final String EVENT_COUNT_CHANGED = "count-changed";
+    public static final String EVENT_RESYNC = "resync";
+    public static final String EVENT_BATCH_PROGRESS = "batch-progress";
+    public static final String EVENT_TASK_OVERDUE = "task-overdue";
+
+    @Value("${app.sse.buffer-size:1000}")
+    private int bufferSize = 1000;
+
+    @Value("${app.sse.queue-capacity:100}")
+    private int queueCapacity = 100;
+
+    @Value("${app.sse.timeout:1800000}")
+    private long timeout = 1800000L;
+
+    @Autowired
+    private ApprovalStatisticsService approvalStatisticsService;
+
+    private final Object lock = new Object();
+
+    private long sequence = 0;
+
+    private StreamEvent[] buffer;
+
+    private int bufferHead = 0;
+
+    private int bufferCount = 0;
+
+    private final Map<Long, Set<Connection>> connections = new ConcurrentHashMap<>();
+
+    private final Set<Long> pendingCountUsers = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService dispatcher = Executors.newFixedThreadPool(4, new ThreadFactory() {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "approval-sse-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * 建立推送连接
+     *
+     * @param userId      当前用户
+     * @param lastEventId 客户端最后收到的事件ID（重连时由浏览器在 Last-Event-ID 请求头中携带）
+     */
+    public SseEmitter subscribe(Long userId, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Connection connection = new Connection(userId, emitter, queueCapacity);
+        emitter.onCompletion(() -> removeConnection(connection));
+        emitter.onTimeout(() -> removeConnection(connection));
+        emitter.onError(e -> removeConnection(connection));
+
+        synchronized (lock) {
+            connections.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(connection);
+            Long lastId = parseEventId(lastEventId);
+            if (lastId != null) {
+                List<StreamEvent> missed = eventsAfter(userId, lastId);
+                if (missed == null) {
+                    connection.enqueue(SseEmitter.event().name(EVENT_RESYNC).data("{}", MediaType.APPLICATION_JSON));
+                } else {
+                    missed.forEach(event -> connection.enqueue(toSseEvent(event)));
+                }
+            }
+        }
+        log.info("📡 用户 {} 建立审批推送连接，Last-Event-ID: {}", userId, lastEventId);
+
+        // 连接建立时推送一次最新统计，前端无需再单独请求统计接口
+        scheduleCountChanged(userId);
+        return emitter;
+    }
+
+    /**
+     * 在当前事务提交后推送事件，并合并推送该用户的最新统计
+     */
+    public void publishAfterCommit(Long userId, String type, Object payload) {
+        if (userId == null) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            publish(userId, type, payload);
+            scheduleCountChanged(userId);
+        });
+    }
+
+    /**
+     * 立即推送事件并写入环形缓冲区
+     */
+    public void publish(Long userId, String type, Object payload) {
+        synchronized (lock) {
+            StreamEvent event = new StreamEvent(++sequence, userId, type, payload);
+            append(event);
+            Set<Connection> targets = connections.get(userId);
+            if (targets != null) {
+                targets.forEach(connection -> connection.enqueue(toSseEvent(event)));
+            }
+        }
+    }
+
+    /**
+     * 获取用户在指定事件之后的缓冲事件
+     *
+     * @return 缓冲区已不完整（事件被覆盖或服务重启过）时返回null，需要客户端整体刷新
+     */
+    public List<StreamEvent> eventsAfter(Long userId, long lastEventId) {
+        synchronized (lock) {
+            if (lastEventId > sequence) {
+                return null;
+            }
+            long oldestId = bufferCount == 0 ? sequence + 1 : getBuffer()[bufferHead].getId();
+            if (lastEventId < oldestId - 1) {
+                return null;
+            }
+            List<StreamEvent> events = new ArrayList<>();
+            for (int i = 0; i < bufferCount; i++) {
+                StreamEvent event = getBuffer()[(bufferHead + i) % bufferSize];
+                if (event.getId() > lastEventId && event.getUserId().equals(userId)) {
+                    events.add(event);
+                }
+            }
+            return events;
+        }
+    }
+
+    /**
+     * 心跳：定期发送注释行，防止代理和浏览器因空闲断开连接
+     */
+    @Scheduled(fixedDelayString = "${app.sse.heartbeat-interval:15000}")
+    public void heartbeat() {
+        connections.values().forEach(set -> set.forEach(connection ->
+            connection.enqueue(SseEmitter.event().comment("heartbeat"))));
+    }
+
+    public int getConnectionCount() {
+        return connections.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connections.values().forEach(set -> set.forEach(connection -> connection.getEmitter().complete()));
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * 合并统计推送：同一用户在推送前的多次变化只读取一次统计
+     */
+    private void scheduleCountChanged(Long userId) {
+        if (!connections.containsKey(userId) || !pendingCountUsers.add(userId)) {
+            return;
+        }
+        dispatcher.execute(() -> {
+            pendingCountUsers.remove(userId);
+            try {
+                ApprovalStatisticsDTO statistics = approvalStatisticsService.getStatistics(userId);
+                publish(userId, EVENT_COUNT_CHANGED, statistics);
+            } catch (Exception e) {
+                log.warn("推送审批统计失败，用户ID: {}, 原因: {}", userId, e.getMessage());
+            }
+        });
+    }
+
+    private void append(StreamEvent event) {
+        StreamEvent[] ring = getBuffer();
+        if (bufferCount < bufferSize) {
+            ring[(bufferHead + bufferCount) % bufferSize] = event;
+            bufferCount++;
+        } else {
+            ring[bufferHead] = event;
+            bufferHead = (bufferHead + 1) % bufferSize;
+        }
+    }
+
+    private StreamEvent[] getBuffer() {
+        if (buffer == null) {
+            buffer = new StreamEvent[bufferSize];
+        }
+        return buffer;
+    }
+
+    private void removeConnection(Connection connection) {
+        Set<Connection> set = connections.get(connection.getUserId());
+        if (set != null) {
+            set.remove(connection);
+            if (set.isEmpty()) {
+                connections.remove(connection.getUserId(), set);
+            }
+        }
+    }
+
+    private SseEmitter.SseEventBuilder toSseEvent(StreamEvent event) {
+        return SseEmitter.event()
+            .id(String.valueOf(event.getId()))
+            .name(event.getType())
+            .data(event.getPayload() != null ? event.getPayload() : Collections.emptyMap(), MediaType.APPLICATION_JSON);
+    }
+
+    private Long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 缓冲区中的事件
+     */
+    @Getter
+    public static class StreamEvent {
+        private final long id;
+        private final Long userId;
+        private final String type;
+        private final Object payload;
+
+        public StreamEvent(long id, Long userId, String type, Object payload) {
+            this.id = id;
+            this.userId = userId;
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 单个推送连接，事件先进入有界队列，再由发送线程按顺序写出
+     */
+    @Getter
+    private class Connection {
+        private final Long userId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+
+        Connection(Long userId, SseEmitter emitter, int capacity) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void enqueue(SseEmitter.SseEventBuilder event) {
+            if (!queue.offer(event)) {
+                // 客户端消费过慢，断开连接，由客户端携带 Last-Event-ID 重连补发
+                log.warn("⚠️ 用户 {} 的推送队列已满，断开连接等待重连", userId);
+                removeConnection(this);
+                emitter.complete();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while ((event = queue.poll()) != null) {
+                    emitter.send(event);
+                }
+            } catch (Exception e) {
+                log.debug("推送连接已断开，用户ID: {}, 原因: {}", userId, e.getMessage());
+                removeConnection(this);
+                queue.clear();
+                emitter.completeWithError(e);
+            } finally {
+                draining.set(false);
+                if (!queue.isEmpty()) {
+                    scheduleDrain();
+                }
+            }
+        }
+    }
+}
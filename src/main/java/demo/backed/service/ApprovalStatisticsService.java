@@ -0,0 +1,215 @@
+package demo.backed.service;
+
+import demo.backed.dto.ApprovalStatisticsDTO;
+import demo.backed.entity.ApprovalStatistics;
+import demo.backed.repository.ApprovalStatisticsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 用户审批统计服务
+ * 任务打开/关闭/完成时增量维护 t_poc_approval_statistics，统计接口只读一行；
+ * 定时对账任务按Flowable运行时和历史任务重新计算，修正漂移并刷新逾期数
+ */
+@Service
+@Transactional
+@Slf4j
+public class ApprovalStatisticsService {
+
+    /**
+     * Flowable任务优先级达到该值视为紧急（默认优先级为50）
+     */
+    public static final int URGENT_PRIORITY = 75;
+
+    @Autowired
+    private ApprovalStatisticsRepository approvalStatisticsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 任务进入待办：审批人待办数加一，代理人委托数加一
+     */
+    public void onTaskOpened(Long assigneeId, Long proxyId, Integer priority) {
+        adjust(assigneeId, proxyId, priority, 1);
+    }
+
+    /**
+     * 任务离开待办（完成、转办、删除、流程结束）
+     */
+    public void onTaskClosed(Long assigneeId, Long proxyId, Integer priority) {
+        adjust(assigneeId, proxyId, priority, -1);
+    }
+
+    /**
+     * 待办逾期（delta=1）或逾期待办离开审批人（delta=-1）
+     */
+    public void adjustOverdue(Long assigneeId, int delta) {
+        if (assigneeId == null) {
+            return;
+        }
+        approvalStatisticsRepository.insertIfAbsent(assigneeId);
+        approvalStatisticsRepository.adjustOverdue(assigneeId, delta);
+    }
+
+    /**
+     * 任务办理完成：审批人今日已办加一
+     */
+    public void onTaskCompleted(Long assigneeId) {
+        if (assigneeId == null) {
+            return;
+        }
+        approvalStatisticsRepository.insertIfAbsent(assigneeId);
+        approvalStatisticsRepository.incrementApprovedToday(assigneeId, LocalDate.now());
+    }
+
+    /**
+     * 获取用户审批统计，只读一行
+     */
+    @Transactional(readOnly = true)
+    public ApprovalStatisticsDTO getStatistics(Long userId) {
+        ApprovalStatisticsDTO dto = new ApprovalStatisticsDTO();
+        if (userId == null) {
+            return dto;
+        }
+
+        Optional<ApprovalStatistics> statistics = approvalStatisticsRepository.findByUserId(userId);
+        if (!statistics.isPresent()) {
+            return dto;
+        }
+
+        ApprovalStatistics stats = statistics.get();
+        dto.setMyPendingCount(stats.getPendingCount());
+        dto.setUrgentTaskCount(stats.getUrgentCount());
+        dto.setDelegatedApprovalCount(stats.getDelegatedCount());
+        dto.setOverdueTaskCount(stats.getOverdueCount());
+        // 统计日期不是今天说明今天还没有办理过任务
+        dto.setMyApprovedToday(LocalDate.now().equals(stats.getStatDate()) ? stats.getApprovedToday() : 0);
+        dto.setParallelApprovalCount(0);
+        return dto;
+    }
+
+    /**
+     * 对账时按Flowable重算的各项计数，参数依次为紧急优先级、当前时间、今天零点
+     * 今日已办只统计正常完成的任务（DELETE_REASON_为空），与任务完成事件的增量口径一致
+     */
+    private static final String RECOUNT_CTE =
+        "WITH runtime AS (" +
+        "SELECT CAST(ASSIGNEE_ AS BIGINT) AS user_id, COUNT(*) AS pending, " +
+        "SUM(CASE WHEN PRIORITY_ >= ? THEN 1 ELSE 0 END) AS urgent, " +
+        "SUM(CASE WHEN DUE_DATE_ < ? THEN 1 ELSE 0 END) AS overdue " +
+        "FROM ACT_RU_TASK WHERE ASSIGNEE_ ~ '^[0-9]{1,18}$' GROUP BY ASSIGNEE_), " +
+        "approved AS (" +
+        "SELECT CAST(ASSIGNEE_ AS BIGINT) AS user_id, COUNT(*) AS approved FROM ACT_HI_TASKINST " +
+        "WHERE END_TIME_ >= ? AND DELETE_REASON_ IS NULL AND ASSIGNEE_ ~ '^[0-9]{1,18}$' GROUP BY ASSIGNEE_), " +
+        "delegated AS (" +
+        "SELECT proxy_id AS user_id, COUNT(*) AS delegated FROM t_poc_task_inbox " +
+        "WHERE proxy_id IS NOT NULL GROUP BY proxy_id), " +
+        "ids AS (" +
+        "SELECT user_id FROM runtime UNION SELECT user_id FROM approved UNION SELECT user_id FROM delegated " +
+        "UNION SELECT user_id FROM t_poc_approval_statistics) ";
+
+    /**
+     * 按单个用户重算并写入，Flowable表中的审批人是字符串列，按字符串用户ID匹配
+     */
+    private static final String RECOUNT_USER =
+        "UPDATE t_poc_approval_statistics SET " +
+        "pending_count = (SELECT COUNT(*) FROM ACT_RU_TASK WHERE ASSIGNEE_ = ?), " +
+        "urgent_count = (SELECT COUNT(*) FROM ACT_RU_TASK WHERE PRIORITY_ >= ? AND ASSIGNEE_ = ?), " +
+        "overdue_count = (SELECT COUNT(*) FROM ACT_RU_TASK WHERE DUE_DATE_ < ? AND ASSIGNEE_ = ?), " +
+        "approved_today = (SELECT COUNT(*) FROM ACT_HI_TASKINST WHERE END_TIME_ >= ? AND DELETE_REASON_ IS NULL " +
+        "AND ASSIGNEE_ = ?), " +
+        "delegated_count = (SELECT COUNT(*) FROM t_poc_task_inbox WHERE proxy_id = ?), " +
+        "stat_date = ?, reconciled_time = now(), updated_time = now() WHERE user_id = ?";
+
+    /**
+     * 定时与Flowable对账
+     * 按运行时任务重算待办/紧急/逾期，按历史任务重算今日已办，按待办投影重算委托数。
+     * 先在不加锁的快照上找出计数与重算结果不一致（或缺少统计行）的用户，再逐个用户在独立的短事务中修正：
+     * 只锁该用户一行，加锁后再重算写入，加锁前已提交的增量都包含在重算结果中，加锁期间到达的增量在对账提交后叠加。
+     * 对账事务只持有一行锁，不会与同时调整两个用户计数的任务事件形成循环等待，也不会阻塞其他用户的审批。
+     *
+     * @return 修正的统计行数
+     */
+    @Scheduled(initialDelayString = "${app.statistics.reconcile-initial-delay:60000}",
+               fixedDelayString = "${app.statistics.reconcile-interval:300000}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int reconcile() {
+        long start = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Timestamp startOfDay = Timestamp.valueOf(today.atStartOfDay());
+
+        List<Long> drifted = jdbcTemplate.queryForList(RECOUNT_CTE +
+            "SELECT ids.user_id FROM ids " +
+            "LEFT JOIN t_poc_approval_statistics s ON s.user_id = ids.user_id " +
+            "LEFT JOIN runtime r ON r.user_id = ids.user_id " +
+            "LEFT JOIN approved a ON a.user_id = ids.user_id " +
+            "LEFT JOIN delegated d ON d.user_id = ids.user_id " +
+            "WHERE s.user_id IS NULL " +
+            "OR s.pending_count <> COALESCE(r.pending, 0) OR s.urgent_count <> COALESCE(r.urgent, 0) " +
+            "OR s.overdue_count <> COALESCE(r.overdue, 0) OR s.delegated_count <> COALESCE(d.delegated, 0) " +
+            "OR (CASE WHEN s.stat_date = ? THEN s.approved_today ELSE 0 END) <> COALESCE(a.approved, 0)",
+            Long.class, URGENT_PRIORITY, now, startOfDay, Date.valueOf(today));
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        int updated = 0;
+        for (Long userId : drifted) {
+            try {
+                Integer count = transaction.execute(status -> recountUser(userId, today));
+                updated += count != null ? count : 0;
+            } catch (Exception e) {
+                log.warn("⚠️ 审批统计对账失败，用户ID: {}, {}", userId, e.getMessage());
+            }
+        }
+
+        log.info("📊 审批统计对账完成，不一致用户数: {}, 已修正: {}, 耗时: {}ms",
+            drifted.size(), updated, System.currentTimeMillis() - start);
+        return updated;
+    }
+
+    private int recountUser(Long userId, LocalDate today) {
+        approvalStatisticsRepository.insertIfAbsent(userId);
+        // 先加锁，之后的UPDATE语句读取的是加锁之后的快照
+        jdbcTemplate.queryForList("SELECT id FROM t_poc_approval_statistics WHERE user_id = ? FOR UPDATE",
+            Long.class, userId);
+        String assignee = String.valueOf(userId);
+        return jdbcTemplate.update(RECOUNT_USER,
+            assignee, URGENT_PRIORITY, assignee, Timestamp.valueOf(LocalDateTime.now()), assignee,
+            Timestamp.valueOf(today.atStartOfDay()), assignee, userId, Date.valueOf(today), userId);
+    }
+
+    private void adjust(Long assigneeId, Long proxyId, Integer priority, int delta) {
+        if (assigneeId != null) {
+            approvalStatisticsRepository.insertIfAbsent(assigneeId);
+            approvalStatisticsRepository.adjustPending(assigneeId, delta, isUrgent(priority) ? delta : 0);
+        }
+        if (proxyId != null) {
+            approvalStatisticsRepository.insertIfAbsent(proxyId);
+            approvalStatisticsRepository.adjustDelegated(proxyId, delta);
+        }
+    }
+
+    public static boolean isUrgent(Integer priority) {
+        return priority != null && priority >= URGENT_PRIORITY;
+    }
+}
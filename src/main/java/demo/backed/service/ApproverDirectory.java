@@ -0,0 +1,180 @@
+package demo.backed.service;
+
+import demo.backed.dto.UserDTO;
+import demo.backed.entity.User;
+import demo.backed.repository.UserRepository;
+import demo.backed.util.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 审批人目录
+ * 从用户表一次性构建部门主管、职位在职人员、部门职能负责人等映射，
+ * 发起流程时的审批人解析只做内存查找，不再逐个查询用户表。
+ * <p>
+ * 快照不可变，用户的部门、职位、类型、状态、直属主管等字段变化时在事务提交后标记失效，
+ * 下次读取时整体重建并原子替换，批量导入只触发一次重建。
+ */
+@Service
+@Slf4j
+public class ApproverDirectory {
+
+    public static final String STATUS_ACTIVE = "在职";
+
+    public static final String USER_TYPE_MANAGER = "主管";
+
+    /**
+     * 部门对应的职能负责人职位，未配置的部门由COO负责
+     */
+    private static final Map<String, String> FUNCTIONAL_HEAD_POSITIONS;
+
+    static {
+        Map<String, String> positions = new HashMap<>();
+        positions.put("信息技术部", "CTO");
+        positions.put("财务部", "CFO");
+        positions.put("人力资源部", "COO");
+        positions.put("交易部", "CEO");
+        positions.put("风控部", "CRO");
+        positions.put("合规部", "CCO");
+        FUNCTIONAL_HEAD_POSITIONS = Collections.unmodifiableMap(positions);
+    }
+
+    private static final String DEFAULT_FUNCTIONAL_HEAD_POSITION = "COO";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private volatile Snapshot snapshot;
+
+    private volatile boolean stale = true;
+
+    /**
+     * 用户（不区分状态）
+     */
+    public Optional<UserDTO> findUser(Long userId) {
+        return Optional.ofNullable(userId == null ? null : snapshot().users.get(userId));
+    }
+
+    /**
+     * 在职用户
+     */
+    public Optional<UserDTO> findActiveUser(Long userId) {
+        return Optional.ofNullable(userId == null ? null : snapshot().activeUsers.get(userId));
+    }
+
+    /**
+     * 部门在职主管（按用户ID取第一个）
+     */
+    public Optional<UserDTO> findDepartmentManager(String department) {
+        return Optional.ofNullable(department == null ? null : snapshot().departmentManagers.get(department));
+    }
+
+    /**
+     * 职位的在职人员（按用户ID排序）
+     */
+    public List<UserDTO> findActiveByPosition(String position) {
+        List<UserDTO> holders = position == null ? null : snapshot().positionHolders.get(position);
+        return holders != null ? holders : Collections.emptyList();
+    }
+
+    /**
+     * 部门职能负责人（在职）
+     */
+    public Optional<UserDTO> findFunctionalHead(String department) {
+        return findActiveByPosition(getFunctionalHeadPosition(department)).stream().findFirst();
+    }
+
+    /**
+     * 按邮箱查找用户（不区分状态，与 UserService.getUserByEmail 一致）
+     */
+    public Optional<UserDTO> findByEmail(String email) {
+        return Optional.ofNullable(email == null ? null : snapshot().usersByEmail.get(email));
+    }
+
+    public static String getFunctionalHeadPosition(String department) {
+        return department == null ? DEFAULT_FUNCTIONAL_HEAD_POSITION
+            : FUNCTIONAL_HEAD_POSITIONS.getOrDefault(department, DEFAULT_FUNCTIONAL_HEAD_POSITION);
+    }
+
+    /**
+     * 用户数据变化后调用：事务提交后标记快照失效，回滚则不影响
+     */
+    public void invalidate() {
+        TransactionCallbacks.afterCommit(() -> stale = true);
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null && !stale) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null || stale) {
+                // 先清标记再构建，构建期间的新变更会再次标记失效
+                stale = false;
+                snapshot = build();
+            }
+            return snapshot;
+        }
+    }
+
+    private Snapshot build() {
+        long start = System.currentTimeMillis();
+        List<User> users = new ArrayList<>(userRepository.findAll());
+        users.sort(Comparator.comparing(User::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        Map<Long, UserDTO> allUsers = new HashMap<>();
+        Map<Long, UserDTO> activeUsers = new HashMap<>();
+        Map<String, UserDTO> departmentManagers = new HashMap<>();
+        Map<String, List<UserDTO>> positionHolders = new HashMap<>();
+        Map<String, UserDTO> usersByEmail = new HashMap<>();
+
+        for (User user : users) {
+            UserDTO dto = new UserDTO();
+            BeanUtils.copyProperties(user, dto, "password");
+            allUsers.put(user.getId(), dto);
+            if (user.getEmail() != null) {
+                usersByEmail.putIfAbsent(user.getEmail(), dto);
+            }
+            if (!STATUS_ACTIVE.equals(user.getStatus())) {
+                continue;
+            }
+            activeUsers.put(user.getId(), dto);
+            if (user.getDepartment() != null && USER_TYPE_MANAGER.equals(user.getUserType())) {
+                departmentManagers.putIfAbsent(user.getDepartment(), dto);
+            }
+            if (user.getPosition() != null) {
+                positionHolders.computeIfAbsent(user.getPosition(), p -> new ArrayList<>()).add(dto);
+            }
+        }
+        positionHolders.replaceAll((position, holders) -> Collections.unmodifiableList(holders));
+
+        log.info("📒 审批人目录已重建，用户数: {}, 部门主管: {}, 职位: {}, 耗时: {}ms",
+            users.size(), departmentManagers.size(), positionHolders.size(), System.currentTimeMillis() - start);
+        return new Snapshot(allUsers, activeUsers, departmentManagers, positionHolders, usersByEmail);
+    }
+
+    /**
+     * 不可变的目录快照
+     */
+    private static class Snapshot {
+        private final Map<Long, UserDTO> users;
+        private final Map<Long, UserDTO> activeUsers;
+        private final Map<String, UserDTO> departmentManagers;
+        private final Map<String, List<UserDTO>> positionHolders;
+        private final Map<String, UserDTO> usersByEmail;
+
+        Snapshot(Map<Long, UserDTO> users, Map<Long, UserDTO> activeUsers, Map<String, UserDTO> departmentManagers,
+                 Map<String, List<UserDTO>> positionHolders, Map<String, UserDTO> usersByEmail) {
+            this.users = Collections.unmodifiableMap(users);
+            this.activeUsers = Collections.unmodifiableMap(activeUsers);
+            this.departmentManagers = Collections.unmodifiableMap(departmentManagers);
+            this.positionHolders = Collections.unmodifiableMap(positionHolders);
+            this.usersByEmail = Collections.unmodifiableMap(usersByEmail);
+        }
+    }
+}
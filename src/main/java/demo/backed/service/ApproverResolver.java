@@ -0,0 +1,293 @@
+package demo.backed.service;
+
+import demo.backed.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.flowable.engine.delegate.DelegateExecution;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * 流程审批人解析器
+ * 在BPMN中以 ${approverResolver.manager(execution)} 形式引用，任务创建时才解析对应节点的审批人，
+ * 未走到的分支（如小额申请的高管审批）不再在发起时解析，也不再写入流程变量。
+ * <p>
+ * 解析结果以瞬时变量缓存在当前执行上，同一事务内重复求值不重复计算；
+ * 流程变量中已有同名审批人（发起时显式传入或旧流程实例）时优先使用。
+ */
+@Component("approverResolver")
+@Slf4j
+public class ApproverResolver {
+
+    public static final String MANAGER = "managerId";
+    public static final String FINANCE_MANAGER = "financeManagerId";
+    public static final String COMPLIANCE_MANAGER = "complianceManagerId";
+    public static final String FUNCTIONAL_HEAD = "functionalHeadId";
+    public static final String EXECUTIVE = "executiveId";
+
+    private static final String MEMO_PREFIX = "_approver_";
+
+    private static final Map<String, String> LEGACY_ASSIGNEES = new LinkedHashMap<>();
+
+    static {
+        LEGACY_ASSIGNEES.put(MANAGER, "manager");
+        LEGACY_ASSIGNEES.put(FINANCE_MANAGER, "financeManager");
+        LEGACY_ASSIGNEES.put(COMPLIANCE_MANAGER, "complianceManager");
+        LEGACY_ASSIGNEES.put(FUNCTIONAL_HEAD, "functionalHead");
+        LEGACY_ASSIGNEES.put(EXECUTIVE, "executive");
+    }
+
+    @Autowired
+    private ApproverDirectory approverDirectory;
+
+    /**
+     * 直属主管（无直属主管时为部门主管）
+     */
+    public String manager(DelegateExecution execution) {
+        return resolve(execution, MANAGER, () -> resolveManagerId(getApplicant(execution)));
+    }
+
+    /**
+     * 财务部审批人
+     */
+    public String financeManager(DelegateExecution execution) {
+        return resolve(execution, FINANCE_MANAGER, this::resolveFinanceManagerId);
+    }
+
+    /**
+     * 合规部审批人
+     */
+    public String complianceManager(DelegateExecution execution) {
+        return resolve(execution, COMPLIANCE_MANAGER, this::resolveComplianceManagerId);
+    }
+
+    /**
+     * 申请人部门的职能负责人
+     */
+    public String functionalHead(DelegateExecution execution) {
+        return resolve(execution, FUNCTIONAL_HEAD, () -> resolveFunctionalHeadId(getApplicant(execution)));
+    }
+
+    /**
+     * 高管审批人，按金额选择CEO或COO
+     */
+    public String executive(DelegateExecution execution) {
+        return resolve(execution, EXECUTIVE, () -> resolveExecutiveId(getAmount(execution)));
+    }
+
+    /**
+     * 按旧的审批人变量名（如 managerId）解析审批人，供仍引用 ${managerId} 的已部署流程定义使用
+     *
+     * @return 不是审批人变量名时返回null
+     */
+    public String resolveLegacy(DelegateExecution execution, String variableName) {
+        String method = LEGACY_ASSIGNEES.get(variableName);
+        if (method == null) {
+            return null;
+        }
+        switch (method) {
+            case "manager":
+                return manager(execution);
+            case "financeManager":
+                return financeManager(execution);
+            case "complianceManager":
+                return complianceManager(execution);
+            case "functionalHead":
+                return functionalHead(execution);
+            default:
+                return executive(execution);
+        }
+    }
+
+    /**
+     * 判断是否为旧的审批人变量名
+     */
+    public static boolean isLegacyAssignee(String variableName) {
+        return LEGACY_ASSIGNEES.containsKey(variableName);
+    }
+
+    /**
+     * 把模板中旧的变量式审批人（如 ${managerId}）改写为按需解析的表达式，
+     * 发起流程时已不再预先写入这些变量
+     */
+    public static String toLazyAssignees(String bpmnXml) {
+        if (bpmnXml == null) {
+            return null;
+        }
+        String result = bpmnXml;
+        for (Map.Entry<String, String> entry : LEGACY_ASSIGNEES.entrySet()) {
+            result = result.replace("${" + entry.getKey() + "}",
+                "${approverResolver." + entry.getValue() + "(execution)}");
+        }
+        return result;
+    }
+
+    private String resolve(DelegateExecution execution, String key, Supplier<Long> resolver) {
+        Object assigned = execution.getVariable(key);
+        if (assigned != null) {
+            return assigned.toString();
+        }
+        Object memo = execution.getTransientVariable(MEMO_PREFIX + key);
+        if (memo != null) {
+            return memo.toString();
+        }
+        String approverId = String.valueOf(resolver.get());
+        execution.setTransientVariable(MEMO_PREFIX + key, approverId);
+        return approverId;
+    }
+
+    private UserDTO getApplicant(DelegateExecution execution) {
+        Object applicantId = execution.getVariable("applicantId");
+        if (applicantId == null) {
+            throw new RuntimeException("流程变量缺少申请人ID");
+        }
+        return approverDirectory.findUser(Long.valueOf(applicantId.toString()))
+            .orElseThrow(() -> new RuntimeException("申请人不存在"));
+    }
+
+    private BigDecimal getAmount(DelegateExecution execution) {
+        Object amount = execution.getVariable("amount");
+        if (amount == null) {
+            return BigDecimal.ZERO;
+        }
+        return amount instanceof BigDecimal ? (BigDecimal) amount : new BigDecimal(amount.toString());
+    }
+
+    private Long resolveManagerId(UserDTO user) {
+        // 获取直属主管ID（必须在职）
+        if (user.getManagerId() != null) {
+            Optional<UserDTO> manager = approverDirectory.findActiveUser(user.getManagerId());
+            if (manager.isPresent()) {
+                log.info("使用用户 {} 的直属主管: {} (ID: {})", user.getUserName(),
+                    manager.get().getUserName(), user.getManagerId());
+                return user.getManagerId();
+            }
+        }
+
+        // 如果没有直属主管或主管不存在，查找部门主管
+        Optional<UserDTO> deptManager = approverDirectory.findDepartmentManager(user.getDepartment());
+        if (deptManager.isPresent()) {
+            log.info("使用部门 {} 的主管: {} (ID: {})", user.getDepartment(),
+                deptManager.get().getUserName(), deptManager.get().getId());
+            return deptManager.get().getId();
+        }
+
+        // 如果还是找不到，查找系统管理员
+        Optional<UserDTO> admin = approverDirectory.findByEmail("admin@hkex.com");
+        if (admin.isPresent()) {
+            log.info("使用系统管理员作为默认审批人: {} (ID: {})",
+                admin.get().getUserName(), admin.get().getId());
+            return admin.get().getId();
+        }
+
+        throw new RuntimeException("无法找到合适的审批人");
+    }
+
+    private Long resolveFunctionalHeadId(UserDTO user) {
+        // 根据部门查找对应的职能负责人
+        String functionalHead = ApproverDirectory.getFunctionalHeadPosition(user.getDepartment());
+        Optional<UserDTO> head = approverDirectory.findFunctionalHead(user.getDepartment());
+        if (head.isPresent()) {
+            log.info("部门 {} 的职能负责人: {} - {} (ID: {})",
+                user.getDepartment(), functionalHead, head.get().getUserName(), head.get().getId());
+            return head.get().getId();
+        }
+
+        // 如果找不到对应的职能负责人，使用COO
+        Optional<UserDTO> coo = approverDirectory.findActiveByPosition("COO").stream().findFirst();
+        if (coo.isPresent()) {
+            log.info("使用COO作为默认职能负责人: {} (ID: {})",
+                coo.get().getUserName(), coo.get().getId());
+            return coo.get().getId();
+        }
+
+        // 最后使用系统管理员
+        Optional<UserDTO> admin = approverDirectory.findByEmail("admin@hkex.com");
+        if (admin.isPresent()) {
+            log.info("使用系统管理员作为默认职能负责人: {} (ID: {})",
+                admin.get().getUserName(), admin.get().getId());
+            return admin.get().getId();
+        }
+
+        throw new RuntimeException("无法找到合适的职能负责人");
+    }
+
+    private Long resolveFinanceManagerId() {
+        // 查找财务部主管
+        Optional<UserDTO> financeManager = approverDirectory.findDepartmentManager("财务部");
+        if (financeManager.isPresent()) {
+            log.info("使用财务部主管: {} (ID: {})", financeManager.get().getUserName(), financeManager.get().getId());
+            return financeManager.get().getId();
+        }
+
+        // 如果找不到，使用张三（财务总监）
+        Optional<UserDTO> zhangsan = approverDirectory.findByEmail("zhangsan@hkex.com");
+        if (zhangsan.isPresent() && ApproverDirectory.STATUS_ACTIVE.equals(zhangsan.get().getStatus())) {
+            log.info("使用财务总监张三作为财务审批人");
+            return zhangsan.get().getId();
+        }
+
+        throw new RuntimeException("无法找到财务部审批人");
+    }
+
+    private Long resolveComplianceManagerId() {
+        // 查找合规部主管
+        Optional<UserDTO> complianceManager = approverDirectory.findDepartmentManager("合规部");
+        if (complianceManager.isPresent()) {
+            log.info("使用合规部主管: {} (ID: {})", complianceManager.get().getUserName(), complianceManager.get().getId());
+            return complianceManager.get().getId();
+        }
+
+        // 如果找不到，使用严三（合规总监）
+        Optional<UserDTO> yansan = approverDirectory.findByEmail("yansan@hkex.com");
+        if (yansan.isPresent() && ApproverDirectory.STATUS_ACTIVE.equals(yansan.get().getStatus())) {
+            log.info("使用合规总监严三作为合规审批人");
+            return yansan.get().getId();
+        }
+
+        throw new RuntimeException("无法找到合规部审批人");
+    }
+
+    private Long resolveExecutiveId(BigDecimal amount) {
+        // 根据金额选择不同的高管审批
+        String executivePosition;
+        if (amount.compareTo(new BigDecimal("100000")) > 0) {
+            executivePosition = "CEO";
+        } else {
+            executivePosition = "COO";
+        }
+
+        List<UserDTO> executives = approverDirectory.findActiveByPosition(executivePosition);
+        if (!executives.isEmpty()) {
+            UserDTO executive = executives.get(0);
+            log.info("使用{}作为高管审批人: {} (ID: {})", executivePosition, executive.getUserName(), executive.getId());
+            return executive.getId();
+        }
+
+        // 如果找不到对应高管，尝试查找其他高管
+        String[] executivePositions = {"CEO", "COO", "CFO", "CTO"};
+        for (String pos : executivePositions) {
+            List<UserDTO> altExecutives = approverDirectory.findActiveByPosition(pos);
+            if (!altExecutives.isEmpty()) {
+                UserDTO executive = altExecutives.get(0);
+                log.info("使用{}作为替代高管审批人: {} (ID: {})", pos, executive.getUserName(), executive.getId());
+                return executive.getId();
+            }
+        }
+
+        // 最后使用系统管理员
+        Optional<UserDTO> admin = approverDirectory.findByEmail("admin@hkex.com");
+        if (admin.isPresent()) {
+            log.info("使用系统管理员作为高管审批人");
+            return admin.get().getId();
+        }
+
+        throw new RuntimeException("无法找到高管审批人");
+    }
+}
@@ -0,0 +1,396 @@
+package demo.backed.service;
+
+import demo.backed.dto.ApprovalRequest;
+import demo.backed.dto.BatchApprovalFilterRequest;
+import demo.backed.dto.BatchApprovalJob;
+import demo.backed.dto.BatchResult;
+import demo.backed.entity.TaskInboxItem;
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.entity.WorkflowNode;
+import demo.backed.repository.TaskInboxRepository;
+import demo.backed.repository.WorkflowNodeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 批量审批服务
+ * 审批项在有界线程池中并行执行，每一项使用独立事务（REQUIRES_NEW），单项失败不影响其他项；
+ * 同一流程实例的审批项按提交顺序串行执行，避免并发完成同一流程的任务。
+ * 大批量可作为异步任务提交，接口立即返回 jobId，再按 jobId 查询进度和结果，
+ * 执行过程中同时通过审批事件推送（batch-progress）向提交人推送进度。
+ * 也可以只提交筛选条件，由服务端从待办收件箱中找出当前用户名下的匹配任务再批量处理。
+ */
+@Service
+@Slf4j
+public class BatchApprovalService {
+
+    private static final int LOCK_STRIPES = 64;
+
+    @Value("${app.batch-approval.threads:4}")
+    private int threads = 4;
+
+    @Value("${app.batch-approval.queue-capacity:1000}")
+    private int queueCapacity = 1000;
+
+    @Value("${app.batch-approval.max-jobs:200}")
+    private int maxJobs = 200;
+
+    @Value("${app.batch-approval.filter-max-items:5000}")
+    private int filterMaxItems = 5000;
+
+    @Value("${app.batch-approval.progress-interval:20}")
+    private int progressInterval = 20;
+
+    @Autowired
+    private WorkflowService workflowService;
+
+    @Autowired
+    private WorkflowNodeRepository workflowNodeRepository;
+
+    @Autowired
+    private TaskInboxRepository taskInboxRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApprovalEventStreamService approvalEventStreamService;
+
+    /**
+     * 按流程实例分段加锁，不同批次同时处理同一流程实例时也保持串行
+     */
+    private final Object[] instanceLocks = new Object[LOCK_STRIPES];
+
+    private volatile ThreadPoolExecutor workerExecutor;
+
+    private volatile ExecutorService jobExecutor;
+
+    /**
+     * 按提交顺序保存的批量任务，超出 max-jobs 时只淘汰已结束的任务，执行中的任务始终可查询
+     */
+    private final LinkedHashMap<String, BatchApprovalJob> jobs = new LinkedHashMap<>();
+
+    public BatchApprovalService() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            instanceLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * 同步执行批量审批，全部完成后返回结果
+     * 与异步任务一样只处理分配给操作人本人的任务
+     */
+    public BatchResult execute(List<ApprovalRequest> requests, Long operatorId) {
+        if (operatorId == null) {
+            throw new RuntimeException("无法获取当前用户信息");
+        }
+        return run(requests, null, operatorId);
+    }
+
+    /**
+     * 提交异步批量审批任务
+     * 只处理分配给操作人本人的任务，其他任务在执行前记为失败
+     */
+    public BatchApprovalJob submit(List<ApprovalRequest> requests, Long operatorId) {
+        if (operatorId == null) {
+            throw new RuntimeException("无法获取当前用户信息");
+        }
+        BatchApprovalJob job = new BatchApprovalJob(UUID.randomUUID().toString(), operatorId, requests.size());
+        registerJob(job);
+        List<ApprovalRequest> snapshot = new ArrayList<>(requests);
+        getJobExecutor().execute(new DelegatingSecurityContextRunnable(() -> {
+            try {
+                job.complete(run(snapshot, job, operatorId));
+                log.info("✅ 批量审批任务 {} 完成，成功: {}, 失败: {}", job.getJobId(),
+                    job.getResult().getSuccessCount(), job.getResult().getFailureCount());
+            } catch (Exception e) {
+                log.error("❌ 批量审批任务 {} 执行失败", job.getJobId(), e);
+                job.fail(e.getMessage());
+            }
+            publishProgress(job);
+        }));
+        log.info("📥 已提交批量审批任务 {}，操作人: {}, 项目数: {}", job.getJobId(), operatorId, requests.size());
+        return job;
+    }
+
+    /**
+     * 按条件提交异步批量审批任务
+     * 只处理分配给操作人本人的待办（不含代理），按任务创建时间先后处理，单次最多 filter-max-items 条
+     */
+    public BatchApprovalJob submitByFilter(BatchApprovalFilterRequest filter, Long operatorId) {
+        if (operatorId == null) {
+            throw new RuntimeException("无法获取当前用户信息");
+        }
+        if (filter == null || !filter.hasCondition()) {
+            throw new RuntimeException("请至少指定一个筛选条件");
+        }
+        if (!"approve".equals(filter.getAction()) && !"reject".equals(filter.getAction())) {
+            throw new RuntimeException("不支持的审批操作: " + filter.getAction());
+        }
+
+        List<TaskInboxItem> matched = taskInboxRepository.findAll(buildFilterSpecification(filter, operatorId),
+            PageRequest.of(0, filterMaxItems, Sort.by("taskCreateTime", "taskId"))).getContent();
+        Set<String> taskIds = matched.stream()
+            .map(TaskInboxItem::getTaskId)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<String, WorkflowNode> nodesByTaskId = taskIds.isEmpty() ? Collections.emptyMap()
+            : workflowNodeRepository.findByTaskIdIn(taskIds).stream()
+                .collect(Collectors.toMap(WorkflowNode::getTaskId, Function.identity(), (a, b) -> a));
+
+        List<ApprovalRequest> requests = new ArrayList<>();
+        for (String taskId : taskIds) {
+            WorkflowNode node = nodesByTaskId.get(taskId);
+            if (node == null) {
+                log.warn("⚠️ 待办 {} 没有对应的审批节点，跳过", taskId);
+                continue;
+            }
+            ApprovalRequest request = new ApprovalRequest();
+            request.setTaskId(node.getId());
+            request.setAction(filter.getAction());
+            request.setComment(filter.getComment());
+            requests.add(request);
+        }
+        log.info("🔎 按条件批量审批，操作人: {}, 匹配待办: {}, 可处理: {}", operatorId, taskIds.size(), requests.size());
+        return submit(requests, operatorId);
+    }
+
+    /**
+     * 查询批量审批任务，只能查询自己提交的任务
+     */
+    public Optional<BatchApprovalJob> getJob(String jobId, Long operatorId) {
+        BatchApprovalJob job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (operatorId != null && job.getOperatorId() != null && !operatorId.equals(job.getOperatorId())) {
+            throw new RuntimeException("无权查看该批量审批任务");
+        }
+        return Optional.of(job);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (jobExecutor != null) {
+            jobExecutor.shutdown();
+        }
+        if (workerExecutor != null) {
+            workerExecutor.shutdown();
+        }
+    }
+
+    /**
+     * @param operatorId 只处理审批人是该用户的任务
+     */
+    private BatchResult run(List<ApprovalRequest> requests, BatchApprovalJob job, Long operatorId) {
+        BatchResult result = new BatchResult(requests.size());
+        result.setOperationType("BATCH_APPROVE");
+        if (requests.isEmpty()) {
+            return result;
+        }
+
+        // 一次加载全部节点，按流程实例分组
+        Set<Long> nodeIds = requests.stream()
+            .map(ApprovalRequest::getTaskId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+        Map<Long, WorkflowNode> nodeMap = workflowNodeRepository.findAllById(nodeIds).stream()
+            .collect(Collectors.toMap(WorkflowNode::getId, Function.identity(), (a, b) -> a));
+
+        Map<Long, List<ApprovalRequest>> groups = new LinkedHashMap<>();
+        for (ApprovalRequest request : requests) {
+            WorkflowNode node = request.getTaskId() != null ? nodeMap.get(request.getTaskId()) : null;
+            if (node == null) {
+                recordFailure(result, request.getTaskId(), "任务不存在", job);
+                continue;
+            }
+            if (!operatorId.equals(node.getAssigneeId())) {
+                log.warn("⚠️ 批量审批项 {} 的审批人不是操作人 {}，跳过", request.getTaskId(), operatorId);
+                recordFailure(result, request.getTaskId(), "无权处理该任务", job);
+                continue;
+            }
+            groups.computeIfAbsent(node.getInstanceId(), id -> new ArrayList<>()).add(request);
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (Map.Entry<Long, List<ApprovalRequest>> group : groups.entrySet()) {
+            Runnable task = () -> {
+                for (ApprovalRequest request : group.getValue()) {
+                    processItem(request, nodeMap.get(request.getTaskId()), result, job);
+                }
+            };
+            futures.add(getWorkerExecutor().submit(new DelegatingSecurityContextRunnable(task)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("批量审批被中断");
+            } catch (ExecutionException e) {
+                log.error("批量审批分组执行异常", e.getCause());
+            }
+        }
+        return result;
+    }
+
+    private Specification<TaskInboxItem> buildFilterSpecification(BatchApprovalFilterRequest filter, Long operatorId) {
+        return (root, query, criteriaBuilder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(criteriaBuilder.equal(root.get("assigneeId"), operatorId));
+
+            if (StringUtils.hasText(filter.getNodeKey())) {
+                predicates.add(criteriaBuilder.equal(root.get("nodeKey"), filter.getNodeKey().trim()));
+            }
+
+            if (filter.getMaxAmount() != null) {
+                predicates.add(criteriaBuilder.lessThanOrEqualTo(root.get("amount"), filter.getMaxAmount()));
+            }
+
+            if (StringUtils.hasText(filter.getDepartment())) {
+                predicates.add(criteriaBuilder.equal(root.get("department"), filter.getDepartment().trim()));
+            }
+
+            if (filter.getSubmittedBefore() != null) {
+                // 提交时间取流程实例的发起时间
+                Subquery<Long> submitted = query.subquery(Long.class);
+                Root<WorkflowInstance> instance = submitted.from(WorkflowInstance.class);
+                submitted.select(instance.get("id"))
+                    .where(criteriaBuilder.lessThan(instance.get("startTime"), filter.getSubmittedBefore()));
+                predicates.add(root.get("instanceId").in(submitted));
+            }
+
+            return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private void processItem(ApprovalRequest request, WorkflowNode node, BatchResult result, BatchApprovalJob job) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            synchronized (lockFor(node.getInstanceId())) {
+                transaction.executeWithoutResult(status -> apply(request, node));
+            }
+            synchronized (result) {
+                result.addSuccess(request.getTaskId());
+            }
+            markProcessed(job);
+        } catch (Exception e) {
+            recordFailure(result, request.getTaskId(), e.getMessage(), job);
+        }
+    }
+
+    private void apply(ApprovalRequest request, WorkflowNode node) {
+        String action = request.getAction();
+        if ("approve".equals(action)) {
+            workflowService.approve(node.getInstanceId(), node.getTaskId(), request.getComment());
+        } else if ("reject".equals(action)) {
+            workflowService.reject(node.getInstanceId(), node.getTaskId(), request.getComment());
+        } else if ("return".equals(action)) {
+            workflowService.returnTo(node.getInstanceId(), node.getTaskId(), request.getTargetNodeKey(), request.getComment());
+        } else {
+            throw new RuntimeException("不支持的审批操作: " + action);
+        }
+    }
+
+    private void recordFailure(BatchResult result, Long taskId, String message, BatchApprovalJob job) {
+        synchronized (result) {
+            result.addFailure(taskId, "任务" + taskId + ": " + message);
+        }
+        markProcessed(job);
+    }
+
+    private void markProcessed(BatchApprovalJob job) {
+        if (job == null) {
+            return;
+        }
+        int processed = job.markProcessed();
+        // 按间隔推送进度，最后一条由任务结束时的推送覆盖
+        if (processed < job.getTotalCount() && processed % Math.max(progressInterval, 1) == 0) {
+            publishProgress(job);
+        }
+    }
+
+    private void publishProgress(BatchApprovalJob job) {
+        if (job.getOperatorId() == null) {
+            return;
+        }
+        try {
+            approvalEventStreamService.publish(job.getOperatorId(), ApprovalEventStreamService.EVENT_BATCH_PROGRESS, job);
+        } catch (Exception e) {
+            log.warn("推送批量审批进度失败，任务: {}", job.getJobId(), e);
+        }
+    }
+
+    private Object lockFor(Long instanceId) {
+        return instanceLocks[Math.floorMod(Objects.hashCode(instanceId), LOCK_STRIPES)];
+    }
+
+    private ThreadPoolExecutor getWorkerExecutor() {
+        if (workerExecutor == null) {
+            synchronized (this) {
+                if (workerExecutor == null) {
+                    // 队列满时由提交线程执行，形成背压而不是拒绝
+                    workerExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity), namedThreadFactory("batch-approval-"),
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+                }
+            }
+        }
+        return workerExecutor;
+    }
+
+    private ExecutorService getJobExecutor() {
+        if (jobExecutor == null) {
+            synchronized (this) {
+                if (jobExecutor == null) {
+                    jobExecutor = Executors.newFixedThreadPool(2, namedThreadFactory("batch-approval-job-"));
+                }
+            }
+        }
+        return jobExecutor;
+    }
+
+    private void registerJob(BatchApprovalJob job) {
+        synchronized (jobs) {
+            jobs.put(job.getJobId(), job);
+            Iterator<BatchApprovalJob> iterator = jobs.values().iterator();
+            while (jobs.size() > maxJobs && iterator.hasNext()) {
+                if (!BatchApprovalJob.STATUS_RUNNING.equals(iterator.next().getStatus())) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
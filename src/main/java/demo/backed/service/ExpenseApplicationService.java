@@ -9,18 +9,23 @@ import demo.backed.repository.ExpenseItemRepository;
 import demo.backed.util.ApplicationNumberGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 import javax.persistence.criteria.Predicate;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.stream.Collectors;
 
 
 /**
@@ -46,6 +51,15 @@ public class ExpenseApplicationService {
     @Autowired
     private WorkflowIntegrationService workflowIntegrationService;
     
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    /**
+     * 批量提交时每个事务处理的申请单数
+     */
+    @Value("${app.expense.batch-submit.chunk-size:50}")
+    private int batchSubmitChunkSize = 50;
+    
     /**
      * 创建费用申请
      */
@@ -130,6 +144,101 @@ public class ExpenseApplicationService {
         return convertToDTO(savedApplication, items);
     }
     
+    /**
+     * 批量提交审批
+     * 按 chunk-size 分段，每段一个独立事务：一次查询申请单及明细，校验不通过的单据直接记为失败，
+     * 其余单据批量启动工作流并批量更新状态。某一段整体失败时回退为逐条提交，只有出错的单据记为失败。
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BatchResult submitForApprovalBatch(List<Long> applicationIds) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(applicationIds));
+        BatchResult result = new BatchResult(ids.size());
+        result.setOperationType("BATCH_SUBMIT");
+        long start = System.currentTimeMillis();
+        log.info("批量提交费用申请审批，数量: {}", ids.size());
+        
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        int chunkSize = Math.max(batchSubmitChunkSize, 1);
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<Long> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            try {
+                mergeOutcome(result, transaction.execute(status -> submitChunk(chunk)));
+            } catch (Exception e) {
+                log.warn("批量提交分段失败，改为逐条提交，分段大小: {}, 原因: {}", chunk.size(), e.getMessage());
+                for (Long id : chunk) {
+                    try {
+                        mergeOutcome(result, transaction.execute(status -> submitChunk(Collections.singletonList(id))));
+                    } catch (Exception itemError) {
+                        log.error("提交费用申请失败，申请ID: {}", id, itemError);
+                        result.addFailure(id, "申请" + id + ": " + itemError.getMessage());
+                    }
+                }
+            }
+        }
+        
+        log.info("批量提交完成，成功: {}, 失败: {}, 耗时: {}ms",
+                result.getSuccessCount(), result.getFailureCount(), System.currentTimeMillis() - start);
+        return result;
+    }
+    
+    /**
+     * 在当前事务中提交一段申请单
+     *
+     * @return 申请ID到失败原因的映射，原因为null表示提交成功
+     */
+    private Map<Long, String> submitChunk(List<Long> ids) {
+        Map<Long, String> outcome = new LinkedHashMap<>();
+        Map<Long, ExpenseApplication> applications = new HashMap<>();
+        for (ExpenseApplication application : applicationRepository.findWithItemsByIdIn(ids)) {
+            applications.put(application.getId(), application);
+        }
+        
+        List<ExpenseApplication> submittable = new ArrayList<>();
+        for (Long id : ids) {
+            ExpenseApplication application = applications.get(id);
+            if (application == null) {
+                outcome.put(id, "申请单不存在，ID: " + id);
+                continue;
+            }
+            if (!application.canSubmitForApproval()) {
+                outcome.put(id, "当前状态不允许提交审批: " + application.getStatus().getDescription());
+                continue;
+            }
+            try {
+                application.validateForSubmission();
+            } catch (RuntimeException e) {
+                outcome.put(id, e.getMessage());
+                continue;
+            }
+            submittable.add(application);
+        }
+        
+        if (!submittable.isEmpty()) {
+            List<String> workflowInstanceIds = workflowIntegrationService.startExpenseApprovalWorkflows(submittable);
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = 0; i < submittable.size(); i++) {
+                ExpenseApplication application = submittable.get(i);
+                application.setStatus(ApplicationStatus.SUBMITTED);
+                application.setSubmitTime(now);
+                application.setWorkflowInstanceId(workflowInstanceIds.get(i));
+                outcome.put(application.getId(), null);
+            }
+            applicationRepository.saveAll(submittable);
+        }
+        return outcome;
+    }
+    
+    private void mergeOutcome(BatchResult result, Map<Long, String> outcome) {
+        outcome.forEach((id, error) -> {
+            if (error == null) {
+                result.addSuccess(id);
+            } else {
+                result.addFailure(id, "申请" + id + ": " + error);
+            }
+        });
+    }
+    
     /**
      * 更新申请状态（由工作流回调）
      */
@@ -150,6 +259,7 @@ public class ExpenseApplicationService {
     
     /**
      * 分页查询费用申请
+     * 本页的费用明细一次查询后按申请单分组；查询条件 includeItems=false 时只返回汇总字段，不查询明细
      */
     @Transactional(readOnly = true)
     public Page<ExpenseApplicationDTO> findApplications(ExpenseQueryDTO queryDto, Pageable pageable) {
@@ -158,10 +268,20 @@ public class ExpenseApplicationService {
         Specification<ExpenseApplication> spec = buildSpecification(queryDto);
         Page<ExpenseApplication> applications = applicationRepository.findAll(spec, pageable);
         
-        return applications.map(app -> {
-            List<ExpenseItem> items = itemRepository.findByApplicationIdOrderBySortOrder(app.getId());
-            return convertToDTO(app, items);
-        });
+        if (Boolean.FALSE.equals(queryDto.getIncludeItems())) {
+            return applications.map(app -> convertToDTO(app, null));
+        }
+        
+        List<Long> applicationIds = applications.getContent().stream()
+            .map(ExpenseApplication::getId)
+            .collect(Collectors.toList());
+        Map<Long, List<ExpenseItem>> itemsByApplication = applicationIds.isEmpty()
+            ? Collections.emptyMap()
+            : itemRepository.findByApplicationIdIn(applicationIds).stream()
+                .collect(Collectors.groupingBy(ExpenseItem::getApplicationId));
+        
+        return applications.map(app -> convertToDTO(app,
+            itemsByApplication.getOrDefault(app.getId(), Collections.emptyList())));
     }
     
     /**
@@ -285,6 +405,8 @@ public class ExpenseApplicationService {
     
     /**
      * 转换实体为DTO
+     *
+     * @param items 费用明细，为null时不填充明细（列表汇总模式）
      */
     private ExpenseApplicationDTO convertToDTO(ExpenseApplication application, List<ExpenseItem> items) {
         ExpenseApplicationDTO dto = new ExpenseApplicationDTO();
@@ -306,6 +428,10 @@ public class ExpenseApplicationService {
         dto.setCreatedBy(application.getCreatedBy());
         dto.setUpdatedBy(application.getUpdatedBy());
         
+        if (items == null) {
+            return dto;
+        }
+        
         // 转换明细
         List<ExpenseItemDTO> itemDTOs = new ArrayList<>();
         for (ExpenseItem item : items) {
@@ -39,6 +39,7 @@ public class KeycloakUserSyncService {
     
     private final UserRepository userRepository;
     private final Keycloak keycloakAdmin;
+    private final ApproverDirectory approverDirectory;
     
     @Value("${keycloak.realm}")
     private String realmName;
@@ -211,6 +212,8 @@ public class KeycloakUserSyncService {
         
         // 更新用户信息
         boolean updated = false;
+        // 新用户或部门/职位/类型/姓名变化会影响审批人解析
+        boolean routingChanged = user.getId() == null;
         
         if (StringUtils.hasText(employeeId) && !employeeId.equals(user.getEmployeeId())) {
             user.setEmployeeId(employeeId);
@@ -220,25 +223,30 @@ public class KeycloakUserSyncService {
         if (StringUtils.hasText(name) && !name.equals(user.getUserName())) {
             user.setUserName(name);
             updated = true;
+            routingChanged = true;
         } else if (StringUtils.hasText(username) && !username.equals(user.getUserName())) {
             user.setUserName(username);
             updated = true;
+            routingChanged = true;
         }
         
         if (StringUtils.hasText(department) && !department.equals(user.getDepartment())) {
             user.setDepartment(department);
             updated = true;
+            routingChanged = true;
         }
         
         if (StringUtils.hasText(position) && !position.equals(user.getPosition())) {
             user.setPosition(position);
             updated = true;
+            routingChanged = true;
         }
         
         String determinedUserType = StringUtils.hasText(userType) ? userType : determineUserType(jwt);
         if (!determinedUserType.equals(user.getUserType())) {
             user.setUserType(determinedUserType);
             updated = true;
+            routingChanged = true;
         }
         
         // 确保Keycloak ID正确
@@ -257,6 +265,9 @@ public class KeycloakUserSyncService {
         }
         
         User savedUser = userRepository.save(user);
+        if (routingChanged) {
+            approverDirectory.invalidate();
+        }
         
         if (updated) {
             log.info("用户信息已更新: {}", email);
@@ -0,0 +1,64 @@
+package demo.backed.service;
+
+import org.flowable.common.engine.api.variable.VariableContainer;
+import org.flowable.common.engine.impl.javax.el.ELContext;
+import org.flowable.common.engine.impl.javax.el.ELResolver;
+import org.flowable.engine.delegate.DelegateExecution;
+
+import java.beans.FeatureDescriptor;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+/**
+ * 旧审批人变量的表达式解析
+ * 发起流程时已不再写入 managerId 等审批人变量，但改写前部署的流程定义仍以 ${managerId} 分配任务。
+ * 该解析器排在流程变量和Spring Bean之后：流程变量中有同名审批人（旧流程实例）时仍用变量，
+ * 没有时交给 ApproverResolver 在任务创建时解析，旧定义不需要重新部署。
+ */
+public class LegacyApproverELResolver extends ELResolver {
+
+    private final Supplier<ApproverResolver> approverResolver;
+
+    public LegacyApproverELResolver(Supplier<ApproverResolver> approverResolver) {
+        this.approverResolver = approverResolver;
+    }
+
+    @Override
+    public Object getValue(ELContext context, Object base, Object property) {
+        if (base != null || !(property instanceof String) || !ApproverResolver.isLegacyAssignee((String) property)) {
+            return null;
+        }
+        Object container = context.getContext(VariableContainer.class);
+        if (!(container instanceof DelegateExecution)) {
+            return null;
+        }
+        String approverId = approverResolver.get().resolveLegacy((DelegateExecution) container, (String) property);
+        context.setPropertyResolved(true);
+        return approverId;
+    }
+
+    @Override
+    public Class<?> getType(ELContext context, Object base, Object property) {
+        return null;
+    }
+
+    @Override
+    public void setValue(ELContext context, Object base, Object property, Object value) {
+        // 只读
+    }
+
+    @Override
+    public boolean isReadOnly(ELContext context, Object base, Object property) {
+        return true;
+    }
+
+    @Override
+    public Iterator<FeatureDescriptor> getFeatureDescriptors(ELContext context, Object base) {
+        return null;
+    }
+
+    @Override
+    public Class<?> getCommonPropertyType(ELContext context, Object base) {
+        return Object.class;
+    }
+}
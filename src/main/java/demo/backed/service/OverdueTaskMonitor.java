@@ -0,0 +1,130 @@
+package demo.backed.service;
+
+import demo.backed.repository.TaskInboxRepository;
+import demo.backed.util.HashedTimerWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 待办逾期监控
+ * 有办理期限的待办登记在进程内的哈希时间轮上：启动时从待办投影装入一次，之后由任务创建事件登记、
+ * 任务关闭事件取消，定时推进时间轮只处理到期的条目，不轮询数据库。
+ * 到期的待办由 TaskInboxService.markOverdue 置逾期标记、更新统计并推送。
+ */
+@Service
+@Slf4j
+public class OverdueTaskMonitor {
+
+    @Autowired
+    private TaskInboxRepository taskInboxRepository;
+
+    @Autowired
+    private TaskInboxService taskInboxService;
+
+    /**
+     * 时间轮刻度（毫秒），同时是推进间隔，逾期检测的精度为一个刻度
+     */
+    @Value("${app.workflow.overdue.tick-millis:60000}")
+    private long tickMillis = 60000;
+
+    /**
+     * 时间轮槽位数，一圈覆盖 tick-millis * wheel-size 毫秒，超出一圈的条目在槽位中等待若干圈
+     */
+    @Value("${app.workflow.overdue.wheel-size:1024}")
+    private int wheelSize = 1024;
+
+    private volatile HashedTimerWheel<String> wheel;
+
+    /**
+     * 启动时装入待办投影中有办理期限且尚未逾期的任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOpenTasks() {
+        List<Object[]> dueDates = taskInboxRepository.findOpenDueDates();
+        HashedTimerWheel<String> timerWheel = getWheel();
+        for (Object[] row : dueDates) {
+            timerWheel.schedule((String) row[0], toMillis((LocalDateTime) row[1]));
+        }
+        log.info("⏰ 逾期监控已装入待办 {} 条", dueDates.size());
+    }
+
+    /**
+     * 登记（或更新）任务的办理期限
+     */
+    public void schedule(String taskId, LocalDateTime dueDate) {
+        if (taskId == null || dueDate == null) {
+            return;
+        }
+        getWheel().schedule(taskId, toMillis(dueDate));
+    }
+
+    /**
+     * 任务已关闭，取消登记
+     */
+    public void cancel(String taskId) {
+        if (taskId != null) {
+            getWheel().cancel(taskId);
+        }
+    }
+
+    /**
+     * 推进时间轮，处理到期的待办
+     *
+     * @return 本次标记为逾期的待办数
+     */
+    @Scheduled(initialDelayString = "${app.workflow.overdue.tick-millis:60000}",
+               fixedRateString = "${app.workflow.overdue.tick-millis:60000}")
+    public int tick() {
+        List<String> expired = getWheel().advance(System.currentTimeMillis());
+        int marked = 0;
+        for (String taskId : expired) {
+            try {
+                if (taskInboxService.markOverdue(taskId)) {
+                    marked++;
+                }
+            } catch (Exception e) {
+                log.error("❌ 标记待办逾期失败，任务ID: {}", taskId, e);
+            }
+        }
+        if (marked > 0) {
+            log.info("⏰ 本次推进标记逾期待办 {} 条", marked);
+        }
+        return marked;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("scheduledTasks", getWheel().size());
+        status.put("tickMillis", tickMillis);
+        status.put("wheelSize", wheelSize);
+        return status;
+    }
+
+    private HashedTimerWheel<String> getWheel() {
+        HashedTimerWheel<String> timerWheel = wheel;
+        if (timerWheel == null) {
+            synchronized (this) {
+                if (wheel == null) {
+                    wheel = new HashedTimerWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+                }
+                timerWheel = wheel;
+            }
+        }
+        return timerWheel;
+    }
+
+    private long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,159 @@
+package demo.backed.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.flowable.bpmn.model.*;
+import org.flowable.bpmn.model.Process;
+import org.flowable.engine.RepositoryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 流程定义图分析
+ * 每个已部署的流程定义只解析一次BPMN模型，预先算出用户任务的顺序（流程追踪的步骤）
+ * 和每个用户任务上游可达的用户任务（可打回目标）。
+ * 流程定义部署后不可变，结果按processDefinitionId常驻缓存。
+ */
+@Service
+@Slf4j
+public class ProcessGraphService {
+
+    @Autowired
+    private RepositoryService repositoryService;
+
+    private final ConcurrentHashMap<String, ProcessGraph> graphs = new ConcurrentHashMap<>();
+
+    /**
+     * 获取用户任务上游可达的用户任务（不含自身）
+     *
+     * @param processDefinitionId 流程定义ID
+     * @param activityId          当前用户任务的节点Key
+     */
+    public Set<String> getUpstreamUserTasks(String processDefinitionId, String activityId) {
+        return getGraph(processDefinitionId).predecessors.getOrDefault(activityId, Collections.emptySet());
+    }
+
+    /**
+     * 获取流程定义中的用户任务，按从开始事件出发的广度优先顺序排列，
+     * 分支上的用户任务都会列出，未从开始事件连通的（如子流程内的）排在最后
+     */
+    public List<UserTaskNode> getUserTaskSequence(String processDefinitionId) {
+        return getGraph(processDefinitionId).userTasks;
+    }
+
+    /**
+     * 获取流程名称
+     */
+    public String getProcessName(String processDefinitionId) {
+        return getGraph(processDefinitionId).processName;
+    }
+
+    private ProcessGraph getGraph(String processDefinitionId) {
+        return graphs.computeIfAbsent(processDefinitionId, this::buildGraph);
+    }
+
+    private ProcessGraph buildGraph(String processDefinitionId) {
+        BpmnModel bpmnModel = repositoryService.getBpmnModel(processDefinitionId);
+        if (bpmnModel == null) {
+            throw new RuntimeException("流程定义不存在: " + processDefinitionId);
+        }
+        Map<String, Set<String>> predecessors = new HashMap<>();
+        List<UserTaskNode> userTasks = new ArrayList<>();
+        for (Process process : bpmnModel.getProcesses()) {
+            for (UserTask userTask : orderUserTasks(process)) {
+                Set<String> upstream = collectUpstreamUserTasks(process, userTask);
+                upstream.remove(userTask.getId());
+                predecessors.put(userTask.getId(), Collections.unmodifiableSet(upstream));
+                userTasks.add(new UserTaskNode(userTask.getId(), userTask.getName(), userTask.getDocumentation()));
+            }
+        }
+        Process mainProcess = bpmnModel.getMainProcess();
+        String processName = mainProcess != null ? mainProcess.getName() : null;
+        log.info("🗺️ 已解析流程定义 {} 的流程图，用户任务 {} 个", processDefinitionId, userTasks.size());
+        return new ProcessGraph(predecessors, Collections.unmodifiableList(userTasks), processName);
+    }
+
+    /**
+     * 从开始事件沿出线广度优先遍历，得到用户任务的先后顺序
+     */
+    private List<UserTask> orderUserTasks(Process process) {
+        Set<String> visited = new HashSet<>();
+        Deque<FlowNode> pending = new ArrayDeque<>();
+        for (StartEvent startEvent : process.findFlowElementsOfType(StartEvent.class, false)) {
+            if (visited.add(startEvent.getId())) {
+                pending.add(startEvent);
+            }
+        }
+        Set<UserTask> ordered = new LinkedHashSet<>();
+        while (!pending.isEmpty()) {
+            FlowNode node = pending.poll();
+            if (node instanceof UserTask) {
+                ordered.add((UserTask) node);
+            }
+            for (SequenceFlow flow : node.getOutgoingFlows()) {
+                FlowElement target = process.getFlowElement(flow.getTargetRef(), true);
+                if (target instanceof FlowNode && visited.add(target.getId())) {
+                    pending.add((FlowNode) target);
+                }
+            }
+        }
+        ordered.addAll(process.findFlowElementsOfType(UserTask.class, true));
+        return new ArrayList<>(ordered);
+    }
+
+    /**
+     * 沿入线反向遍历，穿过网关等非用户任务节点，收集所有上游用户任务
+     */
+    private Set<String> collectUpstreamUserTasks(Process process, FlowNode start) {
+        Set<String> userTasks = new LinkedHashSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<FlowNode> pending = new ArrayDeque<>();
+        pending.push(start);
+        visited.add(start.getId());
+        while (!pending.isEmpty()) {
+            FlowNode node = pending.pop();
+            for (SequenceFlow flow : node.getIncomingFlows()) {
+                FlowElement source = process.getFlowElement(flow.getSourceRef(), true);
+                if (!(source instanceof FlowNode) || !visited.add(source.getId())) {
+                    continue;
+                }
+                if (source instanceof UserTask) {
+                    userTasks.add(source.getId());
+                }
+                pending.push((FlowNode) source);
+            }
+        }
+        return userTasks;
+    }
+
+    /**
+     * 流程定义中的用户任务
+     */
+    @Getter
+    public static class UserTaskNode {
+        private final String id;
+        private final String name;
+        private final String documentation;
+
+        public UserTaskNode(String id, String name, String documentation) {
+            this.id = id;
+            this.name = name;
+            this.documentation = documentation;
+        }
+    }
+
+    private static class ProcessGraph {
+        final Map<String, Set<String>> predecessors;
+        final List<UserTaskNode> userTasks;
+        final String processName;
+
+        ProcessGraph(Map<String, Set<String>> predecessors, List<UserTaskNode> userTasks, String processName) {
+            this.predecessors = predecessors;
+            this.userTasks = userTasks;
+            this.processName = processName;
+        }
+    }
+}
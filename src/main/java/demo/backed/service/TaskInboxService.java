@@ -0,0 +1,506 @@
+package demo.backed.service;
+
+import demo.backed.dto.CursorPage;
+import demo.backed.dto.PendingTaskDTO;
+import demo.backed.dto.UserDTO;
+import demo.backed.entity.TaskInboxItem;
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.repository.TaskInboxRepository;
+import demo.backed.repository.WorkflowInstanceRepository;
+import demo.backed.util.TaskCursor;
+import lombok.extern.slf4j.Slf4j;
+import org.flowable.engine.TaskService;
+import org.flowable.task.api.Task;
+import org.flowable.task.api.TaskQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 待办收件箱投影服务
+ * 由流程事件监听器在任务创建、分配、完成及流程结束时维护 t_poc_task_inbox，
+ * 待办列表只需一次按审批人索引的分页查询
+ */
+@Service
+@Transactional
+@Slf4j
+public class TaskInboxService {
+
+    private static final int REBUILD_PAGE_SIZE = 500;
+
+    @Autowired
+    private TaskInboxRepository taskInboxRepository;
+
+    @Autowired
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private ApprovalStatisticsService approvalStatisticsService;
+
+    @Autowired
+    private ApprovalEventStreamService approvalEventStreamService;
+    
+    /**
+     * 精简流程变量：展示字段从实例记录读取，重建时不再加载流程变量
+     */
+    @Value("${app.workflow.slim-variables.enabled:true}")
+    private boolean slimVariablesEnabled = true;
+
+    /**
+     * 任务创建：写入（或覆盖）投影行
+     *
+     * @param task      新建的任务
+     * @param variables 任务可见的流程变量
+     */
+    public void onTaskCreated(Task task, Map<String, Object> variables) {
+        onTaskCreated(task, variables, null);
+    }
+
+    /**
+     * 任务创建：写入（或覆盖）投影行
+     *
+     * @param task      新建的任务
+     * @param variables 任务可见的流程变量
+     * @param instance  调用方已定位到的流程实例记录，为null时按业务键查找
+     */
+    public void onTaskCreated(Task task, Map<String, Object> variables, WorkflowInstance instance) {
+        Map<String, Object> vars = variables != null ? variables : Collections.emptyMap();
+
+        if (instance == null) {
+            instance = findInstance(task.getProcessInstanceId(), vars);
+        }
+        Long assigneeId = parseUserId(task.getAssignee());
+        Map<Long, UserDTO> userMap = assigneeId != null
+            ? userService.getUsersByIds(Collections.singleton(assigneeId)) : Collections.emptyMap();
+
+        Optional<TaskInboxItem> existing = taskInboxRepository.findByTaskId(task.getId());
+        TaskInboxItem item = existing.orElseGet(TaskInboxItem::new);
+        if (existing.isPresent()) {
+            approvalStatisticsService.onTaskClosed(item.getAssigneeId(), item.getProxyId(), item.getPriority());
+            clearOverdue(item);
+        }
+        fillItem(item, task, vars, instance, userMap);
+        taskInboxRepository.save(item);
+        approvalStatisticsService.onTaskOpened(item.getAssigneeId(), item.getProxyId(), item.getPriority());
+        if (Boolean.TRUE.equals(item.getOverdue())) {
+            approvalStatisticsService.adjustOverdue(item.getAssigneeId(), 1);
+        }
+        notifyUsers(item, ApprovalEventStreamService.EVENT_TASK_CREATED);
+        log.debug("📥 待办投影已写入，任务ID: {}, 审批人: {}", task.getId(), task.getAssignee());
+    }
+
+    /**
+     * 任务分配/转办：更新投影行的审批人
+     */
+    public void onTaskAssigned(Task task) {
+        Optional<TaskInboxItem> existing = taskInboxRepository.findByTaskId(task.getId());
+        if (!existing.isPresent()) {
+            // 任务创建事件之前触发的分配事件，由随后的创建事件写入完整数据
+            return;
+        }
+
+        TaskInboxItem item = existing.get();
+        Long assigneeId = parseUserId(task.getAssignee());
+        if (Objects.equals(assigneeId, item.getAssigneeId())) {
+            return;
+        }
+        approvalStatisticsService.onTaskClosed(item.getAssigneeId(), null, item.getPriority());
+        approvalStatisticsService.onTaskOpened(assigneeId, null, item.getPriority());
+        if (Boolean.TRUE.equals(item.getOverdue())) {
+            approvalStatisticsService.adjustOverdue(item.getAssigneeId(), -1);
+            approvalStatisticsService.adjustOverdue(assigneeId, 1);
+        }
+        approvalEventStreamService.publishAfterCommit(item.getAssigneeId(),
+            ApprovalEventStreamService.EVENT_TASK_REMOVED, toEventPayload(item));
+        approvalEventStreamService.publishAfterCommit(assigneeId,
+            ApprovalEventStreamService.EVENT_TASK_CREATED, toEventPayload(item));
+        item.setAssigneeId(assigneeId);
+        item.setAssigneeName(resolveUserName(assigneeId,
+            assigneeId != null ? userService.getUsersByIds(Collections.singleton(assigneeId)) : Collections.emptyMap()));
+        taskInboxRepository.save(item);
+        log.debug("📥 待办投影审批人已更新，任务ID: {}, 审批人: {}", task.getId(), task.getAssignee());
+    }
+
+    /**
+     * 任务完成或删除：移除投影行
+     * 完成事件之后还会收到同一任务的删除事件，只有投影行仍存在时才扣减统计和推送
+     *
+     * @param completed true 表示任务办理完成，false 表示被删除（打回、流程终止等）
+     */
+    public void onTaskRemoved(String taskId, boolean completed) {
+        if (taskId == null) {
+            return;
+        }
+        taskInboxRepository.findByTaskId(taskId).ifPresent(item -> {
+            taskInboxRepository.delete(item);
+            approvalStatisticsService.onTaskClosed(item.getAssigneeId(), item.getProxyId(), item.getPriority());
+            clearOverdue(item);
+            notifyUsers(item, completed
+                ? ApprovalEventStreamService.EVENT_TASK_COMPLETED : ApprovalEventStreamService.EVENT_TASK_REMOVED);
+        });
+    }
+
+    /**
+     * 流程完成或取消：移除该流程的全部投影行
+     */
+    public void onProcessEnded(String processInstanceId) {
+        if (processInstanceId == null) {
+            return;
+        }
+        List<TaskInboxItem> items = taskInboxRepository.findByProcessInstanceId(processInstanceId);
+        if (items.isEmpty()) {
+            return;
+        }
+        taskInboxRepository.deleteAll(items);
+        items.forEach(item -> {
+            approvalStatisticsService.onTaskClosed(item.getAssigneeId(), item.getProxyId(), item.getPriority());
+            clearOverdue(item);
+            notifyUsers(item, ApprovalEventStreamService.EVENT_TASK_REMOVED);
+        });
+        log.debug("📥 流程已结束，清理待办投影 {} 条，流程实例ID: {}", items.size(), processInstanceId);
+    }
+
+    /**
+     * 待办到达办理期限：置逾期标记、审批人逾期数加一并推送
+     * 由逾期时间轮到期时调用；任务已关闭、已标记或期限被推后时忽略
+     *
+     * @return 是否标记为逾期
+     */
+    public boolean markOverdue(String taskId) {
+        Optional<TaskInboxItem> existing = taskInboxRepository.findByTaskId(taskId);
+        if (!existing.isPresent()) {
+            return false;
+        }
+        TaskInboxItem item = existing.get();
+        if (Boolean.TRUE.equals(item.getOverdue())
+            || item.getDueDate() == null || item.getDueDate().isAfter(LocalDateTime.now())) {
+            return false;
+        }
+        item.setOverdue(true);
+        taskInboxRepository.save(item);
+        approvalStatisticsService.adjustOverdue(item.getAssigneeId(), 1);
+        notifyUsers(item, ApprovalEventStreamService.EVENT_TASK_OVERDUE);
+        log.info("⏰ 待办已逾期，任务ID: {}, 审批人: {}, 办理期限: {}", taskId, item.getAssigneeId(), item.getDueDate());
+        return true;
+    }
+
+    /**
+     * 分页查询用户已逾期的待办，按办理期限先后
+     */
+    @Transactional(readOnly = true)
+    public Page<PendingTaskDTO> getOverdueTasks(Long userId, Pageable pageable) {
+        Page<TaskInboxItem> page = taskInboxRepository.findOverdue(userId, pageable);
+        List<PendingTaskDTO> dtos = page.getContent().stream()
+            .map(item -> toPendingTaskDTO(item, userId))
+            .collect(Collectors.toList());
+        return new PageImpl<>(dtos, pageable, page.getTotalElements());
+    }
+
+    /**
+     * 分页查询用户待办（本人审批或作为代理人）
+     */
+    @Transactional(readOnly = true)
+    public Page<PendingTaskDTO> getInbox(Long userId, Pageable pageable) {
+        Page<TaskInboxItem> page = taskInboxRepository.findInbox(userId, pageable);
+        List<PendingTaskDTO> dtos = page.getContent().stream()
+            .map(item -> toPendingTaskDTO(item, userId))
+            .collect(Collectors.toList());
+        return new PageImpl<>(dtos, pageable, page.getTotalElements());
+    }
+
+    /**
+     * 游标分页查询用户待办，按（创建时间, 任务ID）倒序定位，不做OFFSET扫描和总数统计
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<PendingTaskDTO> getInboxByCursor(Long userId, String cursor, int size) {
+        TaskCursor position = TaskCursor.decode(cursor);
+        // 多取一条用于判断是否还有下一页
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<TaskInboxItem> items = position == null
+            ? taskInboxRepository.findInboxFirst(userId, limit)
+            : taskInboxRepository.findInboxAfter(userId,
+                LocalDateTime.ofInstant(position.getTime().toInstant(), ZoneId.systemDefault()),
+                position.getTaskId(), limit);
+
+        boolean hasMore = items.size() > size;
+        List<TaskInboxItem> pageItems = hasMore ? items.subList(0, size) : items;
+        String nextCursor = null;
+        if (hasMore) {
+            TaskInboxItem last = pageItems.get(pageItems.size() - 1);
+            nextCursor = TaskCursor.encode(
+                Date.from(last.getTaskCreateTime().atZone(ZoneId.systemDefault()).toInstant()), last.getTaskId());
+        }
+
+        List<PendingTaskDTO> dtos = pageItems.stream()
+            .map(item -> toPendingTaskDTO(item, userId))
+            .collect(Collectors.toList());
+        return new CursorPage<>(dtos, size, nextCursor, hasMore);
+    }
+
+    /**
+     * 按业务键（费用申请ID或业务ID）查找用户自己的待办，一次索引查询
+     */
+    @Transactional(readOnly = true)
+    public Optional<PendingTaskDTO> findUserTask(Long userId, String businessKey) {
+        List<TaskInboxItem> items = taskInboxRepository
+            .findUserTaskByBusinessKey(userId, businessKey, PageRequest.of(0, 1));
+        return items.stream().findFirst().map(item -> toPendingTaskDTO(item, userId));
+    }
+
+    /**
+     * 从Flowable运行时任务重建投影表
+     * 用于已有部署首次上线投影表，或投影与引擎出现偏差时的修复
+     *
+     * @return 重建后的投影行数
+     */
+    public int rebuild() {
+        log.info("🔄 开始重建待办投影");
+        taskInboxRepository.deleteAllInBatch();
+
+        int total = 0;
+        int offset = 0;
+        while (true) {
+            TaskQuery taskQuery = taskService.createTaskQuery().active();
+            if (!slimVariablesEnabled) {
+                taskQuery.includeProcessVariables();
+            }
+            List<Task> tasks = taskQuery
+                .orderByTaskCreateTime().asc()
+                .orderByTaskId().asc()
+                .listPage(offset, REBUILD_PAGE_SIZE);
+            if (tasks.isEmpty()) {
+                break;
+            }
+
+            Set<String> processInstanceIds = tasks.stream()
+                .map(Task::getProcessInstanceId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+            Map<String, WorkflowInstance> instanceMap = workflowInstanceRepository
+                .findByProcessInstanceIdIn(processInstanceIds).stream()
+                .collect(Collectors.toMap(WorkflowInstance::getProcessInstanceId, i -> i, (a, b) -> a));
+            Set<Long> assigneeIds = tasks.stream()
+                .map(task -> parseUserId(task.getAssignee()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+            Map<Long, UserDTO> userMap = userService.getUsersByIds(assigneeIds);
+
+            List<TaskInboxItem> items = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                Map<String, Object> vars = task.getProcessVariables() != null
+                    ? task.getProcessVariables() : Collections.emptyMap();
+                TaskInboxItem item = new TaskInboxItem();
+                fillItem(item, task, vars, instanceMap.get(task.getProcessInstanceId()), userMap);
+                items.add(item);
+            }
+            taskInboxRepository.saveAll(items);
+
+            total += items.size();
+            offset += tasks.size();
+            if (tasks.size() < REBUILD_PAGE_SIZE) {
+                break;
+            }
+        }
+
+        // 投影重建后统计以引擎为准重新对账
+        approvalStatisticsService.reconcile();
+
+        log.info("✅ 待办投影重建完成，共 {} 条", total);
+        return total;
+    }
+
+    /**
+     * 逾期待办离开审批人时扣减逾期数
+     */
+    private void clearOverdue(TaskInboxItem item) {
+        if (Boolean.TRUE.equals(item.getOverdue())) {
+            approvalStatisticsService.adjustOverdue(item.getAssigneeId(), -1);
+        }
+    }
+
+    /**
+     * 事务提交后向审批人和代理人推送待办变化
+     */
+    private void notifyUsers(TaskInboxItem item, String eventType) {
+        Map<String, Object> payload = toEventPayload(item);
+        approvalEventStreamService.publishAfterCommit(item.getAssigneeId(), eventType, payload);
+        if (item.getProxyId() != null && !item.getProxyId().equals(item.getAssigneeId())) {
+            approvalEventStreamService.publishAfterCommit(item.getProxyId(), eventType, payload);
+        }
+    }
+
+    private Map<String, Object> toEventPayload(TaskInboxItem item) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("flowableTaskId", item.getTaskId());
+        payload.put("processInstanceId", item.getProcessInstanceId());
+        payload.put("instanceId", item.getInstanceId());
+        payload.put("taskId", item.getApplicationId() != null ? item.getApplicationId() : item.getBusinessId());
+        payload.put("applicationNumber", item.getApplicationNumber());
+        payload.put("title", item.getTitle());
+        payload.put("taskName", item.getNodeName());
+        return payload;
+    }
+
+    /**
+     * 用任务、流程变量和工作流实例填充投影行
+     */
+    private void fillItem(TaskInboxItem item, Task task, Map<String, Object> vars,
+                          WorkflowInstance instance, Map<Long, UserDTO> userMap) {
+        item.setTaskId(task.getId());
+        item.setProcessInstanceId(task.getProcessInstanceId());
+        item.setNodeKey(task.getTaskDefinitionKey());
+        item.setNodeName(task.getName());
+        // 游标分页以创建时间定位，列不允许为空
+        item.setTaskCreateTime(task.getCreateTime() != null
+            ? LocalDateTime.ofInstant(task.getCreateTime().toInstant(), ZoneId.systemDefault()) : LocalDateTime.now());
+        item.setPriority(task.getPriority());
+        item.setDueDate(task.getDueDate() != null
+            ? LocalDateTime.ofInstant(task.getDueDate().toInstant(), ZoneId.systemDefault()) : null);
+        item.setOverdue(item.getDueDate() != null && item.getDueDate().isBefore(LocalDateTime.now()));
+
+        Long assigneeId = parseUserId(task.getAssignee());
+        item.setAssigneeId(assigneeId);
+        item.setAssigneeName(resolveUserName(assigneeId, userMap));
+
+        // 展示字段以实例记录为准，精简模式下流程变量中只有路由变量；实例记录缺失时回退到流程变量
+        item.setBusinessType(toStringOrNull(vars.get("businessType")));
+        item.setBusinessId(toStringOrNull(vars.get("businessId")));
+        item.setApplicationId(toStringOrNull(vars.get("applicationId")));
+        item.setApplicationNumber(toStringOrNull(vars.get("applicationNumber")));
+        item.setApplicantName(toStringOrNull(vars.get("applicantName")));
+        item.setDepartment(toStringOrNull(vars.get("department")));
+        Object applicantIdVar = vars.get("applicantId");
+        item.setApplicantId(applicantIdVar != null ? parseUserId(applicantIdVar.toString()) : null);
+
+        Object amountObj = vars.get("amount");
+        if (amountObj != null) {
+            item.setAmount(amountObj instanceof BigDecimal
+                ? (BigDecimal) amountObj : new BigDecimal(amountObj.toString()));
+        }
+
+        if (instance != null) {
+            item.setInstanceId(instance.getId());
+            item.setTitle(instance.getTitle());
+            item.setBusinessType(firstNonNull(instance.getBusinessType(), item.getBusinessType()));
+            item.setBusinessId(firstNonNull(instance.getBusinessId(), item.getBusinessId()));
+            item.setApplicationId(firstNonNull(toStringOrNull(instance.getApplicationId()), item.getApplicationId()));
+            item.setApplicationNumber(firstNonNull(instance.getApplicationNumber(), item.getApplicationNumber()));
+            item.setApplicantId(firstNonNull(instance.getApplicantId(), item.getApplicantId()));
+            item.setApplicantName(firstNonNull(instance.getApplicantName(), item.getApplicantName()));
+            item.setDepartment(firstNonNull(instance.getDepartment(), item.getDepartment()));
+            item.setAmount(firstNonNull(instance.getAmount(), item.getAmount()));
+        }
+    }
+
+    private static <T> T firstNonNull(T preferred, T fallback) {
+        return preferred != null ? preferred : fallback;
+    }
+
+    /**
+     * 查找任务所属的工作流实例
+     * 流程启动时实例记录尚未回写processInstanceId，因此优先按业务类型+业务ID定位进行中的实例
+     */
+    private WorkflowInstance findInstance(String processInstanceId, Map<String, Object> vars) {
+        Object businessType = vars.get("businessType");
+        Object businessId = vars.get("businessId");
+        if (businessType != null && businessId != null) {
+            Optional<WorkflowInstance> instance = workflowInstanceRepository
+                .findActiveByBusinessKey(businessType.toString(), businessId.toString());
+            if (instance.isPresent()) {
+                return instance.get();
+            }
+        }
+        if (processInstanceId == null) {
+            return null;
+        }
+        return workflowInstanceRepository.findByProcessInstanceId(processInstanceId).orElse(null);
+    }
+
+    /**
+     * 投影行转换为待办DTO，字段含义与 WorkflowService 待办列表保持一致
+     */
+    private PendingTaskDTO toPendingTaskDTO(TaskInboxItem item, Long userId) {
+        PendingTaskDTO dto = new PendingTaskDTO();
+
+        dto.setFlowableTaskId(item.getTaskId());
+        dto.setProcessInstanceId(item.getProcessInstanceId());
+        dto.setInstanceId(item.getInstanceId());
+        dto.setTaskName(item.getNodeName());
+        dto.setCurrentNodeName(item.getNodeName());
+        if (item.getTaskCreateTime() != null) {
+            Date createTime = Date.from(item.getTaskCreateTime().atZone(ZoneId.systemDefault()).toInstant());
+            dto.setSubmitTime(createTime);
+            dto.setCreateTime(createTime.toString());
+        }
+
+        dto.setTitle(item.getTitle());
+        dto.setApplicantName(item.getApplicantName());
+        dto.setDepartment(item.getDepartment());
+        dto.setBusinessType(item.getBusinessType());
+        dto.setApplicationNumber(item.getApplicationNumber());
+
+        // 🔧 优先使用费用申请ID，如果没有则使用businessId
+        String businessKey = item.getApplicationId() != null ? item.getApplicationId() : item.getBusinessId();
+        dto.setTaskId(businessKey);
+        dto.setBusinessId(businessKey);
+
+        if (item.getAmount() != null) {
+            dto.setOriginalAmount(item.getAmount());
+            dto.setAmount(item.getAmount().doubleValue());
+        }
+
+        boolean isDelegated = item.getProxyId() != null && item.getProxyId().equals(userId);
+        dto.setDelegated(isDelegated);
+        dto.setIsProxy(isDelegated);
+        dto.setAssignee(item.getAssigneeId() != null ? item.getAssigneeName() : "待分配");
+
+        dto.setStatus("pending");
+        dto.setPriority(ApprovalStatisticsService.isUrgent(item.getPriority()) ? "high" : "medium");
+        dto.setDueDate(item.getDueDate());
+        dto.setOverdue(item.getOverdue());
+        dto.setAttachmentCount(0);
+        dto.setDescription(dto.getTitle());
+
+        return dto;
+    }
+
+    private String resolveUserName(Long userId, Map<Long, UserDTO> userMap) {
+        if (userId == null) {
+            return null;
+        }
+        UserDTO user = userMap.get(userId);
+        return user != null ? user.getUserName() : "未知用户";
+    }
+
+    private Long parseUserId(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(userId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String toStringOrNull(Object value) {
+        return value != null ? value.toString() : null;
+    }
+}
@@ -40,6 +40,9 @@ public class UserService {
     @Autowired
     private OrganizationService organizationService;
     
+    @Autowired
+    private ApproverDirectory approverDirectory;
+    
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
     
     /**
@@ -77,7 +80,18 @@ public class UserService {
     public Optional<UserDTO> getUserById(Long id) {
         return userRepository.findById(id).map(this::convertToDTO);
     }
-    
+
+    /**
+     * 根据ID列表批量获取用户，返回 用户ID -> 用户 的映射
+     */
+    public Map<Long, UserDTO> getUsersByIds(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new HashMap<>();
+        }
+        return userRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(User::getId, this::convertToDTO, (a, b) -> a));
+    }
+
     /**
      * 根据工号获取用户
      */
@@ -110,6 +124,7 @@ public class UserService {
         
         // 清除组织架构树缓存
         organizationService.clearOrganizationTreeCache();
+        approverDirectory.invalidate();
         
         return convertToDTO(user);
     }
@@ -167,6 +182,7 @@ public class UserService {
         
         // 清除组织架构树缓存
         organizationService.clearOrganizationTreeCache();
+        approverDirectory.invalidate();
         
         return convertToDTO(user);
     }
@@ -185,6 +201,7 @@ public class UserService {
         
         // 清除组织架构树缓存
         organizationService.clearOrganizationTreeCache();
+        approverDirectory.invalidate();
     }
     
     /**
@@ -0,0 +1,386 @@
+package demo.backed.service;
+
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.entity.WorkflowNode;
+import lombok.extern.slf4j.Slf4j;
+import org.flowable.task.api.history.HistoricTaskInstance;
+import org.flowable.task.service.impl.persistence.entity.HistoricTaskInstanceEntityImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 工作流归档服务
+ * 定时把已结束且超过保留期的流程实例、审批节点以及 ACT_HI_TASKINST 的任务快照（含审批意见）
+ * 搬入按年分区的归档表，在线表只保留进行中和保留期内的流程；ACT_HI_* 由Flowable历史清理在
+ * 保留期+宽限期后删除（见 FlowableConfig）。已办任务和审批历史在在线数据查不到时回落到归档表。
+ */
+@Service
+@Transactional(readOnly = true)
+@Slf4j
+public class WorkflowArchiveService {
+
+    private static final String FINISHED_STATUSES = "('COMPLETED', 'REJECTED', 'TERMINATED')";
+
+    private static final String[] PARTITIONED_TABLES = {
+        "t_poc_workflow_instances_archive",
+        "t_poc_workflow_nodes_archive",
+        "t_poc_workflow_task_archive"
+    };
+
+    private static final String INSTANCE_COLUMNS = "id, process_instance_id, business_type, business_id, title, status, " +
+        "applicant_id, applicant_name, start_time, end_time, amount, currency, application_id, application_number, " +
+        "department, variables, current_node_name, current_assignee, " +
+        "idempotency_key, created_time, updated_time, created_by, updated_by";
+
+    private static final String NODE_COLUMNS = "id, instance_id, task_id, node_key, node_name, status, assignee_id, " +
+        "assignee_name, proxy_id, proxy_name, approved_time, comment, is_returned, execution_id, due_date, " +
+        "created_time, updated_time, created_by, updated_by";
+
+    private static final String TASK_COLUMNS = "task_id, process_instance_id, task_def_key, task_name, assignee, " +
+        "create_time, end_time, duration_ms, delete_reason";
+
+    /**
+     * 归档后 ACT_HI_TASKINST 要到历史清理时才删除，期间同一任务在在线查询中仍可查到，
+     * 已办任务读取归档时跳过这些任务，避免重复展示和重复计数
+     */
+    private static final String NOT_IN_LIVE_HISTORY =
+        " AND NOT EXISTS (SELECT 1 FROM ACT_HI_TASKINST h WHERE h.ID_ = a.task_id)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 流程结束后在在线表保留的天数
+     */
+    @Value("${app.workflow.archive.after-days:365}")
+    private int archiveAfterDays = 365;
+
+    /**
+     * 每批归档的流程数，每批一个独立事务
+     */
+    @Value("${app.workflow.archive.batch-size:200}")
+    private int batchSize = 200;
+
+    /**
+     * 单次运行最多归档的批数，避免一次运行占用过长时间
+     */
+    @Value("${app.workflow.archive.max-batches:50}")
+    private int maxBatches = 50;
+
+    @Value("${app.workflow.archive.enabled:true}")
+    private boolean archiveEnabled = true;
+
+    /**
+     * 定时归档已结束的流程
+     *
+     * @return 归档的流程数
+     */
+    @Scheduled(cron = "${app.workflow.archive.cron:0 30 2 * * ?}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int archiveFinishedProcesses() {
+        if (!archiveEnabled) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        ensurePartitions(LocalDate.now().getYear());
+        ensurePartitions(LocalDate.now().getYear() + 1);
+
+        Timestamp cutoff = Timestamp.valueOf(archiveCutoff());
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        int archived = 0;
+        for (int i = 0; i < maxBatches; i++) {
+            Integer count = transaction.execute(status -> archiveBatch(cutoff));
+            if (count == null || count == 0) {
+                break;
+            }
+            archived += count;
+            if (count < batchSize) {
+                break;
+            }
+        }
+        log.info("🗄️ 工作流归档完成，归档流程数: {}, 耗时: {}ms", archived, System.currentTimeMillis() - start);
+        return archived;
+    }
+
+    /**
+     * 在线数据的保留截止时间：结束时间早于该时间的流程会被归档，
+     * 归档表中的任务结束时间也一定早于该时间
+     */
+    public LocalDateTime archiveCutoff() {
+        return LocalDateTime.now().minusDays(archiveAfterDays);
+    }
+
+    // ==================== 归档读取 ====================
+
+    /**
+     * 已归档且已从在线历史表清理的已办任务数
+     */
+    public long countHandledTasks(Long userId) {
+        Long count = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM t_poc_workflow_task_archive a WHERE assignee = ?" + NOT_IN_LIVE_HISTORY,
+            Long.class, String.valueOf(userId));
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * 已归档且已从在线历史表清理的已办任务，按结束时间倒序
+     */
+    public List<HistoricTaskInstance> findHandledTasks(Long userId, int offset, int limit) {
+        return jdbcTemplate.query(
+            "SELECT " + TASK_COLUMNS + " FROM t_poc_workflow_task_archive a WHERE assignee = ?" + NOT_IN_LIVE_HISTORY + " " +
+            "ORDER BY end_time DESC, task_id DESC LIMIT ? OFFSET ?",
+            TASK_MAPPER, String.valueOf(userId), limit, offset);
+    }
+
+    /**
+     * 已归档且已从在线历史表清理的已办任务，按游标（结束时间, 任务ID）定位，cursorTime为空时从最新一条开始
+     */
+    public List<HistoricTaskInstance> findHandledTasksBefore(Long userId, Date cursorTime, String cursorId, int limit) {
+        if (cursorTime == null) {
+            return findHandledTasks(userId, 0, limit);
+        }
+        Timestamp time = new Timestamp(cursorTime.getTime());
+        return jdbcTemplate.query(
+            "SELECT " + TASK_COLUMNS + " FROM t_poc_workflow_task_archive a WHERE assignee = ?" + NOT_IN_LIVE_HISTORY + " " +
+            "AND (end_time < ? OR (end_time = ? AND task_id < ?)) " +
+            "ORDER BY end_time DESC, task_id DESC LIMIT ?",
+            TASK_MAPPER, String.valueOf(userId), time, time, cursorId, limit);
+    }
+
+    /**
+     * 已归档流程的历史任务，按创建时间正序
+     */
+    public List<HistoricTaskInstance> findTasksByProcessInstanceId(String processInstanceId) {
+        return jdbcTemplate.query(
+            "SELECT " + TASK_COLUMNS + " FROM t_poc_workflow_task_archive WHERE process_instance_id = ? " +
+            "ORDER BY create_time",
+            TASK_MAPPER, processInstanceId);
+    }
+
+    /**
+     * 已归档流程的审批意见，按任务ID
+     */
+    public Map<String, String> findTaskComments(String processInstanceId) {
+        Map<String, String> comments = new HashMap<>();
+        jdbcTemplate.query(
+            "SELECT task_id, comment FROM t_poc_workflow_task_archive WHERE process_instance_id = ? AND comment IS NOT NULL",
+            rs -> {
+                comments.put(rs.getString(1), rs.getString(2));
+            }, processInstanceId);
+        return comments;
+    }
+
+    public Optional<WorkflowInstance> findInstanceByProcessInstanceId(String processInstanceId) {
+        return jdbcTemplate.query(
+            "SELECT " + INSTANCE_COLUMNS + " FROM t_poc_workflow_instances_archive WHERE process_instance_id = ?",
+            INSTANCE_MAPPER, processInstanceId).stream().findFirst();
+    }
+
+    /**
+     * 按业务键查找最近一次归档的流程实例
+     */
+    public Optional<WorkflowInstance> findInstanceByBusinessKey(String businessType, String businessId) {
+        return jdbcTemplate.query(
+            "SELECT " + INSTANCE_COLUMNS + " FROM t_poc_workflow_instances_archive " +
+            "WHERE business_type = ? AND business_id = ? ORDER BY start_time DESC LIMIT 1",
+            INSTANCE_MAPPER, businessType, businessId).stream().findFirst();
+    }
+
+    public List<WorkflowInstance> findInstancesByProcessInstanceIds(Collection<String> processInstanceIds) {
+        if (processInstanceIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return jdbcTemplate.query(
+            "SELECT " + INSTANCE_COLUMNS + " FROM t_poc_workflow_instances_archive " +
+            "WHERE process_instance_id IN (" + placeholders(processInstanceIds.size()) + ")",
+            INSTANCE_MAPPER, processInstanceIds.toArray());
+    }
+
+    public List<WorkflowNode> findNodesByInstanceId(Long instanceId) {
+        return jdbcTemplate.query(
+            "SELECT " + NODE_COLUMNS + " FROM t_poc_workflow_nodes_archive WHERE instance_id = ?",
+            NODE_MAPPER, instanceId);
+    }
+
+    public List<WorkflowNode> findNodesByTaskIds(Collection<String> taskIds) {
+        if (taskIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return jdbcTemplate.query(
+            "SELECT " + NODE_COLUMNS + " FROM t_poc_workflow_nodes_archive " +
+            "WHERE task_id IN (" + placeholders(taskIds.size()) + ")",
+            NODE_MAPPER, taskIds.toArray());
+    }
+
+    // ==================== 归档写入 ====================
+
+    /**
+     * 归档一批结束时间早于截止时间的流程：先复制历史任务快照和节点，再从在线表删除
+     *
+     * @return 本批归档的流程数
+     */
+    private int archiveBatch(Timestamp cutoff) {
+        List<Object[]> candidates = jdbcTemplate.query(
+            "SELECT id, process_instance_id FROM t_poc_workflow_instances " +
+            "WHERE status IN " + FINISHED_STATUSES + " AND end_time < ? ORDER BY end_time LIMIT ?",
+            (rs, rowNum) -> new Object[] {rs.getLong(1), rs.getString(2)}, cutoff, batchSize);
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        Object[] ids = candidates.stream().map(row -> row[0]).toArray();
+        Object[] processInstanceIds = candidates.stream().map(row -> row[1]).filter(Objects::nonNull).toArray();
+        Timestamp archivedTime = Timestamp.valueOf(LocalDateTime.now());
+
+        if (processInstanceIds.length > 0) {
+            jdbcTemplate.update(
+                "INSERT INTO t_poc_workflow_task_archive (" + TASK_COLUMNS + ", comment, archived_time) " +
+                "SELECT t.ID_, t.PROC_INST_ID_, t.TASK_DEF_KEY_, t.NAME_, t.ASSIGNEE_, t.START_TIME_, t.END_TIME_, " +
+                "t.DURATION_, t.DELETE_REASON_, " +
+                "(SELECT c.MESSAGE_ FROM ACT_HI_COMMENT c WHERE c.TASK_ID_ = t.ID_ AND c.TYPE_ = 'comment' " +
+                "ORDER BY c.TIME_ DESC LIMIT 1), ? " +
+                "FROM ACT_HI_TASKINST t WHERE t.END_TIME_ IS NOT NULL " +
+                "AND t.PROC_INST_ID_ IN (" + placeholders(processInstanceIds.length) + ")",
+                prepend(archivedTime, processInstanceIds));
+        }
+
+        // 分区键不能为空，缺少创建时间的旧节点按审批时间归档
+        String idIn = placeholders(ids.length);
+        jdbcTemplate.update(
+            "INSERT INTO t_poc_workflow_nodes_archive (" + NODE_COLUMNS + ", archived_time) " +
+            "SELECT " + NODE_COLUMNS.replace("created_time", "COALESCE(created_time, approved_time, now())") + ", ? FROM t_poc_workflow_nodes WHERE instance_id IN (" + idIn + ")",
+            prepend(archivedTime, ids));
+        jdbcTemplate.update("DELETE FROM t_poc_workflow_nodes WHERE instance_id IN (" + idIn + ")", ids);
+
+        // 分区键不能为空，缺少发起时间的旧数据按创建时间归档
+        jdbcTemplate.update(
+            "INSERT INTO t_poc_workflow_instances_archive (" + INSTANCE_COLUMNS + ", archived_time) " +
+            "SELECT " + INSTANCE_COLUMNS.replace("start_time", "COALESCE(start_time, created_time)") + ", ? " +
+            "FROM t_poc_workflow_instances WHERE id IN (" + idIn + ")",
+            prepend(archivedTime, ids));
+        jdbcTemplate.update("DELETE FROM t_poc_workflow_instances WHERE id IN (" + idIn + ")", ids);
+
+        log.debug("🗄️ 已归档一批流程，数量: {}", ids.length);
+        return ids.length;
+    }
+
+    /**
+     * 补建指定年份的分区，默认分区中已有该年数据时建分区会失败，此时数据继续留在默认分区
+     */
+    private void ensurePartitions(int year) {
+        for (String table : PARTITIONED_TABLES) {
+            try {
+                jdbcTemplate.execute(String.format(
+                    "CREATE TABLE IF NOT EXISTS %s_y%d PARTITION OF %s FOR VALUES FROM ('%d-01-01') TO ('%d-01-01')",
+                    table, year, table, year, year + 1));
+            } catch (Exception e) {
+                log.warn("⚠️ 创建归档分区失败: {}_y{}, {}", table, year, e.getMessage());
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static Object[] prepend(Object first, Object[] rest) {
+        Object[] args = new Object[rest.length + 1];
+        args[0] = first;
+        System.arraycopy(rest, 0, args, 1, rest.length);
+        return args;
+    }
+
+    private static final RowMapper<HistoricTaskInstance> TASK_MAPPER = (rs, rowNum) -> {
+        HistoricTaskInstanceEntityImpl task = new HistoricTaskInstanceEntityImpl();
+        task.setId(rs.getString("task_id"));
+        task.setProcessInstanceId(rs.getString("process_instance_id"));
+        task.setTaskDefinitionKey(rs.getString("task_def_key"));
+        task.setName(rs.getString("task_name"));
+        task.setAssignee(rs.getString("assignee"));
+        task.setCreateTime(rs.getTimestamp("create_time"));
+        task.setEndTime(rs.getTimestamp("end_time"));
+        long duration = rs.getLong("duration_ms");
+        task.setDurationInMillis(rs.wasNull() ? null : duration);
+        task.setDeleteReason(rs.getString("delete_reason"));
+        return task;
+    };
+
+    private static final RowMapper<WorkflowInstance> INSTANCE_MAPPER = (rs, rowNum) -> {
+        WorkflowInstance instance = new WorkflowInstance();
+        instance.setId(rs.getLong("id"));
+        instance.setProcessInstanceId(rs.getString("process_instance_id"));
+        instance.setBusinessType(rs.getString("business_type"));
+        instance.setBusinessId(rs.getString("business_id"));
+        instance.setTitle(rs.getString("title"));
+        instance.setStatus(rs.getString("status"));
+        instance.setApplicantId(getLong(rs, "applicant_id"));
+        instance.setApplicantName(rs.getString("applicant_name"));
+        instance.setStartTime(getDateTime(rs, "start_time"));
+        instance.setEndTime(getDateTime(rs, "end_time"));
+        instance.setAmount(rs.getBigDecimal("amount"));
+        instance.setCurrency(rs.getString("currency"));
+        instance.setApplicationId(getLong(rs, "application_id"));
+        instance.setApplicationNumber(rs.getString("application_number"));
+        instance.setDepartment(rs.getString("department"));
+        instance.setVariables(rs.getString("variables"));
+        instance.setCurrentNodeName(rs.getString("current_node_name"));
+        instance.setCurrentAssignee(rs.getString("current_assignee"));
+        instance.setIdempotencyKey(rs.getString("idempotency_key"));
+        instance.setCreatedTime(getDateTime(rs, "created_time"));
+        instance.setUpdatedTime(getDateTime(rs, "updated_time"));
+        return instance;
+    };
+
+    private static final RowMapper<WorkflowNode> NODE_MAPPER = (rs, rowNum) -> {
+        WorkflowNode node = new WorkflowNode();
+        node.setId(rs.getLong("id"));
+        node.setInstanceId(getLong(rs, "instance_id"));
+        node.setTaskId(rs.getString("task_id"));
+        node.setNodeKey(rs.getString("node_key"));
+        node.setNodeName(rs.getString("node_name"));
+        node.setStatus(rs.getString("status"));
+        node.setAssigneeId(getLong(rs, "assignee_id"));
+        node.setAssigneeName(rs.getString("assignee_name"));
+        node.setProxyId(getLong(rs, "proxy_id"));
+        node.setProxyName(rs.getString("proxy_name"));
+        node.setApprovedTime(getDateTime(rs, "approved_time"));
+        node.setComment(rs.getString("comment"));
+        node.setIsReturned(rs.getBoolean("is_returned"));
+        node.setExecutionId(rs.getString("execution_id"));
+        node.setDueDate(getDateTime(rs, "due_date"));
+        node.setCreatedTime(getDateTime(rs, "created_time"));
+        node.setUpdatedTime(getDateTime(rs, "updated_time"));
+        return node;
+    };
+
+    private static Long getLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static LocalDateTime getDateTime(ResultSet rs, String column) throws SQLException {
+        Timestamp value = rs.getTimestamp(column);
+        return value != null ? value.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,96 @@
+package demo.backed.service;
+
+import demo.backed.repository.WorkflowInstanceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 流程实例ETag
+ * 由实例版本号、节点记录数和节点版本号之和组成，一次索引读取即可得到，用于轮询接口的条件请求（If-None-Match / 304）。
+ * 审批历史来自Flowable异步历史，会比节点记录稍晚写入：最近一次变更还在 settle-seconds 内时不给出ETag，
+ * 避免客户端拿着新ETag缓存住尚未写完的历史。
+ */
+@Service
+@Transactional(readOnly = true)
+@Slf4j
+public class WorkflowETagService {
+
+    @Autowired
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    /**
+     * 最近一次变更后多久才给出ETag（秒）
+     */
+    @Value("${app.workflow.etag.settle-seconds:5}")
+    private long settleSeconds = 5;
+
+    /**
+     * 按实例ID获取ETag
+     *
+     * @return 实例不存在或刚变更过时返回null
+     */
+    public String forInstance(Long instanceId) {
+        return toETag(workflowInstanceRepository.findChangeMarker(instanceId));
+    }
+
+    /**
+     * 按业务键获取ETag
+     *
+     * 同一业务键有多个实例时取未删除实例中最新发起的一条
+     *
+     * @return 实例不存在或刚变更过时返回null
+     */
+    public String forBusinessKey(String businessType, String businessId) {
+        return toETag(workflowInstanceRepository.findChangeMarkerByBusinessKey(businessType, businessId));
+    }
+
+    /**
+     * If-None-Match 是否命中当前ETag（弱比较，支持逗号分隔的多个值和 *）
+     */
+    public static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        String current = stripWeak(eTag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if ("*".equals(value) || stripWeak(value).equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String toETag(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object[] row = rows.get(0);
+        LocalDateTime lastChange = toLocalDateTime(row[4]);
+        if (lastChange != null && lastChange.isAfter(LocalDateTime.now().minusSeconds(settleSeconds))) {
+            return null;
+        }
+        return "W/\"" + row[0] + "-" + row[1] + "-" + row[2] + "-" + row[3] + "\"";
+    }
+
+    private LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        return null;
+    }
+
+    private static String stripWeak(String value) {
+        return value.startsWith("W/") ? value.substring(2) : value;
+    }
+}
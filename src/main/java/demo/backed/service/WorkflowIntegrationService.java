@@ -8,13 +8,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 工作流集成服务
@@ -28,6 +29,15 @@ public class WorkflowIntegrationService {
     @Autowired
     private WorkflowService workflowService;
     
+    @Autowired
+    private ApprovalStatisticsService approvalStatisticsService;
+    
+    @Autowired
+    private BatchApprovalService batchApprovalService;
+    
+    @Autowired
+    private WorkflowTrackerService workflowTrackerService;
+    
     /**
      * 启动费用审批工作流
      */
@@ -36,23 +46,7 @@ public class WorkflowIntegrationService {
                 application.getApplicationNumber(), application.getApplicantId());
         
         try {
-            // 构建启动流程请求
-            StartProcessRequest request = new StartProcessRequest();
-            request.setBusinessType("EXPENSE");
-            request.setBusinessId(application.getApplicationNumber());  // 🔧 使用申请编号作为业务ID，确保一致性
-            request.setApplicantId(application.getApplicantId());
-            request.setTitle("费用申请审批 - " + application.getApplicationNumber());
-            request.setAmount(application.getTotalAmount());
-            
-            // 设置额外的流程变量
-            Map<String, Object> variables = new HashMap<>();
-            variables.put("applicationId", application.getId());
-            variables.put("applicationNumber", application.getApplicationNumber());
-            variables.put("description", application.getDescription());
-            variables.put("currency", application.getCurrency());
-            variables.put("company", application.getCompany());
-            variables.put("applyDate", application.getApplyDate());
-            request.setVariables(variables);
+            StartProcessRequest request = buildStartRequest(application);
             
             // 启动工作流
             WorkflowInstanceDTO workflowInstance = workflowService.startWorkflow(request);
@@ -68,6 +62,40 @@ public class WorkflowIntegrationService {
         }
     }
     
+    /**
+     * 批量启动费用审批工作流，在调用方事务中执行，任一项失败整体抛出
+     *
+     * @return 与申请单顺序一致的工作流实例ID
+     */
+    public List<String> startExpenseApprovalWorkflows(List<ExpenseApplication> applications) {
+        List<StartProcessRequest> requests = applications.stream()
+            .map(this::buildStartRequest)
+            .collect(Collectors.toList());
+        return workflowService.startWorkflows(requests).stream()
+            .map(WorkflowInstanceDTO::getProcessInstanceId)
+            .collect(Collectors.toList());
+    }
+    
+    private StartProcessRequest buildStartRequest(ExpenseApplication application) {
+        StartProcessRequest request = new StartProcessRequest();
+        request.setBusinessType("EXPENSE");
+        request.setBusinessId(application.getApplicationNumber());  // 🔧 使用申请编号作为业务ID，确保一致性
+        request.setApplicantId(application.getApplicantId());
+        request.setTitle("费用申请审批 - " + application.getApplicationNumber());
+        request.setAmount(application.getTotalAmount());
+        
+        // 设置额外的流程变量
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("applicationId", application.getId());
+        variables.put("applicationNumber", application.getApplicationNumber());
+        variables.put("description", application.getDescription());
+        variables.put("currency", application.getCurrency());
+        variables.put("company", application.getCompany());
+        variables.put("applyDate", application.getApplyDate());
+        request.setVariables(variables);
+        return request;
+    }
+    
     /**
      * 获取用户待办任务列表
      */
@@ -92,6 +120,42 @@ public class WorkflowIntegrationService {
         }
     }
     
+    /**
+     * 按费用申请ID或业务ID查找用户自己的待办任务
+     */
+    public PendingTaskDTO findPendingTask(Long userId, String businessKey) {
+        try {
+            return workflowService.findPendingTask(userId, businessKey);
+        } catch (Exception e) {
+            log.error("查找用户待办任务失败，用户ID: {}, 业务键: {}", userId, businessKey, e);
+            throw new RuntimeException("查找待办任务失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 游标分页获取用户待办任务列表
+     */
+    public CursorPage<PendingTaskDTO> getPendingTasksByCursor(Long userId, String cursor, int size) {
+        try {
+            return workflowService.getPendingTasksByCursor(userId, cursor, size);
+        } catch (Exception e) {
+            log.error("游标分页获取用户待办任务失败，用户ID: {}", userId, e);
+            throw new RuntimeException("获取待办任务失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 游标分页获取用户已办任务列表
+     */
+    public CursorPage<PendingTaskDTO> getHandledTasksByCursor(Long userId, String cursor, int size) {
+        try {
+            return workflowService.getHandledTasksByCursor(userId, cursor, size);
+        } catch (Exception e) {
+            log.error("游标分页获取用户已办任务失败，用户ID: {}", userId, e);
+            throw new RuntimeException("获取已办任务失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 审批通过
      */
@@ -162,14 +226,28 @@ public class WorkflowIntegrationService {
     
 
     
+    /**
+     * 获取用户审批统计
+     */
+    public ApprovalStatisticsDTO getApprovalStatistics(Long userId) {
+        try {
+            return approvalStatisticsService.getStatistics(userId);
+        } catch (Exception e) {
+            log.error("获取审批统计失败，用户ID: {}", userId, e);
+            throw new RuntimeException("获取审批统计失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 批量审批
+     * 不开启外层事务，每个审批项在批量审批服务中使用独立事务；只处理审批人是操作人的任务
      */
-    public BatchResult batchApprove(List<ApprovalRequest> requests) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BatchResult batchApprove(List<ApprovalRequest> requests, Long operatorId) {
         try {
-            log.info("执行批量审批，数量: {}", requests.size());
+            log.info("执行批量审批，操作人: {}, 数量: {}", operatorId, requests.size());
             
-            BatchResult result = workflowService.batchApprove(requests);
+            BatchResult result = batchApprovalService.execute(requests, operatorId);
             
             log.info("批量审批完成，成功: {}, 失败: {}", 
                     result.getSuccessCount(), result.getFailureCount());
@@ -193,6 +271,18 @@ public class WorkflowIntegrationService {
         }
     }
     
+    /**
+     * 按待办任务获取可打回的节点列表
+     */
+    public List<Map<String, String>> getReturnableNodesByTaskId(String taskId) {
+        try {
+            return workflowService.getReturnableNodesByTaskId(taskId);
+        } catch (Exception e) {
+            log.error("获取可打回节点列表失败，任务ID: {}", taskId, e);
+            throw new RuntimeException("获取可打回节点失败: " + e.getMessage());
+        }
+    }
+    
 
     
     /**
@@ -200,28 +290,7 @@ public class WorkflowIntegrationService {
      */
     public WorkflowInstanceDetailDTO getWorkflowInstanceDetail(String businessType, String businessId) {
         try {
-            log.info("获取工作流实例详情，业务类型: {}, 业务ID: {}", businessType, businessId);
-            
-            // 构建模拟的工作流实例详情（后续可以通过具体的WorkflowService方法实现）
-            WorkflowInstanceDetailDTO detail = new WorkflowInstanceDetailDTO();
-            detail.setInstanceId(1L);
-            detail.setTitle("费用申请审批 - " + businessId);
-            detail.setApplicantName("申请人");
-            detail.setStartTime(java.time.LocalDateTime.now().minusDays(1));
-            detail.setStatus("RUNNING");
-            detail.setWorkflowTemplateName("日常费用审批工作流");
-            
-            // 构建步骤详情
-            List<WorkflowInstanceDetailDTO.StepDetail> steps = buildMockSteps();
-            detail.setSteps(steps);
-            
-            // 计算进度
-            int progress = calculateProgress(steps);
-            detail.setProgress(progress);
-            
-            log.info("获取工作流实例详情成功（模拟数据）");
-            return detail;
-            
+            return workflowTrackerService.getTracker(businessType, businessId);
         } catch (Exception e) {
             log.error("获取工作流实例详情失败，业务类型: {}, 业务ID: {}", businessType, businessId, e);
             throw new RuntimeException("获取工作流实例详情失败: " + e.getMessage());
@@ -233,89 +302,10 @@ public class WorkflowIntegrationService {
      */
     public List<WorkflowHistoryDTO> getWorkflowHistory(String businessType, String businessId) {
         try {
-            log.info("获取工作流历史记录，业务类型: {}, 业务ID: {}", businessType, businessId);
-            
-            // 构建模拟的历史记录（后续可以通过具体的WorkflowService方法实现）
-            List<WorkflowHistoryDTO> history = new ArrayList<>();
-            
-            WorkflowHistoryDTO historyItem = new WorkflowHistoryDTO();
-            historyItem.setId("1");
-            historyItem.setTaskName("直属主管审批");
-            historyItem.setOperationType("COMPLETE");
-            historyItem.setOperatorId(1L);
-            historyItem.setOperatorName("张三");
-            historyItem.setOperationTime(java.time.LocalDateTime.now().minusDays(1));
-            historyItem.setDuration(30);
-            historyItem.setComment("同意申请");
-            
-            history.add(historyItem);
-            
-            log.info("获取工作流历史记录成功（模拟数据），记录数: {}", history.size());
-            return history;
-            
+            return workflowTrackerService.getHistory(businessType, businessId);
         } catch (Exception e) {
             log.error("获取工作流历史记录失败，业务类型: {}, 业务ID: {}", businessType, businessId, e);
             throw new RuntimeException("获取工作流历史记录失败: " + e.getMessage());
         }
     }
-    
-
-    
-    /**
-     * 构建模拟的工作流步骤
-     */
-    private List<WorkflowInstanceDetailDTO.StepDetail> buildMockSteps() {
-        List<WorkflowInstanceDetailDTO.StepDetail> steps = new ArrayList<>();
-        
-        // 第一步：直属主管审批（已完成）
-        WorkflowInstanceDetailDTO.StepDetail step1 = new WorkflowInstanceDetailDTO.StepDetail();
-        step1.setTaskId("task1");
-        step1.setTaskName("直属主管审批");
-        step1.setStatus("completed");
-        step1.setAssigneeId(1L);
-        step1.setAssigneeName("张三");
-        step1.setStartTime(java.time.LocalDateTime.now().minusDays(1));
-        step1.setEndTime(java.time.LocalDateTime.now().minusDays(1).plusHours(1));
-        step1.setComment("同意申请");
-        step1.setDescription("直属主管审核申请内容");
-        steps.add(step1);
-        
-        // 第二步：财务部审批（进行中）
-        WorkflowInstanceDetailDTO.StepDetail step2 = new WorkflowInstanceDetailDTO.StepDetail();
-        step2.setTaskId("task2");
-        step2.setTaskName("财务部审批");
-        step2.setStatus("active");
-        step2.setAssigneeId(2L);
-        step2.setAssigneeName("李四");
-        step2.setStartTime(java.time.LocalDateTime.now().minusDays(1).plusHours(1));
-        step2.setDescription("财务部门审核费用合理性");
-        steps.add(step2);
-        
-        // 第三步：合规部审批（待处理）
-        WorkflowInstanceDetailDTO.StepDetail step3 = new WorkflowInstanceDetailDTO.StepDetail();
-        step3.setTaskId("task3");
-        step3.setTaskName("合规部审批");
-        step3.setStatus("pending");
-        step3.setAssigneeId(3L);
-        step3.setAssigneeName("王五");
-        step3.setDescription("合规部门审核合规性");
-        steps.add(step3);
-        
-        return steps;
-    }
-    
-    /**
-     * 计算工作流进度
-     */
-    private int calculateProgress(List<WorkflowInstanceDetailDTO.StepDetail> steps) {
-        if (steps == null || steps.isEmpty()) {
-            return 0;
-        }
-        
-        long completedSteps = steps.stream()
-            .filter(step -> "completed".equals(step.getStatus()))
-            .count();
-        
-        return (int) ((completedSteps * 100) / steps.size());
-    }
 } 
\ No newline at end of file
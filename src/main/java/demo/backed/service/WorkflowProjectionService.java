@@ -0,0 +1,159 @@
+package demo.backed.service;
+
+import demo.backed.dto.UserDTO;
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.entity.WorkflowNode;
+import demo.backed.repository.WorkflowInstanceRepository;
+import demo.backed.repository.WorkflowNodeRepository;
+import demo.backed.util.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.flowable.task.api.Task;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 流程实例与节点记录维护服务
+ * 由流程事件监听器在引擎事务内调用：任务创建时写入 WorkflowNode（含按节点SLA计算的办理期限）并更新实例的当前节点，
+ * 流程正常结束时将实例标记为 COMPLETED。审批、打回、并行分支产生的任务都经过同一入口，
+ * 审批操作完成任务后不再回查流程实例、历史和当前任务。
+ */
+@Service
+@Transactional
+@Slf4j
+public class WorkflowProjectionService {
+
+    @Autowired
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    @Autowired
+    private WorkflowNodeRepository workflowNodeRepository;
+
+    @Autowired
+    private ApproverDirectory approverDirectory;
+
+    @Autowired
+    private WorkflowTemplateService workflowTemplateService;
+
+    @Autowired
+    private OverdueTaskMonitor overdueTaskMonitor;
+
+    /**
+     * 任务创建：写入节点记录并更新实例的当前节点
+     *
+     * @param task      新建的任务
+     * @param variables 任务可见的流程变量
+     * @return 任务所属的流程实例记录，找不到时返回null
+     */
+    public WorkflowInstance onTaskCreated(Task task, Map<String, Object> variables) {
+        WorkflowInstance instance = findInstance(task.getProcessInstanceId(),
+            variables != null ? variables : Collections.emptyMap());
+        if (instance == null) {
+            log.warn("⚠️ 任务 {} 找不到对应的流程实例记录，流程实例ID: {}", task.getId(), task.getProcessInstanceId());
+            return null;
+        }
+
+        WorkflowNode node = new WorkflowNode();
+        node.setInstanceId(instance.getId());
+        node.setTaskId(task.getId());
+        node.setNodeKey(task.getTaskDefinitionKey());
+        node.setNodeName(task.getName());
+        node.setStatus("PENDING");
+        node.setExecutionId(task.getExecutionId());
+        node.setDueDate(assignDueDate(task));
+        Long assigneeId = parseUserId(task.getAssignee());
+        node.setAssigneeId(assigneeId);
+        if (assigneeId != null) {
+            approverDirectory.findUser(assigneeId)
+                .map(UserDTO::getUserName)
+                .ifPresent(node::setAssigneeName);
+        }
+        workflowNodeRepository.save(node);
+        if (node.getDueDate() != null) {
+            String taskId = task.getId();
+            LocalDateTime dueDate = node.getDueDate();
+            TransactionCallbacks.afterCommit(() -> overdueTaskMonitor.schedule(taskId, dueDate));
+        }
+
+        instance.setCurrentNodeName(task.getName());
+        instance.setCurrentAssignee(task.getAssignee());
+        workflowInstanceRepository.save(instance);
+        return instance;
+    }
+
+    /**
+     * 流程正常结束（含终止结束事件、错误结束事件）：实例标记为已完成
+     */
+    public void onProcessCompleted(String processInstanceId) {
+        if (processInstanceId == null) {
+            return;
+        }
+        workflowInstanceRepository.findByProcessInstanceId(processInstanceId).ifPresent(instance -> {
+            instance.setStatus("COMPLETED");
+            instance.setEndTime(LocalDateTime.now());
+            workflowInstanceRepository.save(instance);
+            log.debug("🏁 流程已完成，流程实例ID: {}", processInstanceId);
+        });
+    }
+
+    /**
+     * 办理期限：流程定义中已声明 dueDate 的任务沿用，否则按模板为该节点配置的SLA时长计算，
+     * 并回写到任务上，待办投影和统计对账读取同一个期限
+     */
+    private LocalDateTime assignDueDate(Task task) {
+        if (task.getDueDate() != null) {
+            return LocalDateTime.ofInstant(task.getDueDate().toInstant(), ZoneId.systemDefault());
+        }
+        String processDefinitionId = task.getProcessDefinitionId();
+        String processKey = processDefinitionId != null ? processDefinitionId.split(":")[0] : null;
+        int slaHours = workflowTemplateService.resolveSlaHours(processKey, task.getTaskDefinitionKey());
+        if (slaHours <= 0) {
+            return null;
+        }
+        LocalDateTime createTime = task.getCreateTime() != null
+            ? LocalDateTime.ofInstant(task.getCreateTime().toInstant(), ZoneId.systemDefault())
+            : LocalDateTime.now();
+        LocalDateTime dueDate = createTime.plusHours(slaHours);
+        task.setDueDate(Date.from(dueDate.atZone(ZoneId.systemDefault()).toInstant()));
+        return dueDate;
+    }
+
+    /**
+     * 按业务键定位实例记录：发起流程时实例记录已写入但还没有回填流程实例ID，
+     * 只能按业务类型+业务ID找到进行中的那一条；其他情况回退为按流程实例ID查找
+     */
+    private WorkflowInstance findInstance(String processInstanceId, Map<String, Object> vars) {
+        Object businessType = vars.get("businessType");
+        Object businessId = vars.get("businessId");
+        if (businessType != null && businessId != null) {
+            Optional<WorkflowInstance> instance = workflowInstanceRepository
+                .findActiveByBusinessKey(businessType.toString(), businessId.toString());
+            if (instance.isPresent()) {
+                return instance.get();
+            }
+        }
+        if (processInstanceId == null) {
+            return null;
+        }
+        return workflowInstanceRepository.findByProcessInstanceId(processInstanceId).orElse(null);
+    }
+
+    private Long parseUserId(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(userId);
+        } catch (NumberFormatException e) {
+            log.warn("无法解析任务分配人ID: {}", userId);
+            return null;
+        }
+    }
+}
@@ -3,30 +3,49 @@ package demo.backed.service;
 import demo.backed.dto.*;
 import demo.backed.entity.WorkflowInstance;
 import demo.backed.entity.WorkflowNode;
-import demo.backed.entity.WorkflowTemplate;
 import demo.backed.repository.WorkflowInstanceRepository;
 import demo.backed.repository.WorkflowNodeRepository;
+import demo.backed.util.LruCache;
+import demo.backed.util.TaskCursor;
+import demo.backed.util.TransactionCallbacks;
 import lombok.extern.slf4j.Slf4j;
+import org.flowable.common.engine.api.FlowableObjectNotFoundException;
 import org.flowable.engine.*;
+import org.flowable.engine.history.HistoricActivityInstance;
 import org.flowable.engine.history.HistoricProcessInstance;
 import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.task.api.NativeTaskQuery;
 import org.flowable.task.api.Task;
+import org.flowable.task.api.TaskQuery;
+import org.flowable.task.service.history.NativeHistoricTaskInstanceQuery;
 import org.flowable.task.api.history.HistoricTaskInstance;
 import org.flowable.engine.task.Comment;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
+import javax.persistence.criteria.Predicate;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.Optional;
 
 @Service
@@ -61,105 +80,421 @@ public class WorkflowService {
     @Autowired
     private RepositoryService repositoryService;
     
+    @Autowired
+    private TaskInboxService taskInboxService;
+    
+    @Autowired
+    private WorkflowArchiveService workflowArchiveService;
+    
+    @Autowired
+    private ProcessGraphService processGraphService;
+    
+    @Autowired
+    private ApproverDirectory approverDirectory;
+    
+    /**
+     * 待办列表是否读取收件箱投影表（t_poc_task_inbox），关闭时回退为实时查询Flowable
+     */
+    @Value("${app.workflow.inbox-projection.enabled:true}")
+    private boolean inboxProjectionEnabled;
+    
+    /**
+     * 已结束流程（COMPLETED/REJECTED）审批历史缓存容量，按 processInstanceId 缓存
+     */
+    @Value("${app.workflow.history-cache-size:500}")
+    private int historyCacheSize = 500;
+    
+    private volatile LruCache<String, List<Map<String, Object>>> historyCache;
+    
+    /**
+     * 精简流程变量：Flowable中只保存路由需要的变量，申请单号、币种、描述等展示字段只写入实例记录，
+     * 待办列表从实例记录批量读取，不再随任务查询加载流程变量
+     */
+    @Value("${app.workflow.slim-variables.enabled:true}")
+    private boolean slimVariablesEnabled = true;
+    
+    /**
+     * 精简模式下保留在Flowable中的变量：网关条件和审批人解析用到的金额、申请人及指定审批人，
+     * 以及任务创建事件定位实例记录用的业务键
+     */
+    private static final Set<String> ROUTING_VARIABLES = new HashSet<>(Arrays.asList(
+        "applicantId", "amount", "businessType", "businessId",
+        ApproverResolver.MANAGER, ApproverResolver.FINANCE_MANAGER, ApproverResolver.COMPLIANCE_MANAGER,
+        ApproverResolver.FUNCTIONAL_HEAD, ApproverResolver.EXECUTIVE));
+    
+    /**
+     * 发起去重记录保留时间（秒）
+     */
+    @Value("${app.workflow.start-dedup.ttl-seconds:10}")
+    private int startDedupTtlSeconds = 10;
+    
+    /**
+     * 重复发起时等待首个请求完成的最长时间（毫秒）
+     */
+    @Value("${app.workflow.start-dedup.wait-millis:5000}")
+    private long startDedupWaitMillis = 5000;
+    
+    private final ConcurrentHashMap<String, StartTicket> recentStarts = new ConcurrentHashMap<>();
+    
     /**
      * 启动工作流
+     * 按幂等键（未指定时为业务类型+业务ID）去重：同一进程内短时间内的重复请求等待首个请求的结果，
+     * 跨进程由 INSERT ... ON CONFLICT DO NOTHING 保证只写入一条进行中的实例记录，
+     * 冲突时直接返回已存在的实例，不再启动Flowable流程。启动失败时随事务回滚，不需要删除占位记录。
      */
     @Transactional(rollbackFor = Exception.class)
     public WorkflowInstanceDTO startWorkflow(StartProcessRequest request) {
+        String dedupKey = startDedupKey(request);
+        purgeExpiredStarts();
+        StartTicket ticket = new StartTicket();
+        StartTicket inFlight = recentStarts.putIfAbsent(dedupKey, ticket);
+        if (inFlight != null) {
+            WorkflowInstanceDTO existing = awaitStart(inFlight, dedupKey);
+            if (existing != null) {
+                return existing;
+            }
+            // 首个请求失败或等待超时，自行发起，由数据库唯一约束兜底
+            return doStartWorkflow(request);
+        }
+        
         try {
-            // 创建并保存工作流实例
-            WorkflowInstance instance = new WorkflowInstance();
-            instance.setBusinessType(request.getBusinessType());
-            instance.setBusinessId(request.getBusinessId());
-            instance.setTitle(request.getTitle());
-            instance.setApplicantId(request.getApplicantId());
-            instance.setStartTime(LocalDateTime.now());
-            instance.setStatus("CREATED");
-            
-            // 先保存获取ID，作为占位，避免并发问题
-            instance = workflowInstanceRepository.save(instance);
-            workflowInstanceRepository.flush();
-            
-            try {
-            // 获取申请人信息
+            WorkflowInstanceDTO result = doStartWorkflow(request);
+            TransactionCallbacks.afterCommit(() -> ticket.result.complete(result));
+            TransactionCallbacks.afterRollback(() -> {
+                recentStarts.remove(dedupKey, ticket);
+                ticket.result.completeExceptionally(new IllegalStateException("启动工作流事务已回滚"));
+            });
+            return result;
+        } catch (RuntimeException e) {
+            recentStarts.remove(dedupKey, ticket);
+            ticket.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    private WorkflowInstanceDTO doStartWorkflow(StartProcessRequest request) {
+        try {
+            // 获取申请人信息、解析流程Key，校验失败时不写入任何记录
             UserDTO applicant = userService.getUserById(request.getApplicantId())
                 .orElseThrow(() -> new RuntimeException("申请人不存在"));
-            
-                // 更新申请人姓名
-                instance.setApplicantName(applicant.getUserName());
-                
-            // 准备流程变量
-            Map<String, Object> variables = new HashMap<>();
-            variables.put("applicantId", request.getApplicantId());
-            variables.put("applicantName", applicant.getUserName());
-                variables.put("department", applicant.getDepartment());
-            variables.put("managerId", getManagerId(applicant));
-                variables.put("financeManagerId", getFinanceManagerId());
-                variables.put("complianceManagerId", getComplianceManagerId());
-            variables.put("functionalHeadId", getFunctionalHeadId(applicant));
-                variables.put("executiveId", getExecutiveId(request.getAmount()));
-            variables.put("amount", request.getAmount());
-            variables.put("businessType", request.getBusinessType());
-            variables.put("businessId", request.getBusinessId());
-            
-            if (request.getVariables() != null) {
-                variables.putAll(request.getVariables());
+            String processKey = getProcessDefinitionKey(request.getBusinessType());
+            
+            // 写入实例记录，同业务键已有进行中的实例或幂等键已使用时返回null
+            Long instanceId = workflowInstanceRepository.insertIfAbsent(
+                request.getBusinessType(), request.getBusinessId(), request.getTitle(),
+                request.getApplicantId(), applicant.getUserName(), idempotencyKey(request),
+                LocalDateTime.now());
+            if (instanceId == null) {
+                WorkflowInstance existing = findStartedInstance(request)
+                    .orElseThrow(() -> new RuntimeException("流程实例已存在但无法读取"));
+                log.info("♻️ 重复发起，返回已存在的流程实例，业务ID: {}, 流程实例ID: {}",
+                    request.getBusinessId(), existing.getProcessInstanceId());
+                return convertToDTO(existing);
             }
+            WorkflowInstance instance = workflowInstanceRepository.findById(instanceId)
+                .orElseThrow(() -> new RuntimeException("流程实例记录不存在"));
+            
+            // 业务字段先写入实例记录：首个任务的创建事件在启动调用内触发，
+            // 节点记录、当前节点（WorkflowProjectionService）和待办投影（TaskInboxService）都从实例记录读取
+            Map<String, Object> variables = buildStartVariables(request, applicant);
+            applyVariables(instance, variables);
+            instance = workflowInstanceRepository.save(instance);
             
             // 启动Flowable流程实例
             ProcessInstance processInstance = runtimeService.startProcessInstanceByKey(
-                getProcessDefinitionKey(request.getBusinessType()),
+                processKey,
                 request.getBusinessId(),
-                variables
+                toProcessVariables(variables)
             );
             
-                // 更新流程实例信息
             instance.setProcessInstanceId(processInstance.getId());
             instance.setStatus("RUNNING");
-            instance.setVariables(objectMapper.writeValueAsString(variables));
+            instance = workflowInstanceRepository.save(instance);
             
-            // 获取当前任务并创建节点记录
-            Task currentTask = taskService.createTaskQuery()
-                .processInstanceId(processInstance.getId())
-                .singleResult();
+            log.info("启动工作流成功，流程实例ID: {}, 业务ID: {}", processInstance.getId(), request.getBusinessId());
+            return convertToDTO(instance);
             
-            if (currentTask != null) {
-                instance.setCurrentNodeName(currentTask.getName());
-                instance.setCurrentAssignee(currentTask.getAssignee());
-                createWorkflowNode(instance, currentTask);
+        } catch (Exception e) {
+            // 流程定义已不存在（如在Flowable中被直接删除），刷新路由表
+            if (e instanceof FlowableObjectNotFoundException) {
+                workflowTemplateService.invalidateRoutingNow();
             }
-            
-                // 更新实例信息（不是重新保存）
-                instance = workflowInstanceRepository.save(instance);
+            log.error("启动工作流失败", e);
+            throw new RuntimeException("启动工作流失败: " + e.getMessage());
+        }
+    }
+    
+    private Optional<WorkflowInstance> findStartedInstance(StartProcessRequest request) {
+        String idempotencyKey = idempotencyKey(request);
+        if (idempotencyKey != null) {
+            Optional<WorkflowInstance> instance = workflowInstanceRepository.findByIdempotencyKey(idempotencyKey);
+            if (instance.isPresent()) {
+                return instance;
+            }
+        }
+        return workflowInstanceRepository.findActiveByBusinessKey(request.getBusinessType(), request.getBusinessId());
+    }
+    
+    private String startDedupKey(StartProcessRequest request) {
+        String idempotencyKey = idempotencyKey(request);
+        if (idempotencyKey != null) {
+            return "key:" + idempotencyKey;
+        }
+        return request.getBusinessType() + ":" + request.getBusinessId();
+    }
+    
+    private String idempotencyKey(StartProcessRequest request) {
+        String key = request.getIdempotencyKey();
+        return key == null || key.trim().isEmpty() ? null : key.trim();
+    }
+    
+    /**
+     * 等待同一幂等键的首个请求完成
+     *
+     * @return 首个请求的结果；首个请求失败或等待超时返回null
+     */
+    private WorkflowInstanceDTO awaitStart(StartTicket ticket, String dedupKey) {
+        try {
+            WorkflowInstanceDTO result = ticket.result.get(startDedupWaitMillis, TimeUnit.MILLISECONDS);
+            log.info("♻️ 重复发起，返回进行中请求的结果: {}", dedupKey);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("启动工作流被中断");
+        } catch (ExecutionException | TimeoutException e) {
+            log.debug("等待首个发起请求未得到结果: {}", dedupKey);
+            return null;
+        }
+    }
+    
+    private void purgeExpiredStarts() {
+        long expireBefore = System.currentTimeMillis() - startDedupTtlSeconds * 1000L;
+        recentStarts.values().removeIf(ticket -> ticket.createdAt < expireBefore);
+    }
+    
+    /**
+     * 进程内的发起记录：结果在事务提交后写入，保留 start-dedup.ttl-seconds 秒用于吸收重复点击和客户端重试
+     */
+    private static final class StartTicket {
+        private final CompletableFuture<WorkflowInstanceDTO> result = new CompletableFuture<>();
+        private final long createdAt = System.currentTimeMillis();
+    }
+    
+    /**
+     * 批量启动工作流
+     * 申请人一次查询，流程Key按业务类型只解析一次；每一项与单个发起一样按幂等键（或业务键）去重：
+     * 同一批次内的重复项共用一个结果，其他请求正在发起的等待其结果，
+     * 实例记录经 INSERT ... ON CONFLICT DO NOTHING 写入，冲突时返回已存在的实例而不启动流程。
+     * 任一项失败整体抛出异常，由调用方决定回退方式。
+     *
+     * @return 与请求顺序一致的流程实例
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public List<WorkflowInstanceDTO> startWorkflows(List<StartProcessRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return new ArrayList<>();
+        }
+        purgeExpiredStarts();
+        Map<String, StartTicket> ownTickets = new LinkedHashMap<>();
+        try {
+            Map<String, WorkflowInstanceDTO> resultsByKey = new HashMap<>();
+            List<WorkflowInstanceDTO> results = doStartWorkflows(requests, ownTickets, resultsByKey);
+            TransactionCallbacks.afterCommit(() -> ownTickets.forEach(
+                (dedupKey, ticket) -> ticket.result.complete(resultsByKey.get(dedupKey))));
+            TransactionCallbacks.afterRollback(() -> releaseTickets(ownTickets,
+                new IllegalStateException("批量启动工作流事务已回滚")));
+            return results;
+        } catch (RuntimeException e) {
+            releaseTickets(ownTickets, e);
+            throw e;
+        }
+    }
+    
+    private List<WorkflowInstanceDTO> doStartWorkflows(List<StartProcessRequest> requests,
+                                                       Map<String, StartTicket> ownTickets,
+                                                       Map<String, WorkflowInstanceDTO> resultsByKey) {
+        try {
+            Set<Long> applicantIds = requests.stream()
+                .map(StartProcessRequest::getApplicantId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+            Map<Long, UserDTO> applicants = userService.getUsersByIds(applicantIds);
+            
+            Map<String, String> processKeys = new HashMap<>();
+            Map<String, WorkflowInstance> startedByKey = new LinkedHashMap<>();
+            for (StartProcessRequest request : requests) {
+                String dedupKey = startDedupKey(request);
+                if (resultsByKey.containsKey(dedupKey) || startedByKey.containsKey(dedupKey)) {
+                    continue;
+                }
+                UserDTO applicant = applicants.get(request.getApplicantId());
+                if (applicant == null) {
+                    throw new RuntimeException("申请人不存在: " + request.getApplicantId());
+                }
+                String processKey = processKeys.computeIfAbsent(request.getBusinessType(), this::getProcessDefinitionKey);
                 
-                log.info("启动工作流成功，流程实例ID: {}, 业务ID: {}", processInstance.getId(), request.getBusinessId());
-            
-            return convertToDTO(instance);
+                // 其他请求正在发起同一业务，等待其结果
+                StartTicket ticket = new StartTicket();
+                StartTicket inFlight = recentStarts.putIfAbsent(dedupKey, ticket);
+                if (inFlight != null) {
+                    WorkflowInstanceDTO existing = awaitStart(inFlight, dedupKey);
+                    if (existing != null) {
+                        resultsByKey.put(dedupKey, existing);
+                        continue;
+                    }
+                } else {
+                    ownTickets.put(dedupKey, ticket);
+                }
+                
+                Long instanceId = workflowInstanceRepository.insertIfAbsent(
+                    request.getBusinessType(), request.getBusinessId(), request.getTitle(),
+                    request.getApplicantId(), applicant.getUserName(), idempotencyKey(request),
+                    LocalDateTime.now());
+                if (instanceId == null) {
+                    WorkflowInstance existing = findStartedInstance(request)
+                        .orElseThrow(() -> new RuntimeException("流程实例已存在但无法读取"));
+                    log.info("♻️ 批量发起中的重复项，返回已存在的流程实例，业务ID: {}, 流程实例ID: {}",
+                        request.getBusinessId(), existing.getProcessInstanceId());
+                    resultsByKey.put(dedupKey, convertToDTO(existing));
+                    continue;
+                }
+                WorkflowInstance instance = workflowInstanceRepository.findById(instanceId)
+                    .orElseThrow(() -> new RuntimeException("流程实例记录不存在"));
+                
+                // 业务字段先写入实例记录，任务创建事件按业务键找到实例并写入节点记录、当前节点和待办投影
+                Map<String, Object> variables = buildStartVariables(request, applicant);
+                applyVariables(instance, variables);
+                instance = workflowInstanceRepository.save(instance);
                 
-            } catch (Exception e) {
-                // 如果Flowable启动失败，删除占位记录
-                log.error("启动Flowable流程失败，删除占位记录", e);
-                workflowInstanceRepository.delete(instance);
-                workflowInstanceRepository.flush();
-                throw e;
+                ProcessInstance processInstance = runtimeService.startProcessInstanceByKey(
+                    processKey, request.getBusinessId(), toProcessVariables(variables));
+                instance.setProcessInstanceId(processInstance.getId());
+                instance.setStatus("RUNNING");
+                startedByKey.put(dedupKey, instance);
+            }
+            List<WorkflowInstance> saved = workflowInstanceRepository.saveAll(startedByKey.values());
+            Iterator<String> keys = startedByKey.keySet().iterator();
+            for (WorkflowInstance instance : saved) {
+                resultsByKey.put(keys.next(), convertToDTO(instance));
             }
             
+            log.info("批量启动工作流成功，请求数: {}, 新启动: {}", requests.size(), saved.size());
+            return requests.stream()
+                .map(request -> resultsByKey.get(startDedupKey(request)))
+                .collect(Collectors.toList());
+        } catch (FlowableObjectNotFoundException e) {
+            workflowTemplateService.invalidateRoutingNow();
+            throw new RuntimeException("批量启动工作流失败: " + e.getMessage());
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("启动工作流失败", e);
-            // 如果是约束冲突，尝试清理并重试
-            if (e.getMessage() != null && e.getMessage().contains("constraint")) {
-                // 尝试查找并返回已存在的实例
-                Optional<WorkflowInstance> existing = workflowInstanceRepository
-                    .findByBusinessTypeAndBusinessId(request.getBusinessType(), request.getBusinessId());
-                if (existing.isPresent()) {
-                    log.warn("发现已存在的流程实例，返回现有实例");
-                    return convertToDTO(existing.get());
-                }
+            throw new RuntimeException("批量启动工作流失败: " + e.getMessage());
+        }
+    }
+    
+    private void releaseTickets(Map<String, StartTicket> tickets, Exception cause) {
+        tickets.forEach((dedupKey, ticket) -> {
+            recentStarts.remove(dedupKey, ticket);
+            ticket.result.completeExceptionally(cause);
+        });
+    }
+    
+    /**
+     * 启动流程时的流程变量
+     */
+    private Map<String, Object> buildStartVariables(StartProcessRequest request, UserDTO applicant) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("applicantId", request.getApplicantId());
+        variables.put("applicantName", applicant.getUserName());
+        variables.put("department", applicant.getDepartment());
+        // 各节点审批人由流程定义中的 ${approverResolver.xxx(execution)} 在任务创建时按需解析
+        variables.put("amount", request.getAmount());
+        variables.put("businessType", request.getBusinessType());
+        variables.put("businessId", request.getBusinessId());
+        
+        if (request.getVariables() != null) {
+            variables.putAll(request.getVariables());
+        }
+        return variables;
+    }
+    
+    /**
+     * 写入Flowable的流程变量，精简模式下只保留路由变量
+     */
+    private Map<String, Object> toProcessVariables(Map<String, Object> variables) {
+        if (!slimVariablesEnabled) {
+            return variables;
+        }
+        Map<String, Object> routing = new HashMap<>();
+        for (Map.Entry<String, Object> entry : variables.entrySet()) {
+            if (ROUTING_VARIABLES.contains(entry.getKey()) && entry.getValue() != null) {
+                routing.put(entry.getKey(), entry.getValue());
             }
-            throw new RuntimeException("启动工作流失败: " + e.getMessage());
+        }
+        return routing;
+    }
+    
+    /**
+     * 写入实例的业务字段和流程变量
+     * 金额、币种、申请单ID/编号、部门写入带类型的列供列表和筛选使用，完整变量以jsonb保存
+     */
+    /**
+     * 业务字段写入带类型的列，规则与回填迁移一致：格式不正确的值列保持为空（原值仍保留在 variables 中），
+     * 字符串按列长截断
+     */
+    private void applyVariables(WorkflowInstance instance, Map<String, Object> variables) throws JsonProcessingException {
+        instance.setAmount(parseAmount(variables.get("amount")));
+        instance.setApplicationId(parseApplicationId(variables.get("applicationId")));
+        instance.setCurrency(toStringValue(variables.get("currency"), 10));
+        instance.setApplicationNumber(toStringValue(variables.get("applicationNumber"), 50));
+        instance.setDepartment(toStringValue(variables.get("department"), 100));
+        instance.setVariables(objectMapper.writeValueAsString(variables));
+    }
+    
+    /**
+     * 金额列为 NUMERIC(15, 2)，无法解析或超出范围时返回null
+     */
+    private BigDecimal parseAmount(Object amount) {
+        if (amount == null) {
+            return null;
+        }
+        try {
+            BigDecimal value = amount instanceof BigDecimal ? (BigDecimal) amount : new BigDecimal(amount.toString().trim());
+            value = value.setScale(2, RoundingMode.HALF_UP);
+            if (value.precision() - value.scale() > 13) {
+                log.warn("⚠️ 流程变量金额超出范围，金额列留空: {}", amount);
+                return null;
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            log.warn("⚠️ 流程变量金额格式不正确，金额列留空: {}", amount);
+            return null;
         }
     }
     
+    private Long parseApplicationId(Object applicationId) {
+        if (applicationId == null) {
+            return null;
+        }
+        if (applicationId instanceof Integer || applicationId instanceof Long) {
+            return ((Number) applicationId).longValue();
+        }
+        try {
+            return Long.valueOf(applicationId.toString().trim());
+        } catch (NumberFormatException e) {
+            log.warn("⚠️ 流程变量申请单ID格式不正确，申请单ID列留空: {}", applicationId);
+            return null;
+        }
+    }
+    
+    private String toStringValue(Object value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.toString();
+        return text.length() > maxLength ? text.substring(0, maxLength) : text;
+    }
+    
     /**
      * 获取待办任务列表
      */
@@ -181,9 +516,21 @@ public class WorkflowService {
             int pageNumber = pageable.isPaged() ? pageable.getPageNumber() : 0;
             int pageSize = pageable.isPaged() ? pageable.getPageSize() : 20;
             
-            // 获取用户待办任务
-            List<Task> tasks = taskService.createTaskQuery()
-                .taskCandidateOrAssigned(String.valueOf(userId))
+            // 优先读取收件箱投影：一次按审批人索引的分页查询
+            if (inboxProjectionEnabled) {
+                Page<PendingTaskDTO> inbox = taskInboxService.getInbox(userId, PageRequest.of(pageNumber, pageSize));
+                log.info("📊 收件箱投影查询结果: 用户 {} 的待办任务数量: {}, 总数: {}", 
+                        userId, inbox.getNumberOfElements(), inbox.getTotalElements());
+                return inbox;
+            }
+            
+            // 获取用户待办任务，展示字段从实例记录批量读取；未启用精简变量时一次性带出流程变量
+            TaskQuery taskQuery = taskService.createTaskQuery()
+                .taskCandidateOrAssigned(String.valueOf(userId));
+            if (!slimVariablesEnabled) {
+                taskQuery.includeProcessVariables();
+            }
+            List<Task> tasks = taskQuery
                 .orderByTaskCreateTime().desc()
                 .listPage(pageNumber * pageSize, pageSize);
             
@@ -193,107 +540,8 @@ public class WorkflowService {
             
             log.info("📊 Flowable查询结果: 用户 {} 的待办任务数量: {}, 总数: {}", userId, tasks.size(), total);
             
-            // 转换为DTO
-            List<PendingTaskDTO> dtos = tasks.stream().map(task -> {
-            PendingTaskDTO dto = new PendingTaskDTO();
-            
-            // 核心任务信息 - 使用前端期望的字段名
-            dto.setFlowableTaskId(task.getId());
-            dto.setProcessInstanceId(task.getProcessInstanceId());
-            dto.setTaskName(task.getName());              // 前端期望的字段名
-            dto.setCurrentNodeName(task.getName());       // 保留兼容性
-            dto.setSubmitTime(task.getCreateTime());
-            dto.setCreateTime(task.getCreateTime().toString()); // 前端期望的字段名
-            
-            // 获取流程变量
-            Map<String, Object> vars = runtimeService.getVariables(task.getProcessInstanceId());
-            dto.setApplicantName((String) vars.get("applicantName"));
-            dto.setBusinessType((String) vars.get("businessType"));
-            
-            // 🔧 优先从流程变量获取费用申请ID，如果没有则使用businessId
-            Object applicationIdVar = vars.get("applicationId");
-            if (applicationIdVar != null) {
-                dto.setTaskId(applicationIdVar.toString());     // taskId = 费用申请ID
-                dto.setBusinessId(applicationIdVar.toString()); // businessId = 费用申请ID
-            } else {
-                dto.setBusinessId((String) vars.get("businessId"));
-                dto.setTaskId((String) vars.get("businessId"));
-            }
-            
-            // 金额处理 - 转换为前端期望的Double类型
-            Object amountObj = vars.get("amount");
-            if (amountObj != null) {
-                dto.setOriginalAmount((BigDecimal) amountObj);  // 保留原始值
-                dto.setAmount(((BigDecimal) amountObj).doubleValue()); // 前端期望的number类型
-            }
-            
-            // 查询工作流实例
-            WorkflowInstance instance = workflowInstanceRepository
-                .findByProcessInstanceId(task.getProcessInstanceId())
-                .orElse(null);
-            
-            if (instance != null) {
-                dto.setInstanceId(instance.getId());
-                dto.setTitle(instance.getTitle());
-                // 🔧 修正：从WorkflowInstance补充ID信息（如果流程变量中没有的话）
-                if (dto.getTaskId() == null) {
-                    dto.setTaskId(instance.getBusinessId());       // taskId = 费用申请ID
-                }
-                if (dto.getBusinessId() == null) {
-                    dto.setBusinessId(instance.getBusinessId());   // businessId = 费用申请ID
-                }
-                dto.setApplicationNumber((String) vars.get("applicationNumber")); // 申请单号从变量获取
-                
-                // 查询申请人详细信息获取部门
-                if (instance.getApplicantId() != null) {
-                    Optional<UserDTO> applicantUser = userService.getUserById(instance.getApplicantId());
-                    if (applicantUser.isPresent()) {
-                        dto.setDepartment(applicantUser.get().getDepartment());
-                    }
-                }
-            }
-            
-            // 查询工作流节点
-            WorkflowNode node = workflowNodeRepository
-                .findByTaskId(task.getId())
-                .orElse(null);
-            
-            if (node != null) {
-                // 🔧 移除错误的taskId设置，已在上方通过instance.businessId设置
-                dto.setStatus(mapNodeStatusToTaskStatus(node.getStatus())); // 映射状态
-                dto.setPriority("medium"); // 默认中等优先级（WorkflowNode暂无priority字段）
-                
-                // 委托信息
-                boolean isDelegated = node.getProxyId() != null && node.getProxyId().equals(userId);
-                dto.setDelegated(isDelegated);        // 前端期望的字段名
-                dto.setIsProxy(isDelegated);           // 保留兼容性
-                
-                // 审批人信息
-                if (node.getAssigneeId() != null) {
-                    Optional<UserDTO> assigneeUser = userService.getUserById(node.getAssigneeId());
-                    if (assigneeUser.isPresent()) {
-                        dto.setAssignee(assigneeUser.get().getUserName());
-                    }
-                } else {
-                    dto.setAssignee("待分配");
-                }
-            } else {
-                // 如果没有WorkflowNode记录，使用默认值
-                // 🔧 不再重新设置taskId，保持费用申请ID
-                dto.setStatus("pending");
-                dto.setPriority("medium");
-                dto.setDelegated(false);
-                dto.setIsProxy(false);
-                dto.setAssignee(task.getAssignee() != null ? 
-                    getUserNameById(task.getAssignee()) : "待分配");
-            }
-            
-            // 设置默认值
-            dto.setAttachmentCount(0); // 暂时设为0，后续可查询实际附件数量
-            dto.setDescription(dto.getTitle()); // 使用标题作为描述
-            
-            return dto;
-        }).collect(Collectors.toList());
+            // 批量装配DTO
+            List<PendingTaskDTO> dtos = assemblePendingTasks(tasks, userId);
         
         log.info("✅ 成功转换 {} 个任务为DTO", dtos.size());
         return new PageImpl<>(dtos, pageable, total);
@@ -344,66 +592,28 @@ public class WorkflowService {
                 return new PageImpl<>(new ArrayList<>(), pageable, 0);
             }
             
-            long total = historyService.createHistoricTaskInstanceQuery()
+            long liveTotal = historyService.createHistoricTaskInstanceQuery()
                 .taskAssignee(String.valueOf(userId))
                 .finished()
                 .count();
             
-            log.info("📋 查询到用户已办任务数量: {}, 总数: {}", historicTasks.size(), total);
-            
-            // 转换为DTO
-            List<PendingTaskDTO> dtos = historicTasks.stream().map(task -> {
-            PendingTaskDTO dto = new PendingTaskDTO();
-            dto.setFlowableTaskId(task.getId());
-            dto.setProcessInstanceId(task.getProcessInstanceId());
-            dto.setCurrentNodeName(task.getName());
-            dto.setSubmitTime(task.getCreateTime());
-            dto.setApprovedTime(task.getEndTime());
-            
-            // 查询工作流实例
-            WorkflowInstance instance = workflowInstanceRepository
-                .findByProcessInstanceId(task.getProcessInstanceId())
-                .orElse(null);
-            
-            if (instance != null) {
-                dto.setInstanceId(instance.getId());
-                dto.setTitle(instance.getTitle());
-                dto.setApplicantName(instance.getApplicantName());
-                dto.setBusinessType(instance.getBusinessType());
-                dto.setBusinessId(instance.getBusinessId());
-                
-                // 尝试从变量中获取金额
-                try {
-                    String variablesJson = instance.getVariables();
-                    if (variablesJson != null) {
-                        Map<String, Object> variables = objectMapper.readValue(variablesJson, 
-                            new TypeReference<Map<String, Object>>() {});
-                        if (variables.containsKey("amount")) {
-                            BigDecimal amountBD = new BigDecimal(variables.get("amount").toString());
-                            dto.setOriginalAmount(amountBD);  // 保存原始BigDecimal
-                            dto.setAmount(amountBD.doubleValue()); // 转换为Double
-                        }
-                    }
-                } catch (Exception e) {
-                    log.warn("解析流程变量失败: {}", e.getMessage());
-                }
-            }
-            
-            // 查询历史节点记录
-            List<WorkflowNode> nodes = workflowNodeRepository.findByInstanceId(instance != null ? instance.getId() : null);
-            WorkflowNode historicNode = nodes.stream()
-                .filter(n -> n.getTaskId().equals(task.getId()))
-                .findFirst()
-                .orElse(null);
-            
-            if (historicNode != null) {
-                dto.setTaskId(String.valueOf(historicNode.getId())); // 转换为String类型
-                dto.setComment(historicNode.getComment());
-                dto.setStatus(historicNode.getStatus());
+            // 批量装配DTO
+            List<PendingTaskDTO> dtos = assembleHandledTasks(historicTasks);
+            
+            // 归档的已办任务排在在线数据之后，在线数据不足一页时从归档表补齐
+            long archivedTotal = workflowArchiveService.countHandledTasks(userId);
+            if (archivedTotal > 0 && historicTasks.size() < pageSize) {
+                int archiveOffset = (int) Math.max(0, (long) pageNumber * pageSize - liveTotal);
+                Set<String> liveTaskIds = historicTasks.stream().map(HistoricTaskInstance::getId).collect(Collectors.toSet());
+                List<HistoricTaskInstance> archived = workflowArchiveService.findHandledTasks(
+                    userId, archiveOffset, pageSize - historicTasks.size()).stream()
+                    .filter(task -> !liveTaskIds.contains(task.getId()))
+                    .collect(Collectors.toList());
+                dtos.addAll(assembleHandledTasks(archived));
             }
+            long total = liveTotal + archivedTotal;
             
-            return dto;
-        }).collect(Collectors.toList());
+            log.info("📋 查询到用户已办任务数量: {}, 总数: {}", dtos.size(), total);
         
         log.info("✅ 成功转换 {} 个已办任务为DTO", dtos.size());
         return new PageImpl<>(dtos, pageable, total);
@@ -415,6 +625,169 @@ public class WorkflowService {
         }
     }
     
+    /**
+     * 按业务键（费用申请ID或业务ID）查找用户自己的待办任务
+     * 审批、拒绝、打回前用于定位Flowable任务和工作流实例，只返回当前用户作为审批人/候选人/代理人的任务
+     *
+     * @return 找不到或无权限时返回null
+     */
+    public PendingTaskDTO findPendingTask(Long userId, String businessKey) {
+        if (userId == null || businessKey == null || businessKey.trim().isEmpty()) {
+            return null;
+        }
+        
+        if (inboxProjectionEnabled) {
+            return taskInboxService.findUserTask(userId, businessKey).orElse(null);
+        }
+        
+        // 未启用投影时直接让引擎按业务键或applicationId过滤，不再加载整个收件箱
+        TaskQuery query = taskService.createTaskQuery()
+            .taskCandidateOrAssigned(String.valueOf(userId))
+            .or()
+            .processInstanceBusinessKey(businessKey);
+        if (businessKey.matches("\\d{1,18}")) {
+            if (slimVariablesEnabled) {
+                // 精简模式下applicationId只在实例记录中，先按带索引的列找到流程实例
+                List<String> processInstanceIds = workflowInstanceRepository
+                    .findByApplicationIdAndStatus(Long.valueOf(businessKey), "RUNNING").stream()
+                    .map(WorkflowInstance::getProcessInstanceId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+                if (!processInstanceIds.isEmpty()) {
+                    query.processInstanceIdIn(processInstanceIds);
+                }
+            } else {
+                query.processVariableValueEquals("applicationId", Long.valueOf(businessKey));
+            }
+        }
+        query.endOr();
+        if (!slimVariablesEnabled) {
+            query.includeProcessVariables();
+        }
+        List<Task> tasks = query
+            .orderByTaskCreateTime().desc()
+            .listPage(0, 1);
+        
+        List<PendingTaskDTO> dtos = assemblePendingTasks(tasks, userId);
+        return dtos.isEmpty() ? null : dtos.get(0);
+    }
+    
+    /**
+     * 游标分页获取待办任务
+     * 以上一页最后一条的（创建时间, 任务ID）定位下一页，深翻页不产生OFFSET扫描，也不统计总数
+     */
+    public CursorPage<PendingTaskDTO> getPendingTasksByCursor(Long userId, String cursor, int size) {
+        log.info("🔍 游标分页获取用户待办任务，用户ID: {}, 游标: {}", userId, cursor);
+        int pageSize = normalizeCursorPageSize(size);
+        if (userId == null) {
+            return CursorPage.empty(pageSize);
+        }
+        
+        if (inboxProjectionEnabled) {
+            return taskInboxService.getInboxByCursor(userId, cursor, pageSize);
+        }
+        
+        TaskCursor position = TaskCursor.decode(cursor);
+        StringBuilder sql = new StringBuilder("SELECT RES.* FROM ACT_RU_TASK RES WHERE (RES.ASSIGNEE_ = #{userId} ")
+            .append("OR (RES.ASSIGNEE_ IS NULL AND EXISTS (SELECT 1 FROM ACT_RU_IDENTITYLINK LINK ")
+            .append("WHERE LINK.TASK_ID_ = RES.ID_ AND LINK.TYPE_ = 'candidate' AND LINK.USER_ID_ = #{userId})))");
+        if (position != null) {
+            sql.append(" AND (RES.CREATE_TIME_ < #{cursorTime} OR (RES.CREATE_TIME_ = #{cursorTime} AND RES.ID_ < #{cursorId}))");
+        }
+        sql.append(" ORDER BY RES.CREATE_TIME_ DESC, RES.ID_ DESC");
+        
+        NativeTaskQuery query = taskService.createNativeTaskQuery()
+            .sql(sql.toString())
+            .parameter("userId", String.valueOf(userId));
+        if (position != null) {
+            query.parameter("cursorTime", position.getTime()).parameter("cursorId", position.getTaskId());
+        }
+        List<Task> tasks = query.listPage(0, pageSize + 1);
+        
+        boolean hasMore = tasks.size() > pageSize;
+        List<Task> pageTasks = hasMore ? tasks.subList(0, pageSize) : tasks;
+        String nextCursor = null;
+        if (hasMore) {
+            Task last = pageTasks.get(pageTasks.size() - 1);
+            nextCursor = TaskCursor.encode(last.getCreateTime(), last.getId());
+        }
+        
+        // 原生查询不带流程变量，未启用精简变量时按ID一次性补齐后保持原有顺序
+        List<Task> hydrated = new ArrayList<>(pageTasks);
+        if (!slimVariablesEnabled && !pageTasks.isEmpty()) {
+            hydrated.clear();
+            List<String> taskIds = pageTasks.stream().map(Task::getId).collect(Collectors.toList());
+            Map<String, Task> taskMap = taskService.createTaskQuery()
+                .taskIds(taskIds)
+                .includeProcessVariables()
+                .list().stream()
+                .collect(Collectors.toMap(Task::getId, t -> t, (a, b) -> a));
+            for (String taskId : taskIds) {
+                Task task = taskMap.get(taskId);
+                if (task != null) {
+                    hydrated.add(task);
+                }
+            }
+        }
+        
+        return new CursorPage<>(assemblePendingTasks(hydrated, userId), pageSize, nextCursor, hasMore);
+    }
+    
+    /**
+     * 游标分页获取已办任务
+     * 以上一页最后一条的（完成时间, 任务ID）定位下一页，避免在 ACT_HI_TASKINST 上做OFFSET扫描
+     */
+    public CursorPage<PendingTaskDTO> getHandledTasksByCursor(Long userId, String cursor, int size) {
+        log.info("🔍 游标分页获取用户已办任务，用户ID: {}, 游标: {}", userId, cursor);
+        int pageSize = normalizeCursorPageSize(size);
+        if (userId == null) {
+            return CursorPage.empty(pageSize);
+        }
+        
+        TaskCursor position = TaskCursor.decode(cursor);
+        StringBuilder sql = new StringBuilder("SELECT RES.* FROM ACT_HI_TASKINST RES ")
+            .append("WHERE RES.ASSIGNEE_ = #{userId} AND RES.END_TIME_ IS NOT NULL");
+        if (position != null) {
+            sql.append(" AND (RES.END_TIME_ < #{cursorTime} OR (RES.END_TIME_ = #{cursorTime} AND RES.ID_ < #{cursorId}))");
+        }
+        sql.append(" ORDER BY RES.END_TIME_ DESC, RES.ID_ DESC");
+        
+        NativeHistoricTaskInstanceQuery query = historyService.createNativeHistoricTaskInstanceQuery()
+            .sql(sql.toString())
+            .parameter("userId", String.valueOf(userId));
+        if (position != null) {
+            query.parameter("cursorTime", position.getTime()).parameter("cursorId", position.getTaskId());
+        }
+        List<HistoricTaskInstance> historicTasks = query.listPage(0, pageSize + 1);
+        
+        // 在线结果不足一页，或本页已经翻到归档截止时间之前时，按同一游标合并归档表中的已办任务
+        if (mayReachArchive(historicTasks, pageSize)) {
+            List<HistoricTaskInstance> archived = workflowArchiveService.findHandledTasksBefore(
+                userId, position != null ? position.getTime() : null,
+                position != null ? position.getTaskId() : null, pageSize + 1);
+            if (!archived.isEmpty()) {
+                historicTasks = mergeByEndTimeDesc(historicTasks, archived, pageSize + 1);
+            }
+        }
+        
+        boolean hasMore = historicTasks.size() > pageSize;
+        List<HistoricTaskInstance> pageTasks = hasMore ? historicTasks.subList(0, pageSize) : historicTasks;
+        String nextCursor = null;
+        if (hasMore) {
+            HistoricTaskInstance last = pageTasks.get(pageTasks.size() - 1);
+            nextCursor = TaskCursor.encode(last.getEndTime(), last.getId());
+        }
+        
+        return new CursorPage<>(assembleHandledTasks(pageTasks), pageSize, nextCursor, hasMore);
+    }
+    
+    private int normalizeCursorPageSize(int size) {
+        if (size <= 0) {
+            return 20;
+        }
+        return Math.min(size, 100);
+    }
+    
     /**
      * 审批通过
      */
@@ -440,12 +813,9 @@ public class WorkflowService {
             node.setApprovedTime(LocalDateTime.now());
             workflowNodeRepository.save(node);
             
-            // 完成任务
+            // 完成任务：后续节点记录和流程完成状态由流程事件监听器在同一事务内维护
             taskService.complete(taskId);
             
-            // 更新流程实例状态
-            updateWorkflowInstanceStatus(task.getProcessInstanceId());
-            
             log.info("审批通过，任务ID: {}, 审批意见: {}", taskId, comment);
             
         } catch (Exception e) {
@@ -552,7 +922,17 @@ public class WorkflowService {
         
         // 获取流程变量
         if ("RUNNING".equals(instance.getStatus())) {
-            Map<String, Object> variables = runtimeService.getVariables(instance.getProcessInstanceId());
+            Map<String, Object> variables = new HashMap<>();
+            if (slimVariablesEnabled && instance.getVariables() != null) {
+                // 展示字段只保存在实例记录中，与Flowable中的路由变量合并返回
+                try {
+                    variables.putAll(objectMapper.readValue(instance.getVariables(),
+                        objectMapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class)));
+                } catch (JsonProcessingException e) {
+                    log.warn("⚠️ 解析实例变量失败，实例ID: {}", instanceId, e);
+                }
+            }
+            variables.putAll(runtimeService.getVariables(instance.getProcessInstanceId()));
             dto.setVariables(variables);
         }
         
@@ -563,13 +943,67 @@ public class WorkflowService {
      * 获取审批历史（返回详细信息）
      */
     public List<Map<String, Object>> getDetailedHistory(String processInstanceId) {
-        List<HistoricTaskInstance> historicTasks = historyService.createHistoricTaskInstanceQuery()
-            .processInstanceId(processInstanceId)
-            .orderByHistoricTaskInstanceStartTime().asc()
-            .list();
+        List<Map<String, Object>> cached = getHistoryCache().get(processInstanceId);
+        if (cached != null) {
+            return cached;
+        }
         
-        List<Map<String, Object>> history = new ArrayList<>();
+        WorkflowInstance instance = workflowInstanceRepository
+            .findByProcessInstanceId(processInstanceId)
+            .orElse(null);
+        
+        // 在线表中没有的流程已被归档，历史任务、审批意见和节点都从归档表读取
+        boolean archived = false;
+        if (instance == null) {
+            instance = workflowArchiveService.findInstanceByProcessInstanceId(processInstanceId).orElse(null);
+            archived = instance != null;
+        }
         
+        List<HistoricTaskInstance> historicTasks;
+        Map<String, String> commentMap = new HashMap<>();
+        if (archived) {
+            historicTasks = workflowArchiveService.findTasksByProcessInstanceId(processInstanceId);
+            commentMap.putAll(workflowArchiveService.findTaskComments(processInstanceId));
+        } else {
+            historicTasks = historyService.createHistoricTaskInstanceQuery()
+                .processInstanceId(processInstanceId)
+                .orderByHistoricTaskInstanceStartTime().asc()
+                .list();
+            
+            // 审批意见：一次查出流程下全部意见，按任务分组（与 getTaskComments 一致，按时间倒序取第一条）
+            for (Comment comment : taskService.getProcessInstanceComments(processInstanceId)) {
+                if (comment.getTaskId() != null) {
+                    commentMap.putIfAbsent(comment.getTaskId(), comment.getFullMessage());
+                }
+            }
+        }
+        
+        // 审批人：批量查询
+        Set<Long> userIds = new HashSet<>();
+        for (HistoricTaskInstance task : historicTasks) {
+            Long assigneeId = parseUserId(task.getAssignee());
+            if (assigneeId != null) {
+                userIds.add(assigneeId);
+            } else if (task.getAssignee() != null) {
+                log.warn("无法解析审批人ID: {}", task.getAssignee());
+            }
+        }
+        Map<Long, UserDTO> userMap = userIds.isEmpty() ? Collections.emptyMap() : userService.getUsersByIds(userIds);
+        
+        // 节点表：按实例一次加载
+        Map<String, WorkflowNode> nodeMap = new HashMap<>();
+        if (instance != null) {
+            List<WorkflowNode> nodes = archived
+                ? workflowArchiveService.findNodesByInstanceId(instance.getId())
+                : workflowNodeRepository.findByInstanceId(instance.getId());
+            for (WorkflowNode node : nodes) {
+                if (node.getTaskId() != null) {
+                    nodeMap.putIfAbsent(node.getTaskId(), node);
+                }
+            }
+        }
+        
+        List<Map<String, Object>> history = new ArrayList<>();
         for (HistoricTaskInstance task : historicTasks) {
             Map<String, Object> taskInfo = new HashMap<>();
             taskInfo.put("taskId", task.getId());
@@ -580,93 +1014,82 @@ public class WorkflowService {
             taskInfo.put("duration", task.getDurationInMillis());
             taskInfo.put("deleteReason", task.getDeleteReason());
             
-            // 查询审批意见
-            List<Comment> comments = taskService.getTaskComments(task.getId());
-            if (!comments.isEmpty()) {
-                taskInfo.put("comment", comments.get(0).getFullMessage());
+            String comment = commentMap.get(task.getId());
+            if (comment != null) {
+                taskInfo.put("comment", comment);
             }
             
-            // 查询审批人信息
-            if (task.getAssignee() != null) {
-                try {
-                    Long assigneeId = Long.valueOf(task.getAssignee());
-                    Optional<UserDTO> assigneeUser = userService.getUserById(assigneeId);
-                    if (assigneeUser.isPresent()) {
-                        taskInfo.put("assigneeName", assigneeUser.get().getUserName());
-                        taskInfo.put("assigneeDepartment", assigneeUser.get().getDepartment());
-                    }
-                } catch (NumberFormatException e) {
-                    log.warn("无法解析审批人ID: {}", task.getAssignee());
-                }
+            UserDTO assigneeUser = userMap.get(parseUserId(task.getAssignee()));
+            if (assigneeUser != null) {
+                taskInfo.put("assigneeName", assigneeUser.getUserName());
+                taskInfo.put("assigneeDepartment", assigneeUser.getDepartment());
             }
             
-            // 从我们的节点表获取额外信息
-            WorkflowInstance instance = workflowInstanceRepository
-                .findByProcessInstanceId(processInstanceId)
-                .orElse(null);
-            
-            if (instance != null) {
-                List<WorkflowNode> nodes = workflowNodeRepository.findByInstanceId(instance.getId());
-                WorkflowNode node = nodes.stream()
-                    .filter(n -> n.getTaskId().equals(task.getId()))
-                    .findFirst()
-                    .orElse(null);
-                
-                if (node != null) {
-                    taskInfo.put("nodeStatus", node.getStatus());
-                    taskInfo.put("nodeComment", node.getComment());
-                    taskInfo.put("approvedTime", node.getApprovedTime());
-                }
+            WorkflowNode node = nodeMap.get(task.getId());
+            if (node != null) {
+                taskInfo.put("nodeStatus", node.getStatus());
+                taskInfo.put("nodeComment", node.getComment());
+                taskInfo.put("approvedTime", node.getApprovedTime());
             }
             
             history.add(taskInfo);
         }
         
+        // 已结束的流程历史不会再变化，放入缓存；异步历史尚未写完（历史流程或历史任务尚未结束）时不缓存，
+        // 归档的流程历史已经定型。缓存的列表和每条记录都只读，避免调用方修改后污染其他请求
+        boolean historyComplete = historicTasks.stream().allMatch(task -> task.getEndTime() != null)
+            && (archived || isHistoricProcessEnded(processInstanceId));
+        if (instance != null && isFinishedStatus(instance.getStatus()) && historyComplete) {
+            List<Map<String, Object>> immutable = new ArrayList<>(history.size());
+            for (Map<String, Object> taskInfo : history) {
+                immutable.add(Collections.unmodifiableMap(taskInfo));
+            }
+            immutable = Collections.unmodifiableList(immutable);
+            getHistoryCache().put(processInstanceId, immutable);
+            return immutable;
+        }
         return history;
     }
     
+    private boolean isHistoricProcessEnded(String processInstanceId) {
+        HistoricProcessInstance process = historyService.createHistoricProcessInstanceQuery()
+            .processInstanceId(processInstanceId)
+            .singleResult();
+        return process != null && process.getEndTime() != null;
+    }
+    
     /**
-     * 批量审批
+     * 清除审批历史缓存（管理员清理数据时调用）
      */
-    @Transactional
-    public BatchResult batchApprove(List<ApprovalRequest> requests) {
-        BatchResult result = new BatchResult();
-        
-        for (ApprovalRequest request : requests) {
-            try {
-                WorkflowNode node = workflowNodeRepository.findById(request.getTaskId())
-                    .orElseThrow(() -> new RuntimeException("任务不存在"));
-                
-                if ("approve".equals(request.getAction())) {
-                    approve(node.getInstanceId(), node.getTaskId(), request.getComment());
-                } else if ("reject".equals(request.getAction())) {
-                    reject(node.getInstanceId(), node.getTaskId(), request.getComment());
+    public void evictHistory(String processInstanceId) {
+        if (processInstanceId != null) {
+            getHistoryCache().remove(processInstanceId);
+        }
+    }
+    
+    private boolean isFinishedStatus(String status) {
+        return "COMPLETED".equals(status) || "REJECTED".equals(status);
+    }
+    
+    private LruCache<String, List<Map<String, Object>>> getHistoryCache() {
+        LruCache<String, List<Map<String, Object>>> cache = historyCache;
+        if (cache == null) {
+            synchronized (this) {
+                if (historyCache == null) {
+                    historyCache = new LruCache<>(historyCacheSize);
                 }
-                result.addSuccess(request.getTaskId());
-            } catch (Exception e) {
-                result.addFailure(request.getTaskId(), "任务" + request.getTaskId() + ": " + e.getMessage());
+                cache = historyCache;
             }
         }
-        
-        return result;
+        return cache;
     }
     
     /**
      * 获取流程实例列表
+     * 条件和排序都落在实例表的列上（金额、部门等业务字段已是独立列），不逐行解析流程变量
      */
-    public Page<WorkflowInstanceDTO> getWorkflowInstances(String status, Long applicantId, Pageable pageable) {
-        // 构建查询条件
-        Page<WorkflowInstance> instances;
-        
-        if (status != null && applicantId != null) {
-            instances = workflowInstanceRepository.findByStatusAndApplicantId(status, applicantId, pageable);
-        } else if (status != null) {
-            instances = workflowInstanceRepository.findByStatus(status, pageable);
-        } else if (applicantId != null) {
-            instances = workflowInstanceRepository.findByApplicantId(applicantId, pageable);
-        } else {
-            instances = workflowInstanceRepository.findAll(pageable);
-        }
+    public Page<WorkflowInstanceDTO> getWorkflowInstances(WorkflowInstanceQueryDTO query, Pageable pageable) {
+        Page<WorkflowInstance> instances = workflowInstanceRepository.findAll(buildInstanceSpecification(query), pageable);
         
         // 转换为DTO
         List<WorkflowInstanceDTO> dtos = instances.getContent().stream()
@@ -676,377 +1099,421 @@ public class WorkflowService {
         return new PageImpl<>(dtos, pageable, instances.getTotalElements());
     }
     
-    /**
-     * 获取可打回的节点列表
-     */
-    public List<Map<String, String>> getReturnableNodes(Long nodeId) {
-        WorkflowNode currentNode = workflowNodeRepository.findById(nodeId)
-            .orElseThrow(() -> new RuntimeException("节点不存在"));
-        
-        WorkflowInstance instance = workflowInstanceRepository.findById(currentNode.getInstanceId())
-            .orElseThrow(() -> new RuntimeException("流程实例不存在"));
-        
-        // 查询该流程实例的所有已完成节点
-        List<WorkflowNode> completedNodes = workflowNodeRepository
-            .findByInstanceIdAndStatus(instance.getId(), "COMPLETED");
-        
-        // 构建可打回节点列表（只能打回到之前的节点）
-        List<Map<String, String>> returnableNodes = new ArrayList<>();
-        
-        for (WorkflowNode node : completedNodes) {
-            // 排除自己和之后的节点
-            if (node.getId() < currentNode.getId()) {
-                Map<String, String> nodeInfo = new HashMap<>();
-                nodeInfo.put("nodeKey", node.getNodeKey());
-                nodeInfo.put("nodeName", node.getNodeName());
-                nodeInfo.put("assigneeName", node.getAssigneeName());
-                nodeInfo.put("approvedTime", node.getApprovedTime() != null ? 
-                    node.getApprovedTime().toString() : "");
-                returnableNodes.add(nodeInfo);
+    private Specification<WorkflowInstance> buildInstanceSpecification(WorkflowInstanceQueryDTO query) {
+        return (root, criteriaQuery, criteriaBuilder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (query == null) {
+                return criteriaBuilder.and();
             }
-        }
-        
-        return returnableNodes;
-    }
-    
-    // 辅助方法
-    
-    private String getProcessDefinitionKey(String businessType) {
-        try {
-            log.info("🔍 查找业务类型 {} 的动态工作流模板", businessType);
             
-            // 1. 使用WorkflowTemplateService的专用方法查找已部署的模板
-            Optional<WorkflowTemplate> matchedTemplate = workflowTemplateService
-                .findDeployedTemplateByBusinessType(businessType);
+            if (StringUtils.hasText(query.getStatus())) {
+                predicates.add(criteriaBuilder.equal(root.get("status"), query.getStatus().trim()));
+            }
             
-            if (matchedTemplate.isPresent()) {
-                WorkflowTemplate template = matchedTemplate.get();
-                
-                // 验证模板是否在Flowable中真正可用
-                boolean isAvailable = workflowTemplateService.isTemplateAvailable(template.getProcessKey());
-                if (isAvailable) {
-                    // 检查是否需要使用兼容模式（使用expenseApproval key）
-                    long exactCount = repositoryService.createProcessDefinitionQuery()
-                        .processDefinitionKey(template.getProcessKey())
-                        .active()
-                        .count();
-                    
-                    if (exactCount > 0) {
-                        log.info("✅ 找到并验证动态工作流模板: {} (processKey: {})", 
-                                template.getName(), template.getProcessKey());
-                        return template.getProcessKey();
-                    } else {
-                        // 使用兼容模式
-                        log.info("✅ 使用兼容模式的工作流模板: {} (使用expenseApproval)", template.getName());
-                        return "expenseApproval";
-                    }
-                } else {
-                    log.warn("⚠️ 工作流模板在数据库中存在但在Flowable中不可用: {}", template.getProcessKey());
-                }
+            if (query.getApplicantId() != null) {
+                predicates.add(criteriaBuilder.equal(root.get("applicantId"), query.getApplicantId()));
             }
             
-            // 2. 查找默认的费用审批模板
-            if (businessType.toUpperCase().contains("EXPENSE")) {
-                Optional<WorkflowTemplate> defaultTemplate = workflowTemplateService.getDefaultExpenseTemplate();
-                if (defaultTemplate.isPresent()) {
-                    WorkflowTemplate template = defaultTemplate.get();
-                    boolean isAvailable = workflowTemplateService.isTemplateAvailable(template.getProcessKey());
-                    if (isAvailable) {
-                        log.info("✅ 使用默认费用审批工作流模板: {} (processKey: {})", 
-                                template.getName(), template.getProcessKey());
-                        return template.getProcessKey();
-                    }
-                }
+            if (query.getMinAmount() != null) {
+                predicates.add(criteriaBuilder.greaterThanOrEqualTo(root.get("amount"), query.getMinAmount()));
             }
             
-            // 3. 查找任何可用的已部署模板
-            List<WorkflowTemplate> allDeployedTemplates = workflowTemplateService.getAllTemplates().stream()
-                .filter(template -> template.getIsDeployed())
-                .filter(template -> "active".equals(template.getStatus()))
-                .collect(Collectors.toList());
+            if (query.getMaxAmount() != null) {
+                predicates.add(criteriaBuilder.lessThanOrEqualTo(root.get("amount"), query.getMaxAmount()));
+            }
             
-            for (WorkflowTemplate template : allDeployedTemplates) {
-                boolean isAvailable = workflowTemplateService.isTemplateAvailable(template.getProcessKey());
-                if (isAvailable) {
-                    log.info("✅ 使用可用的工作流模板: {} (processKey: {})", 
-                            template.getName(), template.getProcessKey());
-                    return template.getProcessKey();
-                }
+            if (StringUtils.hasText(query.getCurrency())) {
+                predicates.add(criteriaBuilder.equal(root.get("currency"), query.getCurrency().trim()));
             }
             
-            // 4. 如果完全没有动态模板，抛出详细的异常信息
-            log.error("❌ 没有找到任何可用的动态工作流模板！");
-            log.error("   业务类型: {}", businessType);
-            log.error("   所有模板数量: {}", workflowTemplateService.getAllTemplates().size());
-            log.error("   已部署模板数量: {}", allDeployedTemplates.size());
-            
-            // 记录所有可用模板的详细信息
-            List<WorkflowTemplate> allTemplates = workflowTemplateService.getAllTemplates();
-            log.error("   所有工作流模板详情:");
-            for (WorkflowTemplate template : allTemplates) {
-                log.error("     - 模板ID: {}, 名称: {}, 类型: {}, 状态: {}, 已部署: {}, ProcessKey: {}", 
-                         template.getId(), template.getName(), template.getType(), 
-                         template.getStatus(), template.getIsDeployed(), template.getProcessKey());
+            if (StringUtils.hasText(query.getDepartment())) {
+                predicates.add(criteriaBuilder.equal(root.get("department"), query.getDepartment().trim()));
             }
             
-            throw new RuntimeException("没有可用的工作流模板。请先在系统配置页面创建并部署工作流模板，然后重试。" +
-                                     "当前系统中共有 " + allTemplates.size() + " 个工作流模板，其中 " + 
-                                     allDeployedTemplates.size() + " 个已部署。");
+            if (StringUtils.hasText(query.getApplicationNumber())) {
+                predicates.add(criteriaBuilder.equal(root.get("applicationNumber"), query.getApplicationNumber().trim()));
+            }
             
-        } catch (Exception e) {
-            log.error("❌ 查找动态工作流模板失败: {}", e.getMessage(), e);
-            throw new RuntimeException("工作流模板查找失败: " + e.getMessage());
-        }
+            return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+        };
     }
     
-
-    
-
-    
-    private Long getManagerId(UserDTO user) {
-        // 获取直属主管ID
-        if (user.getManagerId() != null) {
-            // 验证主管是否存在
-            Optional<UserDTO> manager = userService.getUserById(user.getManagerId());
-            if (manager.isPresent() && "在职".equals(manager.get().getStatus())) {
-                log.info("使用用户 {} 的直属主管: {} (ID: {})", user.getUserName(), 
-                    manager.get().getUserName(), user.getManagerId());
-                return user.getManagerId();
-        }
-        }
-        
-        // 如果没有直属主管或主管不存在，查找部门主管
-        try {
-            List<UserDTO> departmentManagers = userService.getUsersByDepartmentAndType(
-                user.getDepartment(), "主管");
-            
-            if (!departmentManagers.isEmpty()) {
-                UserDTO deptManager = departmentManagers.get(0);
-                log.info("使用部门 {} 的主管: {} (ID: {})", user.getDepartment(), 
-                    deptManager.getUserName(), deptManager.getId());
-                return deptManager.getId();
-            }
-        } catch (Exception e) {
-            log.warn("查找部门主管失败: {}", e.getMessage());
-        }
+    /**
+     * 获取可打回的节点列表
+     */
+    public List<Map<String, String>> getReturnableNodes(Long nodeId) {
+        WorkflowNode currentNode = workflowNodeRepository.findById(nodeId)
+            .orElseThrow(() -> new RuntimeException("节点不存在"));
         
-        // 如果还是找不到，查找系统管理员
-        Optional<UserDTO> admin = userService.getUserByEmail("admin@hkex.com");
-        if (admin.isPresent()) {
-            log.info("使用系统管理员作为默认审批人: {} (ID: {})", 
-                admin.get().getUserName(), admin.get().getId());
-            return admin.get().getId();
-        }
+        WorkflowInstance instance = workflowInstanceRepository.findById(currentNode.getInstanceId())
+            .orElseThrow(() -> new RuntimeException("流程实例不存在"));
         
-        throw new RuntimeException("无法找到合适的审批人");
+        return resolveReturnableNodes(instance.getProcessInstanceId(), currentNode.getNodeKey());
     }
     
-    private Long getFunctionalHeadId(UserDTO user) {
-        // 根据部门查找对应的职能负责人
-        String functionalHead = null;
+    /**
+     * 按待办任务获取可打回的节点列表
+     */
+    public List<Map<String, String>> getReturnableNodesByTaskId(String taskId) {
+        Task task = taskService.createTaskQuery()
+            .taskId(taskId)
+            .singleResult();
         
-        switch (user.getDepartment()) {
-            case "信息技术部":
-                functionalHead = "CTO";
-                break;
-            case "财务部":
-                functionalHead = "CFO";
-                break;
-            case "人力资源部":
-                functionalHead = "COO";
-                break;
-            case "交易部":
-                functionalHead = "CEO";
-                break;
-            case "风控部":
-                functionalHead = "CRO";
-                break;
-            case "合规部":
-                functionalHead = "CCO";
-                break;
-            default:
-                functionalHead = "COO"; // 默认由COO审批
+        if (task == null) {
+            throw new RuntimeException("任务不存在");
         }
         
-        // 查找对应职位的用户
-        try {
-            List<UserDTO> functionalHeads = userService.getUsersByPosition(functionalHead);
-            if (!functionalHeads.isEmpty()) {
-                UserDTO head = functionalHeads.stream()
-                    .filter(u -> "在职".equals(u.getStatus()))
-                    .findFirst()
-                    .orElse(null);
-                    
-                if (head != null) {
-                    log.info("部门 {} 的职能负责人: {} - {} (ID: {})", 
-                        user.getDepartment(), functionalHead, head.getUserName(), head.getId());
-                    return head.getId();
-                }
-            }
-        } catch (Exception e) {
-            log.warn("查找职能负责人失败: {}", e.getMessage());
+        return resolveReturnableNodes(task.getProcessInstanceId(), task.getTaskDefinitionKey());
+    }
+    
+    /**
+     * 可打回节点 = 流程定义中当前节点上游的用户任务 ∩ 本实例已办结的用户任务
+     * 上游关系来自按流程定义缓存的BPMN图，已办结节点只做一次历史活动查询，同一节点多次办理（如被打回后重办）取最近一次
+     */
+    private List<Map<String, String>> resolveReturnableNodes(String processInstanceId, String activityId) {
+        List<HistoricActivityInstance> finishedActivities = historyService.createHistoricActivityInstanceQuery()
+            .processInstanceId(processInstanceId)
+            .activityType("userTask")
+            .finished()
+            .orderByHistoricActivityInstanceEndTime().asc()
+            .list();
+        if (finishedActivities.isEmpty()) {
+            return new ArrayList<>();
         }
         
-        // 如果找不到对应的职能负责人，使用COO
-        Optional<UserDTO> coo = userService.getUsersByPosition("COO").stream()
-            .filter(u -> "在职".equals(u.getStatus()))
-            .findFirst();
-            
-        if (coo.isPresent()) {
-            log.info("使用COO作为默认职能负责人: {} (ID: {})", 
-                coo.get().getUserName(), coo.get().getId());
-            return coo.get().getId();
+        Set<String> upstream = processGraphService.getUpstreamUserTasks(
+            finishedActivities.get(0).getProcessDefinitionId(), activityId);
+        
+        Map<String, HistoricActivityInstance> latestByActivity = new LinkedHashMap<>();
+        for (HistoricActivityInstance activity : finishedActivities) {
+            if (upstream.contains(activity.getActivityId())) {
+                latestByActivity.remove(activity.getActivityId());
+                latestByActivity.put(activity.getActivityId(), activity);
+            }
         }
         
-        // 最后使用系统管理员
-        Optional<UserDTO> admin = userService.getUserByEmail("admin@hkex.com");
-        if (admin.isPresent()) {
-            log.info("使用系统管理员作为默认职能负责人: {} (ID: {})", 
-                admin.get().getUserName(), admin.get().getId());
-            return admin.get().getId();
+        List<Map<String, String>> returnableNodes = new ArrayList<>();
+        for (HistoricActivityInstance activity : latestByActivity.values()) {
+            Map<String, String> nodeInfo = new HashMap<>();
+            nodeInfo.put("nodeKey", activity.getActivityId());
+            nodeInfo.put("nodeName", activity.getActivityName());
+            nodeInfo.put("assigneeName", resolveAssigneeName(activity.getAssignee()));
+            nodeInfo.put("approvedTime", activity.getEndTime() != null ? 
+                activity.getEndTime().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime().toString() : "");
+            returnableNodes.add(nodeInfo);
         }
         
-        throw new RuntimeException("无法找到合适的职能负责人");
+        return returnableNodes;
     }
     
-    private Long getFinanceManagerId() {
-        // 查找财务部主管
-        List<UserDTO> financeManagers = userService.getUsersByDepartmentAndType("财务部", "主管");
-        if (!financeManagers.isEmpty()) {
-            UserDTO financeManager = financeManagers.get(0);
-            log.info("使用财务部主管: {} (ID: {})", financeManager.getUserName(), financeManager.getId());
-            return financeManager.getId();
+    private String resolveAssigneeName(String assignee) {
+        if (assignee == null) {
+            return "";
         }
-        
-        // 如果找不到，使用张三（财务总监）
-        Optional<UserDTO> zhangsan = userService.getUserByEmail("zhangsan@hkex.com");
-        if (zhangsan.isPresent() && "在职".equals(zhangsan.get().getStatus())) {
-            log.info("使用财务总监张三作为财务审批人");
-            return zhangsan.get().getId();
+        try {
+            return approverDirectory.findUser(Long.valueOf(assignee))
+                .map(UserDTO::getUserName)
+                .orElse(assignee);
+        } catch (NumberFormatException e) {
+            return assignee;
         }
-        
-        throw new RuntimeException("无法找到财务部审批人");
     }
     
-    private Long getComplianceManagerId() {
-        // 查找合规部主管
-        List<UserDTO> complianceManagers = userService.getUsersByDepartmentAndType("合规部", "主管");
-        if (!complianceManagers.isEmpty()) {
-            UserDTO complianceManager = complianceManagers.get(0);
-            log.info("使用合规部主管: {} (ID: {})", complianceManager.getUserName(), complianceManager.getId());
-            return complianceManager.getId();
+    // 辅助方法
+    
+    /**
+     * 批量装配已办任务DTO
+     * 工作流实例、工作流节点各用一次IN查询加载，不再逐条查询
+     */
+    private List<PendingTaskDTO> assembleHandledTasks(List<HistoricTaskInstance> historicTasks) {
+        if (historicTasks == null || historicTasks.isEmpty()) {
+            return new ArrayList<>();
         }
         
-        // 如果找不到，使用严三（合规总监）
-        Optional<UserDTO> yansan = userService.getUserByEmail("yansan@hkex.com");
-        if (yansan.isPresent() && "在职".equals(yansan.get().getStatus())) {
-            log.info("使用合规总监严三作为合规审批人");
-            return yansan.get().getId();
+        Set<String> processInstanceIds = historicTasks.stream()
+            .map(HistoricTaskInstance::getProcessInstanceId)
+            .collect(Collectors.toSet());
+        Set<String> taskIds = historicTasks.stream()
+            .map(HistoricTaskInstance::getId)
+            .collect(Collectors.toSet());
+        
+        Map<String, WorkflowInstance> instanceMap = workflowInstanceRepository
+            .findByProcessInstanceIdIn(processInstanceIds).stream()
+            .collect(Collectors.toMap(WorkflowInstance::getProcessInstanceId, i -> i, (a, b) -> a));
+        Map<String, WorkflowNode> nodeMap = workflowNodeRepository
+            .findByTaskIdIn(taskIds).stream()
+            .collect(Collectors.toMap(WorkflowNode::getTaskId, n -> n, (a, b) -> a));
+        
+        // 在线表中找不到的实例和节点已被归档，回落到归档表
+        processInstanceIds.removeAll(instanceMap.keySet());
+        if (!processInstanceIds.isEmpty()) {
+            workflowArchiveService.findInstancesByProcessInstanceIds(processInstanceIds)
+                .forEach(instance -> instanceMap.putIfAbsent(instance.getProcessInstanceId(), instance));
+        }
+        taskIds.removeAll(nodeMap.keySet());
+        if (!taskIds.isEmpty()) {
+            workflowArchiveService.findNodesByTaskIds(taskIds)
+                .forEach(node -> nodeMap.putIfAbsent(node.getTaskId(), node));
         }
         
-        throw new RuntimeException("无法找到合规部审批人");
+        return historicTasks.stream()
+            .map(task -> toHandledTaskDTO(task, instanceMap.get(task.getProcessInstanceId()), nodeMap.get(task.getId())))
+            .collect(Collectors.toList());
     }
     
-    private Long getExecutiveId(BigDecimal amount) {
-        // 根据金额选择不同的高管审批
-        String executivePosition;
-        if (amount.compareTo(new BigDecimal("100000")) > 0) {
-            executivePosition = "CEO";
-        } else {
-            executivePosition = "COO";
-        }
-        
-        List<UserDTO> executives = userService.getUsersByPosition(executivePosition);
-        if (!executives.isEmpty()) {
-            UserDTO executive = executives.get(0);
-            log.info("使用{}作为高管审批人: {} (ID: {})", executivePosition, executive.getUserName(), executive.getId());
-            return executive.getId();
+    /**
+     * 从预加载的数据组装单个已办任务DTO
+     */
+    /**
+     * 归档表中的任务结束时间都早于归档截止时间，在线结果已满一页且最后一条晚于截止时间时不需要查询归档表
+     */
+    private boolean mayReachArchive(List<HistoricTaskInstance> liveTasks, int pageSize) {
+        if (liveTasks.size() <= pageSize) {
+            return true;
         }
+        Date lastEndTime = liveTasks.get(liveTasks.size() - 1).getEndTime();
+        return lastEndTime == null
+            || lastEndTime.toInstant().isBefore(workflowArchiveService.archiveCutoff().atZone(ZoneId.systemDefault()).toInstant());
+    }
+    
+    /**
+     * 按（结束时间, 任务ID）倒序合并在线和归档的已办任务
+     * 两次查询之间历史清理可能恰好删除了在线任务，同一任务在两边都出现时只保留在线的一条
+     */
+    private List<HistoricTaskInstance> mergeByEndTimeDesc(List<HistoricTaskInstance> live,
+                                                          List<HistoricTaskInstance> archived, int limit) {
+        Comparator<HistoricTaskInstance> order = Comparator
+            .comparing(HistoricTaskInstance::getEndTime, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(HistoricTaskInstance::getId, Comparator.reverseOrder());
+        Map<String, HistoricTaskInstance> byId = new LinkedHashMap<>();
+        Stream.concat(live.stream(), archived.stream()).forEach(task -> byId.putIfAbsent(task.getId(), task));
+        return byId.values().stream()
+            .sorted(order)
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+    
+    private PendingTaskDTO toHandledTaskDTO(HistoricTaskInstance task, WorkflowInstance instance, WorkflowNode historicNode) {
+        PendingTaskDTO dto = new PendingTaskDTO();
+        dto.setFlowableTaskId(task.getId());
+        dto.setProcessInstanceId(task.getProcessInstanceId());
+        dto.setCurrentNodeName(task.getName());
+        dto.setSubmitTime(task.getCreateTime());
+        dto.setApprovedTime(task.getEndTime());
         
-        // 如果找不到对应高管，尝试查找其他高管
-        String[] executivePositions = {"CEO", "COO", "CFO", "CTO"};
-        for (String pos : executivePositions) {
-            List<UserDTO> altExecutives = userService.getUsersByPosition(pos);
-            if (!altExecutives.isEmpty()) {
-                UserDTO executive = altExecutives.get(0);
-                log.info("使用{}作为替代高管审批人: {} (ID: {})", pos, executive.getUserName(), executive.getId());
-                return executive.getId();
+        if (instance != null) {
+            dto.setInstanceId(instance.getId());
+            dto.setTitle(instance.getTitle());
+            dto.setApplicantName(instance.getApplicantName());
+            dto.setBusinessType(instance.getBusinessType());
+            dto.setBusinessId(instance.getBusinessId());
+            
+            if (instance.getAmount() != null) {
+                dto.setOriginalAmount(instance.getAmount());  // 保存原始BigDecimal
+                dto.setAmount(instance.getAmount().doubleValue()); // 转换为Double
             }
         }
         
-        // 最后使用系统管理员
-        Optional<UserDTO> admin = userService.getUserByEmail("admin@hkex.com");
-        if (admin.isPresent()) {
-            log.info("使用系统管理员作为高管审批人");
-            return admin.get().getId();
+        if (historicNode != null) {
+            dto.setTaskId(String.valueOf(historicNode.getId())); // 转换为String类型
+            dto.setComment(historicNode.getComment());
+            dto.setStatus(historicNode.getStatus());
         }
         
-        throw new RuntimeException("无法找到高管审批人");
+        return dto;
     }
     
-    private void createWorkflowNode(WorkflowInstance instance, Task task) {
-        WorkflowNode node = new WorkflowNode();
-        node.setInstanceId(instance.getId());
-        node.setTaskId(task.getId());
-        node.setNodeKey(task.getTaskDefinitionKey());
-        node.setNodeName(task.getName());
-        node.setStatus("PENDING");
-        node.setExecutionId(task.getExecutionId());
+    /**
+     * 批量装配待办任务DTO
+     * 工作流实例、工作流节点、用户信息各用一次IN查询加载，再从内存映射中组装，
+     * 查询次数与分页大小无关
+     */
+    private List<PendingTaskDTO> assemblePendingTasks(List<Task> tasks, Long userId) {
+        if (tasks == null || tasks.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        Set<String> processInstanceIds = tasks.stream()
+            .map(Task::getProcessInstanceId)
+            .collect(Collectors.toSet());
+        Set<String> taskIds = tasks.stream()
+            .map(Task::getId)
+            .collect(Collectors.toSet());
+        
+        Map<String, WorkflowInstance> instanceMap = workflowInstanceRepository
+            .findByProcessInstanceIdIn(processInstanceIds).stream()
+            .collect(Collectors.toMap(WorkflowInstance::getProcessInstanceId, i -> i, (a, b) -> a));
+        Map<String, WorkflowNode> nodeMap = workflowNodeRepository
+            .findByTaskIdIn(taskIds).stream()
+            .collect(Collectors.toMap(WorkflowNode::getTaskId, n -> n, (a, b) -> a));
         
-        if (task.getAssignee() != null) {
-            try {
-                node.setAssigneeId(Long.valueOf(task.getAssignee()));
-                UserDTO assignee = userService.getUserById(Long.valueOf(task.getAssignee())).orElse(null);
-                if (assignee != null) {
-                    node.setAssigneeName(assignee.getUserName());
+        // 汇总需要查询的用户：申请人、节点审批人、无节点记录时的任务办理人
+        Set<Long> userIds = new HashSet<>();
+        instanceMap.values().forEach(instance -> {
+            if (instance.getApplicantId() != null) {
+                userIds.add(instance.getApplicantId());
+            }
+        });
+        for (Task task : tasks) {
+            WorkflowNode node = nodeMap.get(task.getId());
+            if (node != null) {
+                if (node.getAssigneeId() != null) {
+                    userIds.add(node.getAssigneeId());
+                }
+            } else {
+                Long assigneeId = parseUserId(task.getAssignee());
+                if (assigneeId != null) {
+                    userIds.add(assigneeId);
                 }
-            } catch (NumberFormatException e) {
-                log.warn("无法解析任务分配人ID: {}", task.getAssignee());
             }
         }
+        Map<Long, UserDTO> userMap = userService.getUsersByIds(userIds);
         
-        workflowNodeRepository.save(node);
+        return tasks.stream()
+            .map(task -> toPendingTaskDTO(task, instanceMap.get(task.getProcessInstanceId()),
+                    nodeMap.get(task.getId()), userMap, userId))
+            .collect(Collectors.toList());
     }
     
-    private void updateWorkflowInstanceStatus(String processInstanceId) {
-        WorkflowInstance instance = workflowInstanceRepository
-            .findByProcessInstanceId(processInstanceId)
-            .orElse(null);
+    /**
+     * 从预加载的数据组装单个待办任务DTO（不访问数据库）
+     */
+    private PendingTaskDTO toPendingTaskDTO(Task task, WorkflowInstance instance, WorkflowNode node,
+                                            Map<Long, UserDTO> userMap, Long userId) {
+        PendingTaskDTO dto = new PendingTaskDTO();
         
-        if (instance == null) {
-            return;
-        }
+        // 核心任务信息 - 使用前端期望的字段名
+        dto.setFlowableTaskId(task.getId());
+        dto.setProcessInstanceId(task.getProcessInstanceId());
+        dto.setTaskName(task.getName());              // 前端期望的字段名
+        dto.setCurrentNodeName(task.getName());       // 保留兼容性
+        dto.setSubmitTime(task.getCreateTime());
+        dto.setCreateTime(task.getCreateTime().toString()); // 前端期望的字段名
         
-        // 检查流程是否结束
-        HistoricProcessInstance historicInstance = historyService.createHistoricProcessInstanceQuery()
-            .processInstanceId(processInstanceId)
-            .singleResult();
+        // 展示字段优先取实例记录（批量预加载），实例记录缺失时回退到随任务加载的流程变量
+        Map<String, Object> vars = task.getProcessVariables() != null 
+            ? task.getProcessVariables() : Collections.emptyMap();
+        dto.setApplicantName(instance != null && instance.getApplicantName() != null
+            ? instance.getApplicantName() : (String) vars.get("applicantName"));
+        dto.setBusinessType(instance != null ? instance.getBusinessType() : (String) vars.get("businessType"));
         
-        if (historicInstance != null && historicInstance.getEndTime() != null) {
-            instance.setStatus("COMPLETED");
-            instance.setEndTime(LocalDateTime.now());
+        // 🔧 优先获取费用申请ID，如果没有则使用businessId
+        Object applicationIdVar = instance != null && instance.getApplicationId() != null
+            ? instance.getApplicationId() : vars.get("applicationId");
+        if (applicationIdVar != null) {
+            dto.setTaskId(applicationIdVar.toString());     // taskId = 费用申请ID
+            dto.setBusinessId(applicationIdVar.toString()); // businessId = 费用申请ID
         } else {
-            // 获取当前任务
-            Task currentTask = taskService.createTaskQuery()
-                .processInstanceId(processInstanceId)
-                .singleResult();
-            
-            if (currentTask != null) {
-                instance.setCurrentNodeName(currentTask.getName());
-                instance.setCurrentAssignee(currentTask.getAssignee());
-                
-                // 创建新的节点记录
-                WorkflowNode existingNode = workflowNodeRepository
-                    .findByTaskId(currentTask.getId())
-                    .orElse(null);
-                
-                if (existingNode == null) {
-                    createWorkflowNode(instance, currentTask);
+            dto.setBusinessId((String) vars.get("businessId"));
+            dto.setTaskId((String) vars.get("businessId"));
+        }
+        
+        // 金额处理 - 转换为前端期望的Double类型
+        Object amountObj = instance != null && instance.getAmount() != null
+            ? instance.getAmount() : vars.get("amount");
+        if (amountObj != null) {
+            BigDecimal amount = amountObj instanceof BigDecimal 
+                ? (BigDecimal) amountObj : new BigDecimal(amountObj.toString());
+            dto.setOriginalAmount(amount);  // 保留原始值
+            dto.setAmount(amount.doubleValue()); // 前端期望的number类型
+        }
+        
+        if (instance != null) {
+            dto.setInstanceId(instance.getId());
+            dto.setTitle(instance.getTitle());
+            // 🔧 修正：从WorkflowInstance补充ID信息（如果流程变量中没有的话）
+            if (dto.getTaskId() == null) {
+                dto.setTaskId(instance.getBusinessId());       // taskId = 费用申请ID
+            }
+            if (dto.getBusinessId() == null) {
+                dto.setBusinessId(instance.getBusinessId());   // businessId = 费用申请ID
+            }
+            dto.setApplicationNumber(instance.getApplicationNumber() != null
+                ? instance.getApplicationNumber() : (String) vars.get("applicationNumber"));
+            
+            // 申请人部门：发起时写入实例记录，旧记录回退到申请人当前部门
+            dto.setDepartment(instance.getDepartment());
+            if (dto.getDepartment() == null && instance.getApplicantId() != null) {
+                UserDTO applicantUser = userMap.get(instance.getApplicantId());
+                if (applicantUser != null) {
+                    dto.setDepartment(applicantUser.getDepartment());
                 }
             }
         }
         
-        workflowInstanceRepository.save(instance);
+        if (node != null) {
+            dto.setStatus(mapNodeStatusToTaskStatus(node.getStatus())); // 映射状态
+            dto.setPriority("medium"); // 默认中等优先级（WorkflowNode暂无priority字段）
+            
+            // 委托信息
+            boolean isDelegated = node.getProxyId() != null && node.getProxyId().equals(userId);
+            dto.setDelegated(isDelegated);        // 前端期望的字段名
+            dto.setIsProxy(isDelegated);           // 保留兼容性
+            
+            // 审批人信息
+            if (node.getAssigneeId() != null) {
+                UserDTO assigneeUser = userMap.get(node.getAssigneeId());
+                if (assigneeUser != null) {
+                    dto.setAssignee(assigneeUser.getUserName());
+                }
+            } else {
+                dto.setAssignee("待分配");
+            }
+        } else {
+            // 如果没有WorkflowNode记录，使用默认值
+            dto.setStatus("pending");
+            dto.setPriority("medium");
+            dto.setDelegated(false);
+            dto.setIsProxy(false);
+            dto.setAssignee(task.getAssignee() != null ? 
+                resolveUserName(task.getAssignee(), userMap) : "待分配");
+        }
+        
+        // 设置默认值
+        dto.setAttachmentCount(0); // 暂时设为0，后续可查询实际附件数量
+        dto.setDescription(dto.getTitle()); // 使用标题作为描述
+        
+        return dto;
+    }
+    
+    /**
+     * 解析Flowable中以字符串保存的用户ID，无法解析时返回null
+     */
+    private Long parseUserId(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(userId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 从预加载的用户映射中获取用户名
+     */
+    private String resolveUserName(String userId, Map<Long, UserDTO> userMap) {
+        if (userId == null) {
+            return "未分配";
+        }
+        Long id = parseUserId(userId);
+        if (id == null) {
+            log.warn("无法解析用户ID: {}", userId);
+            return "无效用户";
+        }
+        UserDTO user = userMap.get(id);
+        return user != null ? user.getUserName() : "未知用户";
+    }
+    
+    private String getProcessDefinitionKey(String businessType) {
+        try {
+            // 路由表在模板部署/取消部署/更新/删除时刷新，发起流程时不查询模板和流程定义
+            return workflowTemplateService.resolveProcessKey(businessType);
+        } catch (Exception e) {
+            log.error("❌ 查找动态工作流模板失败: {}", e.getMessage(), e);
+            throw new RuntimeException("工作流模板查找失败: " + e.getMessage());
+        }
     }
     
     private WorkflowInstanceDTO convertToDTO(WorkflowInstance instance) {
@@ -1060,6 +1527,11 @@ public class WorkflowService {
             .statusText(getStatusText(instance.getStatus()))
             .applicantId(instance.getApplicantId())
             .applicantName(instance.getApplicantName())
+            .amount(instance.getAmount())
+            .currency(instance.getCurrency())
+            .applicationId(instance.getApplicationId())
+            .applicationNumber(instance.getApplicationNumber())
+            .department(instance.getDepartment())
             .startTime(instance.getStartTime())
             .endTime(instance.getEndTime())
             .currentNodeName(instance.getCurrentNodeName())
@@ -1109,25 +1581,4 @@ public class WorkflowService {
                 return "pending";
         }
     }
-    
-    /**
-     * 根据用户ID获取用户名
-     */
-    private String getUserNameById(String userId) {
-        try {
-            if (userId == null) {
-                return "未分配";
-            }
-            
-            Long userIdLong = Long.valueOf(userId);
-            Optional<UserDTO> user = userService.getUserById(userIdLong);
-            return user.map(UserDTO::getUserName).orElse("未知用户");
-        } catch (NumberFormatException e) {
-            log.warn("无法解析用户ID: {}", userId);
-            return "无效用户";
-        } catch (Exception e) {
-            log.warn("查询用户信息失败，用户ID: {}", userId, e);
-            return "查询失败";
-        }
-    }
 }
@@ -2,19 +2,24 @@ package demo.backed.service;
 
 import demo.backed.entity.WorkflowTemplate;
 import demo.backed.repository.WorkflowTemplateRepository;
+import demo.backed.util.TransactionCallbacks;
 import lombok.extern.slf4j.Slf4j;
 import org.flowable.engine.RepositoryService;
 import org.flowable.engine.repository.Deployment;
 import org.flowable.engine.repository.DeploymentBuilder;
+import org.flowable.engine.repository.ProcessDefinition;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * 工作流模板服务
@@ -30,6 +35,22 @@ public class WorkflowTemplateService {
     @Autowired
     private RepositoryService repositoryService;
     
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    /**
+     * 模板未配置节点SLA时的默认办理时限（小时），0表示不设办理期限
+     */
+    @Value("${app.workflow.sla.default-hours:0}")
+    private int defaultSlaHours = 0;
+    
+    /**
+     * 业务类型 -> processKey 路由表，模板部署/取消部署/更新/删除后失效，下次发起流程时重建
+     */
+    private volatile RoutingTable routingTable;
+    
+    private volatile boolean routingStale = true;
+    
     /**
      * 获取所有模板
      */
@@ -101,6 +122,7 @@ public class WorkflowTemplateService {
         
         WorkflowTemplate saved = templateRepository.save(template);
         log.info("更新工作流模板: {}", saved.getName());
+        invalidateRouting();
         
         return saved;
     }
@@ -125,6 +147,7 @@ public class WorkflowTemplateService {
         template.softDelete();
         templateRepository.save(template);
         log.info("删除工作流模板: {}", template.getName());
+        invalidateRouting();
     }
     
     /**
@@ -144,10 +167,10 @@ public class WorkflowTemplateService {
                 .category(template.getType())
                 .key(template.getProcessKey());
             
-            // 添加BPMN资源
+            // 添加BPMN资源（旧模板中的变量式审批人改写为按需解析）
             deploymentBuilder.addBytes(
                 template.getProcessKey() + ".bpmn20.xml",
-                template.getBpmnXml().getBytes(StandardCharsets.UTF_8)
+                ApproverResolver.toLazyAssignees(template.getBpmnXml()).getBytes(StandardCharsets.UTF_8)
             );
             
             // 执行部署
@@ -161,6 +184,7 @@ public class WorkflowTemplateService {
             
             templateRepository.save(template);
             log.info("成功部署工作流模板: {} -> {}", template.getName(), deployment.getId());
+            invalidateRouting();
             
             return template;
         } catch (Exception e) {
@@ -191,6 +215,7 @@ public class WorkflowTemplateService {
             
             templateRepository.save(template);
             log.info("成功取消部署工作流模板: {}", template.getName());
+            invalidateRouting();
             
             return template;
         } catch (Exception e) {
@@ -216,42 +241,7 @@ public class WorkflowTemplateService {
                         template.getName(), template.getType(), template.getProcessKey(), template.getDeploymentId());
             }
             
-            // 2. 精确匹配业务类型
-            Optional<WorkflowTemplate> exactMatch = deployedTemplates.stream()
-                .filter(template -> isExactBusinessTypeMatch(template, businessType))
-                .findFirst();
-            
-            if (exactMatch.isPresent()) {
-                log.info("✅ 找到精确匹配的工作流模板: {} (processKey: {})", 
-                        exactMatch.get().getName(), exactMatch.get().getProcessKey());
-                return exactMatch;
-            }
-            
-            // 3. 模糊匹配业务类型
-            Optional<WorkflowTemplate> fuzzyMatch = deployedTemplates.stream()
-                .filter(template -> isFuzzyBusinessTypeMatch(template, businessType))
-                .findFirst();
-            
-            if (fuzzyMatch.isPresent()) {
-                log.info("✅ 找到模糊匹配的工作流模板: {} (processKey: {})", 
-                        fuzzyMatch.get().getName(), fuzzyMatch.get().getProcessKey());
-                return fuzzyMatch;
-            }
-            
-            // 4. 如果没有找到匹配的，尝试查找所有已部署的模板
-            if (!deployedTemplates.isEmpty()) {
-                log.warn("⚠️ 未找到匹配业务类型 {} 的工作流模板，但数据库中有 {} 个已部署的模板", 
-                        businessType, deployedTemplates.size());
-                
-                // 作为fallback，返回第一个已部署的模板
-                WorkflowTemplate fallbackTemplate = deployedTemplates.get(0);
-                log.info("🔄 使用第一个可用的工作流模板作为fallback: {} (processKey: {})", 
-                        fallbackTemplate.getName(), fallbackTemplate.getProcessKey());
-                return Optional.of(fallbackTemplate);
-            }
-            
-            log.error("❌ 数据库中没有任何已部署且激活的工作流模板！请检查系统配置页面的工作流部署状态。");
-            return Optional.empty();
+            return matchTemplate(deployedTemplates, businessType);
             
         } catch (Exception e) {
             log.error("❌ 查找工作流模板失败", e);
@@ -259,6 +249,48 @@ public class WorkflowTemplateService {
         }
     }
     
+    /**
+     * 在已部署模板中按业务类型匹配：精确匹配 -> 模糊匹配 -> 第一个已部署模板
+     */
+    private Optional<WorkflowTemplate> matchTemplate(List<WorkflowTemplate> deployedTemplates, String businessType) {
+        // 精确匹配业务类型
+        Optional<WorkflowTemplate> exactMatch = deployedTemplates.stream()
+            .filter(template -> isExactBusinessTypeMatch(template, businessType))
+            .findFirst();
+        
+        if (exactMatch.isPresent()) {
+            log.info("✅ 找到精确匹配的工作流模板: {} (processKey: {})", 
+                    exactMatch.get().getName(), exactMatch.get().getProcessKey());
+            return exactMatch;
+        }
+        
+        // 模糊匹配业务类型
+        Optional<WorkflowTemplate> fuzzyMatch = deployedTemplates.stream()
+            .filter(template -> isFuzzyBusinessTypeMatch(template, businessType))
+            .findFirst();
+        
+        if (fuzzyMatch.isPresent()) {
+            log.info("✅ 找到模糊匹配的工作流模板: {} (processKey: {})", 
+                    fuzzyMatch.get().getName(), fuzzyMatch.get().getProcessKey());
+            return fuzzyMatch;
+        }
+        
+        // 如果没有找到匹配的，尝试查找所有已部署的模板
+        if (!deployedTemplates.isEmpty()) {
+            log.warn("⚠️ 未找到匹配业务类型 {} 的工作流模板，但数据库中有 {} 个已部署的模板", 
+                    businessType, deployedTemplates.size());
+            
+            // 作为fallback，返回第一个已部署的模板
+            WorkflowTemplate fallbackTemplate = deployedTemplates.get(0);
+            log.info("🔄 使用第一个可用的工作流模板作为fallback: {} (processKey: {})", 
+                    fallbackTemplate.getName(), fallbackTemplate.getProcessKey());
+            return Optional.of(fallbackTemplate);
+        }
+        
+        log.error("❌ 数据库中没有任何已部署且激活的工作流模板！请检查系统配置页面的工作流部署状态。");
+        return Optional.empty();
+    }
+    
     /**
      * 精确匹配业务类型
      */
@@ -357,6 +389,149 @@ public class WorkflowTemplateService {
         }
     }
     
+    /**
+     * 按业务类型解析发起流程使用的 processKey
+     * 读取缓存的路由表，不查询模板表和Flowable流程定义；路由表失效时整体重建一次
+     */
+    public String resolveProcessKey(String businessType) {
+        RoutingTable table = getRoutingTable();
+        String processKey = table.routes.computeIfAbsent(businessType, type -> route(table, type));
+        if (processKey.isEmpty()) {
+            throw new RuntimeException("没有可用的工作流模板。请先在系统配置页面创建并部署工作流模板，然后重试。" +
+                                     "当前系统中共有 " + table.templateCount + " 个工作流模板，其中 " + 
+                                     table.deployedTemplates.size() + " 个已部署。");
+        }
+        return processKey;
+    }
+    
+    /**
+     * 节点办理时限（小时）
+     * 读取模板 configData 中的 slaHours 配置，如 {"slaHours": {"managerApproval": 24, "financeApproval": 48}}，
+     * 未配置的节点使用 app.workflow.sla.default-hours。按 processKey 缓存在路由表上，随路由表失效。
+     *
+     * @return 办理时限小时数，0表示不设办理期限
+     */
+    public int resolveSlaHours(String processKey, String nodeKey) {
+        if (processKey == null || nodeKey == null) {
+            return defaultSlaHours;
+        }
+        RoutingTable table = getRoutingTable();
+        Map<String, Integer> slaHours = table.slaHours.computeIfAbsent(processKey, key -> parseSlaHours(table, key));
+        return slaHours.getOrDefault(nodeKey, defaultSlaHours);
+    }
+    
+    private Map<String, Integer> parseSlaHours(RoutingTable table, String processKey) {
+        Map<String, Integer> slaHours = new HashMap<>();
+        for (WorkflowTemplate template : table.deployedTemplates) {
+            if (!processKey.equals(template.getProcessKey()) || template.getConfigData() == null) {
+                continue;
+            }
+            try {
+                JsonNode config = objectMapper.readTree(template.getConfigData()).path("slaHours");
+                config.fields().forEachRemaining(entry -> {
+                    if (entry.getValue().canConvertToInt() || entry.getValue().isTextual()) {
+                        slaHours.put(entry.getKey(), entry.getValue().asInt());
+                    }
+                });
+            } catch (Exception e) {
+                log.warn("⚠️ 解析模板SLA配置失败，模板: {}, {}", template.getName(), e.getMessage());
+            }
+            break;
+        }
+        return slaHours;
+    }
+    
+    /**
+     * 使路由表失效（事务提交后生效），模板或流程定义变化时调用
+     */
+    public void invalidateRouting() {
+        TransactionCallbacks.afterCommit(() -> routingStale = true);
+    }
+    
+    /**
+     * 立即使路由表失效，用于按路由发起流程失败时：发起事务随即回滚，等提交后再失效永远不会生效
+     */
+    public void invalidateRoutingNow() {
+        routingStale = true;
+    }
+    
+    private RoutingTable getRoutingTable() {
+        RoutingTable table = routingTable;
+        if (table != null && !routingStale) {
+            return table;
+        }
+        synchronized (this) {
+            if (routingTable == null || routingStale) {
+                routingStale = false;
+                routingTable = buildRoutingTable();
+            }
+            return routingTable;
+        }
+    }
+    
+    private RoutingTable buildRoutingTable() {
+        List<WorkflowTemplate> allTemplates = templateRepository.findAllActive();
+        List<WorkflowTemplate> deployedTemplates = allTemplates.stream()
+            .filter(template -> Boolean.TRUE.equals(template.getIsDeployed()))
+            .filter(template -> "active".equals(template.getStatus()))
+            .collect(Collectors.toList());
+        // 按Key发起使用最新版本，只需要每个Key的最新版本
+        Set<String> activeKeys = repositoryService.createProcessDefinitionQuery()
+            .latestVersion()
+            .active()
+            .list().stream()
+            .map(ProcessDefinition::getKey)
+            .collect(Collectors.toSet());
+        
+        log.info("🧭 工作流路由表已重建，模板数: {}, 已部署: {}, 可用流程定义: {}", 
+                allTemplates.size(), deployedTemplates.size(), activeKeys);
+        return new RoutingTable(allTemplates.size(), deployedTemplates, activeKeys);
+    }
+    
+    /**
+     * 在路由表快照上按原有顺序选择模板：业务类型匹配 -> 默认费用模板 -> 任意可用模板
+     *
+     * @return 可用的 processKey，没有可用模板时返回空串
+     */
+    private String route(RoutingTable table, String businessType) {
+        Optional<WorkflowTemplate> matched = matchTemplate(table.deployedTemplates, businessType);
+        if (matched.isPresent()) {
+            String processKey = table.effectiveKey(matched.get().getProcessKey());
+            if (processKey != null) {
+                log.info("✅ 业务类型 {} 路由到流程: {} (模板: {})", businessType, processKey, matched.get().getName());
+                return processKey;
+            }
+            log.warn("⚠️ 工作流模板在数据库中存在但在Flowable中不可用: {}", matched.get().getProcessKey());
+        }
+        
+        if (businessType.toUpperCase().contains("EXPENSE")) {
+            for (WorkflowTemplate template : table.deployedTemplates) {
+                if ("expense".equals(template.getType())) {
+                    String processKey = table.effectiveKey(template.getProcessKey());
+                    if (processKey != null) {
+                        log.info("✅ 业务类型 {} 使用默认费用审批模板: {} (processKey: {})", 
+                                businessType, template.getName(), processKey);
+                        return processKey;
+                    }
+                    break;
+                }
+            }
+        }
+        
+        for (WorkflowTemplate template : table.deployedTemplates) {
+            String processKey = table.effectiveKey(template.getProcessKey());
+            if (processKey != null) {
+                log.info("✅ 业务类型 {} 使用可用的工作流模板: {} (processKey: {})", 
+                        businessType, template.getName(), processKey);
+                return processKey;
+            }
+        }
+        
+        log.error("❌ 没有找到任何可用的动态工作流模板！业务类型: {}, 模板数量: {}, 已部署模板数量: {}", 
+                businessType, table.templateCount, table.deployedTemplates.size());
+        return "";
+    }
+    
     /**
      * 生成默认的BPMN XML
      */
@@ -419,4 +594,31 @@ public class WorkflowTemplateService {
             "  \n" +
             "</definitions>";
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 路由表快照：已部署模板、Flowable中可用的流程定义Key，以及按业务类型缓存的路由结果
+     */
+    private static class RoutingTable {
+        private final int templateCount;
+        private final List<WorkflowTemplate> deployedTemplates;
+        private final Set<String> activeKeys;
+        private final Map<String, String> routes = new ConcurrentHashMap<>();
+        private final Map<String, Map<String, Integer>> slaHours = new ConcurrentHashMap<>();
+        
+        RoutingTable(int templateCount, List<WorkflowTemplate> deployedTemplates, Set<String> activeKeys) {
+            this.templateCount = templateCount;
+            this.deployedTemplates = Collections.unmodifiableList(deployedTemplates);
+            this.activeKeys = Collections.unmodifiableSet(activeKeys);
+        }
+        
+        /**
+         * 模板实际使用的流程定义Key，找不到时兼容使用 expenseApproval，都不可用返回null
+         */
+        String effectiveKey(String processKey) {
+            if (processKey != null && activeKeys.contains(processKey)) {
+                return processKey;
+            }
+            return activeKeys.contains("expenseApproval") ? "expenseApproval" : null;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package demo.backed.service;
+
+import demo.backed.dto.UserDTO;
+import demo.backed.dto.WorkflowHistoryDTO;
+import demo.backed.dto.WorkflowInstanceDetailDTO;
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.entity.WorkflowNode;
+import demo.backed.repository.WorkflowInstanceRepository;
+import demo.backed.repository.WorkflowNodeRepository;
+import demo.backed.util.LruCache;
+import lombok.extern.slf4j.Slf4j;
+import org.flowable.engine.HistoryService;
+import org.flowable.engine.history.HistoricActivityInstance;
+import org.flowable.engine.history.HistoricProcessInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * 流程追踪服务
+ * 步骤取自流程定义的用户任务顺序（按定义缓存），与本实例的历史活动、工作流节点记录合并：
+ * 实例、历史活动、节点各一次查询。已结束流程的追踪结果不再变化，按流程实例ID缓存。
+ * 已归档的流程只保留节点记录，步骤按节点记录还原。
+ */
+@Service
+@Transactional(readOnly = true)
+@Slf4j
+public class WorkflowTrackerService {
+
+    @Autowired
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    @Autowired
+    private WorkflowNodeRepository workflowNodeRepository;
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Autowired
+    private ProcessGraphService processGraphService;
+
+    @Autowired
+    private WorkflowArchiveService workflowArchiveService;
+
+    @Autowired
+    private ApproverDirectory approverDirectory;
+
+    /**
+     * 已结束流程追踪缓存的容量
+     */
+    @Value("${app.workflow.tracker-cache-size:500}")
+    private int trackerCacheSize = 500;
+
+    private volatile LruCache<String, WorkflowInstanceDetailDTO> trackerCache;
+
+    /**
+     * 按业务键获取流程追踪
+     */
+    public WorkflowInstanceDetailDTO getTracker(String businessType, String businessId) {
+        TrackerSources sources = findInstance(businessType, businessId);
+        WorkflowInstance instance = sources.instance;
+        WorkflowInstanceDetailDTO cached = getTrackerCache().get(instance.getProcessInstanceId());
+        if (cached != null) {
+            return copyOf(cached);
+        }
+
+        loadHistory(sources);
+        List<WorkflowInstanceDetailDTO.StepDetail> steps = sources.processDefinitionId != null
+            ? buildStepsFromModel(sources)
+            : buildStepsFromNodes(sources);
+
+        WorkflowInstanceDetailDTO detail = new WorkflowInstanceDetailDTO();
+        detail.setInstanceId(instance.getId());
+        detail.setTitle(instance.getTitle());
+        detail.setApplicantName(instance.getApplicantName());
+        detail.setStartTime(instance.getStartTime());
+        detail.setEndTime(instance.getEndTime());
+        detail.setStatus(instance.getStatus());
+        detail.setWorkflowTemplateName(sources.processDefinitionId != null
+            ? processGraphService.getProcessName(sources.processDefinitionId) : null);
+        detail.setSteps(steps);
+        detail.setProgress(calculateProgress(steps));
+
+        // 异步历史尚未写完（历史流程或历史活动尚未结束）时不缓存，归档的流程历史已经定型
+        boolean historyComplete = sources.activities.stream().allMatch(activity -> activity.getEndTime() != null)
+            && (sources.archived || isHistoricProcessEnded(instance.getProcessInstanceId()));
+        if (isFinishedStatus(instance.getStatus()) && historyComplete) {
+            getTrackerCache().put(instance.getProcessInstanceId(), copyOf(detail));
+        }
+        return detail;
+    }
+
+    /**
+     * 复制追踪结果（含步骤），缓存中的对象不直接交给调用方，避免被修改后影响其他请求
+     */
+    private WorkflowInstanceDetailDTO copyOf(WorkflowInstanceDetailDTO source) {
+        WorkflowInstanceDetailDTO copy = new WorkflowInstanceDetailDTO();
+        copy.setInstanceId(source.getInstanceId());
+        copy.setTitle(source.getTitle());
+        copy.setApplicantName(source.getApplicantName());
+        copy.setStartTime(source.getStartTime());
+        copy.setEndTime(source.getEndTime());
+        copy.setStatus(source.getStatus());
+        copy.setProgress(source.getProgress());
+        copy.setWorkflowTemplateName(source.getWorkflowTemplateName());
+        if (source.getSteps() != null) {
+            List<WorkflowInstanceDetailDTO.StepDetail> steps = new ArrayList<>(source.getSteps().size());
+            for (WorkflowInstanceDetailDTO.StepDetail step : source.getSteps()) {
+                WorkflowInstanceDetailDTO.StepDetail stepCopy = new WorkflowInstanceDetailDTO.StepDetail();
+                stepCopy.setTaskId(step.getTaskId());
+                stepCopy.setTaskName(step.getTaskName());
+                stepCopy.setStatus(step.getStatus());
+                stepCopy.setAssigneeId(step.getAssigneeId());
+                stepCopy.setAssigneeName(step.getAssigneeName());
+                stepCopy.setStartTime(step.getStartTime());
+                stepCopy.setEndTime(step.getEndTime());
+                stepCopy.setComment(step.getComment());
+                stepCopy.setDescription(step.getDescription());
+                steps.add(stepCopy);
+            }
+            copy.setSteps(steps);
+        }
+        return copy;
+    }
+
+    /**
+     * 按业务键获取办理记录，按开始时间先后
+     */
+    public List<WorkflowHistoryDTO> getHistory(String businessType, String businessId) {
+        TrackerSources sources = findInstance(businessType, businessId);
+        loadHistory(sources);
+
+        List<WorkflowHistoryDTO> history = new ArrayList<>();
+        Set<String> coveredTaskIds = new HashSet<>();
+        for (HistoricActivityInstance activity : sources.activities) {
+            if (activity.getEndTime() == null) {
+                continue;
+            }
+            coveredTaskIds.add(activity.getTaskId());
+            WorkflowNode node = sources.nodesByTaskId.get(activity.getTaskId());
+            WorkflowHistoryDTO item = new WorkflowHistoryDTO();
+            item.setId(activity.getTaskId() != null ? activity.getTaskId() : activity.getId());
+            item.setTaskName(activity.getActivityName());
+            item.setOperationType(toOperationType(node != null ? node.getStatus() : null));
+            item.setOperatorId(node != null && node.getAssigneeId() != null
+                ? node.getAssigneeId() : parseUserId(activity.getAssignee()));
+            item.setOperatorName(node != null && node.getAssigneeName() != null
+                ? node.getAssigneeName() : resolveUserName(item.getOperatorId(), activity.getAssignee()));
+            item.setStartTime(toLocalDateTime(activity.getStartTime()));
+            item.setEndTime(toLocalDateTime(activity.getEndTime()));
+            item.setOperationTime(item.getEndTime());
+            item.setDuration(minutesBetween(item.getStartTime(), item.getEndTime()));
+            item.setComment(node != null ? node.getComment() : null);
+            item.setDeleteReason(activity.getDeleteReason());
+            history.add(item);
+        }
+
+        // 历史活动中没有的（已归档或异步历史尚未写入）用节点记录补齐
+        for (WorkflowNode node : sources.nodes) {
+            if (node.getApprovedTime() == null || coveredTaskIds.contains(node.getTaskId())) {
+                continue;
+            }
+            WorkflowHistoryDTO item = new WorkflowHistoryDTO();
+            item.setId(node.getTaskId() != null ? node.getTaskId() : String.valueOf(node.getId()));
+            item.setTaskName(node.getNodeName());
+            item.setOperationType(toOperationType(node.getStatus()));
+            item.setOperatorId(node.getAssigneeId());
+            item.setOperatorName(node.getAssigneeName());
+            item.setStartTime(node.getCreatedTime());
+            item.setEndTime(node.getApprovedTime());
+            item.setOperationTime(node.getApprovedTime());
+            item.setDuration(minutesBetween(node.getCreatedTime(), node.getApprovedTime()));
+            item.setComment(node.getComment());
+            history.add(item);
+        }
+        history.sort(Comparator.comparing(WorkflowHistoryDTO::getStartTime,
+            Comparator.nullsLast(Comparator.naturalOrder())));
+        return history;
+    }
+
+    /**
+     * 清除流程追踪缓存（管理员清理数据时调用）
+     */
+    public void evictTracker(String processInstanceId) {
+        if (processInstanceId != null) {
+            getTrackerCache().remove(processInstanceId);
+        }
+    }
+
+    /**
+     * 先查在线表，没有时查归档表；同一业务键有多次发起时取最近一次
+     */
+    private TrackerSources findInstance(String businessType, String businessId) {
+        TrackerSources sources = new TrackerSources();
+        sources.instance = workflowInstanceRepository
+            .findByBusinessTypeAndBusinessIdOrderByStartTimeDesc(businessType, businessId).stream()
+            .filter(instance -> !Boolean.TRUE.equals(instance.getIsDeleted()))
+            .findFirst()
+            .orElse(null);
+        if (sources.instance == null) {
+            sources.instance = workflowArchiveService.findInstanceByBusinessKey(businessType, businessId)
+                .orElseThrow(() -> new RuntimeException("未找到对应的工作流实例"));
+            sources.archived = true;
+        }
+        return sources;
+    }
+
+    private boolean isHistoricProcessEnded(String processInstanceId) {
+        if (processInstanceId == null) {
+            return false;
+        }
+        HistoricProcessInstance process = historyService.createHistoricProcessInstanceQuery()
+            .processInstanceId(processInstanceId)
+            .singleResult();
+        return process != null && process.getEndTime() != null;
+    }
+
+    /**
+     * 一次查询历史活动、一次查询节点记录；已归档的实例从归档表读取节点
+     */
+    private void loadHistory(TrackerSources sources) {
+        WorkflowInstance instance = sources.instance;
+        if (instance.getProcessInstanceId() != null) {
+            sources.activities = historyService.createHistoricActivityInstanceQuery()
+                .processInstanceId(instance.getProcessInstanceId())
+                .activityType("userTask")
+                .orderByHistoricActivityInstanceStartTime().asc()
+                .list();
+        }
+        if (!sources.activities.isEmpty()) {
+            sources.processDefinitionId = sources.activities.get(0).getProcessDefinitionId();
+        }
+
+        sources.nodes = sources.archived
+            ? workflowArchiveService.findNodesByInstanceId(instance.getId())
+            : workflowNodeRepository.findByInstanceIdOrderByCreatedTimeAsc(instance.getId());
+        for (WorkflowNode node : sources.nodes) {
+            if (node.getTaskId() != null) {
+                sources.nodesByTaskId.put(node.getTaskId(), node);
+            }
+        }
+    }
+
+    /**
+     * 按流程定义的用户任务顺序生成步骤，每个用户任务取最近一次办理
+     * 未办理的步骤：流程已结束时去掉；流程进行中时，排在已办理步骤之前的（未走的分支）去掉，之后的保留为待处理
+     */
+    private List<WorkflowInstanceDetailDTO.StepDetail> buildStepsFromModel(TrackerSources sources) {
+        Map<String, HistoricActivityInstance> latestActivities = new HashMap<>();
+        for (HistoricActivityInstance activity : sources.activities) {
+            latestActivities.put(activity.getActivityId(), activity);
+        }
+        Map<String, WorkflowNode> latestNodes = latestNodesByKey(sources.nodes);
+
+        List<WorkflowInstanceDetailDTO.StepDetail> steps = new ArrayList<>();
+        int lastVisited = -1;
+        for (ProcessGraphService.UserTaskNode userTask : processGraphService.getUserTaskSequence(sources.processDefinitionId)) {
+            HistoricActivityInstance activity = latestActivities.get(userTask.getId());
+            WorkflowNode node = activity != null
+                ? sources.nodesByTaskId.get(activity.getTaskId())
+                : latestNodes.get(userTask.getId());
+
+            WorkflowInstanceDetailDTO.StepDetail step = new WorkflowInstanceDetailDTO.StepDetail();
+            step.setTaskName(userTask.getName());
+            step.setDescription(userTask.getDocumentation());
+            if (activity != null) {
+                step.setTaskId(activity.getTaskId());
+                step.setStartTime(toLocalDateTime(activity.getStartTime()));
+                step.setEndTime(toLocalDateTime(activity.getEndTime()));
+                step.setStatus(activity.getEndTime() == null ? "active" : toFinishedStepStatus(node));
+                step.setAssigneeId(parseUserId(activity.getAssignee()));
+                step.setAssigneeName(resolveUserName(step.getAssigneeId(), activity.getAssignee()));
+            } else if (node != null) {
+                fillFromNode(step, node);
+            } else {
+                step.setTaskId(userTask.getId());
+                step.setStatus("pending");
+            }
+            if (node != null) {
+                step.setComment(node.getComment());
+                if (node.getAssigneeName() != null) {
+                    step.setAssigneeId(node.getAssigneeId());
+                    step.setAssigneeName(node.getAssigneeName());
+                }
+            }
+            if (!"pending".equals(step.getStatus())) {
+                lastVisited = steps.size();
+            }
+            steps.add(step);
+        }
+
+        boolean finished = isFinishedStatus(sources.instance.getStatus());
+        List<WorkflowInstanceDetailDTO.StepDetail> visibleSteps = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            WorkflowInstanceDetailDTO.StepDetail step = steps.get(i);
+            if ("pending".equals(step.getStatus()) && (finished || i < lastVisited)) {
+                continue;
+            }
+            visibleSteps.add(step);
+        }
+        return visibleSteps;
+    }
+
+    /**
+     * 没有流程定义可用（已归档、异步历史尚未写入）时按节点记录还原步骤，每个节点Key取最近一次
+     */
+    private List<WorkflowInstanceDetailDTO.StepDetail> buildStepsFromNodes(TrackerSources sources) {
+        List<WorkflowInstanceDetailDTO.StepDetail> steps = new ArrayList<>();
+        for (WorkflowNode node : latestNodesByKey(sources.nodes).values()) {
+            WorkflowInstanceDetailDTO.StepDetail step = new WorkflowInstanceDetailDTO.StepDetail();
+            step.setTaskName(node.getNodeName());
+            fillFromNode(step, node);
+            step.setComment(node.getComment());
+            step.setAssigneeId(node.getAssigneeId());
+            step.setAssigneeName(node.getAssigneeName());
+            steps.add(step);
+        }
+        return steps;
+    }
+
+    private void fillFromNode(WorkflowInstanceDetailDTO.StepDetail step, WorkflowNode node) {
+        step.setTaskId(node.getTaskId());
+        step.setStartTime(node.getCreatedTime());
+        step.setEndTime(node.getApprovedTime());
+        step.setStatus(toStepStatus(node, "PENDING"));
+    }
+
+    /**
+     * 节点Key -> 最近一次的节点记录，保持首次出现的先后顺序
+     */
+    private Map<String, WorkflowNode> latestNodesByKey(List<WorkflowNode> nodes) {
+        Map<String, WorkflowNode> latest = new LinkedHashMap<>();
+        for (WorkflowNode node : nodes) {
+            if (node.getNodeKey() != null) {
+                latest.put(node.getNodeKey(), node);
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 历史活动已结束时节点记录可能还是待办状态（投影稍后更新），只认打回和拒绝
+     */
+    private String toFinishedStepStatus(WorkflowNode node) {
+        String status = toStepStatus(node, "COMPLETED");
+        return "rejected".equals(status) || "returned".equals(status) ? status : "completed";
+    }
+
+    private String toStepStatus(WorkflowNode node, String defaultStatus) {
+        String status = node != null && node.getStatus() != null ? node.getStatus() : defaultStatus;
+        switch (status) {
+            case "COMPLETED":
+                return "completed";
+            case "REJECTED":
+                return "rejected";
+            case "RETURNED":
+                return "returned";
+            default:
+                return "active";
+        }
+    }
+
+    private String toOperationType(String nodeStatus) {
+        if ("REJECTED".equals(nodeStatus)) {
+            return "REJECT";
+        }
+        if ("RETURNED".equals(nodeStatus)) {
+            return "RETURN";
+        }
+        return "COMPLETE";
+    }
+
+    private int calculateProgress(List<WorkflowInstanceDetailDTO.StepDetail> steps) {
+        if (steps.isEmpty()) {
+            return 0;
+        }
+        long completedSteps = steps.stream()
+            .filter(step -> "completed".equals(step.getStatus()))
+            .count();
+        return (int) ((completedSteps * 100) / steps.size());
+    }
+
+    private boolean isFinishedStatus(String status) {
+        return "COMPLETED".equals(status) || "REJECTED".equals(status) || "TERMINATED".equals(status);
+    }
+
+    private String resolveUserName(Long userId, String fallback) {
+        if (userId == null) {
+            return fallback;
+        }
+        return approverDirectory.findUser(userId)
+            .map(UserDTO::getUserName)
+            .orElse(fallback);
+    }
+
+    private Long parseUserId(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(userId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private LocalDateTime toLocalDateTime(Date date) {
+        return date != null ? date.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime() : null;
+    }
+
+    private Integer minutesBetween(LocalDateTime start, LocalDateTime end) {
+        return start != null && end != null ? (int) Duration.between(start, end).toMinutes() : null;
+    }
+
+    private LruCache<String, WorkflowInstanceDetailDTO> getTrackerCache() {
+        LruCache<String, WorkflowInstanceDetailDTO> cache = trackerCache;
+        if (cache == null) {
+            synchronized (this) {
+                if (trackerCache == null) {
+                    trackerCache = new LruCache<>(trackerCacheSize);
+                }
+                cache = trackerCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 一次追踪用到的数据
+     */
+    private static final class TrackerSources {
+        private WorkflowInstance instance;
+        private boolean archived;
+        private List<HistoricActivityInstance> activities = Collections.emptyList();
+        private String processDefinitionId;
+        private List<WorkflowNode> nodes = Collections.emptyList();
+        private final Map<String, WorkflowNode> nodesByTaskId = new HashMap<>();
+    }
+}
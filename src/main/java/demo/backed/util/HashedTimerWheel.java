@@ -0,0 +1,115 @@
+package demo.backed.util;
+
+import java.util.*;
+
+/**
+ * 哈希时间轮
+ * 按固定刻度把到期时间散列到环形槽位，登记和取消都是O(1)；推进时只扫描经过的槽位，
+ * 同一槽位中尚未到期（需要再转若干圈）的条目留在原处。同一个key重复登记时覆盖原到期时间。
+ * 线程安全，由调用方定时调用 {@link #advance(long)} 推进，不自带线程。
+ *
+ * @param <K> 条目标识，如任务ID
+ */
+public class HashedTimerWheel<K> {
+
+    private final long tickMillis;
+
+    private final int mask;
+
+    private final List<Map<K, Long>> buckets;
+
+    /**
+     * key -> 到期刻度，用于取消和覆盖时定位槽位
+     */
+    private final Map<K, Long> deadlines = new HashMap<>();
+
+    private final long originMillis;
+
+    /**
+     * 已推进到的刻度（含）
+     */
+    private long currentTick;
+
+    /**
+     * @param tickMillis 刻度长度（毫秒），到期时间按刻度向上取整
+     * @param wheelSize  槽位数，向上取整为2的幂
+     * @param nowMillis  时间轮起点
+     */
+    public HashedTimerWheel(long tickMillis, int wheelSize, long nowMillis) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMillis和wheelSize必须大于0");
+        }
+        int size = Math.max(Integer.highestOneBit(wheelSize - 1) << 1, 1);
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new LinkedHashMap<>());
+        }
+        this.originMillis = nowMillis;
+        this.currentTick = 0;
+    }
+
+    /**
+     * 登记到期时间，已过期的条目在下一次推进时到期
+     */
+    public synchronized void schedule(K key, long deadlineMillis) {
+        cancel(key);
+        long tick = Math.max(toTick(deadlineMillis), currentTick + 1);
+        buckets.get((int) (tick & mask)).put(key, tick);
+        deadlines.put(key, tick);
+    }
+
+    /**
+     * 取消登记
+     *
+     * @return 是否存在该条目
+     */
+    public synchronized boolean cancel(K key) {
+        Long tick = deadlines.remove(key);
+        if (tick == null) {
+            return false;
+        }
+        buckets.get((int) (tick & mask)).remove(key);
+        return true;
+    }
+
+    /**
+     * 推进到指定时间，返回到期的条目
+     * 一次跨越超过一圈时每个槽位只扫描一次
+     */
+    public synchronized List<K> advance(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis - originMillis, tickMillis);
+        if (targetTick <= currentTick) {
+            return Collections.emptyList();
+        }
+        List<K> expired = new ArrayList<>();
+        long steps = Math.min(targetTick - currentTick, buckets.size());
+        for (long i = 1; i <= steps; i++) {
+            Map<K, Long> bucket = buckets.get((int) ((currentTick + i) & mask));
+            Iterator<Map.Entry<K, Long>> iterator = bucket.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Long> entry = iterator.next();
+                if (entry.getValue() <= targetTick) {
+                    iterator.remove();
+                    deadlines.remove(entry.getKey());
+                    expired.add(entry.getKey());
+                }
+            }
+        }
+        currentTick = targetTick;
+        return expired;
+    }
+
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private long toTick(long deadlineMillis) {
+        return Math.floorDiv(deadlineMillis - originMillis + tickMillis - 1, tickMillis);
+    }
+}
@@ -0,0 +1,61 @@
+package demo.backed.util;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * 任务列表分页游标
+ * 编码最后一条记录的（时间, 任务ID），下一页以
+ * time < :time OR (time = :time AND taskId < :taskId) 作为定位条件，避免深分页的OFFSET扫描
+ */
+@Getter
+public class TaskCursor {
+    
+    private static final String SEPARATOR = "|";
+    
+    private final Date time;
+    
+    private final String taskId;
+    
+    public TaskCursor(Date time, String taskId) {
+        this.time = time;
+        this.taskId = taskId;
+    }
+    
+    /**
+     * 编码为URL安全的不透明字符串
+     */
+    public String encode() {
+        String raw = time.getTime() + SEPARATOR + taskId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public static String encode(Date time, String taskId) {
+        if (time == null || taskId == null) {
+            return null;
+        }
+        return new TaskCursor(time, taskId).encode();
+    }
+    
+    /**
+     * 解析游标，空游标返回null（表示第一页）
+     */
+    public static TaskCursor decode(String cursor) {
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int index = raw.indexOf(SEPARATOR);
+            if (index <= 0 || index == raw.length() - 1) {
+                throw new IllegalArgumentException(raw);
+            }
+            return new TaskCursor(new Date(Long.parseLong(raw.substring(0, index))), raw.substring(index + 1));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("无效的分页游标: " + cursor);
+        }
+    }
+}
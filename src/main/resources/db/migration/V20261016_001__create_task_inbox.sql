@@ -0,0 +1,40 @@
+-- 创建待办收件箱投影表
+-- 每个未完成的Flowable任务一行，由流程事件监听器维护，待办列表直接分页查询本表
+
+CREATE TABLE IF NOT EXISTS t_poc_task_inbox (
+    id BIGSERIAL PRIMARY KEY,
+    task_id VARCHAR(64) NOT NULL,
+    process_instance_id VARCHAR(64),
+    instance_id BIGINT,
+    node_key VARCHAR(50),
+    node_name VARCHAR(100),
+    title VARCHAR(200),
+    business_type VARCHAR(50),
+    business_id VARCHAR(50),
+    application_id VARCHAR(50),
+    application_number VARCHAR(50),
+    applicant_id BIGINT,
+    applicant_name VARCHAR(50),
+    department VARCHAR(100),
+    amount NUMERIC(15, 2),
+    assignee_id BIGINT,
+    assignee_name VARCHAR(50),
+    proxy_id BIGINT,
+    proxy_name VARCHAR(50),
+    task_create_time TIMESTAMP,
+    created_time TIMESTAMP NOT NULL,
+    updated_time TIMESTAMP,
+    created_by VARCHAR(50),
+    updated_by VARCHAR(50),
+    is_deleted BOOLEAN NOT NULL DEFAULT FALSE,
+    version BIGINT DEFAULT 0
+);
+
+-- 创建索引：按审批人/代理人+创建时间分页
+CREATE UNIQUE INDEX IF NOT EXISTS idx_inbox_task ON t_poc_task_inbox(task_id);
+CREATE INDEX IF NOT EXISTS idx_inbox_assignee_time ON t_poc_task_inbox(assignee_id, task_create_time);
+CREATE INDEX IF NOT EXISTS idx_inbox_proxy_time ON t_poc_task_inbox(proxy_id, task_create_time);
+CREATE INDEX IF NOT EXISTS idx_inbox_process ON t_poc_task_inbox(process_instance_id);
+CREATE INDEX IF NOT EXISTS idx_inbox_create_time ON t_poc_task_inbox(task_create_time);
+
+COMMENT ON TABLE t_poc_task_inbox IS '待办收件箱投影，由Flowable任务事件维护，可通过 /api/workflow/inbox/rebuild 从引擎重建';
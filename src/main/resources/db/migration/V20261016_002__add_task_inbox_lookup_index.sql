@@ -0,0 +1,5 @@
+-- 待办收件箱投影：按费用申请ID/业务ID定位单个待办的索引
+-- 审批、拒绝、打回、可打回节点查询都通过（用户, 业务键）直接定位任务
+
+CREATE INDEX IF NOT EXISTS idx_inbox_application ON t_poc_task_inbox(application_id);
+CREATE INDEX IF NOT EXISTS idx_inbox_business ON t_poc_task_inbox(business_id);
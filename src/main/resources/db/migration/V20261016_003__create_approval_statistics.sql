@@ -0,0 +1,28 @@
+-- 创建用户审批统计表
+-- 待办/紧急/委托数由任务事件增量维护，今日已办按 stat_date 跨天归零，逾期数由定时对账刷新
+
+CREATE TABLE IF NOT EXISTS t_poc_approval_statistics (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    pending_count INTEGER NOT NULL DEFAULT 0,
+    urgent_count INTEGER NOT NULL DEFAULT 0,
+    delegated_count INTEGER NOT NULL DEFAULT 0,
+    overdue_count INTEGER NOT NULL DEFAULT 0,
+    approved_today INTEGER NOT NULL DEFAULT 0,
+    stat_date DATE,
+    reconciled_time TIMESTAMP,
+    created_time TIMESTAMP NOT NULL,
+    updated_time TIMESTAMP,
+    created_by VARCHAR(50),
+    updated_by VARCHAR(50),
+    is_deleted BOOLEAN NOT NULL DEFAULT FALSE,
+    version BIGINT DEFAULT 0
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_approval_stats_user ON t_poc_approval_statistics(user_id);
+
+-- 待办投影增加优先级和到期时间，用于紧急/逾期统计
+ALTER TABLE t_poc_task_inbox ADD COLUMN IF NOT EXISTS priority INTEGER;
+ALTER TABLE t_poc_task_inbox ADD COLUMN IF NOT EXISTS due_date TIMESTAMP;
+
+COMMENT ON TABLE t_poc_approval_statistics IS '用户审批统计，由任务事件增量维护并定时与Flowable对账';
@@ -0,0 +1,37 @@
+-- 工作流发起幂等：同一业务（业务类型+业务ID）同时只能有一个进行中的流程实例，
+-- 客户端也可以通过 Idempotency-Key 指定幂等键；发起时用 INSERT ... ON CONFLICT DO NOTHING 写入实例记录
+
+ALTER TABLE t_poc_workflow_instances
+ADD COLUMN IF NOT EXISTS idempotency_key VARCHAR(100);
+
+-- 旧版本发起失败时遗留的占位记录（CREATED 且没有流程实例ID），不再参与唯一约束
+UPDATE t_poc_workflow_instances
+SET is_deleted = TRUE
+WHERE status = 'CREATED' AND process_instance_id IS NULL;
+
+-- 旧版本不限制重复发起（如重复点击），同一业务键可能已有多条进行中的实例：
+-- 保留最新发起的一条，其余标记为已终止并逻辑删除，否则无法创建下面的唯一索引
+UPDATE t_poc_workflow_instances w
+SET status = 'TERMINATED',
+    is_deleted = TRUE,
+    end_time = COALESCE(w.end_time, now()),
+    updated_time = now()
+FROM (
+    SELECT id,
+           ROW_NUMBER() OVER (PARTITION BY business_type, business_id
+                              ORDER BY start_time DESC NULLS LAST, id DESC) AS rn
+    FROM t_poc_workflow_instances
+    WHERE status IN ('CREATED', 'RUNNING') AND is_deleted = FALSE
+) ranked
+WHERE w.id = ranked.id AND ranked.rn > 1;
+
+-- 进行中的实例按业务键唯一，已完成/已拒绝的实例不受限制
+CREATE UNIQUE INDEX IF NOT EXISTS uk_workflow_instance_active_business
+    ON t_poc_workflow_instances(business_type, business_id)
+    WHERE status IN ('CREATED', 'RUNNING') AND is_deleted = FALSE;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_workflow_instance_idempotency_key
+    ON t_poc_workflow_instances(idempotency_key)
+    WHERE idempotency_key IS NOT NULL;
+
+COMMENT ON COLUMN t_poc_workflow_instances.idempotency_key IS '客户端提供的发起幂等键，同一幂等键只会发起一次流程';
@@ -0,0 +1,114 @@
+-- 工作流归档表：已结束且超过保留期的流程由归档任务（WorkflowArchiveService）从在线表搬入，
+-- Flowable的 ACT_HI_* 由引擎历史清理删除，已办任务和审批历史读取时回落到归档表。
+-- 归档表按时间范围分区，按年建分区，归档任务每次运行前补建当年和下一年的分区，更早的数据落入默认分区。
+-- 在线表保持不分区：分区表的主键和唯一索引必须包含分区键，与 id 主键、process_instance_id 唯一、
+-- 进行中业务键唯一索引冲突，归档后在线表只保留进行中和保留期内的流程。
+
+-- 流程实例归档，按发起时间分区
+CREATE TABLE IF NOT EXISTS t_poc_workflow_instances_archive (
+    id BIGINT NOT NULL,
+    process_instance_id VARCHAR(255),
+    business_type VARCHAR(50),
+    business_id VARCHAR(50),
+    title VARCHAR(200),
+    status VARCHAR(20),
+    applicant_id BIGINT,
+    applicant_name VARCHAR(50),
+    start_time TIMESTAMP NOT NULL,
+    end_time TIMESTAMP,
+    variables TEXT,
+    current_node_name VARCHAR(100),
+    current_assignee VARCHAR(100),
+    idempotency_key VARCHAR(100),
+    created_time TIMESTAMP,
+    updated_time TIMESTAMP,
+    created_by VARCHAR(50),
+    updated_by VARCHAR(50),
+    archived_time TIMESTAMP NOT NULL
+) PARTITION BY RANGE (start_time);
+
+CREATE TABLE IF NOT EXISTS t_poc_workflow_instances_archive_default
+    PARTITION OF t_poc_workflow_instances_archive DEFAULT;
+CREATE TABLE IF NOT EXISTS t_poc_workflow_instances_archive_y2024
+    PARTITION OF t_poc_workflow_instances_archive FOR VALUES FROM ('2024-01-01') TO ('2025-01-01');
+CREATE TABLE IF NOT EXISTS t_poc_workflow_instances_archive_y2025
+    PARTITION OF t_poc_workflow_instances_archive FOR VALUES FROM ('2025-01-01') TO ('2026-01-01');
+CREATE TABLE IF NOT EXISTS t_poc_workflow_instances_archive_y2026
+    PARTITION OF t_poc_workflow_instances_archive FOR VALUES FROM ('2026-01-01') TO ('2027-01-01');
+CREATE TABLE IF NOT EXISTS t_poc_workflow_instances_archive_y2027
+    PARTITION OF t_poc_workflow_instances_archive FOR VALUES FROM ('2027-01-01') TO ('2028-01-01');
+
+CREATE INDEX IF NOT EXISTS idx_wf_instance_archive_process ON t_poc_workflow_instances_archive(process_instance_id);
+CREATE INDEX IF NOT EXISTS idx_wf_instance_archive_business ON t_poc_workflow_instances_archive(business_type, business_id);
+
+-- 审批节点归档，按节点创建时间分区
+CREATE TABLE IF NOT EXISTS t_poc_workflow_nodes_archive (
+    id BIGINT NOT NULL,
+    instance_id BIGINT,
+    task_id VARCHAR(255),
+    node_key VARCHAR(50),
+    node_name VARCHAR(100),
+    status VARCHAR(20),
+    assignee_id BIGINT,
+    assignee_name VARCHAR(50),
+    proxy_id BIGINT,
+    proxy_name VARCHAR(50),
+    approved_time TIMESTAMP,
+    comment VARCHAR(500),
+    is_returned BOOLEAN,
+    execution_id VARCHAR(255),
+    due_date TIMESTAMP,
+    created_time TIMESTAMP NOT NULL,
+    updated_time TIMESTAMP,
+    created_by VARCHAR(50),
+    updated_by VARCHAR(50),
+    archived_time TIMESTAMP NOT NULL
+) PARTITION BY RANGE (created_time);
+
+CREATE TABLE IF NOT EXISTS t_poc_workflow_nodes_archive_default
+    PARTITION OF t_poc_workflow_nodes_archive DEFAULT;
+CREATE TABLE IF NOT EXISTS t_poc_workflow_nodes_archive_y2024
+    PARTITION OF t_poc_workflow_nodes_archive FOR VALUES FROM ('2024-01-01') TO ('2025-01-01');
+CREATE TABLE IF NOT EXISTS t_poc_workflow_nodes_archive_y2025
+    PARTITION OF t_poc_workflow_nodes_archive FOR VALUES FROM ('2025-01-01') TO ('2026-01-01');
+CREATE TABLE IF NOT EXISTS t_poc_workflow_nodes_archive_y2026
+    PARTITION OF t_poc_workflow_nodes_archive FOR VALUES FROM ('2026-01-01') TO ('2027-01-01');
+CREATE TABLE IF NOT EXISTS t_poc_workflow_nodes_archive_y2027
+    PARTITION OF t_poc_workflow_nodes_archive FOR VALUES FROM ('2027-01-01') TO ('2028-01-01');
+
+CREATE INDEX IF NOT EXISTS idx_wf_node_archive_instance ON t_poc_workflow_nodes_archive(instance_id);
+CREATE INDEX IF NOT EXISTS idx_wf_node_archive_task ON t_poc_workflow_nodes_archive(task_id);
+
+-- 历史任务归档：ACT_HI_TASKINST 及最后一条审批意见的快照，按任务结束时间分区
+CREATE TABLE IF NOT EXISTS t_poc_workflow_task_archive (
+    task_id VARCHAR(64) NOT NULL,
+    process_instance_id VARCHAR(64),
+    task_def_key VARCHAR(255),
+    task_name VARCHAR(255),
+    assignee VARCHAR(255),
+    create_time TIMESTAMP,
+    end_time TIMESTAMP NOT NULL,
+    duration_ms BIGINT,
+    delete_reason VARCHAR(4000),
+    comment VARCHAR(4000),
+    archived_time TIMESTAMP NOT NULL
+) PARTITION BY RANGE (end_time);
+
+CREATE TABLE IF NOT EXISTS t_poc_workflow_task_archive_default
+    PARTITION OF t_poc_workflow_task_archive DEFAULT;
+CREATE TABLE IF NOT EXISTS t_poc_workflow_task_archive_y2024
+    PARTITION OF t_poc_workflow_task_archive FOR VALUES FROM ('2024-01-01') TO ('2025-01-01');
+CREATE TABLE IF NOT EXISTS t_poc_workflow_task_archive_y2025
+    PARTITION OF t_poc_workflow_task_archive FOR VALUES FROM ('2025-01-01') TO ('2026-01-01');
+CREATE TABLE IF NOT EXISTS t_poc_workflow_task_archive_y2026
+    PARTITION OF t_poc_workflow_task_archive FOR VALUES FROM ('2026-01-01') TO ('2027-01-01');
+CREATE TABLE IF NOT EXISTS t_poc_workflow_task_archive_y2027
+    PARTITION OF t_poc_workflow_task_archive FOR VALUES FROM ('2027-01-01') TO ('2028-01-01');
+
+-- 已办任务按审批人+结束时间倒序分页（与在线查询的游标一致）
+CREATE INDEX IF NOT EXISTS idx_wf_task_archive_assignee_end ON t_poc_workflow_task_archive(assignee, end_time DESC, task_id DESC);
+CREATE INDEX IF NOT EXISTS idx_wf_task_archive_process ON t_poc_workflow_task_archive(process_instance_id);
+
+COMMENT ON TABLE t_poc_workflow_instances_archive IS '已归档的流程实例，按 start_time 年度分区';
+COMMENT ON TABLE t_poc_workflow_nodes_archive IS '已归档的审批节点，按 created_time 年度分区';
+COMMENT ON TABLE t_poc_workflow_task_archive IS '已归档流程的历史任务快照（含审批意见），按 end_time 年度分区';
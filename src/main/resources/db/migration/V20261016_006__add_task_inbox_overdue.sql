@@ -0,0 +1,10 @@
+-- 待办收件箱投影：逾期标记
+-- 由进程内时间轮（OverdueTaskMonitor）在办理期限到达时置位，任务关闭时随投影行一起删除
+
+ALTER TABLE t_poc_task_inbox ADD COLUMN IF NOT EXISTS overdue BOOLEAN NOT NULL DEFAULT FALSE;
+
+-- 逾期待办查询：只索引已逾期的行
+CREATE INDEX IF NOT EXISTS idx_inbox_overdue_assignee ON t_poc_task_inbox(assignee_id, due_date) WHERE overdue = TRUE;
+CREATE INDEX IF NOT EXISTS idx_inbox_overdue_proxy ON t_poc_task_inbox(proxy_id, due_date) WHERE overdue = TRUE;
+
+COMMENT ON COLUMN t_poc_task_inbox.overdue IS '是否已超过办理期限（due_date），由逾期监控置位';
@@ -0,0 +1,8 @@
+-- 流程实例变更标记：实例版本号 + 节点记录数 + 节点版本号之和，用于生成ETag
+-- 轮询请求先做一次索引读取比对 If-None-Match，未变化时直接返回304
+
+CREATE INDEX IF NOT EXISTS idx_wf_node_instance
+    ON t_poc_workflow_nodes(instance_id) INCLUDE (version, updated_time);
+
+CREATE INDEX IF NOT EXISTS idx_wf_instance_business
+    ON t_poc_workflow_instances(business_type, business_id);
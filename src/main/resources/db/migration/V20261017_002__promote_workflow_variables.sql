@@ -0,0 +1,57 @@
+-- 流程实例业务字段：金额、币种、申请单ID/编号、部门从 variables JSON 提升为带类型、带索引的列，
+-- 列表和筛选直接按列查询排序，不再逐行解析JSON；其余流程变量改为 jsonb 并建 GIN 索引
+
+ALTER TABLE t_poc_workflow_instances
+    ADD COLUMN IF NOT EXISTS amount NUMERIC(15, 2),
+    ADD COLUMN IF NOT EXISTS currency VARCHAR(10),
+    ADD COLUMN IF NOT EXISTS application_id BIGINT,
+    ADD COLUMN IF NOT EXISTS application_number VARCHAR(50),
+    ADD COLUMN IF NOT EXISTS department VARCHAR(100);
+
+ALTER TABLE t_poc_workflow_instances
+    ALTER COLUMN variables TYPE JSONB USING NULLIF(BTRIM(variables), '')::jsonb;
+
+-- 回填：只转换格式正确的值，异常值保持为空
+UPDATE t_poc_workflow_instances
+SET amount = CASE WHEN variables->>'amount' ~ '^-?[0-9]+(\.[0-9]+)?$'
+                  THEN (variables->>'amount')::NUMERIC(15, 2) END,
+    currency = LEFT(variables->>'currency', 10),
+    application_id = CASE WHEN variables->>'applicationId' ~ '^[0-9]+$'
+                          THEN (variables->>'applicationId')::BIGINT END,
+    application_number = LEFT(variables->>'applicationNumber', 50),
+    department = LEFT(variables->>'department', 100)
+WHERE variables IS NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_wf_instance_amount ON t_poc_workflow_instances(amount);
+CREATE INDEX IF NOT EXISTS idx_wf_instance_application ON t_poc_workflow_instances(application_id);
+CREATE INDEX IF NOT EXISTS idx_wf_instance_application_number ON t_poc_workflow_instances(application_number);
+CREATE INDEX IF NOT EXISTS idx_wf_instance_department ON t_poc_workflow_instances(department);
+CREATE INDEX IF NOT EXISTS idx_wf_instance_variables ON t_poc_workflow_instances USING GIN (variables jsonb_path_ops);
+
+COMMENT ON COLUMN t_poc_workflow_instances.amount IS '申请金额';
+COMMENT ON COLUMN t_poc_workflow_instances.currency IS '币种';
+COMMENT ON COLUMN t_poc_workflow_instances.application_id IS '费用申请ID';
+COMMENT ON COLUMN t_poc_workflow_instances.application_number IS '费用申请编号';
+COMMENT ON COLUMN t_poc_workflow_instances.department IS '申请人部门';
+COMMENT ON COLUMN t_poc_workflow_instances.variables IS '其余流程变量（jsonb）';
+
+-- 归档表与在线表列保持一致，归档时按列整行复制
+ALTER TABLE t_poc_workflow_instances_archive
+    ADD COLUMN IF NOT EXISTS amount NUMERIC(15, 2),
+    ADD COLUMN IF NOT EXISTS currency VARCHAR(10),
+    ADD COLUMN IF NOT EXISTS application_id BIGINT,
+    ADD COLUMN IF NOT EXISTS application_number VARCHAR(50),
+    ADD COLUMN IF NOT EXISTS department VARCHAR(100);
+
+ALTER TABLE t_poc_workflow_instances_archive
+    ALTER COLUMN variables TYPE JSONB USING NULLIF(BTRIM(variables), '')::jsonb;
+
+UPDATE t_poc_workflow_instances_archive
+SET amount = CASE WHEN variables->>'amount' ~ '^-?[0-9]+(\.[0-9]+)?$'
+                  THEN (variables->>'amount')::NUMERIC(15, 2) END,
+    currency = LEFT(variables->>'currency', 10),
+    application_id = CASE WHEN variables->>'applicationId' ~ '^[0-9]+$'
+                          THEN (variables->>'applicationId')::BIGINT END,
+    application_number = LEFT(variables->>'applicationNumber', 50),
+    department = LEFT(variables->>'department', 100)
+WHERE variables IS NOT NULL;
@@ -0,0 +1,15 @@
+-- 游标分页：待办按（创建时间, 任务ID）定位，创建时间不允许为空，否则无法生成下一页游标
+-- 已办任务按（审批人, 结束时间倒序, 任务ID倒序）读取 Flowable 历史任务表
+
+UPDATE t_poc_task_inbox SET task_create_time = created_time WHERE task_create_time IS NULL;
+ALTER TABLE t_poc_task_inbox ALTER COLUMN task_create_time SET NOT NULL;
+
+-- ACT_HI_TASKINST 由 Flowable 建表（database-schema-update），全新库上迁移先于引擎建表，此时跳过，
+-- 由 FlowableConfig 在引擎启动后以同一语句补建
+DO $$
+BEGIN
+    IF to_regclass('act_hi_taskinst') IS NOT NULL THEN
+        CREATE INDEX IF NOT EXISTS idx_act_hi_task_assignee_end
+            ON act_hi_taskinst(assignee_, end_time_ DESC, id_ DESC);
+    END IF;
+END $$;
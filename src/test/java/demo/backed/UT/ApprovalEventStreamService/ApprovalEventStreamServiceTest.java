@@ -0,0 +1,78 @@
+package demo.backed.UT.ApprovalEventStreamService;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.service.ApprovalEventStreamService;
+import demo.backed.service.ApprovalStatisticsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ApprovalEventStreamService单元测试
+ */
+@DisplayName("审批事件推送服务测试")
+class ApprovalEventStreamServiceTest extends BaseServiceTest {
+
+    @Mock
+    private ApprovalStatisticsService approvalStatisticsService;
+
+    @InjectMocks
+    private ApprovalEventStreamService approvalEventStreamService;
+
+    @AfterEach
+    void tearDown() {
+        approvalEventStreamService.shutdown();
+    }
+
+    @Test
+    @DisplayName("重连时应该只补发该用户在Last-Event-ID之后的事件")
+    void shouldReplayOnlyUserEventsAfterLastEventId() {
+        // Given
+        approvalEventStreamService.publish(1L, ApprovalEventStreamService.EVENT_TASK_CREATED, Collections.singletonMap("taskId", "a"));
+        approvalEventStreamService.publish(2L, ApprovalEventStreamService.EVENT_TASK_CREATED, Collections.singletonMap("taskId", "b"));
+        approvalEventStreamService.publish(1L, ApprovalEventStreamService.EVENT_TASK_COMPLETED, Collections.singletonMap("taskId", "a"));
+
+        // When
+        List<ApprovalEventStreamService.StreamEvent> events = approvalEventStreamService.eventsAfter(1L, 1L);
+
+        // Then
+        assertThat(events).extracting(ApprovalEventStreamService.StreamEvent::getId).containsExactly(3L);
+        assertThat(events.get(0).getType()).isEqualTo(ApprovalEventStreamService.EVENT_TASK_COMPLETED);
+    }
+
+    @Test
+    @DisplayName("缓冲区已覆盖断线期间的事件时应该要求客户端整体刷新")
+    void shouldRequireResyncWhenBufferOverflowed() {
+        // Given
+        ReflectionTestUtils.setField(approvalEventStreamService, "bufferSize", 2);
+        for (int i = 0; i < 5; i++) {
+            approvalEventStreamService.publish(1L, ApprovalEventStreamService.EVENT_TASK_CREATED, null);
+        }
+
+        // Then
+        assertThat(approvalEventStreamService.eventsAfter(1L, 1L)).isNull();
+        assertThat(approvalEventStreamService.eventsAfter(1L, 3L)).hasSize(2);
+        // 服务重启后客户端携带的事件ID比当前序号更大
+        assertThat(approvalEventStreamService.eventsAfter(1L, 99L)).isNull();
+    }
+
+    @Test
+    @DisplayName("建立连接后应该登记连接数")
+    void shouldRegisterConnectionOnSubscribe() {
+        // When
+        SseEmitter emitter = approvalEventStreamService.subscribe(1L, null);
+
+        // Then
+        assertThat(emitter).isNotNull();
+        assertThat(approvalEventStreamService.getConnectionCount()).isEqualTo(1);
+    }
+}
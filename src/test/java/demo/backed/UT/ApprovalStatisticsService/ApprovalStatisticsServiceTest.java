@@ -0,0 +1,142 @@
+package demo.backed.UT.ApprovalStatisticsService;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.dto.ApprovalStatisticsDTO;
+import demo.backed.entity.ApprovalStatistics;
+import demo.backed.repository.ApprovalStatisticsRepository;
+import demo.backed.service.ApprovalStatisticsService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ApprovalStatisticsService单元测试
+ */
+@DisplayName("审批统计服务测试")
+class ApprovalStatisticsServiceTest extends BaseServiceTest {
+
+    @Mock
+    private ApprovalStatisticsRepository approvalStatisticsRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private ApprovalStatisticsService approvalStatisticsService;
+
+    @Test
+    @DisplayName("紧急任务进入待办时应该同时增加待办数和紧急数")
+    void shouldIncrementPendingAndUrgentCountsWhenUrgentTaskOpened() {
+        // When
+        approvalStatisticsService.onTaskOpened(2L, 3L, 80);
+
+        // Then
+        verify(approvalStatisticsRepository).insertIfAbsent(2L);
+        verify(approvalStatisticsRepository).adjustPending(2L, 1, 1);
+        verify(approvalStatisticsRepository).insertIfAbsent(3L);
+        verify(approvalStatisticsRepository).adjustDelegated(3L, 1);
+    }
+
+    @Test
+    @DisplayName("普通任务离开待办时只扣减待办数")
+    void shouldDecrementOnlyPendingCountWhenNormalTaskClosed() {
+        // When
+        approvalStatisticsService.onTaskClosed(2L, null, 50);
+
+        // Then
+        verify(approvalStatisticsRepository).adjustPending(2L, -1, 0);
+        verify(approvalStatisticsRepository, never()).adjustDelegated(anyLong(), anyInt());
+    }
+
+    @Test
+    @DisplayName("任务完成时应该按今天日期累加今日已办")
+    void shouldIncrementApprovedTodayWhenTaskCompleted() {
+        // When
+        approvalStatisticsService.onTaskCompleted(2L);
+
+        // Then
+        verify(approvalStatisticsRepository).incrementApprovedToday(2L, LocalDate.now());
+    }
+
+    @Test
+    @DisplayName("统计日期不是今天时今日已办应该归零")
+    void shouldResetApprovedTodayOnDayRollover() {
+        // Given
+        ApprovalStatistics stats = new ApprovalStatistics();
+        stats.setUserId(2L);
+        stats.setPendingCount(5);
+        stats.setUrgentCount(1);
+        stats.setDelegatedCount(2);
+        stats.setOverdueCount(3);
+        stats.setApprovedToday(7);
+        stats.setStatDate(LocalDate.now().minusDays(1));
+        when(approvalStatisticsRepository.findByUserId(2L)).thenReturn(Optional.of(stats));
+
+        // When
+        ApprovalStatisticsDTO result = approvalStatisticsService.getStatistics(2L);
+
+        // Then
+        assertThat(result.getMyPendingCount()).isEqualTo(5);
+        assertThat(result.getUrgentTaskCount()).isEqualTo(1);
+        assertThat(result.getDelegatedApprovalCount()).isEqualTo(2);
+        assertThat(result.getOverdueTaskCount()).isEqualTo(3);
+        assertThat(result.getMyApprovedToday()).isZero();
+    }
+
+    @Test
+    @DisplayName("没有统计记录的用户应该返回全零统计")
+    void shouldReturnZerosWhenNoStatistics() {
+        // Given
+        when(approvalStatisticsRepository.findByUserId(9L)).thenReturn(Optional.empty());
+
+        // When
+        ApprovalStatisticsDTO result = approvalStatisticsService.getStatistics(9L);
+
+        // Then
+        assertThat(result.getMyPendingCount()).isZero();
+        assertThat(result.getMyApprovedToday()).isZero();
+    }
+
+    @Test
+    @DisplayName("对账应该只修正不一致的用户，每个用户在独立短事务中只锁自己的统计行")
+    void shouldReconcileDriftedUsersInPerUserTransactions() {
+        // Given
+        when(jdbcTemplate.queryForList(contains("s.pending_count <> COALESCE(r.pending, 0)"), eq(Long.class),
+                any(), any(), any(), any())).thenReturn(Arrays.asList(2L, 3L));
+        when(jdbcTemplate.update(startsWith("UPDATE t_poc_approval_statistics SET"),
+                any(), any(), any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(1);
+
+        // When
+        int updated = approvalStatisticsService.reconcile();
+
+        // Then
+        assertThat(updated).isEqualTo(2);
+        InOrder inOrder = inOrder(approvalStatisticsRepository, jdbcTemplate);
+        inOrder.verify(approvalStatisticsRepository).insertIfAbsent(2L);
+        inOrder.verify(jdbcTemplate).queryForList(contains("WHERE user_id = ? FOR UPDATE"), eq(Long.class), eq(2L));
+        inOrder.verify(jdbcTemplate).update(contains("DELETE_REASON_ IS NULL"), eq("2"),
+                eq(ApprovalStatisticsService.URGENT_PRIORITY), eq("2"), any(), eq("2"), any(), eq("2"), eq(2L),
+                eq(Date.valueOf(LocalDate.now())), eq(2L));
+        inOrder.verify(approvalStatisticsRepository).insertIfAbsent(3L);
+        verify(transactionManager, times(2)).getTransaction(argThat(definition ->
+                definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(jdbcTemplate, never()).queryForList(contains("ORDER BY user_id FOR UPDATE"), eq(Long.class));
+    }
+}
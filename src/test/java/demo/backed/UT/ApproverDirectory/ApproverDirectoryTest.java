@@ -0,0 +1,79 @@
+package demo.backed.UT.ApproverDirectory;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.dto.UserDTO;
+import demo.backed.entity.User;
+import demo.backed.repository.UserRepository;
+import demo.backed.service.ApproverDirectory;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * ApproverDirectory单元测试
+ */
+@DisplayName("审批人目录测试")
+class ApproverDirectoryTest extends BaseServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private ApproverDirectory approverDirectory;
+
+    @Test
+    @DisplayName("应该从用户表构建主管、职位和邮箱映射，并且只查询一次")
+    void shouldBuildMapsOnceAndResolveFromMemory() {
+        // Given
+        when(userRepository.findAll()).thenReturn(Arrays.asList(
+                createUser(3L, "财务部", "主管", "财务经理", "在职", "finance@hkex.com"),
+                createUser(2L, "财务部", "主管", "财务经理", "离职", "old-finance@hkex.com"),
+                createUser(4L, "行政部", "员工", "COO", "在职", "coo@hkex.com"),
+                createUser(5L, "行政部", "员工", "COO", "在职", "coo2@hkex.com")));
+
+        // When & Then
+        assertThat(approverDirectory.findDepartmentManager("财务部")).map(UserDTO::getId).contains(3L);
+        assertThat(approverDirectory.findActiveUser(2L)).isEmpty();
+        assertThat(approverDirectory.findByEmail("old-finance@hkex.com")).map(UserDTO::getId).contains(2L);
+        assertThat(approverDirectory.findFunctionalHead("人力资源部")).map(UserDTO::getId).contains(4L);
+        assertThat(approverDirectory.findActiveByPosition("CEO")).isEmpty();
+        verify(userRepository, times(1)).findAll();
+    }
+
+    @Test
+    @DisplayName("用户数据变化后应该在下次读取时重建目录")
+    void shouldRebuildAfterInvalidate() {
+        // Given
+        when(userRepository.findAll())
+                .thenReturn(Arrays.asList(createUser(3L, "财务部", "员工", "会计", "在职", "a@hkex.com")))
+                .thenReturn(Arrays.asList(createUser(3L, "财务部", "主管", "财务经理", "在职", "a@hkex.com")));
+        assertThat(approverDirectory.findDepartmentManager("财务部")).isEmpty();
+
+        // When
+        approverDirectory.invalidate();
+        Optional<UserDTO> manager = approverDirectory.findDepartmentManager("财务部");
+
+        // Then
+        assertThat(manager).map(UserDTO::getId).contains(3L);
+        verify(userRepository, times(2)).findAll();
+    }
+
+    private User createUser(Long id, String department, String userType, String position, String status, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setUserName("用户" + id);
+        user.setDepartment(department);
+        user.setUserType(userType);
+        user.setPosition(position);
+        user.setStatus(status);
+        user.setEmail(email);
+        return user;
+    }
+}
@@ -0,0 +1,127 @@
+package demo.backed.UT.ApproverResolver;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.dto.UserDTO;
+import demo.backed.service.ApproverDirectory;
+import demo.backed.service.ApproverResolver;
+import demo.backed.service.LegacyApproverELResolver;
+import org.flowable.common.engine.api.delegate.Expression;
+import org.flowable.common.engine.impl.el.DefaultExpressionManager;
+import org.flowable.engine.delegate.DelegateExecution;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ApproverResolver单元测试
+ */
+@DisplayName("审批人解析器测试")
+class ApproverResolverTest extends BaseServiceTest {
+
+    @Mock
+    private ApproverDirectory approverDirectory;
+
+    @Mock
+    private DelegateExecution execution;
+
+    @InjectMocks
+    private ApproverResolver approverResolver;
+
+    @Test
+    @DisplayName("任务创建时应该按申请人解析直属主管并缓存在执行上")
+    void shouldResolveManagerLazilyAndMemoize() {
+        // Given
+        UserDTO applicant = new UserDTO();
+        applicant.setId(1L);
+        applicant.setManagerId(5L);
+        UserDTO manager = new UserDTO();
+        manager.setId(5L);
+        when(execution.getVariable("managerId")).thenReturn(null);
+        when(execution.getVariable("applicantId")).thenReturn(1L);
+        when(approverDirectory.findUser(1L)).thenReturn(Optional.of(applicant));
+        when(approverDirectory.findActiveUser(5L)).thenReturn(Optional.of(manager));
+
+        // When
+        String approverId = approverResolver.manager(execution);
+
+        // Then
+        assertThat(approverId).isEqualTo("5");
+        verify(execution).setTransientVariable("_approver_managerId", "5");
+        verify(execution, never()).setVariable(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("改写前部署的流程定义中的 ${managerId} 在发起时未写入变量时应该按需解析")
+    void shouldResolveLegacyAssigneeExpressionOfDeployedDefinition() {
+        // Given: 旧定义中的任务分配表达式，按引擎的解析顺序（流程变量 -> Bean -> 旧审批人变量）求值
+        DefaultExpressionManager expressionManager = new DefaultExpressionManager(null);
+        expressionManager.addPostDefaultResolver(new LegacyApproverELResolver(() -> approverResolver));
+        Expression assignee = expressionManager.createExpression("${managerId}");
+        UserDTO applicant = new UserDTO();
+        applicant.setId(1L);
+        applicant.setManagerId(5L);
+        UserDTO manager = new UserDTO();
+        manager.setId(5L);
+        when(execution.getVariable("managerId")).thenReturn(null);
+        when(execution.getVariable("applicantId")).thenReturn(1L);
+        when(approverDirectory.findUser(1L)).thenReturn(Optional.of(applicant));
+        when(approverDirectory.findActiveUser(5L)).thenReturn(Optional.of(manager));
+
+        // When
+        Object approverId = assignee.getValue(execution);
+
+        // Then
+        assertThat(approverId).isEqualTo("5");
+        verify(execution).setTransientVariable("_approver_managerId", "5");
+    }
+
+    @Test
+    @DisplayName("已缓存或流程变量中已指定审批人时不应该再次解析")
+    void shouldReuseMemoizedOrExplicitApprover() {
+        // Given
+        when(execution.getVariable("financeManagerId")).thenReturn(8L);
+        when(execution.getTransientVariable("_approver_complianceManagerId")).thenReturn("9");
+
+        // When & Then
+        assertThat(approverResolver.financeManager(execution)).isEqualTo("8");
+        assertThat(approverResolver.complianceManager(execution)).isEqualTo("9");
+        verifyNoInteractions(approverDirectory);
+    }
+
+    @Test
+    @DisplayName("大额申请的高管审批应该在走到该节点时才按金额选择CEO")
+    void shouldResolveExecutiveByAmount() {
+        // Given
+        UserDTO ceo = new UserDTO();
+        ceo.setId(3L);
+        when(execution.getVariable("executiveId")).thenReturn(null);
+        when(execution.getVariable("amount")).thenReturn(new BigDecimal("200000"));
+        when(approverDirectory.findActiveByPosition("CEO")).thenReturn(Collections.singletonList(ceo));
+
+        // When
+        String approverId = approverResolver.executive(execution);
+
+        // Then
+        assertThat(approverId).isEqualTo("3");
+    }
+
+    @Test
+    @DisplayName("部署旧模板时应该把变量式审批人改写为按需解析表达式")
+    void shouldRewriteLegacyAssigneeExpressions() {
+        String xml = "<userTask id=\"manager\" flowable:assignee=\"${managerId}\"/>"
+                + "<userTask id=\"task1\" flowable:assignee=\"${initiator}\"/>";
+
+        String result = ApproverResolver.toLazyAssignees(xml);
+
+        assertThat(result).contains("${approverResolver.manager(execution)}").contains("${initiator}");
+    }
+}
@@ -0,0 +1,299 @@
+package demo.backed.UT.BatchApprovalService;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.dto.ApprovalRequest;
+import demo.backed.dto.BatchApprovalFilterRequest;
+import demo.backed.dto.BatchApprovalJob;
+import demo.backed.dto.BatchResult;
+import demo.backed.entity.TaskInboxItem;
+import demo.backed.entity.WorkflowNode;
+import demo.backed.repository.TaskInboxRepository;
+import demo.backed.repository.WorkflowNodeRepository;
+import demo.backed.service.ApprovalEventStreamService;
+import demo.backed.service.BatchApprovalService;
+import demo.backed.service.WorkflowService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * BatchApprovalService单元测试
+ */
+@DisplayName("批量审批服务测试")
+class BatchApprovalServiceTest extends BaseServiceTest {
+
+    @Mock
+    private WorkflowService workflowService;
+
+    @Mock
+    private WorkflowNodeRepository workflowNodeRepository;
+
+    @Mock
+    private TaskInboxRepository taskInboxRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApprovalEventStreamService approvalEventStreamService;
+
+    @InjectMocks
+    private BatchApprovalService batchApprovalService;
+
+    @AfterEach
+    void tearDown() {
+        batchApprovalService.shutdown();
+    }
+
+    @Test
+    @DisplayName("批量审批时单项失败不影响其他项，每项使用独立事务")
+    void shouldIsolateFailuresAndUseNewTransactionPerItem() {
+        // Given
+        List<ApprovalRequest> requests = Arrays.asList(
+                createRequest(1L, "approve"), createRequest(2L, "approve"), createRequest(3L, "reject"));
+        when(workflowNodeRepository.findAllById(anyCollection()))
+                .thenReturn(Arrays.asList(createNode(1L, 10L, "task-1"), createNode(3L, 30L, "task-3")));
+        doThrow(new RuntimeException("拒绝失败: 任务不存在"))
+                .when(workflowService).reject(30L, "task-3", "批量审批");
+
+        // When
+        BatchResult result = batchApprovalService.execute(requests, 2L);
+
+        // Then
+        assertThat(result.getTotalCount()).isEqualTo(3);
+        assertThat(result.getSuccessIds()).containsExactly(1L);
+        assertThat(result.getFailureIds()).containsExactlyInAnyOrder(2L, 3L);
+        verify(workflowService).approve(10L, "task-1", "批量审批");
+        verify(transactionManager, times(2)).getTransaction(argThat(definition ->
+                definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+    }
+
+    @Test
+    @DisplayName("同一流程实例的审批项应该按顺序串行执行")
+    void shouldSerializeItemsOfSameProcessInstance() {
+        // Given
+        List<ApprovalRequest> requests = new ArrayList<>();
+        List<WorkflowNode> nodes = new ArrayList<>();
+        for (long i = 1; i <= 6; i++) {
+            requests.add(createRequest(i, "approve"));
+            nodes.add(createNode(i, i <= 3 ? 10L : 20L, "task-" + i));
+        }
+        when(workflowNodeRepository.findAllById(anyCollection())).thenReturn(nodes);
+        Map<Long, AtomicInteger> running = new ConcurrentHashMap<>();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger maxConcurrentPerInstance = new AtomicInteger();
+        doAnswer(invocation -> {
+            Long instanceId = invocation.getArgument(0);
+            int current = running.computeIfAbsent(instanceId, id -> new AtomicInteger()).incrementAndGet();
+            maxConcurrentPerInstance.accumulateAndGet(current, Math::max);
+            Thread.sleep(20);
+            order.add(invocation.getArgument(1));
+            running.get(instanceId).decrementAndGet();
+            return null;
+        }).when(workflowService).approve(anyLong(), anyString(), anyString());
+
+        // When
+        BatchResult result = batchApprovalService.execute(requests, 2L);
+
+        // Then
+        assertThat(result.getSuccessCount()).isEqualTo(6);
+        assertThat(maxConcurrentPerInstance.get()).isEqualTo(1);
+        assertThat(order.indexOf("task-1")).isLessThan(order.indexOf("task-2"));
+        assertThat(order.indexOf("task-2")).isLessThan(order.indexOf("task-3"));
+    }
+
+    @Test
+    @DisplayName("同步批量审批应该把审批人不是操作人的任务记为失败且不执行")
+    void shouldFailSyncItemsNotAssignedToOperator() {
+        // Given
+        WorkflowNode othersNode = createNode(2L, 20L, "task-2");
+        othersNode.setAssigneeId(5L);
+        when(workflowNodeRepository.findAllById(anyCollection()))
+                .thenReturn(Arrays.asList(createNode(1L, 10L, "task-1"), othersNode));
+
+        // When
+        BatchResult result = batchApprovalService.execute(
+                Arrays.asList(createRequest(1L, "approve"), createRequest(2L, "approve")), 2L);
+
+        // Then
+        assertThat(result.getSuccessIds()).containsExactly(1L);
+        assertThat(result.getFailureIds()).containsExactly(2L);
+        verify(workflowService, never()).approve(eq(20L), anyString(), anyString());
+        assertThatThrownBy(() -> batchApprovalService.execute(Collections.singletonList(createRequest(1L, "approve")), null))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("无法获取当前用户信息");
+    }
+
+    @Test
+    @DisplayName("批量任务超出保留数量时只淘汰已结束的任务，执行中的任务仍可查询")
+    void shouldEvictOnlyFinishedJobs() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(batchApprovalService, "maxJobs", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(workflowNodeRepository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.emptyList();
+        });
+
+        // When
+        BatchApprovalJob running = batchApprovalService.submit(Collections.singletonList(createRequest(1L, "approve")), 2L);
+        BatchApprovalJob next = batchApprovalService.submit(Collections.singletonList(createRequest(2L, "approve")), 2L);
+
+        // Then
+        assertThat(batchApprovalService.getJob(running.getJobId(), 2L)).containsSame(running);
+        assertThat(batchApprovalService.getJob(next.getJobId(), 2L)).containsSame(next);
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!BatchApprovalJob.STATUS_COMPLETED.equals(running.getStatus()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        BatchApprovalJob third = batchApprovalService.submit(Collections.singletonList(createRequest(3L, "approve")), 2L);
+        assertThat(batchApprovalService.getJob(running.getJobId(), 2L)).isEmpty();
+        assertThat(batchApprovalService.getJob(third.getJobId(), 2L)).containsSame(third);
+    }
+
+    @Test
+    @DisplayName("异步批量审批任务应该立即返回并可按任务ID查询结果")
+    void shouldRunAsyncJobAndExposeResult() throws Exception {
+        // Given
+        when(workflowNodeRepository.findAllById(anyCollection()))
+                .thenReturn(Collections.singletonList(createNode(1L, 10L, "task-1")));
+
+        // When
+        BatchApprovalJob job = batchApprovalService.submit(Collections.singletonList(createRequest(1L, "approve")), 2L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!BatchApprovalJob.STATUS_COMPLETED.equals(job.getStatus()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Then
+        Optional<BatchApprovalJob> found = batchApprovalService.getJob(job.getJobId(), 2L);
+        assertThat(found).isPresent();
+        assertThat(found.get().getStatus()).isEqualTo(BatchApprovalJob.STATUS_COMPLETED);
+        assertThat(found.get().getProcessedCount()).isEqualTo(1);
+        assertThat(found.get().getResult().getSuccessCount()).isEqualTo(1);
+        assertThatThrownBy(() -> batchApprovalService.getJob(job.getJobId(), 3L))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("无权查看");
+    }
+
+    @Test
+    @DisplayName("异步批量审批任务应该把审批人不是操作人的任务记为失败且不执行")
+    void shouldFailItemsNotAssignedToOperator() throws Exception {
+        // Given
+        WorkflowNode othersNode = createNode(2L, 20L, "task-2");
+        othersNode.setAssigneeId(5L);
+        when(workflowNodeRepository.findAllById(anyCollection()))
+                .thenReturn(Arrays.asList(createNode(1L, 10L, "task-1"), othersNode));
+
+        // When
+        BatchApprovalJob job = batchApprovalService.submit(
+                Arrays.asList(createRequest(1L, "approve"), createRequest(2L, "approve")), 2L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!BatchApprovalJob.STATUS_COMPLETED.equals(job.getStatus()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Then
+        assertThat(job.getStatus()).isEqualTo(BatchApprovalJob.STATUS_COMPLETED);
+        assertThat(job.getResult().getSuccessIds()).containsExactly(1L);
+        assertThat(job.getResult().getFailureIds()).containsExactly(2L);
+        verify(workflowService).approve(10L, "task-1", "批量审批");
+        verify(workflowService, never()).approve(eq(20L), anyString(), anyString());
+        assertThatThrownBy(() -> batchApprovalService.submit(Collections.singletonList(createRequest(1L, "approve")), null))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("无法获取当前用户信息");
+    }
+
+    @Test
+    @DisplayName("按条件批量审批应该处理匹配的待办并推送进度")
+    @SuppressWarnings("unchecked")
+    void shouldApproveMatchedInboxTasksByFilter() throws Exception {
+        // Given
+        when(taskInboxRepository.findAll(any(Specification.class), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(Arrays.asList(createInboxItem("task-1"), createInboxItem("task-2"))));
+        when(workflowNodeRepository.findByTaskIdIn(anyCollection()))
+                .thenReturn(Collections.singletonList(createNode(1L, 10L, "task-1")));
+        when(workflowNodeRepository.findAllById(anyCollection()))
+                .thenReturn(Collections.singletonList(createNode(1L, 10L, "task-1")));
+        BatchApprovalFilterRequest filter = new BatchApprovalFilterRequest();
+        filter.setNodeKey("financeApproval");
+        filter.setAction("approve");
+        filter.setComment("月末批量通过");
+
+        // When
+        BatchApprovalJob job = batchApprovalService.submitByFilter(filter, 2L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!BatchApprovalJob.STATUS_COMPLETED.equals(job.getStatus()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Then
+        assertThat(job.getTotalCount()).isEqualTo(1);
+        assertThat(job.getStatus()).isEqualTo(BatchApprovalJob.STATUS_COMPLETED);
+        verify(workflowService).approve(10L, "task-1", "月末批量通过");
+        verify(approvalEventStreamService, timeout(1000))
+                .publish(2L, ApprovalEventStreamService.EVENT_BATCH_PROGRESS, job);
+    }
+
+    @Test
+    @DisplayName("按条件批量审批未指定条件或操作不支持时应该拒绝")
+    void shouldRejectFilterWithoutConditionOrUnsupportedAction() {
+        BatchApprovalFilterRequest filter = new BatchApprovalFilterRequest();
+        filter.setAction("approve");
+        assertThatThrownBy(() -> batchApprovalService.submitByFilter(filter, 2L))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("至少指定一个筛选条件");
+
+        filter.setDepartment("财务部");
+        filter.setAction("return");
+        assertThatThrownBy(() -> batchApprovalService.submitByFilter(filter, 2L))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("不支持的审批操作");
+        verifyNoInteractions(taskInboxRepository);
+    }
+
+    private TaskInboxItem createInboxItem(String taskId) {
+        TaskInboxItem item = new TaskInboxItem();
+        item.setTaskId(taskId);
+        item.setAssigneeId(2L);
+        item.setNodeKey("financeApproval");
+        return item;
+    }
+
+    private ApprovalRequest createRequest(Long nodeId, String action) {
+        ApprovalRequest request = new ApprovalRequest();
+        request.setTaskId(nodeId);
+        request.setAction(action);
+        request.setComment("批量审批");
+        return request;
+    }
+
+    private WorkflowNode createNode(Long id, Long instanceId, String taskId) {
+        WorkflowNode node = new WorkflowNode();
+        node.setId(id);
+        node.setInstanceId(instanceId);
+        node.setTaskId(taskId);
+        node.setAssigneeId(2L);
+        return node;
+    }
+}
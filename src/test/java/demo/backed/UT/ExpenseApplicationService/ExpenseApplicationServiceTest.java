@@ -21,13 +21,12 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Optional;
+import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -55,6 +54,9 @@ class ExpenseApplicationServiceTest extends BaseServiceTest {
     @Mock
     private WorkflowIntegrationService workflowIntegrationService;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private ExpenseApplicationService expenseApplicationService;
 
@@ -190,6 +192,61 @@ class ExpenseApplicationServiceTest extends BaseServiceTest {
         verify(workflowIntegrationService, never()).startExpenseApprovalWorkflow(any());
     }
 
+    @Test
+    @DisplayName("批量提交审批应该一次查询并批量启动工作流，校验失败的申请单单独记录")
+    void shouldSubmitApplicationsInBulk() {
+        // Given
+        ExpenseApplication draft = createSubmittableApplication(1L);
+        ExpenseApplication submitted = createSubmittableApplication(2L);
+        submitted.setStatus(ApplicationStatus.SUBMITTED);
+        when(applicationRepository.findWithItemsByIdIn(Arrays.asList(1L, 2L, 3L)))
+                .thenReturn(Arrays.asList(draft, submitted));
+        when(workflowIntegrationService.startExpenseApprovalWorkflows(Collections.singletonList(draft)))
+                .thenReturn(Collections.singletonList("process-1"));
+
+        // When
+        BatchResult result = expenseApplicationService.submitForApprovalBatch(Arrays.asList(1L, 2L, 3L, 1L));
+
+        // Then
+        assertThat(result.getTotalCount()).isEqualTo(3);
+        assertThat(result.getSuccessIds()).containsExactly(1L);
+        assertThat(result.getFailureIds()).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(draft.getStatus()).isEqualTo(ApplicationStatus.SUBMITTED);
+        assertThat(draft.getWorkflowInstanceId()).isEqualTo("process-1");
+        verify(applicationRepository).saveAll(Collections.singletonList(draft));
+        verify(workflowIntegrationService, never()).startExpenseApprovalWorkflow(any());
+    }
+
+    @Test
+    @DisplayName("批量提交某一段失败时应该逐条重试，只有出错的申请单记为失败")
+    @SuppressWarnings("unchecked")
+    void shouldFallBackToSingleSubmitWhenChunkFails() {
+        // Given
+        when(applicationRepository.findWithItemsByIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<ExpenseApplication> applications = new ArrayList<>();
+            for (Long id : (Collection<Long>) invocation.getArgument(0)) {
+                applications.add(createSubmittableApplication(id));
+            }
+            return applications;
+        });
+        when(workflowIntegrationService.startExpenseApprovalWorkflows(anyList())).thenAnswer(invocation -> {
+            List<ExpenseApplication> applications = invocation.getArgument(0);
+            if (applications.stream().anyMatch(application -> application.getId().equals(2L))) {
+                throw new RuntimeException("启动工作流失败: 申请人不存在");
+            }
+            return Collections.singletonList("process-" + applications.get(0).getId());
+        });
+
+        // When
+        BatchResult result = expenseApplicationService.submitForApprovalBatch(Arrays.asList(1L, 2L));
+
+        // Then
+        assertThat(result.getSuccessIds()).containsExactly(1L);
+        assertThat(result.getFailureIds()).containsExactly(2L);
+        assertThat(result.getErrors().get(0)).contains("申请人不存在");
+        verify(transactionManager, times(2)).rollback(any());
+    }
+
     // ==================== 更新申请状态测试 ====================
 
     @Test
@@ -241,22 +298,55 @@ class ExpenseApplicationServiceTest extends BaseServiceTest {
         queryDto.setApplicantId(1L);
         queryDto.setStatus(ApplicationStatus.DRAFT);
         
+        ExpenseApplication other = createTestExpenseApplication();
+        other.setId(2L);
+        other.setApplicationNumber("EXP-2025-123457");
+        ExpenseItem otherItem = createTestExpenseItem();
+        otherItem.setId(2L);
+        otherItem.setApplicationId(2L);
+        
         Pageable pageable = PageRequest.of(0, 10);
-        Page<ExpenseApplication> applicationPage = new PageImpl<>(Arrays.asList(testApplication));
+        Page<ExpenseApplication> applicationPage = new PageImpl<>(Arrays.asList(testApplication, other));
         
         when(applicationRepository.findAll(any(Specification.class), eq(pageable))).thenReturn(applicationPage);
-        when(itemRepository.findByApplicationIdOrderBySortOrder(testApplication.getId())).thenReturn(Arrays.asList(testItem));
+        when(itemRepository.findByApplicationIdIn(Arrays.asList(testApplication.getId(), 2L)))
+                .thenReturn(Arrays.asList(testItem, otherItem));
 
         // When
         Page<ExpenseApplicationDTO> result = expenseApplicationService.findApplications(queryDto, pageable);
 
         // Then
         assertThat(result).isNotNull();
-        assertThat(result.getContent()).hasSize(1);
+        assertThat(result.getContent()).hasSize(2);
         assertThat(result.getContent().get(0).getId()).isEqualTo(testApplication.getId());
+        assertThat(result.getContent().get(0).getItems()).extracting(ExpenseItemDTO::getId).containsExactly(1L);
+        assertThat(result.getContent().get(1).getItems()).extracting(ExpenseItemDTO::getId).containsExactly(2L);
         
+        // 整页明细一次查询，不再逐条查询
         verify(applicationRepository).findAll(any(Specification.class), eq(pageable));
-        verify(itemRepository).findByApplicationIdOrderBySortOrder(testApplication.getId());
+        verify(itemRepository, times(1)).findByApplicationIdIn(anyList());
+        verify(itemRepository, never()).findByApplicationIdOrderBySortOrder(any());
+    }
+
+    @Test
+    @DisplayName("汇总模式查询费用申请列表时不应该查询明细")
+    void shouldSkipItemsInSummaryMode() {
+        // Given
+        ExpenseQueryDTO queryDto = new ExpenseQueryDTO();
+        queryDto.setIncludeItems(false);
+        Pageable pageable = PageRequest.of(0, 10);
+        when(applicationRepository.findAll(any(Specification.class), eq(pageable)))
+                .thenReturn(new PageImpl<>(Arrays.asList(testApplication)));
+
+        // When
+        Page<ExpenseApplicationDTO> result = expenseApplicationService.findApplications(queryDto, pageable);
+
+        // Then
+        ExpenseApplicationDTO dto = result.getContent().get(0);
+        assertThat(dto.getApplicationNumber()).isEqualTo(testApplication.getApplicationNumber());
+        assertThat(dto.getItems()).isNull();
+        assertThat(dto.getItemCount()).isNull();
+        verifyNoInteractions(itemRepository);
     }
 
     @Test
@@ -435,6 +525,17 @@ class ExpenseApplicationServiceTest extends BaseServiceTest {
         return application;
     }
 
+    /**
+     * 创建可提交审批的申请单（草稿状态且带明细）
+     */
+    private ExpenseApplication createSubmittableApplication(Long id) {
+        ExpenseApplication application = createTestExpenseApplication();
+        application.setId(id);
+        application.setApplicationNumber("EXP-2025-00" + id);
+        application.getItems().add(createTestExpenseItem());
+        return application;
+    }
+
     /**
      * 创建测试费用明细实体
      */
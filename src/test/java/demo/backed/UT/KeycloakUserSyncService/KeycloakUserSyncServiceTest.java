@@ -3,6 +3,7 @@ package demo.backed.UT.KeycloakUserSyncService;
 import demo.backed.BaseServiceTest;
 import demo.backed.entity.User;
 import demo.backed.repository.UserRepository;
+import demo.backed.service.ApproverDirectory;
 import demo.backed.service.KeycloakUserSyncService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -67,6 +68,9 @@ class KeycloakUserSyncServiceTest extends BaseServiceTest {
     @Mock
     private Response response;
 
+    @Mock
+    private ApproverDirectory approverDirectory;
+
     @InjectMocks
     private KeycloakUserSyncService keycloakUserSyncService;
 
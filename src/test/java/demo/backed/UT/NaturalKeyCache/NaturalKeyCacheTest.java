@@ -0,0 +1,98 @@
+package demo.backed.UT.NaturalKeyCache;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.repository.NaturalKeyCache;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * NaturalKeyCache单元测试
+ */
+@DisplayName("业务键主键缓存测试")
+class NaturalKeyCacheTest extends BaseServiceTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private TypedQuery<WorkflowInstance> query;
+
+    @InjectMocks
+    private NaturalKeyCache naturalKeyCache;
+
+    @Test
+    @DisplayName("同一业务键再次查询应该按主键加载而不再执行业务键查询")
+    void shouldLoadByPrimaryKeyOnRepeatedLookup() {
+        // Given
+        WorkflowInstance instance = createInstance("process-1");
+        stubQuery(instance);
+        when(entityManager.find(WorkflowInstance.class, 10L)).thenReturn(instance);
+
+        // When
+        Optional<WorkflowInstance> first = find("process-1");
+        Optional<WorkflowInstance> second = find("process-1");
+
+        // Then
+        assertThat(first).containsSame(instance);
+        assertThat(second).containsSame(instance);
+        verify(entityManager, times(1)).createQuery(anyString(), eq(WorkflowInstance.class));
+        verify(entityManager, times(1)).find(WorkflowInstance.class, 10L);
+    }
+
+    @Test
+    @DisplayName("缓存的实体业务键已变化时应该丢弃缓存并重新按业务键查询")
+    void shouldRequeryWhenCachedEntityKeyChanged() {
+        // Given
+        WorkflowInstance instance = createInstance("process-1");
+        stubQuery(instance);
+        find("process-1");
+        instance.setProcessInstanceId("process-2");
+        when(entityManager.find(WorkflowInstance.class, 10L)).thenReturn(instance);
+        when(query.getResultList()).thenReturn(Collections.emptyList());
+
+        // When
+        Optional<WorkflowInstance> result = find("process-1");
+
+        // Then
+        assertThat(result).isEmpty();
+        verify(entityManager, times(2)).createQuery(anyString(), eq(WorkflowInstance.class));
+    }
+
+    @Test
+    @DisplayName("业务键为空时应该直接返回空，不访问数据库")
+    void shouldReturnEmptyForNullKey() {
+        assertThat(find(null)).isEmpty();
+        verifyNoInteractions(entityManager);
+    }
+
+    private Optional<WorkflowInstance> find(String processInstanceId) {
+        return naturalKeyCache.find(WorkflowInstance.class, "processInstanceId", processInstanceId,
+                WorkflowInstance::getProcessInstanceId);
+    }
+
+    private void stubQuery(WorkflowInstance result) {
+        when(entityManager.createQuery(anyString(), eq(WorkflowInstance.class))).thenReturn(query);
+        when(query.setParameter(eq("key"), any())).thenReturn(query);
+        when(query.setMaxResults(2)).thenReturn(query);
+        when(query.getResultList()).thenReturn(Collections.singletonList(result));
+    }
+
+    private WorkflowInstance createInstance(String processInstanceId) {
+        WorkflowInstance instance = new WorkflowInstance();
+        instance.setId(10L);
+        instance.setProcessInstanceId(processInstanceId);
+        return instance;
+    }
+}
@@ -0,0 +1,91 @@
+package demo.backed.UT.OverdueTaskMonitor;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.repository.TaskInboxRepository;
+import demo.backed.service.OverdueTaskMonitor;
+import demo.backed.service.TaskInboxService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * OverdueTaskMonitor单元测试
+ */
+@DisplayName("待办逾期监控测试")
+class OverdueTaskMonitorTest extends BaseServiceTest {
+
+    @Mock
+    private TaskInboxRepository taskInboxRepository;
+
+    @Mock
+    private TaskInboxService taskInboxService;
+
+    @InjectMocks
+    private OverdueTaskMonitor overdueTaskMonitor;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(overdueTaskMonitor, "tickMillis", 1L);
+        ReflectionTestUtils.setField(overdueTaskMonitor, "wheelSize", 8);
+    }
+
+    @Test
+    @DisplayName("推进时间轮应该只标记到期的待办")
+    void shouldMarkOnlyExpiredTasks() throws InterruptedException {
+        // Given
+        when(taskInboxService.markOverdue("task-1")).thenReturn(true);
+        overdueTaskMonitor.schedule("task-1", LocalDateTime.now().minusMinutes(5));
+        overdueTaskMonitor.schedule("task-2", LocalDateTime.now().plusDays(1));
+        Thread.sleep(5);
+
+        // When
+        int marked = overdueTaskMonitor.tick();
+
+        // Then
+        assertThat(marked).isEqualTo(1);
+        verify(taskInboxService).markOverdue("task-1");
+        verify(taskInboxService, never()).markOverdue("task-2");
+        assertThat(overdueTaskMonitor.getStatus()).containsEntry("scheduledTasks", 1);
+    }
+
+    @Test
+    @DisplayName("已取消的待办到期后不应该被标记")
+    void shouldSkipCancelledTasks() throws InterruptedException {
+        // Given
+        overdueTaskMonitor.schedule("task-1", LocalDateTime.now().minusMinutes(5));
+        overdueTaskMonitor.cancel("task-1");
+        Thread.sleep(5);
+
+        // When
+        int marked = overdueTaskMonitor.tick();
+
+        // Then
+        assertThat(marked).isZero();
+        verify(taskInboxService, never()).markOverdue(anyString());
+    }
+
+    @Test
+    @DisplayName("启动时应该从待办投影装入有办理期限的任务")
+    void shouldLoadOpenTasksFromInbox() {
+        // Given
+        when(taskInboxRepository.findOpenDueDates()).thenReturn(Arrays.asList(
+                new Object[] {"task-1", LocalDateTime.now().plusHours(1)},
+                new Object[] {"task-2", LocalDateTime.now().plusHours(2)}));
+
+        // When
+        overdueTaskMonitor.loadOpenTasks();
+
+        // Then
+        assertThat(overdueTaskMonitor.getStatus()).containsEntry("scheduledTasks", 2);
+    }
+}
@@ -0,0 +1,78 @@
+package demo.backed.UT.ProcessGraphService;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.service.ProcessGraphService;
+import org.flowable.bpmn.model.*;
+import org.flowable.bpmn.model.Process;
+import org.flowable.engine.RepositoryService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * ProcessGraphService单元测试
+ */
+@DisplayName("流程定义图分析测试")
+class ProcessGraphServiceTest extends BaseServiceTest {
+
+    @Mock
+    private RepositoryService repositoryService;
+
+    @InjectMocks
+    private ProcessGraphService processGraphService;
+
+    @Test
+    @DisplayName("上游用户任务应该穿过网关收集，并且每个流程定义只解析一次")
+    void shouldCollectUpstreamUserTasksThroughGateways() {
+        // Given: start -> submit -> gateway -> managerApproval -> financeApproval
+        //                                   \-> hrApproval
+        Process process = new Process();
+        StartEvent start = addNode(process, new StartEvent(), "start");
+        UserTask submit = addNode(process, new UserTask(), "submit");
+        ExclusiveGateway gateway = addNode(process, new ExclusiveGateway(), "gateway");
+        UserTask manager = addNode(process, new UserTask(), "managerApproval");
+        UserTask hr = addNode(process, new UserTask(), "hrApproval");
+        UserTask finance = addNode(process, new UserTask(), "financeApproval");
+        connect(process, start, submit);
+        connect(process, submit, gateway);
+        connect(process, gateway, manager);
+        connect(process, gateway, hr);
+        connect(process, manager, finance);
+        BpmnModel bpmnModel = new BpmnModel();
+        bpmnModel.addProcess(process);
+        when(repositoryService.getBpmnModel("expenseApproval:1:def-1")).thenReturn(bpmnModel);
+
+        // When
+        processGraphService.getUpstreamUserTasks("expenseApproval:1:def-1", "managerApproval");
+
+        // Then
+        assertThat(processGraphService.getUpstreamUserTasks("expenseApproval:1:def-1", "financeApproval"))
+                .containsExactlyInAnyOrder("submit", "managerApproval");
+        assertThat(processGraphService.getUpstreamUserTasks("expenseApproval:1:def-1", "hrApproval"))
+                .containsExactly("submit");
+        assertThat(processGraphService.getUpstreamUserTasks("expenseApproval:1:def-1", "submit")).isEmpty();
+        verify(repositoryService, times(1)).getBpmnModel("expenseApproval:1:def-1");
+    }
+
+    private <T extends FlowNode> T addNode(Process process, T node, String id) {
+        node.setId(id);
+        node.setIncomingFlows(new ArrayList<>());
+        node.setOutgoingFlows(new ArrayList<>());
+        process.addFlowElement(node);
+        return node;
+    }
+
+    private void connect(Process process, FlowNode source, FlowNode target) {
+        SequenceFlow flow = new SequenceFlow(source.getId(), target.getId());
+        flow.setId(source.getId() + "-" + target.getId());
+        source.getOutgoingFlows().add(flow);
+        target.getIncomingFlows().add(flow);
+        process.addFlowElement(flow);
+    }
+}
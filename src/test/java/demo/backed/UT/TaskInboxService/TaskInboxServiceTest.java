@@ -0,0 +1,363 @@
+package demo.backed.UT.TaskInboxService;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.dto.CursorPage;
+import demo.backed.dto.PendingTaskDTO;
+import demo.backed.dto.UserDTO;
+import demo.backed.entity.TaskInboxItem;
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.repository.TaskInboxRepository;
+import demo.backed.repository.WorkflowInstanceRepository;
+import demo.backed.service.ApprovalEventStreamService;
+import demo.backed.service.ApprovalStatisticsService;
+import demo.backed.service.TaskInboxService;
+import demo.backed.service.UserService;
+import org.flowable.engine.TaskService;
+import org.flowable.task.api.Task;
+import org.flowable.task.api.TaskQuery;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * TaskInboxService单元测试
+ */
+@DisplayName("待办收件箱投影服务测试")
+class TaskInboxServiceTest extends BaseServiceTest {
+
+    @Mock
+    private TaskInboxRepository taskInboxRepository;
+
+    @Mock
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private TaskService taskService;
+
+    @Mock
+    private ApprovalStatisticsService approvalStatisticsService;
+
+    @Mock
+    private ApprovalEventStreamService approvalEventStreamService;
+
+    @InjectMocks
+    private TaskInboxService taskInboxService;
+
+    @Test
+    @DisplayName("任务创建时应该写入完整的投影行")
+    void shouldCreateInboxItemWhenTaskCreated() {
+        // Given
+        Task task = createTestTask("task-1", "process-1", "2");
+        WorkflowInstance instance = createTestWorkflowInstance();
+        when(workflowInstanceRepository.findActiveByBusinessKey("EXPENSE", "EXP001"))
+                .thenReturn(Optional.of(instance));
+        when(userService.getUsersByIds(Collections.singleton(2L)))
+                .thenReturn(Collections.singletonMap(2L, createTestUser(2L, "李四")));
+        when(taskInboxRepository.findByTaskId("task-1")).thenReturn(Optional.empty());
+
+        // When
+        taskInboxService.onTaskCreated(task, createTestVariables());
+
+        // Then
+        ArgumentCaptor<TaskInboxItem> captor = ArgumentCaptor.forClass(TaskInboxItem.class);
+        verify(taskInboxRepository).save(captor.capture());
+        TaskInboxItem item = captor.getValue();
+        assertThat(item.getTaskId()).isEqualTo("task-1");
+        assertThat(item.getInstanceId()).isEqualTo(1L);
+        assertThat(item.getTitle()).isEqualTo("费用申请审批 - EXP001");
+        assertThat(item.getNodeName()).isEqualTo("财务审批");
+        assertThat(item.getAssigneeId()).isEqualTo(2L);
+        assertThat(item.getAssigneeName()).isEqualTo("李四");
+        assertThat(item.getApplicantName()).isEqualTo("张三");
+        assertThat(item.getDepartment()).isEqualTo("财务部");
+        assertThat(item.getApplicationId()).isEqualTo("10");
+        assertThat(item.getAmount()).isEqualByComparingTo("1500.00");
+        verify(approvalStatisticsService).onTaskOpened(2L, null, 0);
+        verify(approvalEventStreamService)
+                .publishAfterCommit(eq(2L), eq(ApprovalEventStreamService.EVENT_TASK_CREATED), any());
+    }
+
+    @Test
+    @DisplayName("任务分配时应该更新已有投影行的审批人")
+    void shouldUpdateAssigneeWhenTaskAssigned() {
+        // Given
+        TaskInboxItem item = new TaskInboxItem();
+        item.setTaskId("task-1");
+        item.setAssigneeId(2L);
+        Task task = mock(Task.class);
+        when(task.getId()).thenReturn("task-1");
+        when(task.getAssignee()).thenReturn("3");
+        when(taskInboxRepository.findByTaskId("task-1")).thenReturn(Optional.of(item));
+        when(userService.getUsersByIds(Collections.singleton(3L)))
+                .thenReturn(Collections.singletonMap(3L, createTestUser(3L, "王五")));
+
+        // When
+        taskInboxService.onTaskAssigned(task);
+
+        // Then
+        assertThat(item.getAssigneeId()).isEqualTo(3L);
+        assertThat(item.getAssigneeName()).isEqualTo("王五");
+        verify(taskInboxRepository).save(item);
+        verify(approvalStatisticsService).onTaskClosed(2L, null, null);
+        verify(approvalStatisticsService).onTaskOpened(3L, null, null);
+    }
+
+    @Test
+    @DisplayName("流程结束时应该清理该流程的全部投影行")
+    void shouldRemoveItemsWhenProcessEnded() {
+        // Given
+        TaskInboxItem item = new TaskInboxItem();
+        item.setTaskId("task-1");
+        item.setAssigneeId(2L);
+        item.setPriority(80);
+        List<TaskInboxItem> items = Collections.singletonList(item);
+        when(taskInboxRepository.findByProcessInstanceId("process-1")).thenReturn(items);
+
+        // When
+        taskInboxService.onProcessEnded("process-1");
+
+        // Then
+        verify(taskInboxRepository).deleteAll(items);
+        verify(approvalStatisticsService).onTaskClosed(2L, null, 80);
+    }
+
+    @Test
+    @DisplayName("同一任务的完成和删除事件只应该扣减一次统计")
+    void shouldCloseTaskOnlyOnceWhenRemovedTwice() {
+        // Given
+        TaskInboxItem item = new TaskInboxItem();
+        item.setTaskId("task-1");
+        item.setAssigneeId(2L);
+        when(taskInboxRepository.findByTaskId("task-1"))
+                .thenReturn(Optional.of(item))
+                .thenReturn(Optional.empty());
+
+        // When
+        taskInboxService.onTaskRemoved("task-1", true);
+        taskInboxService.onTaskRemoved("task-1", false);
+
+        // Then
+        verify(taskInboxRepository, times(1)).delete(item);
+        verify(approvalStatisticsService, times(1)).onTaskClosed(2L, null, null);
+        verify(approvalEventStreamService, times(1))
+                .publishAfterCommit(eq(2L), eq(ApprovalEventStreamService.EVENT_TASK_COMPLETED), any());
+    }
+
+    @Test
+    @DisplayName("到期的待办应该标记逾期、累加逾期统计并推送，已逾期的不重复处理")
+    void shouldMarkOverdueOnlyOnce() {
+        // Given
+        TaskInboxItem item = new TaskInboxItem();
+        item.setTaskId("task-1");
+        item.setAssigneeId(2L);
+        item.setDueDate(LocalDateTime.now().minusHours(1));
+        when(taskInboxRepository.findByTaskId("task-1")).thenReturn(Optional.of(item));
+
+        // When
+        boolean first = taskInboxService.markOverdue("task-1");
+        boolean second = taskInboxService.markOverdue("task-1");
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        assertThat(item.getOverdue()).isTrue();
+        verify(taskInboxRepository, times(1)).save(item);
+        verify(approvalStatisticsService, times(1)).adjustOverdue(2L, 1);
+        verify(approvalEventStreamService, times(1))
+                .publishAfterCommit(eq(2L), eq(ApprovalEventStreamService.EVENT_TASK_OVERDUE), any());
+    }
+
+    @Test
+    @DisplayName("查询待办应该把投影行映射为待办DTO")
+    void shouldMapInboxItemsToPendingTasks() {
+        // Given
+        Pageable pageable = PageRequest.of(0, 20);
+        TaskInboxItem item = new TaskInboxItem();
+        item.setTaskId("task-1");
+        item.setProcessInstanceId("process-1");
+        item.setInstanceId(1L);
+        item.setNodeName("财务审批");
+        item.setTitle("费用申请审批 - EXP001");
+        item.setApplicationId("10");
+        item.setBusinessId("EXP001");
+        item.setAmount(new BigDecimal("1500.00"));
+        item.setAssigneeId(1L);
+        item.setAssigneeName("李四");
+        item.setProxyId(2L);
+        item.setTaskCreateTime(LocalDateTime.now());
+        when(taskInboxRepository.findInbox(2L, pageable))
+                .thenReturn(new PageImpl<>(Collections.singletonList(item), pageable, 1));
+
+        // When
+        Page<PendingTaskDTO> result = taskInboxService.getInbox(2L, pageable);
+
+        // Then
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        PendingTaskDTO dto = result.getContent().get(0);
+        assertThat(dto.getFlowableTaskId()).isEqualTo("task-1");
+        assertThat(dto.getTaskId()).isEqualTo("10");
+        assertThat(dto.getBusinessId()).isEqualTo("10");
+        assertThat(dto.getAmount()).isEqualTo(1500.0);
+        assertThat(dto.getAssignee()).isEqualTo("李四");
+        assertThat(dto.getDelegated()).isTrue();
+        assertThat(dto.getStatus()).isEqualTo("pending");
+        assertThat(dto.getDescription()).isEqualTo("费用申请审批 - EXP001");
+    }
+
+    @Test
+    @DisplayName("按业务键查找待办应该只返回当前用户的任务")
+    void shouldFindUserTaskByBusinessKey() {
+        // Given
+        TaskInboxItem item = new TaskInboxItem();
+        item.setTaskId("task-1");
+        item.setInstanceId(1L);
+        item.setApplicationId("10");
+        when(taskInboxRepository.findUserTaskByBusinessKey(2L, "10", PageRequest.of(0, 1)))
+                .thenReturn(Collections.singletonList(item));
+        when(taskInboxRepository.findUserTaskByBusinessKey(3L, "10", PageRequest.of(0, 1)))
+                .thenReturn(Collections.emptyList());
+
+        // When
+        Optional<PendingTaskDTO> own = taskInboxService.findUserTask(2L, "10");
+        Optional<PendingTaskDTO> others = taskInboxService.findUserTask(3L, "10");
+
+        // Then
+        assertThat(own).isPresent();
+        assertThat(own.get().getFlowableTaskId()).isEqualTo("task-1");
+        assertThat(own.get().getInstanceId()).isEqualTo(1L);
+        assertThat(others).isEmpty();
+    }
+
+    @Test
+    @DisplayName("游标分页查询待办应该多取一条判断是否还有下一页")
+    void shouldSeekInboxByCursor() {
+        // Given
+        LocalDateTime base = LocalDateTime.of(2026, 10, 1, 9, 0);
+        List<TaskInboxItem> items = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            TaskInboxItem item = new TaskInboxItem();
+            item.setTaskId("task-" + i);
+            item.setTaskCreateTime(base.minusMinutes(i));
+            items.add(item);
+        }
+        when(taskInboxRepository.findInboxFirst(2L, PageRequest.of(0, 3))).thenReturn(items);
+
+        // When
+        CursorPage<PendingTaskDTO> first = taskInboxService.getInboxByCursor(2L, null, 2);
+
+        // Then
+        assertThat(first.getContent()).extracting(PendingTaskDTO::getFlowableTaskId)
+                .containsExactly("task-1", "task-2");
+        assertThat(first.isHasMore()).isTrue();
+
+        // 使用返回的游标请求下一页
+        when(taskInboxRepository.findInboxAfter(eq(2L), eq(base.minusMinutes(2)), eq("task-2"), any(Pageable.class)))
+                .thenReturn(Collections.singletonList(items.get(2)));
+        CursorPage<PendingTaskDTO> second = taskInboxService.getInboxByCursor(2L, first.getNextCursor(), 2);
+        assertThat(second.getContent()).extracting(PendingTaskDTO::getFlowableTaskId).containsExactly("task-3");
+        assertThat(second.isHasMore()).isFalse();
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    @Test
+    @DisplayName("重建投影应该清空后按批写入全部运行中任务，展示字段取自实例记录而不加载流程变量")
+    @SuppressWarnings("unchecked")
+    void shouldRebuildInboxFromRuntimeTasks() {
+        // Given
+        Task task = createTestTask("task-1", "process-1", "2");
+        TaskQuery taskQuery = mock(TaskQuery.class);
+        when(taskService.createTaskQuery()).thenReturn(taskQuery);
+        when(taskQuery.active()).thenReturn(taskQuery);
+        when(taskQuery.orderByTaskCreateTime()).thenReturn(taskQuery);
+        when(taskQuery.orderByTaskId()).thenReturn(taskQuery);
+        when(taskQuery.asc()).thenReturn(taskQuery);
+        when(taskQuery.listPage(0, 500)).thenReturn(Collections.singletonList(task));
+        WorkflowInstance instance = createTestWorkflowInstance();
+        instance.setApplicationId(10L);
+        instance.setApplicationNumber("EXP001");
+        instance.setDepartment("财务部");
+        instance.setAmount(new BigDecimal("1500.00"));
+        when(workflowInstanceRepository.findByProcessInstanceIdIn(anyCollection()))
+                .thenReturn(Collections.singletonList(instance));
+        when(userService.getUsersByIds(anyCollection()))
+                .thenReturn(Collections.singletonMap(2L, createTestUser(2L, "李四")));
+
+        // When
+        int count = taskInboxService.rebuild();
+
+        // Then
+        assertThat(count).isEqualTo(1);
+        verify(taskInboxRepository).deleteAllInBatch();
+        ArgumentCaptor<List<TaskInboxItem>> captor = ArgumentCaptor.forClass(List.class);
+        verify(taskInboxRepository).saveAll(captor.capture());
+        assertThat(captor.getValue()).extracting(TaskInboxItem::getInstanceId).containsExactly(1L);
+        TaskInboxItem item = captor.getValue().get(0);
+        assertThat(item.getApplicationId()).isEqualTo("10");
+        assertThat(item.getApplicationNumber()).isEqualTo("EXP001");
+        assertThat(item.getDepartment()).isEqualTo("财务部");
+        assertThat(item.getAmount()).isEqualByComparingTo("1500.00");
+        verify(taskQuery, never()).includeProcessVariables();
+    }
+
+    // ==================== 测试数据创建方法 ====================
+
+    private Task createTestTask(String taskId, String processInstanceId, String assignee) {
+        Task task = mock(Task.class);
+        when(task.getId()).thenReturn(taskId);
+        when(task.getProcessInstanceId()).thenReturn(processInstanceId);
+        when(task.getTaskDefinitionKey()).thenReturn("finance");
+        when(task.getName()).thenReturn("财务审批");
+        when(task.getAssignee()).thenReturn(assignee);
+        when(task.getCreateTime()).thenReturn(new Date());
+        return task;
+    }
+
+    private Map<String, Object> createTestVariables() {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("businessType", "EXPENSE");
+        vars.put("businessId", "EXP001");
+        vars.put("applicationId", 10L);
+        vars.put("applicationNumber", "EXP001");
+        vars.put("applicantId", 1L);
+        vars.put("applicantName", "张三");
+        vars.put("department", "财务部");
+        vars.put("amount", new BigDecimal("1500.00"));
+        return vars;
+    }
+
+    private WorkflowInstance createTestWorkflowInstance() {
+        WorkflowInstance instance = new WorkflowInstance();
+        instance.setId(1L);
+        instance.setProcessInstanceId("process-1");
+        instance.setBusinessType("EXPENSE");
+        instance.setBusinessId("EXP001");
+        instance.setTitle("费用申请审批 - EXP001");
+        instance.setApplicantId(1L);
+        instance.setApplicantName("张三");
+        return instance;
+    }
+
+    private UserDTO createTestUser(Long id, String userName) {
+        UserDTO user = new UserDTO();
+        user.setId(id);
+        user.setUserName(userName);
+        return user;
+    }
+}
@@ -6,6 +6,7 @@ import demo.backed.dto.LoginResponse;
 import demo.backed.dto.UserDTO;
 import demo.backed.entity.User;
 import demo.backed.repository.UserRepository;
+import demo.backed.service.ApproverDirectory;
 import demo.backed.service.OrganizationService;
 import demo.backed.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
@@ -41,6 +42,9 @@ class UserServiceTest extends BaseServiceTest {
     @Mock
     private OrganizationService organizationService;
 
+    @Mock
+    private ApproverDirectory approverDirectory;
+
     @InjectMocks
     private UserService userService;
 
@@ -258,6 +262,7 @@ class UserServiceTest extends BaseServiceTest {
         verify(userRepository).findById(userId);
         verify(userRepository).delete(testUser);
         verify(organizationService).clearOrganizationTreeCache();
+        verify(approverDirectory).invalidate();
     }
 
     // ===== 登录相关测试 =====
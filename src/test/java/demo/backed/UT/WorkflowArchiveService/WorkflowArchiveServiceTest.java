@@ -0,0 +1,107 @@
+package demo.backed.UT.WorkflowArchiveService;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.service.WorkflowArchiveService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalMatchers.and;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * WorkflowArchiveService单元测试
+ */
+@DisplayName("工作流归档服务测试")
+class WorkflowArchiveServiceTest extends BaseServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private WorkflowArchiveService workflowArchiveService;
+
+    @Test
+    @DisplayName("归档关闭时不应该访问数据库")
+    void shouldSkipWhenArchiveDisabled() {
+        // Given
+        ReflectionTestUtils.setField(workflowArchiveService, "archiveEnabled", false);
+
+        // When
+        int archived = workflowArchiveService.archiveFinishedProcesses();
+
+        // Then
+        assertThat(archived).isZero();
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    @DisplayName("归档应该复制历史任务、节点和实例到归档表后再从在线表删除")
+    void shouldCopyThenDeleteFinishedProcesses() {
+        // Given
+        when(jdbcTemplate.query(startsWith("SELECT id, process_instance_id"), any(RowMapper.class), any(), any()))
+                .thenReturn(Arrays.asList(new Object[] {1L, "process-1"}, new Object[] {2L, "process-2"}));
+
+        // When
+        int archived = workflowArchiveService.archiveFinishedProcesses();
+
+        // Then
+        assertThat(archived).isEqualTo(2);
+        verify(jdbcTemplate, times(6)).execute(contains("PARTITION OF"));
+        verify(jdbcTemplate).update(startsWith("INSERT INTO t_poc_workflow_task_archive"),
+                any(), eq("process-1"), eq("process-2"));
+        verify(jdbcTemplate).update(and(startsWith("INSERT INTO t_poc_workflow_nodes_archive"),
+                contains("COALESCE(created_time, approved_time, now())")), any(), eq(1L), eq(2L));
+        verify(jdbcTemplate).update(startsWith("DELETE FROM t_poc_workflow_nodes"), eq(1L), eq(2L));
+        verify(jdbcTemplate).update(startsWith("INSERT INTO t_poc_workflow_instances_archive"), any(), eq(1L), eq(2L));
+        verify(jdbcTemplate).update(startsWith("DELETE FROM t_poc_workflow_instances"), eq(1L), eq(2L));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    @DisplayName("没有到期的流程时不应该写归档表")
+    void shouldNotWriteWhenNothingToArchive() {
+        // Given
+        when(jdbcTemplate.query(startsWith("SELECT id, process_instance_id"), any(RowMapper.class), any(), any()))
+                .thenReturn(Collections.emptyList());
+
+        // When
+        int archived = workflowArchiveService.archiveFinishedProcesses();
+
+        // Then
+        assertThat(archived).isZero();
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    @DisplayName("读取归档的已办任务时应该跳过仍在在线历史表中的任务")
+    void shouldSkipArchivedTasksStillInLiveHistory() {
+        // Given
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq("2"))).thenReturn(3L);
+
+        // When
+        long count = workflowArchiveService.countHandledTasks(2L);
+        workflowArchiveService.findHandledTasks(2L, 0, 10);
+
+        // Then
+        assertThat(count).isEqualTo(3L);
+        verify(jdbcTemplate).queryForObject(contains("NOT EXISTS (SELECT 1 FROM ACT_HI_TASKINST"), eq(Long.class), eq("2"));
+        verify(jdbcTemplate).query(contains("NOT EXISTS (SELECT 1 FROM ACT_HI_TASKINST"), any(RowMapper.class),
+                eq("2"), eq(10), eq(0));
+    }
+}
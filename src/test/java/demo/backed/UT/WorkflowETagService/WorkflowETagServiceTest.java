@@ -0,0 +1,80 @@
+package demo.backed.UT.WorkflowETagService;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.repository.WorkflowInstanceRepository;
+import demo.backed.service.WorkflowETagService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * WorkflowETagService单元测试
+ */
+@DisplayName("流程实例ETag测试")
+class WorkflowETagServiceTest extends BaseServiceTest {
+
+    @Mock
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    @InjectMocks
+    private WorkflowETagService workflowETagService;
+
+    @Test
+    @DisplayName("变更标记稳定后应该生成弱ETag，并能被If-None-Match命中")
+    void shouldBuildWeakETagFromChangeMarker() {
+        // Given
+        when(workflowInstanceRepository.findChangeMarker(1L)).thenReturn(Collections.singletonList(
+                createMarker(1L, 3L, 2L, 5L, LocalDateTime.now().minusMinutes(1))));
+
+        // When
+        String eTag = workflowETagService.forInstance(1L);
+
+        // Then
+        assertThat(eTag).isEqualTo("W/\"1-3-2-5\"");
+        assertThat(WorkflowETagService.matches("\"1-3-2-5\"", eTag)).isTrue();
+        assertThat(WorkflowETagService.matches("W/\"0-1-1-1\", W/\"1-3-2-5\"", eTag)).isTrue();
+        assertThat(WorkflowETagService.matches("W/\"1-3-2-4\"", eTag)).isFalse();
+        assertThat(WorkflowETagService.matches(null, eTag)).isFalse();
+    }
+
+    @Test
+    @DisplayName("刚变更过的实例不应该给出ETag，等待异步历史写完")
+    void shouldSkipETagWhileHistoryIsSettling() {
+        // Given
+        when(workflowInstanceRepository.findChangeMarker(1L)).thenReturn(Collections.singletonList(
+                createMarker(1L, 3L, 2L, 5L, LocalDateTime.now())));
+
+        // When & Then
+        assertThat(workflowETagService.forInstance(1L)).isNull();
+        assertThat(WorkflowETagService.matches("*", null)).isFalse();
+    }
+
+    @Test
+    @DisplayName("按业务键应该根据最新的未删除实例给出ETag")
+    void shouldBuildETagFromLatestInstanceOfBusinessKey() {
+        // Given
+        LocalDateTime changed = LocalDateTime.now().minusMinutes(1);
+        when(workflowInstanceRepository.findChangeMarkerByBusinessKey("EXPENSE", "EXP202412001"))
+                .thenReturn(Collections.singletonList(createMarker(2L, 1L, 1L, 1L, changed)));
+        when(workflowInstanceRepository.findChangeMarkerByBusinessKey("EXPENSE", "EXP404"))
+                .thenReturn(Collections.emptyList());
+
+        // When & Then
+        assertThat(workflowETagService.forBusinessKey("EXPENSE", "EXP202412001")).isEqualTo("W/\"2-1-1-1\"");
+        assertThat(workflowETagService.forBusinessKey("EXPENSE", "EXP404")).isNull();
+    }
+
+    private Object[] createMarker(Long id, Long version, Long nodeCount, Long nodeVersionSum, LocalDateTime lastChange) {
+        return new Object[] {BigInteger.valueOf(id), version, BigInteger.valueOf(nodeCount),
+                BigInteger.valueOf(nodeVersionSum), Timestamp.valueOf(lastChange)};
+    }
+}
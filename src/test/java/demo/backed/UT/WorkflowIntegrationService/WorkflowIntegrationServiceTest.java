@@ -3,8 +3,10 @@ package demo.backed.UT.WorkflowIntegrationService;
 import demo.backed.BaseServiceTest;
 import demo.backed.dto.*;
 import demo.backed.entity.ExpenseApplication;
+import demo.backed.service.BatchApprovalService;
 import demo.backed.service.WorkflowIntegrationService;
 import demo.backed.service.WorkflowService;
+import demo.backed.service.WorkflowTrackerService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -34,6 +36,12 @@ class WorkflowIntegrationServiceTest extends BaseServiceTest {
     @Mock
     private WorkflowService workflowService;
 
+    @Mock
+    private BatchApprovalService batchApprovalService;
+
+    @Mock
+    private WorkflowTrackerService workflowTrackerService;
+
     @InjectMocks
     private WorkflowIntegrationService workflowIntegrationService;
 
@@ -334,16 +342,16 @@ class WorkflowIntegrationServiceTest extends BaseServiceTest {
         // Given
         List<ApprovalRequest> requests = createTestApprovalRequests();
         BatchResult expectedResult = createTestBatchResult();
-        when(workflowService.batchApprove(requests)).thenReturn(expectedResult);
+        when(batchApprovalService.execute(requests, 2L)).thenReturn(expectedResult);
 
         // When
-        BatchResult result = workflowIntegrationService.batchApprove(requests);
+        BatchResult result = workflowIntegrationService.batchApprove(requests, 2L);
 
         // Then
         assertThat(result).isNotNull();
         assertThat(result.getSuccessCount()).isEqualTo(expectedResult.getSuccessCount());
         assertThat(result.getFailureCount()).isEqualTo(expectedResult.getFailureCount());
-        verify(workflowService).batchApprove(requests);
+        verify(batchApprovalService).execute(requests, 2L);
     }
 
     @Test
@@ -351,14 +359,14 @@ class WorkflowIntegrationServiceTest extends BaseServiceTest {
     void shouldThrowExceptionWhenBatchApproveFails() {
         // Given
         List<ApprovalRequest> requests = createTestApprovalRequests();
-        when(workflowService.batchApprove(requests)).thenThrow(new RuntimeException("批量操作失败"));
+        when(batchApprovalService.execute(requests, 2L)).thenThrow(new RuntimeException("批量操作失败"));
 
         // When & Then
-        assertThatThrownBy(() -> workflowIntegrationService.batchApprove(requests))
+        assertThatThrownBy(() -> workflowIntegrationService.batchApprove(requests, 2L))
                 .isInstanceOf(RuntimeException.class)
                 .hasMessageContaining("批量审批失败");
         
-        verify(workflowService).batchApprove(requests);
+        verify(batchApprovalService).execute(requests, 2L);
     }
 
     // ==================== 获取可打回节点测试 ====================
@@ -400,46 +408,50 @@ class WorkflowIntegrationServiceTest extends BaseServiceTest {
     // ==================== 获取工作流详情测试 ====================
 
     @Test
-    @DisplayName("应该成功获取工作流实例详情")
+    @DisplayName("获取工作流实例详情应该委托给流程追踪服务")
     void shouldGetWorkflowInstanceDetailSuccessfully() {
         // Given
         String businessType = "EXPENSE";
         String businessId = "EXP202412001";
+        WorkflowInstanceDetailDTO detail = new WorkflowInstanceDetailDTO();
+        detail.setInstanceId(1L);
+        when(workflowTrackerService.getTracker(businessType, businessId)).thenReturn(detail);
 
         // When
         WorkflowInstanceDetailDTO result = workflowIntegrationService.getWorkflowInstanceDetail(businessType, businessId);
 
         // Then
-        assertThat(result).isNotNull();
-        assertThat(result.getInstanceId()).isEqualTo(1L);
-        assertThat(result.getTitle()).contains(businessId);
-        assertThat(result.getStatus()).isEqualTo("RUNNING");
-        assertThat(result.getSteps()).hasSize(3);
-        assertThat(result.getProgress()).isGreaterThan(0);
-        
-        // 验证步骤详情
-        assertThat(result.getSteps().get(0).getStatus()).isEqualTo("completed");
-        assertThat(result.getSteps().get(1).getStatus()).isEqualTo("active");
-        assertThat(result.getSteps().get(2).getStatus()).isEqualTo("pending");
+        assertThat(result).isSameAs(detail);
+    }
+
+    @Test
+    @DisplayName("找不到工作流实例时获取详情应该抛出异常")
+    void shouldThrowExceptionWhenWorkflowInstanceDetailNotFound() {
+        // Given
+        when(workflowTrackerService.getTracker("EXPENSE", "EXP404"))
+                .thenThrow(new RuntimeException("未找到对应的工作流实例"));
+
+        // When & Then
+        assertThatThrownBy(() -> workflowIntegrationService.getWorkflowInstanceDetail("EXPENSE", "EXP404"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("获取工作流实例详情失败");
     }
 
     @Test
-    @DisplayName("应该成功获取工作流历史记录")
+    @DisplayName("获取工作流历史记录应该委托给流程追踪服务")
     void shouldGetWorkflowHistorySuccessfully() {
         // Given
         String businessType = "EXPENSE";
         String businessId = "EXP202412001";
+        WorkflowHistoryDTO item = new WorkflowHistoryDTO();
+        item.setTaskName("直属主管审批");
+        when(workflowTrackerService.getHistory(businessType, businessId)).thenReturn(Collections.singletonList(item));
 
         // When
         List<WorkflowHistoryDTO> result = workflowIntegrationService.getWorkflowHistory(businessType, businessId);
 
         // Then
-        assertThat(result).isNotNull();
-        assertThat(result).hasSize(1);
-        assertThat(result.get(0).getTaskName()).isEqualTo("直属主管审批");
-        assertThat(result.get(0).getOperationType()).isEqualTo("COMPLETE");
-        assertThat(result.get(0).getOperatorName()).isEqualTo("张三");
-        assertThat(result.get(0).getComment()).isEqualTo("同意申请");
+        assertThat(result).containsExactly(item);
     }
 
     // ==================== 测试数据创建方法 ====================
@@ -0,0 +1,143 @@
+package demo.backed.UT.WorkflowProjectionService;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.dto.UserDTO;
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.entity.WorkflowNode;
+import demo.backed.repository.WorkflowInstanceRepository;
+import demo.backed.repository.WorkflowNodeRepository;
+import demo.backed.service.ApproverDirectory;
+import demo.backed.service.OverdueTaskMonitor;
+import demo.backed.service.WorkflowProjectionService;
+import demo.backed.service.WorkflowTemplateService;
+import org.flowable.task.api.Task;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * WorkflowProjectionService单元测试
+ */
+@DisplayName("流程实例与节点记录维护服务测试")
+class WorkflowProjectionServiceTest extends BaseServiceTest {
+
+    @Mock
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    @Mock
+    private WorkflowNodeRepository workflowNodeRepository;
+
+    @Mock
+    private ApproverDirectory approverDirectory;
+
+    @Mock
+    private WorkflowTemplateService workflowTemplateService;
+
+    @Mock
+    private OverdueTaskMonitor overdueTaskMonitor;
+
+    @InjectMocks
+    private WorkflowProjectionService workflowProjectionService;
+
+    @Test
+    @DisplayName("任务创建时应该按业务键找到实例，写入节点记录并更新当前节点")
+    void shouldCreateNodeAndUpdateCurrentNodeOnTaskCreated() {
+        // Given
+        WorkflowInstance instance = createInstance();
+        when(workflowInstanceRepository.findActiveByBusinessKey("EXPENSE", "EXP202412001"))
+                .thenReturn(Optional.of(instance));
+        UserDTO manager = new UserDTO();
+        manager.setUserName("李四");
+        when(approverDirectory.findUser(2L)).thenReturn(Optional.of(manager));
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("businessType", "EXPENSE");
+        variables.put("businessId", "EXP202412001");
+        Task task = createTask("task-1", "2");
+        LocalDateTime createTime = LocalDateTime.of(2026, 10, 16, 9, 0);
+        when(task.getCreateTime()).thenReturn(Date.from(createTime.atZone(ZoneId.systemDefault()).toInstant()));
+        when(task.getProcessDefinitionId()).thenReturn("expenseApproval:3:def-1");
+        when(workflowTemplateService.resolveSlaHours("expenseApproval", "financeApproval")).thenReturn(24);
+
+        // When
+        WorkflowInstance result = workflowProjectionService.onTaskCreated(task, variables);
+
+        // Then
+        assertThat(result).isSameAs(instance);
+        ArgumentCaptor<WorkflowNode> captor = ArgumentCaptor.forClass(WorkflowNode.class);
+        verify(workflowNodeRepository).save(captor.capture());
+        WorkflowNode node = captor.getValue();
+        assertThat(node.getInstanceId()).isEqualTo(10L);
+        assertThat(node.getTaskId()).isEqualTo("task-1");
+        assertThat(node.getNodeKey()).isEqualTo("financeApproval");
+        assertThat(node.getStatus()).isEqualTo("PENDING");
+        assertThat(node.getAssigneeId()).isEqualTo(2L);
+        assertThat(node.getAssigneeName()).isEqualTo("李四");
+        assertThat(instance.getCurrentNodeName()).isEqualTo("财务审批");
+        assertThat(instance.getCurrentAssignee()).isEqualTo("2");
+        assertThat(node.getDueDate()).isEqualTo(createTime.plusHours(24));
+        verify(task).setDueDate(Date.from(createTime.plusHours(24).atZone(ZoneId.systemDefault()).toInstant()));
+        verify(overdueTaskMonitor).schedule("task-1", createTime.plusHours(24));
+        verify(workflowInstanceRepository, never()).findByProcessInstanceId(anyString());
+    }
+
+    @Test
+    @DisplayName("缺少业务键时应该按流程实例ID查找，找不到实例时不写节点记录")
+    void shouldFallBackToProcessInstanceIdAndSkipUnknownInstance() {
+        // Given
+        when(workflowInstanceRepository.findByProcessInstanceId("process-1")).thenReturn(Optional.empty());
+
+        // When
+        WorkflowInstance result = workflowProjectionService.onTaskCreated(createTask("task-1", null), Collections.emptyMap());
+
+        // Then
+        assertThat(result).isNull();
+        verifyNoInteractions(workflowNodeRepository, approverDirectory);
+    }
+
+    @Test
+    @DisplayName("流程完成时应该将实例标记为已完成")
+    void shouldMarkInstanceCompletedOnProcessCompleted() {
+        // Given
+        WorkflowInstance instance = createInstance();
+        when(workflowInstanceRepository.findByProcessInstanceId("process-1")).thenReturn(Optional.of(instance));
+
+        // When
+        workflowProjectionService.onProcessCompleted("process-1");
+
+        // Then
+        assertThat(instance.getStatus()).isEqualTo("COMPLETED");
+        assertThat(instance.getEndTime()).isNotNull();
+        verify(workflowInstanceRepository).save(instance);
+    }
+
+    private WorkflowInstance createInstance() {
+        WorkflowInstance instance = new WorkflowInstance();
+        instance.setId(10L);
+        instance.setBusinessType("EXPENSE");
+        instance.setBusinessId("EXP202412001");
+        instance.setProcessInstanceId("process-1");
+        instance.setStatus("RUNNING");
+        return instance;
+    }
+
+    private Task createTask(String taskId, String assignee) {
+        Task task = mock(Task.class);
+        when(task.getId()).thenReturn(taskId);
+        when(task.getProcessInstanceId()).thenReturn("process-1");
+        lenient().when(task.getTaskDefinitionKey()).thenReturn("financeApproval");
+        lenient().when(task.getName()).thenReturn("财务审批");
+        lenient().when(task.getExecutionId()).thenReturn("execution-1");
+        lenient().when(task.getAssignee()).thenReturn(assignee);
+        return task;
+    }
+}
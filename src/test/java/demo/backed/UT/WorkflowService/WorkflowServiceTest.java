@@ -6,23 +6,43 @@ import demo.backed.entity.WorkflowInstance;
 import demo.backed.entity.WorkflowNode;
 import demo.backed.repository.WorkflowInstanceRepository;
 import demo.backed.repository.WorkflowNodeRepository;
+import demo.backed.service.ApproverDirectory;
+import demo.backed.service.ProcessGraphService;
+import demo.backed.service.TaskInboxService;
 import demo.backed.service.UserService;
+import demo.backed.service.WorkflowArchiveService;
 import demo.backed.service.WorkflowService;
 import demo.backed.service.WorkflowTemplateService;
+import demo.backed.util.TaskCursor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.flowable.engine.HistoryService;
 import org.flowable.engine.RepositoryService;
 import org.flowable.engine.RuntimeService;
 import org.flowable.engine.TaskService;
+import org.flowable.engine.history.HistoricActivityInstance;
+import org.flowable.engine.history.HistoricActivityInstanceQuery;
+import org.flowable.engine.history.HistoricProcessInstance;
+import org.flowable.engine.history.HistoricProcessInstanceQuery;
+import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.task.api.Task;
 import org.flowable.task.api.TaskQuery;
+import org.flowable.engine.task.Comment;
+import org.flowable.task.api.history.HistoricTaskInstance;
+import org.flowable.task.api.history.HistoricTaskInstanceQuery;
+import org.flowable.task.service.history.NativeHistoricTaskInstanceQuery;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -66,6 +86,18 @@ class WorkflowServiceTest extends BaseServiceTest {
     @Mock
     private RepositoryService repositoryService;
 
+    @Mock
+    private TaskInboxService taskInboxService;
+
+    @Mock
+    private WorkflowArchiveService workflowArchiveService;
+
+    @Mock
+    private ProcessGraphService processGraphService;
+
+    @Mock
+    private ApproverDirectory approverDirectory;
+
     @InjectMocks
     private WorkflowService workflowService;
 
@@ -87,7 +119,6 @@ class WorkflowServiceTest extends BaseServiceTest {
     @DisplayName("启动工作流时申请人不存在应该抛出异常")
     void shouldThrowExceptionWhenApplicantNotExists() {
         // Given
-        when(workflowInstanceRepository.save(any(WorkflowInstance.class))).thenReturn(testInstance);
         when(userService.getUserById(testStartRequest.getApplicantId())).thenReturn(Optional.empty());
 
         // When & Then
@@ -95,22 +126,247 @@ class WorkflowServiceTest extends BaseServiceTest {
                 .isInstanceOf(RuntimeException.class)
                 .hasMessageContaining("申请人不存在");
         
-        verify(workflowInstanceRepository).delete(any(WorkflowInstance.class));
+        verifyNoInteractions(workflowInstanceRepository, runtimeService);
     }
 
     @Test
     @DisplayName("启动工作流时没有可用模板应该抛出异常")
     void shouldThrowExceptionWhenNoTemplateAvailable() {
         // Given
-        when(workflowInstanceRepository.save(any(WorkflowInstance.class))).thenReturn(testInstance);
         when(userService.getUserById(testStartRequest.getApplicantId())).thenReturn(Optional.of(testUser));
+        when(workflowTemplateService.resolveProcessKey(testStartRequest.getBusinessType()))
+                .thenThrow(new RuntimeException("没有可用的工作流模板。请先在系统配置页面创建并部署工作流模板，然后重试。"));
 
         // When & Then
         assertThatThrownBy(() -> workflowService.startWorkflow(testStartRequest))
                 .isInstanceOf(RuntimeException.class)
-                .hasMessageContaining("无法找到合适的审批人");
-        
-        verify(workflowInstanceRepository).delete(any(WorkflowInstance.class));
+                .hasMessageContaining("没有可用的工作流模板");
+        verify(runtimeService, never()).startProcessInstanceByKey(anyString(), anyString(), anyMap());
+        verifyNoInteractions(workflowInstanceRepository);
+    }
+
+    @Test
+    @DisplayName("启动工作流应该写入实例记录并启动流程，短时间内的重复请求直接返回首个结果")
+    @SuppressWarnings("unchecked")
+    void shouldStartWorkflowOnceForRepeatedRequests() throws Exception {
+        // Given
+        WorkflowInstance created = createTestWorkflowInstance();
+        created.setProcessInstanceId(null);
+        created.setStatus("CREATED");
+        when(userService.getUserById(testStartRequest.getApplicantId())).thenReturn(Optional.of(testUser));
+        when(workflowTemplateService.resolveProcessKey("EXPENSE")).thenReturn("expense-approval");
+        when(workflowInstanceRepository.insertIfAbsent(eq("EXPENSE"), eq("EXP202412001"), anyString(),
+                eq(1L), eq("张三"), isNull(), any(LocalDateTime.class))).thenReturn(1L);
+        when(workflowInstanceRepository.findById(1L)).thenReturn(Optional.of(created));
+        ProcessInstance processInstance = mock(ProcessInstance.class);
+        when(processInstance.getId()).thenReturn("process-123");
+        when(runtimeService.startProcessInstanceByKey(eq("expense-approval"), eq("EXP202412001"), anyMap()))
+                .thenReturn(processInstance);
+        when(objectMapper.writeValueAsString(anyMap())).thenReturn("{}");
+        when(workflowInstanceRepository.save(created)).thenReturn(created);
+
+        // When
+        WorkflowInstanceDTO first = workflowService.startWorkflow(testStartRequest);
+        WorkflowInstanceDTO second = workflowService.startWorkflow(createTestStartProcessRequest());
+
+        // Then
+        assertThat(first.getProcessInstanceId()).isEqualTo("process-123");
+        assertThat(first.getStatus()).isEqualTo("RUNNING");
+        assertThat(first.getAmount()).isEqualByComparingTo("1500.00");
+        assertThat(created.getAmount()).isEqualByComparingTo("1500.00");
+        assertThat(second).isSameAs(first);
+        ArgumentCaptor<Map<String, Object>> variables = ArgumentCaptor.forClass(Map.class);
+        verify(runtimeService, times(1)).startProcessInstanceByKey(anyString(), anyString(), variables.capture());
+        // 精简模式下Flowable只保存路由变量，展示字段只写入实例记录
+        assertThat(variables.getValue()).containsOnlyKeys("applicantId", "amount", "businessType", "businessId");
+        verify(objectMapper).writeValueAsString(argThat(map -> ((Map<?, ?>) map).containsKey("description")));
+        verify(workflowInstanceRepository, times(1)).insertIfAbsent(anyString(), anyString(), anyString(),
+                anyLong(), anyString(), any(), any(LocalDateTime.class));
+    }
+
+    @Test
+    @DisplayName("首个任务的创建事件在启动调用内读取实例记录时业务字段应该已经写入")
+    void shouldWriteBusinessColumnsBeforeStartingProcess() throws Exception {
+        // Given
+        testStartRequest.getVariables().put("applicationId", 10L);
+        testStartRequest.getVariables().put("applicationNumber", "EXP-2025-000010");
+        WorkflowInstance created = createTestWorkflowInstance();
+        created.setProcessInstanceId(null);
+        created.setStatus("CREATED");
+        when(userService.getUserById(testStartRequest.getApplicantId())).thenReturn(Optional.of(testUser));
+        when(workflowTemplateService.resolveProcessKey("EXPENSE")).thenReturn("expense-approval");
+        when(workflowInstanceRepository.insertIfAbsent(anyString(), anyString(), anyString(),
+                anyLong(), anyString(), isNull(), any(LocalDateTime.class))).thenReturn(1L);
+        when(workflowInstanceRepository.findById(1L)).thenReturn(Optional.of(created));
+        when(objectMapper.writeValueAsString(anyMap())).thenReturn("{}");
+        when(workflowInstanceRepository.save(created)).thenReturn(created);
+        List<WorkflowInstance> seenDuringStart = new ArrayList<>();
+        ProcessInstance processInstance = mock(ProcessInstance.class);
+        when(processInstance.getId()).thenReturn("process-123");
+        when(runtimeService.startProcessInstanceByKey(eq("expense-approval"), eq("EXP202412001"), anyMap()))
+                .thenAnswer(invocation -> {
+                    // 模拟任务创建监听器在启动调用内查询实例记录
+                    WorkflowInstance row = workflowInstanceRepository.findById(1L).get();
+                    WorkflowInstance snapshot = new WorkflowInstance();
+                    snapshot.setApplicationId(row.getApplicationId());
+                    snapshot.setApplicationNumber(row.getApplicationNumber());
+                    snapshot.setDepartment(row.getDepartment());
+                    snapshot.setAmount(row.getAmount());
+                    seenDuringStart.add(snapshot);
+                    return processInstance;
+                });
+
+        // When
+        workflowService.startWorkflow(testStartRequest);
+
+        // Then
+        WorkflowInstance seen = seenDuringStart.get(0);
+        assertThat(seen.getApplicationId()).isEqualTo(10L);
+        assertThat(seen.getApplicationNumber()).isEqualTo("EXP-2025-000010");
+        assertThat(seen.getDepartment()).isEqualTo(testUser.getDepartment());
+        assertThat(seen.getAmount()).isEqualByComparingTo("1500.00");
+        InOrder inOrder = inOrder(workflowInstanceRepository, runtimeService);
+        inOrder.verify(workflowInstanceRepository).save(created);
+        inOrder.verify(runtimeService).startProcessInstanceByKey(anyString(), anyString(), anyMap());
+    }
+
+    @Test
+    @DisplayName("流程变量中的金额和申请单ID格式不正确时应该照常启动并把对应列留空")
+    void shouldLeaveBusinessColumnsNullWhenVariablesMalformed() throws Exception {
+        // Given
+        testStartRequest.getVariables().put("amount", "1,500元");
+        testStartRequest.getVariables().put("applicationId", "EXP-10");
+        WorkflowInstance created = createTestWorkflowInstance();
+        created.setProcessInstanceId(null);
+        created.setStatus("CREATED");
+        created.setAmount(null);
+        when(userService.getUserById(testStartRequest.getApplicantId())).thenReturn(Optional.of(testUser));
+        when(workflowTemplateService.resolveProcessKey("EXPENSE")).thenReturn("expense-approval");
+        when(workflowInstanceRepository.insertIfAbsent(anyString(), anyString(), anyString(),
+                anyLong(), anyString(), isNull(), any(LocalDateTime.class))).thenReturn(1L);
+        when(workflowInstanceRepository.findById(1L)).thenReturn(Optional.of(created));
+        when(objectMapper.writeValueAsString(anyMap())).thenReturn("{}");
+        when(workflowInstanceRepository.save(created)).thenReturn(created);
+        ProcessInstance processInstance = mock(ProcessInstance.class);
+        when(processInstance.getId()).thenReturn("process-123");
+        when(runtimeService.startProcessInstanceByKey(eq("expense-approval"), eq("EXP202412001"), anyMap()))
+                .thenReturn(processInstance);
+
+        // When
+        workflowService.startWorkflow(testStartRequest);
+
+        // Then
+        assertThat(created.getAmount()).isNull();
+        assertThat(created.getApplicationId()).isNull();
+        assertThat(created.getProcessInstanceId()).isEqualTo("process-123");
+    }
+
+    @Test
+    @DisplayName("已有进行中的同业务实例时应该返回已存在的实例而不启动流程")
+    void shouldReturnExistingInstanceWhenStartConflicts() {
+        // Given
+        testStartRequest.setIdempotencyKey("client-key-1");
+        when(userService.getUserById(testStartRequest.getApplicantId())).thenReturn(Optional.of(testUser));
+        when(workflowTemplateService.resolveProcessKey("EXPENSE")).thenReturn("expense-approval");
+        when(workflowInstanceRepository.insertIfAbsent(anyString(), anyString(), anyString(),
+                anyLong(), anyString(), eq("client-key-1"), any(LocalDateTime.class))).thenReturn(null);
+        when(workflowInstanceRepository.findByIdempotencyKey("client-key-1")).thenReturn(Optional.empty());
+        when(workflowInstanceRepository.findActiveByBusinessKey("EXPENSE", "EXP202412001"))
+                .thenReturn(Optional.of(testInstance));
+
+        // When
+        WorkflowInstanceDTO result = workflowService.startWorkflow(testStartRequest);
+
+        // Then
+        assertThat(result.getId()).isEqualTo(testInstance.getId());
+        assertThat(result.getProcessInstanceId()).isEqualTo(testInstance.getProcessInstanceId());
+        verifyNoInteractions(runtimeService);
+        verify(workflowInstanceRepository, never()).save(any(WorkflowInstance.class));
+    }
+
+    @Test
+    @DisplayName("批量启动工作流应该共享申请人和流程Key查询，并逐项经冲突插入写入实例记录")
+    void shouldStartWorkflowsInBulkWithSharedLookups() throws Exception {
+        // Given
+        StartProcessRequest second = createTestStartProcessRequest();
+        second.setBusinessId("EXP202412002");
+        when(userService.getUsersByIds(anyCollection())).thenReturn(Collections.singletonMap(1L, testUser));
+        when(workflowTemplateService.resolveProcessKey("EXPENSE")).thenReturn("expenseApproval");
+        stubBulkInsert("EXP202412001", 1L);
+        stubBulkInsert("EXP202412002", 2L);
+        ProcessInstance first = mock(ProcessInstance.class);
+        when(first.getId()).thenReturn("process-1");
+        ProcessInstance next = mock(ProcessInstance.class);
+        when(next.getId()).thenReturn("process-2");
+        when(runtimeService.startProcessInstanceByKey(eq("expenseApproval"), anyString(), anyMap()))
+                .thenReturn(first, next);
+        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+        when(workflowInstanceRepository.save(any(WorkflowInstance.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(workflowInstanceRepository.saveAll(anyCollection())).thenAnswer(invocation -> new ArrayList<>(invocation.getArgument(0)));
+
+        // When
+        List<WorkflowInstanceDTO> result = workflowService.startWorkflows(Arrays.asList(testStartRequest, second));
+
+        // Then
+        assertThat(result).extracting(WorkflowInstanceDTO::getProcessInstanceId)
+                .containsExactly("process-1", "process-2");
+        assertThat(result).extracting(WorkflowInstanceDTO::getStatus).containsOnly("RUNNING");
+        verify(workflowTemplateService, times(1)).resolveProcessKey("EXPENSE");
+        verify(userService, never()).getUserById(anyLong());
+        verify(workflowInstanceRepository, never()).flush();
+        verify(workflowInstanceRepository, times(2)).insertIfAbsent(anyString(), anyString(), anyString(),
+                anyLong(), anyString(), any(), any(LocalDateTime.class));
+        verifyNoInteractions(taskService, workflowNodeRepository);
+    }
+
+    @Test
+    @DisplayName("批量启动中已存在的业务应该返回已存在的实例，批次内重复项共用一个结果")
+    void shouldReturnExistingInstancesForConflictingBulkItems() throws Exception {
+        // Given
+        StartProcessRequest conflicting = createTestStartProcessRequest();
+        conflicting.setBusinessId("EXP202412002");
+        StartProcessRequest duplicate = createTestStartProcessRequest();
+        when(userService.getUsersByIds(anyCollection())).thenReturn(Collections.singletonMap(1L, testUser));
+        when(workflowTemplateService.resolveProcessKey("EXPENSE")).thenReturn("expenseApproval");
+        stubBulkInsert("EXP202412001", 1L);
+        when(workflowInstanceRepository.insertIfAbsent(anyString(), eq("EXP202412002"), anyString(),
+                anyLong(), anyString(), isNull(), any(LocalDateTime.class))).thenReturn(null);
+        WorkflowInstance existing = createTestWorkflowInstance();
+        existing.setId(7L);
+        existing.setBusinessId("EXP202412002");
+        existing.setProcessInstanceId("process-existing");
+        when(workflowInstanceRepository.findActiveByBusinessKey("EXPENSE", "EXP202412002"))
+                .thenReturn(Optional.of(existing));
+        ProcessInstance started = mock(ProcessInstance.class);
+        when(started.getId()).thenReturn("process-1");
+        when(runtimeService.startProcessInstanceByKey(eq("expenseApproval"), eq("EXP202412001"), anyMap()))
+                .thenReturn(started);
+        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+        when(workflowInstanceRepository.save(any(WorkflowInstance.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(workflowInstanceRepository.saveAll(anyCollection())).thenAnswer(invocation -> new ArrayList<>(invocation.getArgument(0)));
+
+        // When
+        List<WorkflowInstanceDTO> result = workflowService.startWorkflows(
+                Arrays.asList(testStartRequest, conflicting, duplicate));
+
+        // Then
+        assertThat(result).extracting(WorkflowInstanceDTO::getProcessInstanceId)
+                .containsExactly("process-1", "process-existing", "process-1");
+        assertThat(result.get(2)).isSameAs(result.get(0));
+        verify(runtimeService, times(1)).startProcessInstanceByKey(anyString(), anyString(), anyMap());
+        verify(workflowInstanceRepository, times(2)).insertIfAbsent(anyString(), anyString(), anyString(),
+                anyLong(), anyString(), any(), any(LocalDateTime.class));
+    }
+
+    private void stubBulkInsert(String businessId, Long instanceId) {
+        WorkflowInstance created = createTestWorkflowInstance();
+        created.setId(instanceId);
+        created.setBusinessId(businessId);
+        created.setProcessInstanceId(null);
+        created.setStatus("CREATED");
+        when(workflowInstanceRepository.insertIfAbsent(anyString(), eq(businessId), anyString(),
+                anyLong(), anyString(), isNull(), any(LocalDateTime.class))).thenReturn(instanceId);
+        when(workflowInstanceRepository.findById(instanceId)).thenReturn(Optional.of(created));
     }
 
     // ==================== 获取待办任务测试 ====================
@@ -147,8 +403,308 @@ class WorkflowServiceTest extends BaseServiceTest {
         assertThat(result.getTotalElements()).isEqualTo(0);
     }
 
+    @Test
+    @DisplayName("获取待办任务应批量装配DTO，查询次数与分页大小无关")
+    void shouldAssemblePendingTasksWithConstantQueryCount() {
+        // Given
+        Long userId = 2L;
+        Pageable pageable = PageRequest.of(0, 20);
+        List<Task> tasks = new ArrayList<>();
+        List<WorkflowInstance> instances = new ArrayList<>();
+        List<WorkflowNode> nodes = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Task task = mock(Task.class);
+            when(task.getId()).thenReturn("task-" + i);
+            when(task.getProcessInstanceId()).thenReturn("process-" + i);
+            when(task.getName()).thenReturn("财务审批");
+            when(task.getCreateTime()).thenReturn(new Date());
+            tasks.add(task);
+
+            WorkflowInstance instance = createTestWorkflowInstance();
+            instance.setId((long) i);
+            instance.setProcessInstanceId("process-" + i);
+            instance.setApplicationId((long) i);
+            instance.setAmount(new BigDecimal("100.00"));
+            instances.add(instance);
+
+            WorkflowNode node = createTestWorkflowNode();
+            node.setId((long) i);
+            node.setTaskId("task-" + i);
+            nodes.add(node);
+        }
+
+        TaskQuery taskQuery = mock(TaskQuery.class);
+        when(taskService.createTaskQuery()).thenReturn(taskQuery);
+        when(taskQuery.taskCandidateOrAssigned("2")).thenReturn(taskQuery);
+        when(taskQuery.orderByTaskCreateTime()).thenReturn(taskQuery);
+        when(taskQuery.desc()).thenReturn(taskQuery);
+        when(taskQuery.listPage(0, 20)).thenReturn(tasks);
+        when(taskQuery.count()).thenReturn(3L);
+        when(workflowInstanceRepository.findByProcessInstanceIdIn(anyCollection())).thenReturn(instances);
+        when(workflowNodeRepository.findByTaskIdIn(anyCollection())).thenReturn(nodes);
+        UserDTO assignee = createTestUser();
+        assignee.setId(2L);
+        assignee.setUserName("李四");
+        Map<Long, UserDTO> users = new HashMap<>();
+        users.put(1L, testUser);
+        users.put(2L, assignee);
+        when(userService.getUsersByIds(anyCollection())).thenReturn(users);
+
+        // When
+        Page<PendingTaskDTO> result = workflowService.getPendingTasks(userId, pageable);
+
+        // Then
+        assertThat(result.getContent()).hasSize(3);
+        assertThat(result.getTotalElements()).isEqualTo(3);
+        PendingTaskDTO first = result.getContent().get(0);
+        assertThat(first.getTaskId()).isEqualTo("1");
+        assertThat(first.getInstanceId()).isEqualTo(1L);
+        assertThat(first.getDepartment()).isEqualTo(testUser.getDepartment());
+        assertThat(first.getAssignee()).isEqualTo("李四");
+        assertThat(first.getAmount()).isEqualTo(100.0);
+
+        // 每页固定一次批量查询，不再逐条查询
+        verify(workflowInstanceRepository, times(1)).findByProcessInstanceIdIn(anyCollection());
+        verify(workflowNodeRepository, times(1)).findByTaskIdIn(anyCollection());
+        verify(userService, times(1)).getUsersByIds(anyCollection());
+        verify(runtimeService, never()).getVariables(anyString());
+        verify(taskQuery, never()).includeProcessVariables();
+        verify(workflowInstanceRepository, never()).findByProcessInstanceId(anyString());
+        verify(workflowNodeRepository, never()).findByTaskId(anyString());
+        verify(userService, never()).getUserById(anyLong());
+    }
+
+    @Test
+    @DisplayName("开启收件箱投影时待办列表应该直接读取投影表")
+    void shouldServePendingTasksFromInboxProjectionWhenEnabled() {
+        // Given
+        ReflectionTestUtils.setField(workflowService, "inboxProjectionEnabled", true);
+        Long userId = 2L;
+        Pageable pageable = PageRequest.of(1, 10);
+        PendingTaskDTO dto = new PendingTaskDTO();
+        dto.setFlowableTaskId("task-1");
+        when(taskInboxService.getInbox(userId, PageRequest.of(1, 10)))
+                .thenReturn(new PageImpl<>(Collections.singletonList(dto), pageable, 11));
+
+        // When
+        Page<PendingTaskDTO> result = workflowService.getPendingTasks(userId, pageable);
+
+        // Then
+        assertThat(result.getContent()).extracting(PendingTaskDTO::getFlowableTaskId).containsExactly("task-1");
+        assertThat(result.getTotalElements()).isEqualTo(11);
+        verify(taskService, never()).createTaskQuery();
+    }
+
+    @Test
+    @DisplayName("按费用申请ID查找待办应该让引擎过滤当前用户的任务而不是加载整个收件箱")
+    void shouldFindPendingTaskByBusinessKeyWithoutLoadingInbox() {
+        // Given
+        Task task = mock(Task.class);
+        when(task.getId()).thenReturn("task-1");
+        when(task.getProcessInstanceId()).thenReturn("process-1");
+        when(task.getName()).thenReturn("财务审批");
+        when(task.getCreateTime()).thenReturn(new Date());
+        testInstance.setProcessInstanceId("process-1");
+        testInstance.setApplicationId(10L);
+        when(workflowInstanceRepository.findByApplicationIdAndStatus(10L, "RUNNING"))
+                .thenReturn(Collections.singletonList(testInstance));
+
+        TaskQuery taskQuery = mock(TaskQuery.class);
+        when(taskService.createTaskQuery()).thenReturn(taskQuery);
+        when(taskQuery.taskCandidateOrAssigned("2")).thenReturn(taskQuery);
+        when(taskQuery.or()).thenReturn(taskQuery);
+        when(taskQuery.processInstanceBusinessKey("10")).thenReturn(taskQuery);
+        when(taskQuery.processInstanceIdIn(Collections.singletonList("process-1"))).thenReturn(taskQuery);
+        when(taskQuery.endOr()).thenReturn(taskQuery);
+        when(taskQuery.orderByTaskCreateTime()).thenReturn(taskQuery);
+        when(taskQuery.desc()).thenReturn(taskQuery);
+        when(taskQuery.listPage(0, 1)).thenReturn(Collections.singletonList(task));
+        when(workflowInstanceRepository.findByProcessInstanceIdIn(anyCollection()))
+                .thenReturn(Collections.singletonList(testInstance));
+        when(workflowNodeRepository.findByTaskIdIn(anyCollection())).thenReturn(new ArrayList<>());
+        when(userService.getUsersByIds(anyCollection())).thenReturn(new HashMap<>());
+
+        // When
+        PendingTaskDTO result = workflowService.findPendingTask(2L, "10");
+
+        // Then
+        assertThat(result).isNotNull();
+        assertThat(result.getFlowableTaskId()).isEqualTo("task-1");
+        assertThat(result.getInstanceId()).isEqualTo(testInstance.getId());
+        assertThat(result.getTaskId()).isEqualTo("10");
+        verify(taskQuery, never()).count();
+        verify(taskQuery, never()).processVariableValueEquals(anyString(), any());
+    }
+
     // ==================== 获取已办任务测试 ====================
 
+    @Test
+    @DisplayName("游标分页获取已办任务应该按游标定位并返回下一页游标")
+    void shouldSeekHandledTasksByCursor() {
+        // Given
+        Date cursorTime = new Date(1_700_000_000_000L);
+        String cursor = TaskCursor.encode(cursorTime, "task-9");
+        List<HistoricTaskInstance> historicTasks = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            HistoricTaskInstance task = mock(HistoricTaskInstance.class);
+            lenient().when(task.getId()).thenReturn("task-" + i);
+            lenient().when(task.getProcessInstanceId()).thenReturn("process-1");
+            lenient().when(task.getEndTime()).thenReturn(new Date(cursorTime.getTime() - i * 1000L));
+            historicTasks.add(task);
+        }
+        NativeHistoricTaskInstanceQuery query = mock(NativeHistoricTaskInstanceQuery.class);
+        when(historyService.createNativeHistoricTaskInstanceQuery()).thenReturn(query);
+        when(query.sql(contains("RES.END_TIME_ < #{cursorTime}"))).thenReturn(query);
+        when(query.parameter(anyString(), any())).thenReturn(query);
+        when(query.listPage(0, 3)).thenReturn(historicTasks);
+        when(workflowInstanceRepository.findByProcessInstanceIdIn(anyCollection()))
+                .thenReturn(Collections.singletonList(testInstance));
+        when(workflowNodeRepository.findByTaskIdIn(anyCollection())).thenReturn(new ArrayList<>());
+        when(workflowArchiveService.archiveCutoff()).thenReturn(LocalDateTime.of(2023, 1, 1, 0, 0));
+
+        // When
+        CursorPage<PendingTaskDTO> result = workflowService.getHandledTasksByCursor(2L, cursor, 2);
+
+        // Then
+        assertThat(result.getContent()).extracting(PendingTaskDTO::getFlowableTaskId)
+                .containsExactly("task-1", "task-2");
+        assertThat(result.isHasMore()).isTrue();
+        TaskCursor next = TaskCursor.decode(result.getNextCursor());
+        assertThat(next.getTaskId()).isEqualTo("task-2");
+        assertThat(next.getTime()).isEqualTo(new Date(cursorTime.getTime() - 2000L));
+        verify(query).parameter("cursorTime", cursorTime);
+        verify(query).parameter("cursorId", "task-9");
+        verify(workflowInstanceRepository, never()).findByProcessInstanceId(anyString());
+        verify(workflowArchiveService, never()).findHandledTasksBefore(anyLong(), any(), any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("在线已办任务不足一页时应该合并归档表中的已办任务，并从归档表补全实例信息")
+    void shouldMergeArchivedHandledTasksWhenLiveTasksRunOut() {
+        // Given
+        testInstance.setProcessInstanceId("process-1");
+        Date now = new Date();
+        HistoricTaskInstance liveTask = mockHistoricTask("task-live", "process-1", now);
+        HistoricTaskInstance archivedNewer = mockHistoricTask("task-old-1", "process-old", new Date(now.getTime() - 1000L));
+        HistoricTaskInstance archivedOlder = mockHistoricTask("task-old-2", "process-old", new Date(now.getTime() - 2000L));
+        NativeHistoricTaskInstanceQuery query = mock(NativeHistoricTaskInstanceQuery.class);
+        when(historyService.createNativeHistoricTaskInstanceQuery()).thenReturn(query);
+        when(query.sql(anyString())).thenReturn(query);
+        when(query.parameter(anyString(), any())).thenReturn(query);
+        when(query.listPage(0, 3)).thenReturn(Collections.singletonList(liveTask));
+        when(workflowArchiveService.findHandledTasksBefore(2L, null, null, 3))
+                .thenReturn(Arrays.asList(archivedNewer, archivedOlder));
+        when(workflowInstanceRepository.findByProcessInstanceIdIn(anyCollection()))
+                .thenReturn(Collections.singletonList(testInstance));
+        when(workflowNodeRepository.findByTaskIdIn(anyCollection())).thenReturn(new ArrayList<>());
+        WorkflowInstance archivedInstance = createTestWorkflowInstance();
+        archivedInstance.setId(99L);
+        archivedInstance.setProcessInstanceId("process-old");
+        when(workflowArchiveService.findInstancesByProcessInstanceIds(Collections.singleton("process-old")))
+                .thenReturn(Collections.singletonList(archivedInstance));
+
+        // When
+        CursorPage<PendingTaskDTO> result = workflowService.getHandledTasksByCursor(2L, null, 2);
+
+        // Then
+        assertThat(result.getContent()).extracting(PendingTaskDTO::getFlowableTaskId)
+                .containsExactly("task-live", "task-old-1");
+        assertThat(result.getContent()).extracting(PendingTaskDTO::getInstanceId)
+                .containsExactly(testInstance.getId(), 99L);
+        assertThat(result.isHasMore()).isTrue();
+        assertThat(TaskCursor.decode(result.getNextCursor()).getTaskId()).isEqualTo("task-old-1");
+    }
+
+    @Test
+    @DisplayName("已归档但尚未从在线历史表清理的已办任务应该只出现一次")
+    void shouldNotDuplicateHandledTaskPresentInLiveHistoryAndArchive() {
+        // Given
+        testInstance.setProcessInstanceId("process-1");
+        Date now = new Date();
+        HistoricTaskInstance liveTask = mockHistoricTask("task-1", "process-1", now);
+        HistoricTaskInstance archivedCopy = mockHistoricTask("task-1", "process-1", now);
+        NativeHistoricTaskInstanceQuery query = mock(NativeHistoricTaskInstanceQuery.class);
+        when(historyService.createNativeHistoricTaskInstanceQuery()).thenReturn(query);
+        when(query.sql(anyString())).thenReturn(query);
+        when(query.parameter(anyString(), any())).thenReturn(query);
+        when(query.listPage(0, 3)).thenReturn(Collections.singletonList(liveTask));
+        when(workflowArchiveService.findHandledTasksBefore(2L, null, null, 3))
+                .thenReturn(Collections.singletonList(archivedCopy));
+        when(workflowInstanceRepository.findByProcessInstanceIdIn(anyCollection()))
+                .thenReturn(Collections.singletonList(testInstance));
+        when(workflowNodeRepository.findByTaskIdIn(anyCollection())).thenReturn(new ArrayList<>());
+
+        // When
+        CursorPage<PendingTaskDTO> result = workflowService.getHandledTasksByCursor(2L, null, 2);
+
+        // Then
+        assertThat(result.getContent()).extracting(PendingTaskDTO::getFlowableTaskId).containsExactly("task-1");
+        assertThat(result.isHasMore()).isFalse();
+        assertThat(result.getNextCursor()).isNull();
+    }
+
+    // ==================== 审批历史测试 ====================
+
+    @Test
+    @DisplayName("已结束流程的审批历史应该批量组装并缓存，重复查询不再访问数据库")
+    void shouldAssembleHistoryInBulkAndCacheFinishedProcess() {
+        // Given
+        testInstance.setProcessInstanceId("process-1");
+        testInstance.setStatus("COMPLETED");
+        List<HistoricTaskInstance> historicTasks = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            HistoricTaskInstance task = mock(HistoricTaskInstance.class);
+            when(task.getId()).thenReturn("task-" + i);
+            when(task.getAssignee()).thenReturn(String.valueOf(i));
+            when(task.getEndTime()).thenReturn(new Date());
+            historicTasks.add(task);
+        }
+        HistoricTaskInstanceQuery query = mock(HistoricTaskInstanceQuery.class);
+        when(historyService.createHistoricTaskInstanceQuery()).thenReturn(query);
+        when(query.processInstanceId("process-1")).thenReturn(query);
+        when(query.orderByHistoricTaskInstanceStartTime()).thenReturn(query);
+        when(query.asc()).thenReturn(query);
+        when(query.list()).thenReturn(historicTasks);
+        when(workflowInstanceRepository.findByProcessInstanceId("process-1")).thenReturn(Optional.of(testInstance));
+        Comment comment = mock(Comment.class);
+        when(comment.getTaskId()).thenReturn("task-1");
+        when(comment.getFullMessage()).thenReturn("同意");
+        when(taskService.getProcessInstanceComments("process-1")).thenReturn(Collections.singletonList(comment));
+        UserDTO manager = new UserDTO();
+        manager.setUserName("经理");
+        Map<Long, UserDTO> users = new HashMap<>();
+        users.put(1L, manager);
+        when(userService.getUsersByIds(anyCollection())).thenReturn(users);
+        WorkflowNode node = createTestWorkflowNode();
+        node.setTaskId("task-2");
+        node.setStatus("COMPLETED");
+        when(workflowNodeRepository.findByInstanceId(testInstance.getId())).thenReturn(Collections.singletonList(node));
+        mockHistoricProcessEnded("process-1", true);
+
+        // When
+        List<Map<String, Object>> first = workflowService.getDetailedHistory("process-1");
+        List<Map<String, Object>> second = workflowService.getDetailedHistory("process-1");
+
+        // Then
+        assertThat(first).hasSize(2);
+        assertThat(first.get(0)).containsEntry("comment", "同意").containsEntry("assigneeName", "经理");
+        assertThat(first.get(1)).containsEntry("nodeStatus", "COMPLETED").doesNotContainKey("comment");
+        assertThat(second).isSameAs(first);
+        assertThatThrownBy(() -> first.get(0).put("comment", "篡改"))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThat(second.get(0)).containsEntry("comment", "同意");
+        verify(query, times(1)).list();
+        verify(userService, times(1)).getUsersByIds(anyCollection());
+        verify(workflowNodeRepository, times(1)).findByInstanceId(testInstance.getId());
+        verify(taskService, never()).getTaskComments(anyString());
+        verify(userService, never()).getUserById(anyLong());
+
+        // 管理员清理后重新查询
+        workflowService.evictHistory("process-1");
+        workflowService.getDetailedHistory("process-1");
+        verify(query, times(2)).list();
+    }
+
     @Test
     @DisplayName("获取已办任务时用户ID为空应该返回空列表")
     void shouldReturnEmptyListWhenUserIdIsNullForHandledTasks() {
@@ -241,26 +797,28 @@ class WorkflowServiceTest extends BaseServiceTest {
                 .hasMessageContaining("流程实例不存在");
     }
 
-    // ==================== 批量审批测试 ====================
-
+    @SuppressWarnings("unchecked")
     @Test
-    @DisplayName("批量审批时部分失败应该记录错误")
-    void shouldRecordErrorsWhenBatchApprovePartiallyFails() {
+    @DisplayName("流程实例列表应该按业务字段列筛选，不解析流程变量")
+    void shouldFilterInstancesByTypedColumns() {
         // Given
-        List<ApprovalRequest> requests = createTestApprovalRequests();
-        
-        // 第一个成功，第二个失败
-        when(workflowNodeRepository.findById(1L)).thenReturn(Optional.of(createTestWorkflowNode()));
-        when(workflowNodeRepository.findById(2L)).thenReturn(Optional.empty());
+        WorkflowInstanceQueryDTO query = new WorkflowInstanceQueryDTO();
+        query.setMinAmount(new BigDecimal("1000"));
+        query.setDepartment("财务部");
+        Pageable pageable = PageRequest.of(0, 10);
+        testInstance.setAmount(new BigDecimal("1500.00"));
+        testInstance.setDepartment("财务部");
+        when(workflowInstanceRepository.findAll(any(Specification.class), eq(pageable)))
+                .thenReturn(new PageImpl<>(Collections.singletonList(testInstance), pageable, 1));
 
         // When
-        BatchResult result = workflowService.batchApprove(requests);
+        Page<WorkflowInstanceDTO> result = workflowService.getWorkflowInstances(query, pageable);
 
         // Then
-        assertThat(result).isNotNull();
-        assertThat(result.getSuccessCount()).isEqualTo(0); // 第一个也会因为后续步骤失败
-        assertThat(result.getFailureCount()).isEqualTo(2);
-        assertThat(result.getErrors()).hasSize(2);
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        assertThat(result.getContent().get(0).getAmount()).isEqualByComparingTo("1500.00");
+        assertThat(result.getContent().get(0).getDepartment()).isEqualTo("财务部");
+        verifyNoInteractions(objectMapper);
     }
 
     // ==================== 获取可打回节点测试 ====================
@@ -278,8 +836,53 @@ class WorkflowServiceTest extends BaseServiceTest {
                 .hasMessageContaining("节点不存在");
     }
 
+    @Test
+    @DisplayName("可打回节点应该取流程图上游且已办结的用户任务，重办的节点只保留最近一次")
+    void shouldReturnUpstreamFinishedUserTasks() {
+        // Given
+        Task task = mock(Task.class);
+        when(task.getProcessInstanceId()).thenReturn("process-1");
+        when(task.getTaskDefinitionKey()).thenReturn("financeApproval");
+        TaskQuery taskQuery = mock(TaskQuery.class);
+        when(taskService.createTaskQuery()).thenReturn(taskQuery);
+        when(taskQuery.taskId("task-3")).thenReturn(taskQuery);
+        when(taskQuery.singleResult()).thenReturn(task);
+
+        HistoricActivityInstance firstManager = createFinishedActivity("managerApproval", "经理审批", "2");
+        HistoricActivityInstance otherBranch = createFinishedActivity("hrApproval", "人事审批", "3");
+        HistoricActivityInstance secondManager = createFinishedActivity("managerApproval", "经理审批", "4");
+        HistoricActivityInstanceQuery activityQuery = mock(HistoricActivityInstanceQuery.class, RETURNS_SELF);
+        when(historyService.createHistoricActivityInstanceQuery()).thenReturn(activityQuery);
+        doReturn(Arrays.asList(firstManager, otherBranch, secondManager)).when(activityQuery).list();
+        when(processGraphService.getUpstreamUserTasks("expenseApproval:1:def-1", "financeApproval"))
+                .thenReturn(Collections.singleton("managerApproval"));
+        UserDTO manager = new UserDTO();
+        manager.setUserName("王五");
+        when(approverDirectory.findUser(4L)).thenReturn(Optional.of(manager));
+
+        // When
+        List<Map<String, String>> result = workflowService.getReturnableNodesByTaskId("task-3");
+
+        // Then
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0)).containsEntry("nodeKey", "managerApproval")
+                .containsEntry("nodeName", "经理审批")
+                .containsEntry("assigneeName", "王五");
+        verify(workflowNodeRepository, never()).findByInstanceIdAndStatus(anyLong(), anyString());
+    }
+
     // ==================== 测试数据创建方法 ====================
 
+    private HistoricActivityInstance createFinishedActivity(String activityId, String activityName, String assignee) {
+        HistoricActivityInstance activity = mock(HistoricActivityInstance.class);
+        lenient().when(activity.getProcessDefinitionId()).thenReturn("expenseApproval:1:def-1");
+        when(activity.getActivityId()).thenReturn(activityId);
+        lenient().when(activity.getActivityName()).thenReturn(activityName);
+        lenient().when(activity.getAssignee()).thenReturn(assignee);
+        lenient().when(activity.getEndTime()).thenReturn(new Date());
+        return activity;
+    }
+
     /**
      * 创建测试启动流程请求
      */
@@ -298,6 +901,23 @@ class WorkflowServiceTest extends BaseServiceTest {
         return request;
     }
 
+    private void mockHistoricProcessEnded(String processInstanceId, boolean ended) {
+        HistoricProcessInstanceQuery query = mock(HistoricProcessInstanceQuery.class);
+        HistoricProcessInstance process = mock(HistoricProcessInstance.class);
+        when(historyService.createHistoricProcessInstanceQuery()).thenReturn(query);
+        when(query.processInstanceId(processInstanceId)).thenReturn(query);
+        when(query.singleResult()).thenReturn(process);
+        when(process.getEndTime()).thenReturn(ended ? new Date() : null);
+    }
+
+    private HistoricTaskInstance mockHistoricTask(String taskId, String processInstanceId, Date endTime) {
+        HistoricTaskInstance task = mock(HistoricTaskInstance.class);
+        lenient().when(task.getId()).thenReturn(taskId);
+        lenient().when(task.getProcessInstanceId()).thenReturn(processInstanceId);
+        lenient().when(task.getEndTime()).thenReturn(endTime);
+        return task;
+    }
+
     /**
      * 创建测试工作流实例
      */
@@ -348,25 +968,4 @@ class WorkflowServiceTest extends BaseServiceTest {
         node.setExecutionId("execution-123");
         return node;
     }
-
-    /**
-     * 创建测试审批请求列表
-     */
-    private List<ApprovalRequest> createTestApprovalRequests() {
-        List<ApprovalRequest> requests = new ArrayList<>();
-        
-        ApprovalRequest request1 = new ApprovalRequest();
-        request1.setTaskId(1L);
-        request1.setAction("approve");
-        request1.setComment("批量审批通过");
-        requests.add(request1);
-        
-        ApprovalRequest request2 = new ApprovalRequest();
-        request2.setTaskId(2L);
-        request2.setAction("approve");
-        request2.setComment("批量审批通过");
-        requests.add(request2);
-        
-        return requests;
-    }
 } 
\ No newline at end of file
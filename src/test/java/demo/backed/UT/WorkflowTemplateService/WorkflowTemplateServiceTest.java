@@ -7,12 +7,14 @@ import demo.backed.service.WorkflowTemplateService;
 import org.flowable.engine.RepositoryService;
 import org.flowable.engine.repository.Deployment;
 import org.flowable.engine.repository.DeploymentBuilder;
+import org.flowable.engine.repository.ProcessDefinition;
 import org.flowable.engine.repository.ProcessDefinitionQuery;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -374,6 +376,95 @@ class WorkflowTemplateServiceTest extends BaseServiceTest {
         verify(templateRepository).findByIsDeployedAndStatus(true, "active");
     }
 
+    // ==================== 流程路由表测试 ====================
+
+    @Test
+    @DisplayName("路由表应该只构建一次，重复发起不再查询模板和流程定义")
+    void shouldResolveProcessKeyFromCachedRoutingTable() {
+        // Given
+        testTemplate.setType("expense");
+        testTemplate.setIsDeployed(true);
+        testTemplate.setStatus("active");
+        ProcessDefinition definition = mock(ProcessDefinition.class);
+        when(definition.getKey()).thenReturn("expense_approval_test");
+        when(templateRepository.findAllActive()).thenReturn(Arrays.asList(testTemplate));
+        when(repositoryService.createProcessDefinitionQuery()).thenReturn(processDefinitionQuery);
+        when(processDefinitionQuery.latestVersion()).thenReturn(processDefinitionQuery);
+        when(processDefinitionQuery.active()).thenReturn(processDefinitionQuery);
+        when(processDefinitionQuery.list()).thenReturn(Arrays.asList(definition));
+
+        // When
+        String first = workflowTemplateService.resolveProcessKey("EXPENSE");
+        String second = workflowTemplateService.resolveProcessKey("EXPENSE");
+
+        // Then
+        assertThat(first).isEqualTo("expense_approval_test");
+        assertThat(second).isEqualTo("expense_approval_test");
+        verify(templateRepository, times(1)).findAllActive();
+        verify(processDefinitionQuery, times(1)).list();
+        verify(templateRepository, never()).findByIsDeployedAndStatus(anyBoolean(), anyString());
+    }
+
+    @Test
+    @DisplayName("取消部署后路由表应该重建，没有可用模板时抛出异常")
+    void shouldRebuildRoutingTableAfterUndeploy() {
+        // Given
+        testTemplate.setType("expense");
+        testTemplate.setIsDeployed(true);
+        testTemplate.setStatus("active");
+        testTemplate.setDeploymentId("deployment-123");
+        ProcessDefinition definition = mock(ProcessDefinition.class);
+        when(definition.getKey()).thenReturn("expense_approval_test");
+        when(templateRepository.findAllActive()).thenReturn(Arrays.asList(testTemplate));
+        when(repositoryService.createProcessDefinitionQuery()).thenReturn(processDefinitionQuery);
+        when(processDefinitionQuery.latestVersion()).thenReturn(processDefinitionQuery);
+        when(processDefinitionQuery.active()).thenReturn(processDefinitionQuery);
+        when(processDefinitionQuery.list())
+                .thenReturn(Arrays.asList(definition))
+                .thenReturn(Arrays.asList());
+        when(templateRepository.findById(1L)).thenReturn(Optional.of(testTemplate));
+        assertThat(workflowTemplateService.resolveProcessKey("EXPENSE")).isEqualTo("expense_approval_test");
+
+        // When
+        workflowTemplateService.undeployTemplate(1L);
+
+        // Then
+        assertThatThrownBy(() -> workflowTemplateService.resolveProcessKey("EXPENSE"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("没有可用的工作流模板");
+        verify(templateRepository, times(2)).findAllActive();
+    }
+
+    @Test
+    @DisplayName("立即失效后下次解析应该重建路由表，即使当前事务随后回滚")
+    void shouldRebuildRoutingTableAfterImmediateInvalidation() {
+        // Given
+        testTemplate.setType("expense");
+        testTemplate.setIsDeployed(true);
+        testTemplate.setStatus("active");
+        ProcessDefinition definition = mock(ProcessDefinition.class);
+        when(definition.getKey()).thenReturn("expense_approval_test");
+        when(templateRepository.findAllActive()).thenReturn(Arrays.asList(testTemplate));
+        when(repositoryService.createProcessDefinitionQuery()).thenReturn(processDefinitionQuery);
+        when(processDefinitionQuery.latestVersion()).thenReturn(processDefinitionQuery);
+        when(processDefinitionQuery.active()).thenReturn(processDefinitionQuery);
+        when(processDefinitionQuery.list()).thenReturn(Arrays.asList(definition));
+        workflowTemplateService.resolveProcessKey("EXPENSE");
+
+        // When
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            workflowTemplateService.invalidateRoutingNow();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        workflowTemplateService.resolveProcessKey("EXPENSE");
+
+        // Then
+        verify(templateRepository, times(2)).findAllActive();
+        verify(processDefinitionQuery, times(2)).latestVersion();
+    }
+
     // ==================== 模板可用性验证测试 ====================
 
     @Test
@@ -0,0 +1,205 @@
+package demo.backed.UT.WorkflowTrackerService;
+
+import demo.backed.BaseServiceTest;
+import demo.backed.dto.WorkflowInstanceDetailDTO;
+import demo.backed.entity.WorkflowInstance;
+import demo.backed.entity.WorkflowNode;
+import demo.backed.repository.WorkflowInstanceRepository;
+import demo.backed.repository.WorkflowNodeRepository;
+import demo.backed.service.ApproverDirectory;
+import demo.backed.service.ProcessGraphService;
+import demo.backed.service.WorkflowArchiveService;
+import demo.backed.service.WorkflowTrackerService;
+import org.flowable.engine.HistoryService;
+import org.flowable.engine.history.HistoricActivityInstance;
+import org.flowable.engine.history.HistoricActivityInstanceQuery;
+import org.flowable.engine.history.HistoricProcessInstance;
+import org.flowable.engine.history.HistoricProcessInstanceQuery;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+/**
+ * WorkflowTrackerService单元测试
+ */
+@DisplayName("流程追踪服务测试")
+class WorkflowTrackerServiceTest extends BaseServiceTest {
+
+    private static final String DEFINITION_ID = "expenseApproval:1:def-1";
+
+    @Mock
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    @Mock
+    private WorkflowNodeRepository workflowNodeRepository;
+
+    @Mock
+    private HistoryService historyService;
+
+    @Mock
+    private ProcessGraphService processGraphService;
+
+    @Mock
+    private WorkflowArchiveService workflowArchiveService;
+
+    @Mock
+    private ApproverDirectory approverDirectory;
+
+    @InjectMocks
+    private WorkflowTrackerService workflowTrackerService;
+
+    @Test
+    @DisplayName("进行中的流程应该按流程定义合并历史活动和节点记录，去掉未走的分支")
+    void shouldMergeModelWithHistoryForRunningInstance() {
+        // Given
+        WorkflowInstance instance = createInstance("RUNNING");
+        // 同一业务键上还有一条遗留的已软删除占位记录
+        WorkflowInstance placeholder = createInstance("CREATED");
+        placeholder.setId(99L);
+        placeholder.setIsDeleted(true);
+        when(workflowInstanceRepository.findByBusinessTypeAndBusinessIdOrderByStartTimeDesc("EXPENSE", "EXP202412001"))
+                .thenReturn(Arrays.asList(placeholder, instance));
+        when(processGraphService.getUserTaskSequence(DEFINITION_ID)).thenReturn(Arrays.asList(
+                new ProcessGraphService.UserTaskNode("managerApproval", "经理审批", null),
+                new ProcessGraphService.UserTaskNode("hrApproval", "人事审批", null),
+                new ProcessGraphService.UserTaskNode("financeApproval", "财务审批", "财务部门审核费用合理性"),
+                new ProcessGraphService.UserTaskNode("complianceApproval", "合规审批", null)));
+        mockActivities(createActivity("managerApproval", "task-1", true),
+                createActivity("financeApproval", "task-2", false));
+        WorkflowNode managerNode = new WorkflowNode();
+        managerNode.setTaskId("task-1");
+        managerNode.setNodeKey("managerApproval");
+        managerNode.setStatus("COMPLETED");
+        managerNode.setAssigneeId(2L);
+        managerNode.setAssigneeName("张三");
+        managerNode.setComment("同意");
+        when(workflowNodeRepository.findByInstanceIdOrderByCreatedTimeAsc(10L))
+                .thenReturn(Collections.singletonList(managerNode));
+
+        // When
+        WorkflowInstanceDetailDTO detail = workflowTrackerService.getTracker("EXPENSE", "EXP202412001");
+
+        // Then
+        assertThat(detail.getInstanceId()).isEqualTo(10L);
+        assertThat(detail.getSteps()).extracting(WorkflowInstanceDetailDTO.StepDetail::getTaskName)
+                .containsExactly("经理审批", "财务审批", "合规审批");
+        assertThat(detail.getSteps()).extracting(WorkflowInstanceDetailDTO.StepDetail::getStatus)
+                .containsExactly("completed", "active", "pending");
+        assertThat(detail.getSteps().get(0).getAssigneeName()).isEqualTo("张三");
+        assertThat(detail.getSteps().get(0).getComment()).isEqualTo("同意");
+        assertThat(detail.getSteps().get(1).getDescription()).isEqualTo("财务部门审核费用合理性");
+        assertThat(detail.getProgress()).isEqualTo(33);
+    }
+
+    @Test
+    @DisplayName("已结束流程的追踪结果应该缓存，再次查询不访问历史")
+    void shouldCacheTrackerOfFinishedInstance() {
+        // Given
+        WorkflowInstance instance = createInstance("COMPLETED");
+        when(workflowInstanceRepository.findByBusinessTypeAndBusinessIdOrderByStartTimeDesc("EXPENSE", "EXP202412001"))
+                .thenReturn(Collections.singletonList(instance));
+        when(processGraphService.getUserTaskSequence(DEFINITION_ID)).thenReturn(Arrays.asList(
+                new ProcessGraphService.UserTaskNode("managerApproval", "经理审批", null),
+                new ProcessGraphService.UserTaskNode("hrApproval", "人事审批", null)));
+        mockActivities(createActivity("managerApproval", "task-1", true));
+        when(workflowNodeRepository.findByInstanceIdOrderByCreatedTimeAsc(10L)).thenReturn(Collections.emptyList());
+        mockHistoricProcessEnded(instance.getProcessInstanceId(), true);
+
+        // When
+        WorkflowInstanceDetailDTO first = workflowTrackerService.getTracker("EXPENSE", "EXP202412001");
+        WorkflowInstanceDetailDTO second = workflowTrackerService.getTracker("EXPENSE", "EXP202412001");
+
+        // Then
+        assertThat(second).isNotSameAs(first).isEqualTo(first);
+        assertThat(first.getSteps()).hasSize(1);
+        assertThat(first.getProgress()).isEqualTo(100);
+        verify(historyService, times(1)).createHistoricActivityInstanceQuery();
+
+        // 调用方修改返回结果不影响缓存
+        first.setStatus("RUNNING");
+        first.getSteps().get(0).setComment("篡改");
+        second.getSteps().clear();
+        WorkflowInstanceDetailDTO third = workflowTrackerService.getTracker("EXPENSE", "EXP202412001");
+        assertThat(third.getStatus()).isEqualTo("COMPLETED");
+        assertThat(third.getSteps()).hasSize(1);
+        assertThat(third.getSteps().get(0).getComment()).isNotEqualTo("篡改");
+    }
+
+    @Test
+    @DisplayName("异步历史尚未写入流程结束时间时不应该缓存追踪结果")
+    void shouldNotCacheTrackerWhileHistoricProcessNotEnded() {
+        // Given
+        WorkflowInstance instance = createInstance("COMPLETED");
+        when(workflowInstanceRepository.findByBusinessTypeAndBusinessIdOrderByStartTimeDesc("EXPENSE", "EXP202412001"))
+                .thenReturn(Collections.singletonList(instance));
+        when(processGraphService.getUserTaskSequence(DEFINITION_ID)).thenReturn(Collections.singletonList(
+                new ProcessGraphService.UserTaskNode("managerApproval", "经理审批", null)));
+        mockActivities(createActivity("managerApproval", "task-1", true));
+        when(workflowNodeRepository.findByInstanceIdOrderByCreatedTimeAsc(10L)).thenReturn(Collections.emptyList());
+        mockHistoricProcessEnded(instance.getProcessInstanceId(), false);
+
+        // When
+        WorkflowInstanceDetailDTO first = workflowTrackerService.getTracker("EXPENSE", "EXP202412001");
+        WorkflowInstanceDetailDTO second = workflowTrackerService.getTracker("EXPENSE", "EXP202412001");
+
+        // Then
+        assertThat(second).isNotSameAs(first);
+        verify(historyService, times(2)).createHistoricActivityInstanceQuery();
+    }
+
+    @Test
+    @DisplayName("在线表和归档表都没有实例时应该抛出异常")
+    void shouldThrowWhenInstanceNotFound() {
+        // Given
+        when(workflowInstanceRepository.findByBusinessTypeAndBusinessIdOrderByStartTimeDesc("EXPENSE", "EXP404"))
+                .thenReturn(Collections.emptyList());
+        when(workflowArchiveService.findInstanceByBusinessKey("EXPENSE", "EXP404")).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> workflowTrackerService.getTracker("EXPENSE", "EXP404"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("未找到对应的工作流实例");
+    }
+
+    private void mockHistoricProcessEnded(String processInstanceId, boolean ended) {
+        HistoricProcessInstanceQuery query = mock(HistoricProcessInstanceQuery.class);
+        HistoricProcessInstance process = mock(HistoricProcessInstance.class);
+        when(historyService.createHistoricProcessInstanceQuery()).thenReturn(query);
+        when(query.processInstanceId(processInstanceId)).thenReturn(query);
+        when(query.singleResult()).thenReturn(process);
+        when(process.getEndTime()).thenReturn(ended ? new Date() : null);
+    }
+
+    private void mockActivities(HistoricActivityInstance... activities) {
+        HistoricActivityInstanceQuery query = mock(HistoricActivityInstanceQuery.class, RETURNS_SELF);
+        when(historyService.createHistoricActivityInstanceQuery()).thenReturn(query);
+        doReturn(Arrays.asList(activities)).when(query).list();
+    }
+
+    private HistoricActivityInstance createActivity(String activityId, String taskId, boolean finished) {
+        HistoricActivityInstance activity = mock(HistoricActivityInstance.class);
+        lenient().when(activity.getProcessDefinitionId()).thenReturn(DEFINITION_ID);
+        when(activity.getActivityId()).thenReturn(activityId);
+        lenient().when(activity.getTaskId()).thenReturn(taskId);
+        lenient().when(activity.getStartTime()).thenReturn(new Date());
+        lenient().when(activity.getEndTime()).thenReturn(finished ? new Date() : null);
+        return activity;
+    }
+
+    private WorkflowInstance createInstance(String status) {
+        WorkflowInstance instance = new WorkflowInstance();
+        instance.setId(10L);
+        instance.setProcessInstanceId("process-1");
+        instance.setBusinessType("EXPENSE");
+        instance.setBusinessId("EXP202412001");
+        instance.setStatus(status);
+        return instance;
+    }
+}